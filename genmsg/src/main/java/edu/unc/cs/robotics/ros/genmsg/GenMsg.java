@@ -0,0 +1,145 @@
+package edu.unc.cs.robotics.ros.genmsg;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates the message classes for the .msg and .action files in a
+ * set of directories.  Used by {@link GenerateMojo}, and from the
+ * command line:
+ *
+ * <pre>
+ * java -jar jROS-genmsg.jar [-p basePackage] [-m type=class]... [-I dir]... -o outputDir dir...
+ * </pre>
+ *
+ * <p>Classes are generated for the definitions in each dir.  The
+ * definitions in the -I dirs are only used to resolve dependencies, the
+ * classes for them are expected to exist already, as are the classes
+ * given by -m.</p>
+ */
+public class GenMsg {
+    private final MsgContext _context = new MsgContext();
+    private final JavaGenerator _generator;
+    private final List<MsgSpec> _specs = new ArrayList<>();
+
+    /**
+     * @param basePackage the package under which a package is generated
+     *    for each ROS package
+     */
+    public GenMsg(String basePackage) {
+        _generator = new JavaGenerator(_context, basePackage);
+    }
+
+    /**
+     * @param mappings message types, mapped to the classes to use for
+     *    them instead of generating them
+     */
+    public void map(Map<String, String> mappings) {
+        for (Map.Entry<String, String> e : mappings.entrySet()) {
+            _generator.map(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Adds the definitions in a directory, to be generated.
+     *
+     * @param dir the directory of packages
+     * @throws IOException if a definition cannot be read
+     */
+    public void add(Path dir) throws IOException {
+        _specs.addAll(_context.load(dir));
+    }
+
+    /**
+     * Adds the definitions in a directory, without generating them.
+     *
+     * @param dir the directory of packages
+     * @throws IOException if a definition cannot be read
+     */
+    public void include(Path dir) throws IOException {
+        _context.load(dir);
+    }
+
+    /**
+     * Generates the classes for the definitions added with
+     * {@link #add(Path)}.
+     *
+     * @param outputDir the root of the generated source tree
+     * @return the number of classes generated
+     * @throws IOException if a class cannot be written
+     */
+    public int generate(Path outputDir) throws IOException {
+        int count = 0;
+        for (MsgSpec spec : _specs) {
+            if (!_generator.isMapped(spec.getFullName())) {
+                _generator.write(spec, outputDir);
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("usage: GenMsg [-p basePackage] [-m type=class]... [-I dir]... -o outputDir dir...");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws IOException {
+        String basePackage = JavaGenerator.DEFAULT_BASE_PACKAGE;
+        Path outputDir = null;
+        List<String> mappings = new ArrayList<>();
+        List<Path> includes = new ArrayList<>();
+        List<Path> dirs = new ArrayList<>();
+
+        for (int i = 0 ; i < args.length ; ++i) {
+            String arg = args[i];
+            if (arg.startsWith("-") && i + 1 == args.length) {
+                usage("missing argument to " + arg);
+            }
+            switch (arg) {
+            case "-p":
+                basePackage = args[++i];
+                break;
+            case "-m":
+                mappings.add(args[++i]);
+                break;
+            case "-I":
+                includes.add(Paths.get(args[++i]));
+                break;
+            case "-o":
+                outputDir = Paths.get(args[++i]);
+                break;
+            default:
+                if (arg.startsWith("-")) {
+                    usage("unknown option " + arg);
+                }
+                dirs.add(Paths.get(arg));
+            }
+        }
+        if (outputDir == null || dirs.isEmpty()) {
+            usage("an output directory and at least one input directory are required");
+        }
+
+        GenMsg gen = new GenMsg(basePackage);
+        for (String mapping : mappings) {
+            int eq = mapping.indexOf('=');
+            if (eq < 0) {
+                usage("invalid mapping " + mapping);
+            }
+            gen._generator.map(mapping.substring(0, eq), mapping.substring(eq + 1));
+        }
+        for (Path dir : includes) {
+            gen.include(dir);
+        }
+        for (Path dir : dirs) {
+            gen.add(dir);
+        }
+        int count = gen.generate(outputDir);
+        System.out.println("generated " + count + " classes in " + outputDir);
+    }
+}
@@ -0,0 +1,94 @@
+package edu.unc.cs.robotics.ros.genmsg;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Generates message classes from the .msg and .action files under
+ * src/main/msg (laid out as {@code <package>/msg/*.msg} and
+ * {@code <package>/action/*.action}) and adds them to the sources to
+ * compile.  Runs in the generate-sources phase:
+ *
+ * <pre>
+ * &lt;plugin&gt;
+ *   &lt;groupId&gt;edu.unc.cs.robotics.jROS&lt;/groupId&gt;
+ *   &lt;artifactId&gt;jROS-genmsg&lt;/artifactId&gt;
+ *   &lt;executions&gt;
+ *     &lt;execution&gt;
+ *       &lt;goals&gt;&lt;goal&gt;generate&lt;/goal&gt;&lt;/goals&gt;
+ *     &lt;/execution&gt;
+ *   &lt;/executions&gt;
+ * &lt;/plugin&gt;
+ * </pre>
+ *
+ * <p>The parameters are declared in META-INF/maven/plugin.xml.</p>
+ */
+public class GenerateMojo extends AbstractMojo {
+    /**
+     * The maven project, to add the generated sources to.
+     */
+    private MavenProject project;
+
+    /**
+     * The directory containing the packages of definitions to generate.
+     */
+    private File sourceDirectory;
+
+    /**
+     * Directories of definitions that are needed to resolve
+     * dependencies, but are not generated.
+     */
+    private List<File> includeDirectories;
+
+    /**
+     * The root of the generated source tree.
+     */
+    private File outputDirectory;
+
+    /**
+     * The package under which a package is generated for each ROS
+     * package.
+     */
+    private String basePackage;
+
+    /**
+     * Message types mapped to existing classes, which are not
+     * generated.
+     */
+    private Map<String, String> typeMappings;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (!sourceDirectory.isDirectory()) {
+            getLog().info("no message definitions in " + sourceDirectory);
+            return;
+        }
+
+        GenMsg gen = new GenMsg(basePackage);
+        if (typeMappings != null) {
+            gen.map(typeMappings);
+        }
+        try {
+            for (File dir : includeDirectories != null ? includeDirectories : Collections.<File>emptyList()) {
+                gen.include(dir.toPath());
+            }
+            gen.add(sourceDirectory.toPath());
+            int count = gen.generate(outputDirectory.toPath());
+            getLog().info("generated " + count + " message classes in " + outputDirectory);
+        } catch (IllegalArgumentException ex) {
+            throw new MojoFailureException(ex.getMessage());
+        } catch (IOException ex) {
+            throw new MojoExecutionException("failed to generate message classes", ex);
+        }
+
+        project.addCompileSourceRoot(outputDirectory.getPath());
+    }
+}
@@ -0,0 +1,793 @@
+package edu.unc.cs.robotics.ros.genmsg;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Generates the Java class for a message definition.  The generated
+ * class has the same shape as the handwritten ones in
+ * {@code edu.unc.cs.robotics.ros.msg}: public fields, a constructor
+ * that deserializes, {@code serialize}, the {@code MessageSpec}
+ * annotation and a {@code META}.  Serialization is straight-line code
+ * for each field's type, so nothing is looked up or boxed at run time,
+ * arrays of float64, string and messages use the serializer's array
+ * operations, byte arrays are written in one put, and types whose
+ * serialized size never changes get a {@code SIZE} and
+ * {@code getFixedSize()}.
+ *
+ * <p>Each message type is generated in the package
+ * {@code <basePackage>.<ros package>}, except for the types mapped to
+ * existing classes with {@link #map(String, String)}.  std_msgs/Header
+ * and actionlib_msgs/GoalID and GoalStatus are mapped to the classes
+ * in jROS, and messages shaped as genaction generates them extend
+ * {@code ActionGoal}, {@code ActionResult} and
+ * {@code ActionFeedback}.</p>
+ */
+public class JavaGenerator {
+    public static final String DEFAULT_BASE_PACKAGE = "edu.unc.cs.robotics.ros.msg";
+
+    static final String MSG = "edu.unc.cs.robotics.ros.msg";
+    static final String ACTIONLIB = MSG + ".actionlib";
+
+    private static final String GOAL_ID = "actionlib_msgs/GoalID";
+    private static final String GOAL_STATUS = "actionlib_msgs/GoalStatus";
+
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+        "abstract", "assert", "boolean", "break", "byte", "case", "catch",
+        "char", "class", "const", "continue", "default", "do", "double",
+        "else", "enum", "extends", "false", "final", "finally", "float",
+        "for", "goto", "if", "implements", "import", "instanceof", "int",
+        "interface", "long", "native", "new", "null", "package", "private",
+        "protected", "public", "return", "short", "static", "strictfp",
+        "super", "switch", "synchronized", "this", "throw", "throws",
+        "transient", "true", "try", "void", "volatile", "while"));
+
+    private final MsgContext _context;
+    private final String _basePackage;
+    private final Map<String, String> _mapped = new HashMap<>();
+
+    /**
+     * @param context the definitions
+     * @param basePackage the package under which a package is generated
+     *    for each ROS package
+     */
+    public JavaGenerator(MsgContext context, String basePackage) {
+        _context = context;
+        _basePackage = basePackage;
+        map(MsgSpec.HEADER, MSG + ".Header");
+        map(GOAL_ID, ACTIONLIB + ".GoalID");
+        map(GOAL_STATUS, ACTIONLIB + ".GoalStatus");
+    }
+
+    /**
+     * Uses an existing class for a message type instead of generating
+     * one.  The class must have a constructor taking a
+     * {@code MessageDeserializer} and must implement
+     * {@code serialize}.
+     *
+     * @param type the message type, e.g., "std_msgs/Header"
+     * @param className the fully qualified name of the class
+     */
+    public void map(String type, String className) {
+        _mapped.put(type, className);
+    }
+
+    /**
+     * @param type a message type
+     * @return true if the type is mapped to an existing class, and is
+     * not generated.
+     */
+    public boolean isMapped(String type) {
+        return _mapped.containsKey(type);
+    }
+
+    /**
+     * @param type a message type
+     * @return the fully qualified name of the class for the type
+     */
+    public String className(String type) {
+        String name = _mapped.get(type);
+        if (name == null) {
+            int slash = type.indexOf('/');
+            name = _basePackage + "." + type.substring(0, slash) + "." + type.substring(slash + 1);
+        }
+        return name;
+    }
+
+    /**
+     * Generates the class for a message type, and writes it under a
+     * source directory.  The file is left untouched if it already has
+     * the same contents, so that it is not recompiled needlessly.
+     *
+     * @param spec the definition
+     * @param sourceDir the root of the source tree
+     * @return the file
+     * @throws IOException if the file cannot be written
+     */
+    public Path write(MsgSpec spec, Path sourceDir) throws IOException {
+        String name = className(spec.getFullName());
+        Path file = sourceDir.resolve(name.replace('.', '/') + ".java");
+        byte[] source = generate(spec).getBytes(StandardCharsets.UTF_8);
+        if (Files.exists(file) && Arrays.equals(source, Files.readAllBytes(file))) {
+            return file;
+        }
+        Files.createDirectories(file.getParent());
+        Files.write(file, source);
+        return file;
+    }
+
+    /**
+     * Generates the class for a message type.
+     *
+     * @param spec the definition
+     * @return the source of the class
+     */
+    public String generate(MsgSpec spec) {
+        return new Unit(spec).generate();
+    }
+
+    /**
+     * @param spec a definition
+     * @return the name of the actionlib base class for messages
+     * shaped as genaction generates them, or null.
+     */
+    private String actionKind(MsgSpec spec) {
+        List<MsgSpec.Field> fields = spec.getFields();
+        if (fields.size() != 3 || !spec.getConstants().isEmpty()
+            || !isField(fields.get(0), MsgSpec.HEADER, "header", MSG + ".Header"))
+        {
+            return null;
+        }
+        MsgSpec.Field last = fields.get(2);
+        if (last.isArray() || MsgParser.isPrimitive(last.getType())) {
+            return null;
+        }
+        if (isField(fields.get(1), GOAL_ID, "goal_id", ACTIONLIB + ".GoalID")
+            && "goal".equals(last.getName()))
+        {
+            return "ActionGoal";
+        }
+        if (isField(fields.get(1), GOAL_STATUS, "status", ACTIONLIB + ".GoalStatus")) {
+            if ("result".equals(last.getName())) {
+                return "ActionResult";
+            }
+            if ("feedback".equals(last.getName())) {
+                return "ActionFeedback";
+            }
+        }
+        return null;
+    }
+
+    private boolean isField(MsgSpec.Field f, String type, String name, String className) {
+        return type.equals(f.getType()) && name.equals(f.getName())
+            && className.equals(className(type));
+    }
+
+    static String fieldName(String name) {
+        StringBuilder buf = new StringBuilder(name.length());
+        boolean upper = false;
+        for (int i = 0 ; i < name.length() ; ++i) {
+            char ch = name.charAt(i);
+            if (ch == '_' && i > 0) {
+                upper = true;
+            } else {
+                buf.append(upper ? Character.toUpperCase(ch) : ch);
+                upper = false;
+            }
+        }
+        String field = buf.toString();
+        return KEYWORDS.contains(field) ? field + "_" : field;
+    }
+
+    static String quote(String str) {
+        StringBuilder buf = new StringBuilder(str.length() + 2).append('"');
+        for (int i = 0 ; i < str.length() ; ++i) {
+            char ch = str.charAt(i);
+            switch (ch) {
+            case '"':
+                buf.append("\\\"");
+                break;
+            case '\\':
+                buf.append("\\\\");
+                break;
+            case '\n':
+                buf.append("\\n");
+                break;
+            case '\r':
+                buf.append("\\r");
+                break;
+            case '\t':
+                buf.append("\\t");
+                break;
+            default:
+                if (ch < ' ' || ch > '~') {
+                    buf.append(String.format("\\u%04x", (int)ch));
+                } else {
+                    buf.append(ch);
+                }
+            }
+        }
+        return buf.append('"').toString();
+    }
+
+    /**
+     * @param type a primitive type
+     * @return the Java type of a field of the primitive type
+     */
+    static String primitiveType(String type) {
+        switch (type) {
+        case "bool":
+            return "boolean";
+        case "int8":
+        case "uint8":
+        case "byte":
+        case "char":
+            return "byte";
+        case "int16":
+        case "uint16":
+            return "short";
+        case "int32":
+        case "uint32":
+            return "int";
+        case "int64":
+        case "uint64":
+        case "time":
+        case "duration":
+            return "long";
+        case "float32":
+            return "float";
+        case "float64":
+            return "double";
+        case "string":
+            return "String";
+        default:
+            throw new IllegalArgumentException("not a primitive: " + type);
+        }
+    }
+
+    /**
+     * @param c a constant
+     * @return the Java expression for the value of the constant
+     */
+    static String constantValue(MsgSpec.Constant c) {
+        String value = c.getValue();
+        switch (c.getType()) {
+        case "bool":
+            return String.valueOf(!"0".equals(value) && !"false".equalsIgnoreCase(value));
+        case "string":
+            return quote(value);
+        case "float32":
+        case "float64":
+            return floatValue(c.getType(), value);
+        default:
+            return integerValue(c, new BigInteger(value));
+        }
+    }
+
+    private static String floatValue(String type, String value) {
+        String prefix = "float32".equals(type) ? "Float." : "Double.";
+        double d;
+        switch (value.toLowerCase()) {
+        case "inf":
+        case "+inf":
+            return prefix + "POSITIVE_INFINITY";
+        case "-inf":
+            return prefix + "NEGATIVE_INFINITY";
+        case "nan":
+            return prefix + "NaN";
+        default:
+            d = Double.parseDouble(value);
+        }
+        return "float32".equals(type) ? Float.toString((float)d) + "f" : Double.toString(d);
+    }
+
+    private static String integerValue(MsgSpec.Constant c, BigInteger value) {
+        String type = c.getType();
+        int bits = MsgContext.primitiveSize(type) * 8;
+        boolean unsigned = type.startsWith("u") || "char".equals(type);
+        BigInteger min = unsigned ? BigInteger.ZERO : BigInteger.ONE.shiftLeft(bits - 1).negate();
+        BigInteger max = BigInteger.ONE.shiftLeft(unsigned ? bits : bits - 1).subtract(BigInteger.ONE);
+        if (value.compareTo(min) < 0 || value.compareTo(max) > 0) {
+            throw new IllegalArgumentException(c + " is out of range");
+        }
+        boolean wraps = unsigned && value.bitLength() == bits;
+        switch (bits) {
+        case 8:
+            return wraps ? "(byte)" + value : value.toString();
+        case 16:
+            return wraps ? "(short)" + value : value.toString();
+        case 32:
+            return wraps ? "(int)" + value + "L" : value.toString();
+        default:
+            return wraps ? "0x" + Long.toHexString(value.longValue()) + "L" : value + "L";
+        }
+    }
+
+    /**
+     * The state of generating one class.
+     */
+    private final class Unit {
+        private final MsgSpec _spec;
+        private final String _package;
+        private final String _name;
+        /**
+         * simple name -&gt; fully qualified name of the imports.
+         */
+        private final Map<String, String> _imports = new TreeMap<>();
+        private final StringBuilder _out = new StringBuilder();
+        private int _indent;
+
+        Unit(MsgSpec spec) {
+            _spec = spec;
+            String name = className(spec.getFullName());
+            int dot = name.lastIndexOf('.');
+            _package = name.substring(0, dot);
+            _name = name.substring(dot + 1);
+        }
+
+        /**
+         * @param className a fully qualified class name
+         * @return the name to use for the class in the source, imported
+         * if that does not clash.
+         */
+        String ref(String className) {
+            int dot = className.lastIndexOf('.');
+            String pkg = className.substring(0, dot);
+            String simple = className.substring(dot + 1);
+            if (pkg.equals(_package)) {
+                return simple;
+            }
+            String imported = _imports.get(simple);
+            if (imported == null) {
+                if (simple.equals(_name) || clashesInPackage(simple)) {
+                    return className;
+                }
+                _imports.put(simple, className);
+                return simple;
+            }
+            return imported.equals(className) ? simple : className;
+        }
+
+        private boolean clashesInPackage(String simple) {
+            return className(_spec.getPackage() + "/" + simple).equals(_package + "." + simple)
+                && _context.contains(_spec.getPackage() + "/" + simple);
+        }
+
+        String ref(MsgSpec.Field f) {
+            String base = f.getBaseType();
+            return MsgParser.isPrimitive(base) ? primitiveType(base) : ref(className(base));
+        }
+
+        private Unit line(String text) {
+            if (!text.isEmpty()) {
+                for (int i = 0 ; i < _indent ; ++i) {
+                    _out.append("    ");
+                }
+            }
+            _out.append(text).append('\n');
+            return this;
+        }
+
+        private Unit open(String text) {
+            line(text + " {");
+            ++_indent;
+            return this;
+        }
+
+        private Unit close() {
+            --_indent;
+            return line("}");
+        }
+
+        String generate() {
+            String superclass;
+            String kind = actionKind(_spec);
+            if (kind == null) {
+                superclass = ref(MSG + ".Message");
+            } else {
+                superclass = ref(ACTIONLIB + "." + kind) +
+                    "<" + ref(_spec.getFields().get(2)) + ">";
+            }
+
+            line("/**");
+            line(" * Generated by genmsg from " + _spec.getFullName() + ", do not edit.");
+            line(" */");
+            line("@" + ref(MSG + ".MessageSpec") + "(");
+            line("    type = " + _name + ".DATATYPE,");
+            line("    md5sum = " + _name + ".MD5SUM,");
+            line("    definition = " + _name + ".DEFINITION");
+            line(")");
+            open("public class " + _name + " extends " + superclass);
+            generateHeader();
+            if ("ActionGoal".equals(kind)) {
+                generateActionGoal();
+            } else {
+                generateFields(kind == null);
+                generateDefaultConstructor();
+                generateDeserializer();
+                if (kind == null) {
+                    generateFixedSize();
+                }
+                generateSerialize();
+                if (kind == null) {
+                    generateToString();
+                }
+            }
+            close();
+
+            StringBuilder file = new StringBuilder();
+            file.append("package ").append(_package).append(";\n\n");
+            Set<String> imports = new TreeSet<>(_imports.values());
+            boolean java = false;
+            for (String name : imports) {
+                if (name.startsWith("java.")) {
+                    file.append("import ").append(name).append(";\n");
+                    java = true;
+                }
+            }
+            if (java) {
+                file.append('\n');
+            }
+            boolean other = false;
+            for (String name : imports) {
+                if (!name.startsWith("java.")) {
+                    file.append("import ").append(name).append(";\n");
+                    other = true;
+                }
+            }
+            if (other) {
+                file.append('\n');
+            }
+            return file.append(_out).toString();
+        }
+
+        private void generateHeader() {
+            line("public static final String DATATYPE = " + quote(_spec.getFullName()) + ";");
+            line("public static final String MD5SUM = " + quote(_context.md5sum(_spec.getFullName())) + ";");
+            String text = _context.fullText(_spec.getFullName());
+            if (text.isEmpty()) {
+                line("public static final String DEFINITION = \"\";");
+            } else {
+                line("public static final String DEFINITION = \"\" +");
+                for (int start = 0, end ; start < text.length() ; start = end) {
+                    int nl = text.indexOf('\n', start);
+                    end = nl < 0 ? text.length() : nl + 1;
+                    line("    " + quote(text.substring(start, end)) + (end < text.length() ? " +" : ";"));
+                }
+            }
+            line("");
+            line("public static final " + ref(MSG + ".MetaMessage") + "<" + _name + "> META =");
+            line("    new " + ref(MSG + ".MetaMessageImpl") + "<>(DATATYPE, MD5SUM, DEFINITION, " + _name + "::new);");
+            line("");
+
+            int size = _context.fixedSize(_spec.getFullName());
+            if (size >= 0) {
+                line("public static final int SIZE = " + size + ";");
+                line("");
+            }
+            if (!_spec.getConstants().isEmpty()) {
+                for (MsgSpec.Constant c : _spec.getConstants()) {
+                    line("public static final " + primitiveType(c.getType()) + " " +
+                        c.getName() + " = " + constantValue(c) + ";");
+                }
+                line("");
+            }
+        }
+
+        private void generateActionGoal() {
+            List<MsgSpec.Field> fields = _spec.getFields();
+            String goal = ref(fields.get(2));
+            open("public " + _name + "(" +
+                ref(MSG + ".Header") + " header, " +
+                ref(ACTIONLIB + ".GoalID") + " goalId, " +
+                goal + " goal)");
+            line("super(header, goalId, goal);");
+            close();
+            line("");
+            open("public " + _name + "(" + ref(MSG + ".MessageDeserializer") + " buf)");
+            line("super(buf, " + goal + "::new);");
+            close();
+        }
+
+        private String javaType(MsgSpec.Field f) {
+            if (isByteBuffer(f)) {
+                return ref("java.nio.ByteBuffer");
+            }
+            return f.isArray() ? ref(f) + "[]" : ref(f);
+        }
+
+        private void generateFields(boolean declare) {
+            if (!declare) {
+                return;
+            }
+            for (MsgSpec.Field f : _spec.getFields()) {
+                line("public " + javaType(f) + " " + fieldName(f.getName()) + ";");
+            }
+            if (!_spec.getFields().isEmpty()) {
+                line("");
+            }
+        }
+
+        /**
+         * @param f a field
+         * @return true if a value of the field's type can be created with
+         * a no-arg constructor.
+         */
+        private boolean constructible(MsgSpec.Field f) {
+            String base = f.getBaseType();
+            return !MsgParser.isPrimitive(base) && !isMapped(base)
+                && !"ActionGoal".equals(actionKind(_context.get(base)));
+        }
+
+        private void generateDefaultConstructor() {
+            open("public " + _name + "()");
+            for (MsgSpec.Field f : _spec.getFields()) {
+                String name = "this." + fieldName(f.getName());
+                String base = f.getBaseType();
+                if (isByteBuffer(f)) {
+                    line(name + " = " + ref("java.nio.ByteBuffer") + ".allocate(0);");
+                } else if (f.isArray()) {
+                    int n = Math.max(f.getArrayLength(), 0);
+                    line(name + " = new " + ref(f) + "[" + n + "];");
+                    if (n > 0 && "string".equals(base)) {
+                        line(ref("java.util.Arrays") + ".fill(" + name + ", \"\");");
+                    } else if (n > 0 && constructible(f)) {
+                        open("for (int i = 0 ; i < " + n + " ; ++i)");
+                        line(name + "[i] = new " + ref(f) + "();");
+                        close();
+                    }
+                } else if ("string".equals(base)) {
+                    line(name + " = \"\";");
+                } else if (constructible(f)) {
+                    line(name + " = new " + ref(f) + "();");
+                }
+            }
+            close();
+            line("");
+        }
+
+        private void generateDeserializer() {
+            open("public " + _name + "(" + ref(MSG + ".MessageDeserializer") + " buf)");
+            for (MsgSpec.Field f : _spec.getFields()) {
+                String name = "this." + fieldName(f.getName());
+                String base = f.getBaseType();
+                String bulk = bulkName(base);
+                if (!f.isArray()) {
+                    line(name + " = " + read(f) + ";");
+                } else if (isByteBuffer(f)) {
+                    line(name + " = buf.getByteBuffer();");
+                } else if (bulk != null && f.getArrayLength() < 0) {
+                    line(name + " = buf.get" + bulk + "Array();");
+                } else if (bulk != null) {
+                    line(name + " = new " + ref(f) + "[" + f.getArrayLength() + "];");
+                    line("buf.get" + bulk + "s(" + name + ", 0, " + f.getArrayLength() + ");");
+                } else if (f.getArrayLength() < 0 && "string".equals(base)) {
+                    line(name + " = buf.getStringArray();");
+                } else if (f.getArrayLength() < 0 && !MsgParser.isPrimitive(base)) {
+                    String type = ref(f);
+                    line(name + " = buf.getMessageArray(" + type + "[]::new, " + type + "::new);");
+                } else {
+                    String n = f.getArrayLength() < 0 ? "buf.getInt()" : String.valueOf(f.getArrayLength());
+                    line(name + " = new " + ref(f) + "[" + n + "];");
+                    open("for (int i = 0 ; i < " + name + ".length ; ++i)");
+                    line(name + "[i] = " + read(f) + ";");
+                    close();
+                }
+            }
+            close();
+            line("");
+        }
+
+        /**
+         * @param f a field
+         * @return the expression that reads one element of the field
+         */
+        private String read(MsgSpec.Field f) {
+            String base = f.getBaseType();
+            switch (base) {
+            case "bool":
+                return "buf.getBool()";
+            case "int8":
+            case "uint8":
+            case "byte":
+            case "char":
+                return "buf.getByte()";
+            case "int16":
+            case "uint16":
+                return "buf.getShort()";
+            case "int32":
+            case "uint32":
+                return "buf.getInt()";
+            case "int64":
+            case "uint64":
+                return "buf.getLong()";
+            case "float32":
+                return "buf.getFloat()";
+            case "float64":
+                return "buf.getDouble()";
+            case "string":
+                return "buf.getString()";
+            case "time":
+                return "buf.getTime()";
+            case "duration":
+                return "buf.getDuration()";
+            default:
+                return "new " + ref(f) + "(buf)";
+            }
+        }
+
+        /**
+         * @param f a field
+         * @return true if the field is a variable-length uint8[], which
+         * is read as a buffer so that large payloads are not copied.
+         */
+        private boolean isByteBuffer(MsgSpec.Field f) {
+            String base = f.getBaseType();
+            return f.isArray() && f.getArrayLength() < 0
+                && ("uint8".equals(base) || "char".equals(base));
+        }
+
+        /**
+         * @param base a field's base type
+         * @return the suffix of the serializer's bulk and array operations
+         * for the type, or null if it has none
+         */
+        private String bulkName(String base) {
+            switch (base) {
+            case "bool":
+                return "Bool";
+            case "int8":
+            case "uint8":
+            case "byte":
+            case "char":
+                return "Byte";
+            case "int16":
+            case "uint16":
+                return "Short";
+            case "int32":
+            case "uint32":
+                return "Int";
+            case "int64":
+            case "uint64":
+                return "Long";
+            case "float32":
+                return "Float";
+            case "float64":
+                return "Double";
+            default:
+                return null;
+            }
+        }
+
+        private void generateFixedSize() {
+            if (_context.fixedSize(_spec.getFullName()) < 0) {
+                return;
+            }
+            line("@Override");
+            open("public int getFixedSize()");
+            line("return SIZE;");
+            close();
+            line("");
+        }
+
+        private void generateSerialize() {
+            line("@Override");
+            open("public void serialize(" + ref(MSG + ".MessageSerializer") + " buf)");
+            for (MsgSpec.Field f : _spec.getFields()) {
+                String name = fieldName(f.getName());
+                if ("buf".equals(name) || "i".equals(name)) {
+                    // shadowed by the parameter or the loop index
+                    name = "this." + name;
+                }
+                String base = f.getBaseType();
+                String bulk = bulkName(base);
+                if (!f.isArray()) {
+                    write(f, name);
+                } else if (isByteBuffer(f)) {
+                    line("buf.putByteBuffer(" + name + ");");
+                } else if (bulk != null && f.getArrayLength() < 0) {
+                    line("buf.put" + bulk + "Array(" + name + ");");
+                } else if (bulk != null) {
+                    line("buf.put" + bulk + "s(" + name + ", 0, " + f.getArrayLength() + ");");
+                } else if (f.getArrayLength() < 0 && "string".equals(base)) {
+                    line("buf.putStringArray(" + name + ");");
+                } else if (f.getArrayLength() < 0 && !MsgParser.isPrimitive(base)) {
+                    line("buf.putMessageArray(" + name + ");");
+                } else {
+                    String n;
+                    if (f.getArrayLength() < 0) {
+                        line("buf.putInt(" + name + ".length);");
+                        n = name + ".length";
+                    } else {
+                        n = String.valueOf(f.getArrayLength());
+                    }
+                    open("for (int i = 0 ; i < " + n + " ; ++i)");
+                    write(f, name + "[i]");
+                    close();
+                }
+            }
+            close();
+        }
+
+        /**
+         * Writes the statements that serialize one element of a field.
+         *
+         * @param f the field
+         * @param value the expression for the element
+         */
+        private void write(MsgSpec.Field f, String value) {
+            switch (f.getBaseType()) {
+            case "bool":
+                line("buf.putBool(" + value + ");");
+                break;
+            case "int8":
+            case "uint8":
+            case "byte":
+            case "char":
+                line("buf.putByte(" + value + ");");
+                break;
+            case "int16":
+            case "uint16":
+                line("buf.putShort(" + value + ");");
+                break;
+            case "int32":
+            case "uint32":
+                line("buf.putInt(" + value + ");");
+                break;
+            case "int64":
+            case "uint64":
+                line("buf.putLong(" + value + ");");
+                break;
+            case "float32":
+                line("buf.putFloat(" + value + ");");
+                break;
+            case "float64":
+                line("buf.putDouble(" + value + ");");
+                break;
+            case "string":
+                line("buf.putString(" + value + ");");
+                break;
+            case "time":
+                line("buf.putTime(" + value + ");");
+                break;
+            case "duration":
+                line("buf.putDuration(" + value + ");");
+                break;
+            default:
+                line(value + ".serialize(buf);");
+            }
+        }
+
+        private void generateToString() {
+            line("");
+            line("@Override");
+            open("public String toString()");
+            List<MsgSpec.Field> fields = _spec.getFields();
+            if (fields.isEmpty()) {
+                line("return \"" + _name + "{}\";");
+            } else {
+                line("return \"" + _name + "{\" +");
+                String sep = "";
+                for (MsgSpec.Field f : fields) {
+                    String name = fieldName(f.getName());
+                    String value = f.isArray() && !isByteBuffer(f) ? ref("java.util.Arrays") + ".toString(" + name + ")" : name;
+                    line("    \"" + sep + name + "=\" + " + value + " +");
+                    sep = ", ";
+                }
+                line("    '}';");
+            }
+            close();
+        }
+    }
+}
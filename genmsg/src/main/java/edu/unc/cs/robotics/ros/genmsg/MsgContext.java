@@ -0,0 +1,315 @@
+package edu.unc.cs.robotics.ros.genmsg;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The set of known message definitions, and the things computed from
+ * them that need the definitions of the messages they depend on: the
+ * md5sum, the full text sent as message_definition, and the fixed
+ * serialized size.
+ *
+ * <p>Definitions are loaded from directories laid out as ROS packages
+ * are, {@code <dir>/<package>/msg/*.msg} and
+ * {@code <dir>/<package>/action/*.action}.  The definitions of
+ * std_msgs/Header and of actionlib_msgs/GoalID and GoalStatus are built
+ * in, since every action and most stamped messages depend on them.</p>
+ */
+public class MsgContext {
+    private static final String BUILTIN = "builtin/";
+    private static final String[] BUILTINS = {
+        "std_msgs/Header",
+        "actionlib_msgs/GoalID",
+        "actionlib_msgs/GoalStatus",
+    };
+
+    private static final String SEPARATOR =
+        "================================================================================\n";
+
+    private final Map<String, MsgSpec> _specs = new LinkedHashMap<>();
+    private final Map<String, String> _md5sums = new HashMap<>();
+    private final Map<String, Integer> _fixedSizes = new HashMap<>();
+
+    public MsgContext() {
+        for (String name : BUILTINS) {
+            int slash = name.indexOf('/');
+            String resource = BUILTIN + name.substring(0, slash) + "/msg/" + name.substring(slash + 1) + ".msg";
+            try (InputStream in = MsgContext.class.getResourceAsStream(resource)) {
+                if (in == null) {
+                    throw new IllegalStateException("missing resource " + resource);
+                }
+                add(MsgParser.parse(name.substring(0, slash), name.substring(slash + 1), read(in)));
+            } catch (IOException ex) {
+                throw new IllegalStateException("failed to read " + resource, ex);
+            }
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        for (int n ; (n = in.read(buf)) != -1 ; ) {
+            out.write(buf, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Adds a definition, replacing any previous one of the same name.
+     *
+     * @param spec the definition
+     */
+    public void add(MsgSpec spec) {
+        _specs.put(spec.getFullName(), spec);
+        _md5sums.clear();
+        _fixedSizes.clear();
+    }
+
+    /**
+     * Loads all the .msg and .action files in a directory of packages.
+     *
+     * @param dir the directory containing the packages
+     * @return the definitions loaded, in a stable order
+     * @throws IOException if a file cannot be read
+     * @throws IllegalArgumentException if a definition is invalid
+     */
+    public List<MsgSpec> load(Path dir) throws IOException {
+        List<MsgSpec> loaded = new ArrayList<>();
+        for (Path pkgDir : sorted(dir, "*")) {
+            if (!Files.isDirectory(pkgDir)) {
+                continue;
+            }
+            String pkg = pkgDir.getFileName().toString();
+            Path msgDir = pkgDir.resolve("msg");
+            if (Files.isDirectory(msgDir)) {
+                for (Path file : sorted(msgDir, "*.msg")) {
+                    String name = baseName(file);
+                    loaded.add(MsgParser.parse(pkg, name, readFile(file)));
+                }
+            }
+            Path actionDir = pkgDir.resolve("action");
+            if (Files.isDirectory(actionDir)) {
+                for (Path file : sorted(actionDir, "*.action")) {
+                    String name = baseName(file);
+                    loaded.addAll(MsgParser.parseAction(pkg, name, readFile(file)));
+                }
+            }
+        }
+        for (MsgSpec spec : loaded) {
+            add(spec);
+        }
+        return loaded;
+    }
+
+    private static List<Path> sorted(Path dir, String glob) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        paths.sort(null);
+        return paths;
+    }
+
+    private static String baseName(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, name.lastIndexOf('.'));
+    }
+
+    private static String readFile(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param type a message type, e.g., "sensor_msgs/JointState"
+     * @return true if the type is known
+     */
+    public boolean contains(String type) {
+        return _specs.containsKey(type);
+    }
+
+    /**
+     * @param type a message type, e.g., "sensor_msgs/JointState"
+     * @return the definition
+     * @throws IllegalArgumentException if the type is not known
+     */
+    public MsgSpec get(String type) {
+        MsgSpec spec = _specs.get(type);
+        if (spec == null) {
+            throw new IllegalArgumentException("unknown message type " + type);
+        }
+        return spec;
+    }
+
+    /**
+     * Computes the md5sum of a message type, as genmsg does: the text
+     * that is hashed lists the constants, and then the fields with the
+     * type of each message field replaced by its md5sum.
+     *
+     * @param type a message type
+     * @return the md5sum as lower case hex
+     */
+    public String md5sum(String type) {
+        String md5 = _md5sums.get(type);
+        if (md5 == null) {
+            md5 = md5(md5Text(get(type)));
+            _md5sums.put(type, md5);
+        }
+        return md5;
+    }
+
+    private String md5Text(MsgSpec spec) {
+        StringBuilder buf = new StringBuilder();
+        for (MsgSpec.Constant c : spec.getConstants()) {
+            buf.append(c.getType()).append(' ').append(c.getName())
+                .append('=').append(c.getValue()).append('\n');
+        }
+        for (MsgSpec.Field f : spec.getFields()) {
+            if (MsgParser.isPrimitive(f.getBaseType())) {
+                buf.append(f.getType());
+            } else {
+                buf.append(md5sum(f.getBaseType()));
+            }
+            buf.append(' ').append(f.getName()).append('\n');
+        }
+        return buf.toString().trim();
+    }
+
+    private static String md5(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5")
+                .digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(32);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                    .append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Computes the full definition of a message type, the text sent as
+     * message_definition in a connection header: the type's own text,
+     * followed by the text of every message type it depends on.
+     *
+     * @param type a message type
+     * @return the full definition
+     */
+    public String fullText(String type) {
+        MsgSpec spec = get(type);
+        Set<String> deps = new LinkedHashSet<>();
+        collectDependencies(spec, deps);
+
+        StringBuilder buf = new StringBuilder();
+        buf.append(spec.getText()).append('\n');
+        for (String dep : deps) {
+            buf.append(SEPARATOR)
+                .append("MSG: ").append(dep).append('\n')
+                .append(get(dep).getText()).append('\n');
+        }
+        buf.setLength(buf.length() - 1);
+        return buf.toString();
+    }
+
+    private void collectDependencies(MsgSpec spec, Set<String> deps) {
+        for (MsgSpec.Field f : spec.getFields()) {
+            String base = f.getBaseType();
+            if (!MsgParser.isPrimitive(base) && deps.add(base)) {
+                collectDependencies(get(base), deps);
+            }
+        }
+    }
+
+    /**
+     * @param type a message type
+     * @return the serialized size of every message of the type, or -1
+     * if it depends on the contents of the message.
+     */
+    public int fixedSize(String type) {
+        Integer size = _fixedSizes.get(type);
+        if (size == null) {
+            int total = 0;
+            for (MsgSpec.Field f : get(type).getFields()) {
+                int n = fixedSize(f);
+                if (n < 0) {
+                    total = -1;
+                    break;
+                }
+                total += n;
+            }
+            size = total;
+            _fixedSizes.put(type, size);
+        }
+        return size;
+    }
+
+    /**
+     * @param field a field
+     * @return the serialized size of the field, or -1 if it is not
+     * fixed.
+     */
+    public int fixedSize(MsgSpec.Field field) {
+        if (field.isArray() && field.getArrayLength() < 0) {
+            return -1;
+        }
+        int n = primitiveSize(field.getBaseType());
+        if (n == 0) {
+            n = fixedSize(field.getBaseType());
+        }
+        if (n < 0) {
+            return -1;
+        }
+        return field.isArray() ? n * field.getArrayLength() : n;
+    }
+
+    /**
+     * @param type a type without an array suffix
+     * @return the size of the primitive, -1 for a string, or 0 if it is
+     * not a primitive.
+     */
+    static int primitiveSize(String type) {
+        switch (type) {
+        case "bool":
+        case "int8":
+        case "uint8":
+        case "byte":
+        case "char":
+            return 1;
+        case "int16":
+        case "uint16":
+            return 2;
+        case "int32":
+        case "uint32":
+        case "float32":
+            return 4;
+        case "int64":
+        case "uint64":
+        case "float64":
+        case "time":
+        case "duration":
+            return 8;
+        case "string":
+            return -1;
+        default:
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package edu.unc.cs.robotics.ros.genmsg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Parses .msg and .action files, following the rules of ROS's genmsg
+ * and genaction so that the md5sums match.
+ */
+public final class MsgParser {
+    /**
+     * The first line of the messages generated from an action.
+     */
+    static final String ACTION_PREAMBLE =
+        "# ====== DO NOT MODIFY! AUTOGENERATED FROM AN ACTION DEFINITION ======\n";
+
+    private static final Set<String> PRIMITIVES = new HashSet<>(Arrays.asList(
+        "bool", "int8", "uint8", "int16", "uint16", "int32", "uint32",
+        "int64", "uint64", "float32", "float64", "string", "time", "duration",
+        // deprecated aliases of uint8 and int8
+        "char", "byte"));
+
+    private static final Pattern TYPE = Pattern.compile(
+        "([a-zA-Z][a-zA-Z0-9_]*/)?[a-zA-Z][a-zA-Z0-9_]*(\\[[0-9]*\\])?");
+    private static final Pattern NAME = Pattern.compile("[a-zA-Z][a-zA-Z0-9_]*");
+
+    private MsgParser() {}
+
+    /**
+     * @param type a type without an array suffix
+     * @return true if the type is a primitive (including string, time
+     * and duration)
+     */
+    public static boolean isPrimitive(String type) {
+        return PRIMITIVES.contains(type);
+    }
+
+    /**
+     * Parses a message definition.
+     *
+     * @param pkg the package of the message, used to resolve relative
+     *    type names
+     * @param name the name of the message
+     * @param text the contents of the .msg file
+     * @return the spec
+     * @throws IllegalArgumentException if the definition is invalid
+     */
+    public static MsgSpec parse(String pkg, String name, String text) {
+        List<MsgSpec.Field> fields = new ArrayList<>();
+        List<MsgSpec.Constant> constants = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+
+        int lineNo = 0;
+        for (String line : text.split("\n", -1)) {
+            ++lineNo;
+            String clean = stripComment(line).trim();
+            if (clean.isEmpty()) {
+                continue;
+            }
+            try {
+                String fieldName;
+                if (clean.indexOf('=') >= 0) {
+                    MsgSpec.Constant c = parseConstant(line, clean);
+                    constants.add(c);
+                    fieldName = c.getName();
+                } else {
+                    MsgSpec.Field f = parseField(pkg, clean);
+                    fields.add(f);
+                    fieldName = f.getName();
+                }
+                if (!names.add(fieldName)) {
+                    throw new IllegalArgumentException("duplicate name " + fieldName);
+                }
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException(
+                    pkg + "/" + name + ":" + lineNo + ": " + ex.getMessage(), ex);
+            }
+        }
+
+        return new MsgSpec(pkg, name, text, fields, constants);
+    }
+
+    private static String stripComment(String line) {
+        int hash = line.indexOf('#');
+        return hash < 0 ? line : line.substring(0, hash);
+    }
+
+    private static MsgSpec.Constant parseConstant(String line, String clean) {
+        String[] split = clean.split("\\s+", 2);
+        String type = split[0];
+        if (!isPrimitive(type) || "time".equals(type) || "duration".equals(type)) {
+            throw new IllegalArgumentException("invalid constant type " + type);
+        }
+
+        String name;
+        String value;
+        if ("string".equals(type)) {
+            // everything to the right of the '=' is the value, comments
+            // included.
+            String rest = line.trim().substring(type.length());
+            int eq = rest.indexOf('=');
+            name = rest.substring(0, eq).trim();
+            value = rest.substring(eq + 1).trim();
+        } else {
+            if (split.length != 2) {
+                throw new IllegalArgumentException("invalid constant: " + clean);
+            }
+            String[] nameValue = split[1].split("=", -1);
+            if (nameValue.length != 2) {
+                throw new IllegalArgumentException("invalid constant: " + clean);
+            }
+            name = nameValue[0].trim();
+            value = nameValue[1].trim();
+            if (value.isEmpty()) {
+                throw new IllegalArgumentException("missing value: " + clean);
+            }
+        }
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("invalid constant name " + name);
+        }
+        return new MsgSpec.Constant(type, name, value);
+    }
+
+    private static MsgSpec.Field parseField(String pkg, String clean) {
+        String[] split = clean.split("\\s+");
+        if (split.length != 2) {
+            throw new IllegalArgumentException("invalid field: " + clean);
+        }
+        String type = split[0];
+        String name = split[1];
+        if (!TYPE.matcher(type).matches()) {
+            throw new IllegalArgumentException("invalid field type " + type);
+        }
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("invalid field name " + name);
+        }
+
+        int bracket = type.indexOf('[');
+        String base = bracket < 0 ? type : type.substring(0, bracket);
+        String suffix = bracket < 0 ? "" : type.substring(bracket);
+        if ("Header".equals(base)) {
+            base = MsgSpec.HEADER;
+        } else if (base.indexOf('/') < 0 && !isPrimitive(base)) {
+            base = pkg + "/" + base;
+        }
+        return new MsgSpec.Field(base + suffix, name);
+    }
+
+    /**
+     * Splits an action definition into the seven messages genaction
+     * generates from it: the goal, result and feedback, the
+     * ActionGoal, ActionResult and ActionFeedback that wrap them with
+     * a header and status, and the Action that holds all three.
+     *
+     * @param pkg the package of the action
+     * @param name the name of the action
+     * @param text the contents of the .action file
+     * @return the specs
+     */
+    public static List<MsgSpec> parseAction(String pkg, String name, String text) {
+        List<String> parts = new ArrayList<>();
+        StringBuilder part = new StringBuilder();
+        for (int start = 0, end ; start < text.length() ; start = end) {
+            int nl = text.indexOf('\n', start);
+            end = nl < 0 ? text.length() : nl + 1;
+            String line = text.substring(start, nl < 0 ? end : nl);
+            if ("---".equals(line.trim())) {
+                parts.add(part.toString());
+                part.setLength(0);
+            } else {
+                part.append(text, start, end);
+            }
+        }
+        parts.add(part.toString());
+        if (parts.size() != 3) {
+            throw new IllegalArgumentException(
+                pkg + "/" + name + ".action must have a goal, result and feedback separated by ---");
+        }
+
+        List<MsgSpec> specs = new ArrayList<>();
+        specs.add(parse(pkg, name + "Goal", ACTION_PREAMBLE + parts.get(0)));
+        specs.add(parse(pkg, name + "Result", ACTION_PREAMBLE + parts.get(1)));
+        specs.add(parse(pkg, name + "Feedback", ACTION_PREAMBLE + parts.get(2)));
+        specs.add(parse(pkg, name + "ActionGoal", ACTION_PREAMBLE + "\n" +
+            "Header header\n" +
+            "actionlib_msgs/GoalID goal_id\n" +
+            name + "Goal goal\n"));
+        specs.add(parse(pkg, name + "ActionResult", ACTION_PREAMBLE + "\n" +
+            "Header header\n" +
+            "actionlib_msgs/GoalStatus status\n" +
+            name + "Result result\n"));
+        specs.add(parse(pkg, name + "ActionFeedback", ACTION_PREAMBLE + "\n" +
+            "Header header\n" +
+            "actionlib_msgs/GoalStatus status\n" +
+            name + "Feedback feedback\n"));
+        specs.add(parse(pkg, name + "Action", ACTION_PREAMBLE + "\n" +
+            name + "ActionGoal action_goal\n" +
+            name + "ActionResult action_result\n" +
+            name + "ActionFeedback action_feedback\n"));
+        return specs;
+    }
+}
@@ -0,0 +1,155 @@
+package edu.unc.cs.robotics.ros.genmsg;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A parsed message definition.  Field types are resolved: message types
+ * always include their package, and {@code Header} is
+ * {@code std_msgs/Header}, as genmsg does before computing md5sums.
+ */
+public final class MsgSpec {
+    public static final String HEADER = "std_msgs/Header";
+
+    public static final class Field {
+        private final String _type;
+        private final String _baseType;
+        private final boolean _array;
+        private final int _arrayLength;
+        private final String _name;
+
+        Field(String type, String name) {
+            _type = type;
+            _name = name;
+            int bracket = type.indexOf('[');
+            if (bracket < 0) {
+                _baseType = type;
+                _array = false;
+                _arrayLength = -1;
+            } else {
+                _baseType = type.substring(0, bracket);
+                _array = true;
+                String len = type.substring(bracket + 1, type.length() - 1);
+                _arrayLength = len.isEmpty() ? -1 : Integer.parseInt(len);
+            }
+        }
+
+        /**
+         * @return the type as it is hashed, e.g., "float64[]" or
+         * "std_msgs/Header".
+         */
+        public String getType() {
+            return _type;
+        }
+
+        /**
+         * @return the type without the array suffix.
+         */
+        public String getBaseType() {
+            return _baseType;
+        }
+
+        public boolean isArray() {
+            return _array;
+        }
+
+        /**
+         * @return the length of a fixed-length array, or -1 for a
+         * variable-length array (or not an array).
+         */
+        public int getArrayLength() {
+            return _arrayLength;
+        }
+
+        public String getName() {
+            return _name;
+        }
+
+        @Override
+        public String toString() {
+            return _type + " " + _name;
+        }
+    }
+
+    public static final class Constant {
+        private final String _type;
+        private final String _name;
+        private final String _value;
+
+        Constant(String type, String name, String value) {
+            _type = type;
+            _name = name;
+            _value = value;
+        }
+
+        public String getType() {
+            return _type;
+        }
+
+        public String getName() {
+            return _name;
+        }
+
+        /**
+         * @return the value as written, without surrounding whitespace.
+         */
+        public String getValue() {
+            return _value;
+        }
+
+        @Override
+        public String toString() {
+            return _type + " " + _name + "=" + _value;
+        }
+    }
+
+    private final String _package;
+    private final String _name;
+    private final String _text;
+    private final List<Field> _fields;
+    private final List<Constant> _constants;
+
+    MsgSpec(String pkg, String name, String text, List<Field> fields, List<Constant> constants) {
+        _package = pkg;
+        _name = name;
+        _text = text;
+        _fields = Collections.unmodifiableList(fields);
+        _constants = Collections.unmodifiableList(constants);
+    }
+
+    public String getPackage() {
+        return _package;
+    }
+
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * @return the package and name, e.g., "sensor_msgs/JointState".
+     */
+    public String getFullName() {
+        return _package + "/" + _name;
+    }
+
+    /**
+     * @return the text of the definition, as it appears in the
+     * message_definition of a connection header.
+     */
+    public String getText() {
+        return _text;
+    }
+
+    public List<Field> getFields() {
+        return _fields;
+    }
+
+    public List<Constant> getConstants() {
+        return _constants;
+    }
+
+    @Override
+    public String toString() {
+        return getFullName();
+    }
+}
@@ -0,0 +1,154 @@
+package edu.unc.cs.robotics.ros.genmsg;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import junit.framework.TestCase;
+
+/**
+ * Generates the classes for the test definitions, compiles them against
+ * jROS, and checks that a generated message reads and writes the same
+ * bytes as the handwritten one in jROS.
+ *
+ * <p>jROS must be compiled first, the jros.classes property (set in the
+ * pom) points at its classes.</p>
+ */
+public class GeneratedClassesTest extends TestCase {
+    private static final String MSG = "edu.unc.cs.robotics.ros.msg";
+
+    private Path _dir;
+    private URLClassLoader _loader;
+
+    @Override
+    protected void setUp() throws Exception {
+        String jros = System.getProperty("jros.classes");
+        assertNotNull("jros.classes is not set", jros);
+        Path jrosClasses = Paths.get(jros);
+        assertTrue("jROS is not compiled: " + jrosClasses,
+            Files.isRegularFile(jrosClasses.resolve(MSG.replace('.', '/') + "/Message.class")));
+
+        _dir = Files.createTempDirectory("genmsg");
+        Path sources = _dir.resolve("src");
+        Path classes = _dir.resolve("classes");
+        Files.createDirectories(classes);
+
+        GenMsg gen = new GenMsg("test");
+        gen.add(Paths.get(GeneratedClassesTest.class.getResource("/msgs").toURI()));
+        assertTrue(gen.generate(sources) > 0);
+
+        List<String> args = new ArrayList<>();
+        args.add("-classpath");
+        args.add(jrosClasses.toString());
+        args.add("-d");
+        args.add(classes.toString());
+        try (Stream<Path> files = Files.walk(sources)) {
+            args.addAll(files
+                .filter(f -> f.toString().endsWith(".java"))
+                .map(Path::toString)
+                .collect(Collectors.toList()));
+        }
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("tests must run on a JDK", javac);
+        assertEquals("generated classes do not compile", 0,
+            javac.run(null, null, null, args.toArray(new String[0])));
+
+        _loader = new URLClassLoader(new URL[] {
+            classes.toUri().toURL(),
+            jrosClasses.toUri().toURL(),
+        }, GeneratedClassesTest.class.getClassLoader());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (_loader != null) {
+            _loader.close();
+        }
+        if (_dir != null) {
+            try (Stream<Path> files = Files.walk(_dir)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private static void putString(ByteBuffer buf, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        buf.putInt(bytes.length).put(bytes);
+    }
+
+    private static void putDoubles(ByteBuffer buf, double... values) {
+        buf.putInt(values.length);
+        for (double v : values) {
+            buf.putDouble(v);
+        }
+    }
+
+    /**
+     * @return a serialized sensor_msgs/JointState, with header.seq 7
+     */
+    private static ByteBuffer jointState() {
+        ByteBuffer buf = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(7).putInt(1).putInt(500_000_000);
+        putString(buf, "base");
+        buf.putInt(2);
+        putString(buf, "shoulder");
+        putString(buf, "elbow");
+        putDoubles(buf, 1.0, -2.5);
+        putDoubles(buf);
+        putDoubles(buf, Math.PI, Double.NaN);
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Reads the bytes into an instance of the class, and writes it back.
+     */
+    private ByteBuffer roundTrip(String className, ByteBuffer bytes) throws Exception {
+        Class<?> desType = _loader.loadClass(MSG + ".MessageDeserializer");
+        Class<?> serType = _loader.loadClass(MSG + ".MessageSerializer");
+        Object des = _loader.loadClass(MSG + ".ByteBufferDeserializer")
+            .getConstructor(ByteBuffer.class)
+            .newInstance(bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+
+        Class<?> type = _loader.loadClass(className);
+        Object msg = type.getConstructor(desType).newInstance(des);
+
+        ByteBuffer out = ByteBuffer.allocate(bytes.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+        Constructor<?> serializer = _loader.loadClass(MSG + ".ByteBufferSerializer")
+            .getConstructor(int.class, ByteBuffer.class);
+        type.getMethod("serialize", serType).invoke(msg, serializer.newInstance(7, out));
+        out.flip();
+        return out;
+    }
+
+    private Object constant(String className, String name) throws Exception {
+        return _loader.loadClass(className).getField(name).get(null);
+    }
+
+    public void testJointStateMatchesHandwritten() throws Exception {
+        String generated = "test.sensor_msgs.JointState";
+        String handwritten = MSG + ".JointState";
+        assertNotSame(_loader.loadClass(generated), _loader.loadClass(handwritten));
+        assertEquals(constant(handwritten, "DATATYPE"), constant(generated, "DATATYPE"));
+        assertEquals(constant(handwritten, "MD5SUM"), constant(generated, "MD5SUM"));
+
+        ByteBuffer bytes = jointState();
+        assertEquals(bytes, roundTrip(handwritten, bytes));
+        assertEquals(bytes, roundTrip(generated, bytes));
+    }
+}
@@ -0,0 +1,142 @@
+package edu.unc.cs.robotics.ros.genmsg;
+
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the md5sums against the ones of the handwritten messages in
+ * jROS, which came from ROS.
+ */
+public class JavaGeneratorTest extends TestCase {
+    private MsgContext _context;
+    private List<MsgSpec> _loaded;
+
+    @Override
+    protected void setUp() throws Exception {
+        _context = new MsgContext();
+        _loaded = _context.load(msgs());
+    }
+
+    private static Path msgs() throws URISyntaxException {
+        return Paths.get(JavaGeneratorTest.class.getResource("/msgs").toURI());
+    }
+
+    public void testBuiltinMd5sums() {
+        assertEquals("2176decaecbce78abc3b96ef049fabed", _context.md5sum("std_msgs/Header"));
+        assertEquals("302881f31927c1df708a2dbab0e80ee8", _context.md5sum("actionlib_msgs/GoalID"));
+        assertEquals("d388f9b87b3c471f784434d671988d4a", _context.md5sum("actionlib_msgs/GoalStatus"));
+    }
+
+    public void testMessageMd5sums() {
+        assertEquals("3066dcd76a6cfaef579bd0f34173e9fd", _context.md5sum("sensor_msgs/JointState"));
+        assertEquals("65b4f94a94d1ed67169da35a02f33d3f", _context.md5sum("trajectory_msgs/JointTrajectory"));
+        assertEquals("f3cd1e1c4d320c79d6985c904ae5dcd3", _context.md5sum("trajectory_msgs/JointTrajectoryPoint"));
+        assertEquals("f544fe9c16cf04547e135dd6063ff5be", _context.md5sum("control_msgs/JointTolerance"));
+        assertEquals("a9c97c1d230cfc112e270351a944ee47", _context.md5sum("rosgraph_msgs/Clock"));
+        assertEquals("94810edda583a504dfda3829e70d7eec", _context.md5sum("tf2_msgs/TFMessage"));
+        assertEquals("b5764a33bfeb3588febc2682852579b0", _context.md5sum("geometry_msgs/TransformStamped"));
+        assertEquals("ac9eff44abf714214112b05d54a3cf9b", _context.md5sum("geometry_msgs/Transform"));
+        assertEquals("44bea01d596ff699fa1447bec34167ac", _context.md5sum("baxter_core_msgs/EndpointState"));
+    }
+
+    public void testActionMd5sums() {
+        String pkg = "control_msgs/FollowJointTrajectory";
+        assertEquals("69636787b6ecbde4d61d711979bc7ecb", _context.md5sum(pkg + "Goal"));
+        assertEquals("493383b18409bfb604b4e26c676401d2", _context.md5sum(pkg + "Result"));
+        assertEquals("10817c60c2486ef6b33e97dcd87f4474", _context.md5sum(pkg + "Feedback"));
+        assertEquals("cff5c1d533bf2f82dd0138d57f4304bb", _context.md5sum(pkg + "ActionGoal"));
+        assertEquals("c4fb3b000dc9da4fd99699380efcc5d9", _context.md5sum(pkg + "ActionResult"));
+        assertEquals("d8920dc4eae9fc107e00999cce4be641", _context.md5sum(pkg + "ActionFeedback"));
+        assertEquals("bc4f9b743838566551c0390c65f1a248", _context.md5sum(pkg + "Action"));
+    }
+
+    public void testFullText() {
+        String text = _context.fullText("sensor_msgs/JointState");
+        assertTrue(text.startsWith(_context.get("sensor_msgs/JointState").getText() + "\n" +
+            "================================================================================\n" +
+            "MSG: std_msgs/Header\n"));
+        assertTrue(text.endsWith("string frame_id\n"));
+    }
+
+    public void testFixedSize() {
+        assertEquals(3 * 8, _context.fixedSize("geometry_msgs/Point"));
+        assertEquals(7 * 8, _context.fixedSize("geometry_msgs/Pose"));
+        assertEquals(8, _context.fixedSize("rosgraph_msgs/Clock"));
+        assertEquals(-1, _context.fixedSize("sensor_msgs/JointState"));
+    }
+
+    public void testGenerate() {
+        JavaGenerator gen = new JavaGenerator(_context, "test");
+        String pose = gen.generate(_context.get("geometry_msgs/Pose"));
+        assertTrue(pose, pose.contains("public static final int SIZE = 56;"));
+        assertTrue(pose, pose.contains("this.position = new Point(buf);"));
+
+        String state = gen.generate(_context.get("sensor_msgs/JointState"));
+        assertTrue(state, state.contains("import edu.unc.cs.robotics.ros.msg.Header;"));
+        assertTrue(state, state.contains("buf.putDoubleArray(position);"));
+        assertFalse(state, state.contains("getFixedSize"));
+
+        String goal = gen.generate(_context.get("control_msgs/FollowJointTrajectoryActionGoal"));
+        assertTrue(goal, goal.contains("extends ActionGoal<FollowJointTrajectoryGoal>"));
+        assertTrue(goal, goal.contains("super(buf, FollowJointTrajectoryGoal::new);"));
+
+        String tolerance = gen.generate(_context.get("control_msgs/JointTolerance"));
+        assertTrue(tolerance, tolerance.contains("this.name = \"\";"));
+    }
+
+    public void testPrimitives() {
+        _context.add(MsgParser.parse("test_msgs", "Primitives", "" +
+            "uint16 u16\n" +
+            "int64 i64\n" +
+            "float32 f32\n" +
+            "uint8[] data\n" +
+            "int8[] bytes\n" +
+            "float32[] floats\n" +
+            "uint64[4] longs\n"));
+        String primitives = new JavaGenerator(_context, "test")
+            .generate(_context.get("test_msgs/Primitives"));
+        String[] expected = {
+            "this.u16 = buf.getShort();", "buf.putShort(u16);",
+            "this.i64 = buf.getLong();", "buf.putLong(i64);",
+            "this.f32 = buf.getFloat();", "buf.putFloat(f32);",
+            "public ByteBuffer data;",
+            "this.data = buf.getByteBuffer();", "buf.putByteBuffer(data);",
+            "this.bytes = buf.getByteArray();", "buf.putByteArray(bytes);",
+            "this.floats = buf.getFloatArray();", "buf.putFloatArray(floats);",
+            "buf.getLongs(this.longs, 0, 4);", "buf.putLongs(longs, 0, 4);",
+        };
+        for (String line : expected) {
+            assertTrue(line, primitives.contains(line));
+        }
+    }
+
+    public void testConstants() {
+        MsgSpec spec = MsgParser.parse("test_msgs", "Constants", "" +
+            "uint8 BIG=200 # comment\n" +
+            "int64 MIN=-9223372036854775808\n" +
+            "uint64 MAX=18446744073709551615\n" +
+            "float32 HALF=0.5\n" +
+            "string NAME=a # not a comment\n" +
+            "bool FLAG=True\n");
+        String[] expected = {
+            "(byte)200", "-9223372036854775808L", "0xffffffffffffffffL",
+            "0.5f", "\"a # not a comment\"", "true",
+        };
+        for (int i = 0 ; i < expected.length ; ++i) {
+            assertEquals(expected[i], JavaGenerator.constantValue(spec.getConstants().get(i)));
+        }
+    }
+
+    public void testInvalid() {
+        try {
+            MsgParser.parse("test_msgs", "Bad", "int32 x\nfloat64 x\n");
+            fail("expected duplicate field to be rejected");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().startsWith("test_msgs/Bad:2:"));
+        }
+    }
+}
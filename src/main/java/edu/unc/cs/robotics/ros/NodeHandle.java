@@ -4,15 +4,41 @@ import java.util.concurrent.Executor;
 
 import edu.unc.cs.robotics.ros.msg.Message;
 import edu.unc.cs.robotics.ros.msg.MetaMessage;
+import edu.unc.cs.robotics.ros.msg.MetaService;
+import edu.unc.cs.robotics.ros.msg.RawMessage;
+import edu.unc.cs.robotics.ros.service.ServiceHandler;
+import edu.unc.cs.robotics.ros.topic.DropPolicy;
 import edu.unc.cs.robotics.ros.topic.PublicationListener;
 import edu.unc.cs.robotics.ros.topic.SubscriptionListener;
+import edu.unc.cs.robotics.ros.topic.TransportHints;
+import edu.unc.cs.robotics.ros.topic.WriteCoalescing;
 
 public interface NodeHandle {
     Name name();
 
     <M extends Message> Publisher<M> advertise(
+        MetaMessage<M> meta, String topic, int queueSize,
+        long maxQueueBytes, DropPolicy dropPolicy, WriteCoalescing coalescing,
+        boolean latch, Executor executor, PublicationListener<? super M> listener);
+
+    default <M extends Message> Publisher<M> advertise(
+        MetaMessage<M> meta, String topic, int queueSize,
+        long maxQueueBytes, DropPolicy dropPolicy, boolean latch,
+        Executor executor, PublicationListener<? super M> listener)
+    {
+        return advertise(
+            meta, topic, queueSize, maxQueueBytes, dropPolicy,
+            WriteCoalescing.NONE, latch, executor, listener);
+    }
+
+    default <M extends Message> Publisher<M> advertise(
         MetaMessage<M> meta, String topic, int queueSize, boolean latch,
-        Executor executor, PublicationListener<? super M> listener);
+        Executor executor, PublicationListener<? super M> listener)
+    {
+        return advertise(
+            meta, topic, queueSize, 0, DropPolicy.DROP_OLDEST, latch,
+            executor, listener);
+    }
 
     default <M extends Message> Publisher<M> advertise(
         MetaMessage<M> meta, String topic, int queueSize)
@@ -32,8 +58,18 @@ public interface NodeHandle {
 
     <M extends Message> Subscriber<M> subscribe(
         MetaMessage<M> meta, String topic, int queueSize,
+        TransportHints transportHints,
         Executor executor, SubscriptionListener<? super M> listener);
 
+    default <M extends Message> Subscriber<M> subscribe(
+        MetaMessage<M> meta, String topic, int queueSize,
+        Executor executor, SubscriptionListener<? super M> listener)
+    {
+        return subscribe(
+            meta, topic, queueSize, TransportHints.DEFAULT,
+            executor, listener);
+    }
+
     default <M extends Message> Subscriber<M> subscribe(
         Class<M> msgClass, String topic, int queueSize,
         Executor executor, SubscriptionListener<? super M> listener)
@@ -44,4 +80,55 @@ public interface NodeHandle {
             executor, listener);
     }
 
+    /**
+     * Subscribes to a topic of any type without deserializing it.
+     * Each message is delivered as a copy of the serialized bytes, with
+     * the publisher's connection header.
+     *
+     * @see RawMessage
+     */
+    default Subscriber<RawMessage> subscribeRaw(
+        String topic, int queueSize,
+        Executor executor, SubscriptionListener<? super RawMessage> listener)
+    {
+        return subscribe(RawMessage.meta(), topic, queueSize, executor, listener);
+    }
+
+    /**
+     * Advertises a topic whose messages are published already
+     * serialized.  The type, md5sum and definition are sent to
+     * subscribers as they are, so to relay a topic pass those of a
+     * received {@link RawMessage}.
+     */
+    default Publisher<RawMessage> advertiseRaw(
+        String dataType, String md5sum, String messageDefinition,
+        String topic, int queueSize, boolean latch)
+    {
+        return advertise(
+            RawMessage.meta(dataType, md5sum, messageDefinition),
+            topic, queueSize, latch, null, null);
+    }
+
+    /**
+     * Advertises a service.  Requests are handled on the executor, and
+     * requests from one connection are answered in order.
+     */
+    <Q extends Message, R extends Message> ServiceServer advertiseService(
+        MetaService<Q, R> meta, String service,
+        Executor executor, ServiceHandler<Q, R> handler);
+
+    /**
+     * Creates a client for a service, with a pool of up to
+     * maxConnections persistent connections.  Calls on a connection are
+     * pipelined.
+     */
+    <Q extends Message, R extends Message> ServiceClient<Q, R> serviceClient(
+        MetaService<Q, R> meta, String service, int maxConnections,
+        Executor executor);
+
+    default <Q extends Message, R extends Message> ServiceClient<Q, R> serviceClient(
+        MetaService<Q, R> meta, String service, Executor executor)
+    {
+        return serviceClient(meta, service, 1, executor);
+    }
 }
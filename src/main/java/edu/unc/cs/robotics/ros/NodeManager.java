@@ -11,9 +11,15 @@ import javax.inject.Singleton;
 
 import edu.unc.cs.robotics.ros.msg.Message;
 import edu.unc.cs.robotics.ros.msg.MetaMessage;
+import edu.unc.cs.robotics.ros.msg.MetaService;
+import edu.unc.cs.robotics.ros.service.ServiceHandler;
+import edu.unc.cs.robotics.ros.service.ServiceManager;
+import edu.unc.cs.robotics.ros.topic.DropPolicy;
 import edu.unc.cs.robotics.ros.topic.PublicationListener;
 import edu.unc.cs.robotics.ros.topic.SubscriptionListener;
 import edu.unc.cs.robotics.ros.topic.TopicManager;
+import edu.unc.cs.robotics.ros.topic.TransportHints;
+import edu.unc.cs.robotics.ros.topic.WriteCoalescing;
 
 @Singleton
 public class NodeManager {
@@ -21,11 +27,13 @@ public class NodeManager {
     private final ReferenceQueue<NodeHandle> _refQueue = new ReferenceQueue<>();
     private final Names _names;
     private final TopicManager _topicManager;
+    private final ServiceManager _serviceManager;
 
     @Inject
-    NodeManager(Names names, TopicManager topicManager) {
+    NodeManager(Names names, TopicManager topicManager, ServiceManager serviceManager) {
         _names = names;
         _topicManager = topicManager;
+        _serviceManager = serviceManager;
     }
 
     public NodeHandle node(Name name) {
@@ -58,20 +66,42 @@ public class NodeManager {
 
         @Override
         public <M extends Message> Publisher<M> advertise(
-            MetaMessage<M> meta, String topic, int queueSize, boolean latch,
-            Executor executor, PublicationListener<? super M> listener)
+            MetaMessage<M> meta, String topic, int queueSize,
+            long maxQueueBytes, DropPolicy dropPolicy, WriteCoalescing coalescing,
+            boolean latch, Executor executor, PublicationListener<? super M> listener)
         {
             return _topicManager.advertise(
-                meta, _name.resolveNS(topic), queueSize, latch, executor, listener);
+                meta, _name.resolveNS(topic), queueSize,
+                maxQueueBytes, dropPolicy, coalescing, latch, executor, listener);
         }
 
         @Override
         public <M extends Message> Subscriber<M> subscribe(
             MetaMessage<M> meta, String topic, int queueSize,
+            TransportHints transportHints,
             Executor executor, SubscriptionListener<? super M> listener)
         {
             return _topicManager.subscribe(
-                meta, _name.resolveNS(topic), queueSize, executor, listener);
+                meta, _name.resolveNS(topic), queueSize, transportHints,
+                executor, listener);
+        }
+
+        @Override
+        public <Q extends Message, R extends Message> ServiceServer advertiseService(
+            MetaService<Q, R> meta, String service,
+            Executor executor, ServiceHandler<Q, R> handler)
+        {
+            return _serviceManager.advertiseService(
+                meta, _name.resolveNS(service), executor, handler);
+        }
+
+        @Override
+        public <Q extends Message, R extends Message> ServiceClient<Q, R> serviceClient(
+            MetaService<Q, R> meta, String service, int maxConnections,
+            Executor executor)
+        {
+            return _serviceManager.serviceClient(
+                meta, _name.resolveNS(service), maxConnections, executor);
         }
     }
 }
@@ -21,7 +21,9 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import edu.unc.cs.robotics.ros.msg.JointState;
+import edu.unc.cs.robotics.ros.network.NetworkConfig;
 import edu.unc.cs.robotics.ros.network.NetworkServer;
+import edu.unc.cs.robotics.ros.service.ServiceManager;
 import edu.unc.cs.robotics.ros.topic.TopicManager;
 import edu.unc.cs.robotics.ros.xmlrpc.JettyXmlrpcServer;
 import edu.unc.cs.robotics.ros.xmlrpc.XmlrpcServer;
@@ -38,18 +40,23 @@ public class ROSModule extends AbstractModule {
     private final String _host;
     private final URI _masterUri;
     private final HostNameMap _hostNameMap;
+    private final NetworkConfig _networkConfig;
     private int _port;
     private Map<String, String> _remappings = new HashMap<>();
     private boolean _anonymousName;
 
     private int _scheduledThreadPoolSize = 1;
 
-    private ROSModule(String name, String host, int port, URI masterUri, HostNameMap hostNameMap) {
+    private ROSModule(
+        String name, String host, int port, URI masterUri,
+        HostNameMap hostNameMap, NetworkConfig networkConfig)
+    {
         _name = name;
         _host = host;
         _port = port;
         _masterUri = masterUri;
         _hostNameMap = hostNameMap;
+        _networkConfig = networkConfig;
     }
 
     @Override
@@ -85,6 +92,7 @@ public class ROSModule extends AbstractModule {
         bind(XmlrpcServer.class).to(JettyXmlrpcServer.class);
         bind(URI.class).annotatedWith(ROSMaster.class).toInstance(rosMasterUri);
         bind(HostNameMap.class).toInstance(_hostNameMap);
+        bind(NetworkConfig.class).toInstance(_networkConfig);
         if (_host != null) {
             bind(HostBindingService.class).toInstance(() -> _host);
         } else {
@@ -117,6 +125,7 @@ public class ROSModule extends AbstractModule {
             NetworkServer network,
             XmlrpcServer xmlRpc,
             TopicManager topicManager,
+            ServiceManager serviceManager,
             ScheduledExecutorService scheduledExecutorService,
             ExecutorService executorService)
         {
@@ -126,6 +135,7 @@ public class ROSModule extends AbstractModule {
                 hostBindingService,
                 network,
                 topicManager,
+                serviceManager,
                 xmlRpc
             );
 
@@ -203,6 +213,7 @@ public class ROSModule extends AbstractModule {
         int _port;
         HostNameMap _hostNameMap = new HostNameMap();
         URI _master;
+        NetworkConfig _networkConfig = NetworkConfig.DEFAULT;
 
         private Builder(String name) {
             _name = name;
@@ -227,8 +238,13 @@ public class ROSModule extends AbstractModule {
             return master(URI.create(master));
         }
 
+        public Builder network(NetworkConfig networkConfig) {
+            _networkConfig = networkConfig;
+            return this;
+        }
+
         public ROSModule build() {
-            return new ROSModule(_name, _host, _port, _master, _hostNameMap);
+            return new ROSModule(_name, _host, _port, _master, _hostNameMap, _networkConfig);
         }
     }
 
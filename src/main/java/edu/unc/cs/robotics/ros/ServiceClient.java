@@ -0,0 +1,32 @@
+package edu.unc.cs.robotics.ros;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+
+import edu.unc.cs.robotics.ros.msg.Message;
+
+/**
+ * Calls a service over a small pool of persistent connections.  Calls
+ * may be made from any thread and do not block.  Several calls may be
+ * outstanding on one connection, the server answers them in order.
+ *
+ * @param <Q> the request type
+ * @param <R> the response type
+ */
+public interface ServiceClient<Q extends Message, R extends Message> extends Closeable {
+    /**
+     * Calls the service.
+     *
+     * @param request the request
+     * @return the response.  The future fails with a
+     * {@link edu.unc.cs.robotics.ros.service.ServiceException} if the
+     * server's handler failed, and with an {@link java.io.IOException}
+     * if the service could not be reached or the connection was lost.
+     */
+    CompletableFuture<R> call(Q request);
+
+    /**
+     * Closes the client's connections.  Outstanding calls fail.
+     */
+    void close();
+}
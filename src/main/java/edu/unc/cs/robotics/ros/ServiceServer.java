@@ -0,0 +1,11 @@
+package edu.unc.cs.robotics.ros;
+
+import java.io.Closeable;
+
+/**
+ * A handle to an advertised service.  Closing it unregisters the
+ * service.
+ */
+public interface ServiceServer extends Closeable {
+    void close();
+}
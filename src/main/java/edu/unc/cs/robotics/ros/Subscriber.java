@@ -5,5 +5,21 @@ import java.io.Closeable;
 import edu.unc.cs.robotics.ros.msg.Message;
 
 public interface Subscriber<M extends Message> extends Closeable {
+    /**
+     * @return the number of messages dropped because this subscriber's
+     * queue was full when they arrived.
+     */
+    default long getDroppedMessageCount() {
+        return 0;
+    }
+
+    /**
+     * @return the number of messages waiting for this subscriber's
+     * listener.
+     */
+    default int getQueueDepth() {
+        return 0;
+    }
+
     void close();
 }
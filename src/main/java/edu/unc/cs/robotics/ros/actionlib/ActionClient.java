@@ -15,10 +15,13 @@ import edu.unc.cs.robotics.ros.Name;
 import edu.unc.cs.robotics.ros.NodeHandle;
 import edu.unc.cs.robotics.ros.Publisher;
 import edu.unc.cs.robotics.ros.ROSTime;
+import edu.unc.cs.robotics.ros.ServiceClient;
+import edu.unc.cs.robotics.ros.ServiceServer;
 import edu.unc.cs.robotics.ros.Subscriber;
 import edu.unc.cs.robotics.ros.msg.Header;
 import edu.unc.cs.robotics.ros.msg.Message;
 import edu.unc.cs.robotics.ros.msg.MetaMessage;
+import edu.unc.cs.robotics.ros.msg.MetaService;
 import edu.unc.cs.robotics.ros.msg.actionlib.ActionFeedback;
 import edu.unc.cs.robotics.ros.msg.actionlib.ActionGoal;
 import edu.unc.cs.robotics.ros.msg.actionlib.ActionResult;
@@ -30,9 +33,13 @@ import edu.unc.cs.robotics.ros.msg.control.FollowJointTrajectoryActionResult;
 import edu.unc.cs.robotics.ros.msg.control.FollowJointTrajectoryFeedback;
 import edu.unc.cs.robotics.ros.msg.control.FollowJointTrajectoryGoal;
 import edu.unc.cs.robotics.ros.msg.control.FollowJointTrajectoryResult;
+import edu.unc.cs.robotics.ros.service.ServiceHandler;
+import edu.unc.cs.robotics.ros.topic.DropPolicy;
 import edu.unc.cs.robotics.ros.topic.PublicationListener;
 import edu.unc.cs.robotics.ros.topic.SubscriberLink;
 import edu.unc.cs.robotics.ros.topic.SubscriptionListener;
+import edu.unc.cs.robotics.ros.topic.TransportHints;
+import edu.unc.cs.robotics.ros.topic.WriteCoalescing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -289,6 +296,9 @@ public class ActionClient<
                 MetaMessage<M> meta,
                 String topic,
                 int queueSize,
+                long maxQueueBytes,
+                DropPolicy dropPolicy,
+                WriteCoalescing coalescing,
                 boolean latch,
                 Executor executor,
                 PublicationListener<? super M> listener) {
@@ -297,7 +307,22 @@ public class ActionClient<
 
             @Override
             public <M extends Message> Subscriber<M> subscribe(
-                MetaMessage<M> meta, String topic, int queueSize, Executor executor, SubscriptionListener<? super M> listener) {
+                MetaMessage<M> meta, String topic, int queueSize, TransportHints transportHints,
+                Executor executor, SubscriptionListener<? super M> listener) {
+                return null;
+            }
+
+            @Override
+            public <Q extends Message, R extends Message> ServiceServer advertiseService(
+                MetaService<Q, R> meta, String service,
+                Executor executor, ServiceHandler<Q, R> handler) {
+                return null;
+            }
+
+            @Override
+            public <Q extends Message, R extends Message> ServiceClient<Q, R> serviceClient(
+                MetaService<Q, R> meta, String service, int maxConnections,
+                Executor executor) {
                 return null;
             }
         };
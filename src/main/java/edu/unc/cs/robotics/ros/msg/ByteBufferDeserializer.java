@@ -1,14 +1,45 @@
 package edu.unc.cs.robotics.ros.msg;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.function.Function;
 import java.util.function.IntFunction;
 
+/**
+ * Reads messages from a buffer.  Strings and arrays are read in bulk,
+ * the same way {@link ByteBufferSerializer} writes them.
+ *
+ * <p>When the buffer is retainable, that is, it is not reused once the
+ * message is read, {@link #getByteBuffer()} returns a slice of it
+ * instead of a copy.  {@link #isRetained()} then tells the owner of the
+ * buffer that a message holds on to it.</p>
+ */
 public class ByteBufferDeserializer implements MessageDeserializer {
     private final ByteBuffer buf;
+    private final boolean _retainable;
+    private boolean _retained;
+    private byte[] _scratch;
 
     public ByteBufferDeserializer(ByteBuffer buffer) {
+        this(buffer, false);
+    }
+
+    /**
+     * @param buffer the message
+     * @param retainable true if the buffer is not reused once the message
+     *    is read, so that the message may keep slices of it
+     */
+    public ByteBufferDeserializer(ByteBuffer buffer, boolean retainable) {
         buf = buffer;
+        _retainable = retainable;
+    }
+
+    /**
+     * @return true if a slice of the buffer was handed out, and the
+     * buffer must be left to the message.
+     */
+    public boolean isRetained() {
+        return _retained;
     }
 
     @Override
@@ -27,18 +58,81 @@ public class ByteBufferDeserializer implements MessageDeserializer {
     }
 
     @Override
+    public boolean getBool() {
+        return buf.get() != 0;
+    }
+
+    @Override
+    public short getShort() {
+        return buf.getShort();
+    }
+
+    @Override
+    public long getLong() {
+        return buf.getLong();
+    }
+
+    @Override
+    public float getFloat() {
+        return buf.getFloat();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
     public String getString() {
         int len = buf.getInt();
-        StringBuilder str = new StringBuilder(len);
-        for (int i = 0 ; i < len ; ++i) {
-            str.append((char)(buf.get() & 0xff));
+        if (len < 0 || len > buf.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        // String(byte[],int,int,int) maps each byte to the char of the
+        // same value, as the strings have always been read.
+        int pos = buf.position();
+        if (buf.hasArray()) {
+            buf.position(pos + len);
+            return new String(buf.array(), 0, buf.arrayOffset() + pos, len);
         }
-        return str.toString();
+        byte[] scratch = _scratch;
+        if (scratch == null || scratch.length < len) {
+            _scratch = scratch = new byte[Math.max(len, 64)];
+        }
+        buf.get(scratch, 0, len);
+        return new String(scratch, 0, 0, len);
     }
 
     @Override
-    public String[] getStringArray() {
+    public ByteBuffer getRemaining() {
+        ByteBuffer view = buf.slice().asReadOnlyBuffer();
+        view.order(buf.order());
+        buf.position(buf.limit());
+        return view;
+    }
+
+    /**
+     * Reads the length prefix of an array, checking it before anything
+     * is allocated, since it may be garbage.
+     *
+     * @param size the size of an element
+     * @return the length
+     */
+    private int length(int size) {
         final int len = buf.getInt();
+        if (len < 0 || len > buf.remaining() / size) {
+            throw new BufferUnderflowException();
+        }
+        return len;
+    }
+
+    /**
+     * @return true if an array of the given length should be read
+     * through a view.
+     */
+    private boolean bulk(int length) {
+        return length >= ByteBufferSerializer.BULK_ELEMENTS && buf.isDirect();
+    }
+
+    @Override
+    public String[] getStringArray() {
+        final int len = length(4);
         final String[] array = new String[len];
         for (int i = 0 ; i < len ; ++i) {
             array[i] = getString();
@@ -47,12 +141,148 @@ public class ByteBufferDeserializer implements MessageDeserializer {
     }
 
     @Override
-    public double[] getDoubleArray() {
-        final int len = buf.getInt();
-        final double[] array = new double[len];
-        for (int i = 0 ; i < len ; ++i) {
-            array[i] = buf.getDouble();
+    public ByteBuffer getByteBuffer() {
+        final int len = length(1);
+        if (!_retainable) {
+            ByteBuffer copy = ByteBuffer.allocate(len);
+            buf.get(copy.array(), 0, len);
+            return copy;
+        }
+        int pos = buf.position();
+        ByteBuffer slice = buf.duplicate();
+        slice.limit(pos + len);
+        slice = slice.slice().asReadOnlyBuffer();
+        buf.position(pos + len);
+        _retained = true;
+        return slice;
+    }
+
+    @Override
+    public void getBools(boolean[] array, int offset, int length) {
+        if (buf.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        for (int i = offset, n = offset + length ; i < n ; ++i) {
+            array[i] = buf.get() != 0;
         }
+    }
+
+    @Override
+    public void getBytes(byte[] array, int offset, int length) {
+        buf.get(array, offset, length);
+    }
+
+    @Override
+    public void getShorts(short[] array, int offset, int length) {
+        if (bulk(length)) {
+            int pos = buf.position();
+            buf.asShortBuffer().get(array, offset, length);
+            buf.position(pos + length * 2);
+        } else {
+            for (int i = offset, n = offset + length ; i < n ; ++i) {
+                array[i] = buf.getShort();
+            }
+        }
+    }
+
+    @Override
+    public void getInts(int[] array, int offset, int length) {
+        if (bulk(length)) {
+            int pos = buf.position();
+            buf.asIntBuffer().get(array, offset, length);
+            buf.position(pos + length * 4);
+        } else {
+            for (int i = offset, n = offset + length ; i < n ; ++i) {
+                array[i] = buf.getInt();
+            }
+        }
+    }
+
+    @Override
+    public void getLongs(long[] array, int offset, int length) {
+        if (bulk(length)) {
+            int pos = buf.position();
+            buf.asLongBuffer().get(array, offset, length);
+            buf.position(pos + length * 8);
+        } else {
+            for (int i = offset, n = offset + length ; i < n ; ++i) {
+                array[i] = buf.getLong();
+            }
+        }
+    }
+
+    @Override
+    public void getFloats(float[] array, int offset, int length) {
+        if (bulk(length)) {
+            int pos = buf.position();
+            buf.asFloatBuffer().get(array, offset, length);
+            buf.position(pos + length * 4);
+        } else {
+            for (int i = offset, n = offset + length ; i < n ; ++i) {
+                array[i] = buf.getFloat();
+            }
+        }
+    }
+
+    @Override
+    public void getDoubles(double[] array, int offset, int length) {
+        if (bulk(length)) {
+            int pos = buf.position();
+            buf.asDoubleBuffer().get(array, offset, length);
+            buf.position(pos + length * 8);
+        } else {
+            for (int i = offset, n = offset + length ; i < n ; ++i) {
+                array[i] = buf.getDouble();
+            }
+        }
+    }
+
+    @Override
+    public boolean[] getBoolArray() {
+        final boolean[] array = new boolean[length(1)];
+        getBools(array, 0, array.length);
+        return array;
+    }
+
+    @Override
+    public byte[] getByteArray() {
+        final byte[] array = new byte[length(1)];
+        buf.get(array);
+        return array;
+    }
+
+    @Override
+    public short[] getShortArray() {
+        final short[] array = new short[length(2)];
+        getShorts(array, 0, array.length);
+        return array;
+    }
+
+    @Override
+    public int[] getIntArray() {
+        final int[] array = new int[length(4)];
+        getInts(array, 0, array.length);
+        return array;
+    }
+
+    @Override
+    public long[] getLongArray() {
+        final long[] array = new long[length(8)];
+        getLongs(array, 0, array.length);
+        return array;
+    }
+
+    @Override
+    public float[] getFloatArray() {
+        final float[] array = new float[length(4)];
+        getFloats(array, 0, array.length);
+        return array;
+    }
+
+    @Override
+    public double[] getDoubleArray() {
+        final double[] array = new double[length(8)];
+        getDoubles(array, 0, array.length);
         return array;
     }
 
@@ -61,7 +291,10 @@ public class ByteBufferDeserializer implements MessageDeserializer {
         IntFunction<T[]> arrayAlloc,
         Function<MessageDeserializer,T> itemFn)
     {
-        final int len = buf.getInt();
+        // every element takes at least a byte, except an empty message,
+        // and an array of those longer than the rest of the buffer is
+        // more likely a garbage length than a real message.
+        final int len = length(1);
         final T[] array = arrayAlloc.apply(len);
         for (int i = 0 ; i < len ; ++i) {
             array[i] = itemFn.apply(this);
@@ -1,13 +1,29 @@
 package edu.unc.cs.robotics.ros.msg;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 
 /**
  * Created by jeffi on 7/5/16.
+ *
+ * <p>Strings and arrays are written in bulk: strings and byte arrays
+ * straight into the backing array of a heap buffer (or through a
+ * scratch array for a direct one), and arrays of wider primitives
+ * through a view such as {@link java.nio.DoubleBuffer}, which copies
+ * the whole array at once when the buffer is direct and in native
+ * order.</p>
  */
 public class ByteBufferSerializer implements MessageSerializer {
+    /**
+     * Arrays shorter than this are cheaper to write one element at a
+     * time than to create a view for.  A view of a heap buffer converts
+     * one element at a time anyway.
+     */
+    static final int BULK_ELEMENTS = 16;
+
     private final int _seqNo;
     private final ByteBuffer buf;
+    private byte[] _scratch;
 
     public ByteBufferSerializer(int seqNo, ByteBuffer buffer) {
         _seqNo = seqNo;
@@ -35,12 +51,140 @@ public class ByteBufferSerializer implements MessageSerializer {
     }
 
     @Override
+    public void putShort(short v) {
+        buf.putShort(v);
+    }
+
+    @Override
+    public void putLong(long v) {
+        buf.putLong(v);
+    }
+
+    @Override
+    public void putFloat(float v) {
+        buf.putFloat(v);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
     public void putString(String str) {
         final int len = str.length();
         buf.putInt(len);
-        for (int i=0 ; i<len ; ++i) {
-            buf.put((byte)str.charAt(i));
+        if (buf.remaining() < len) {
+            throw new BufferOverflowException();
+        }
+        // getBytes(int,int,byte[],int) keeps the low byte of each
+        // char, which is how strings have always been written.
+        if (buf.hasArray()) {
+            int pos = buf.position();
+            str.getBytes(0, len, buf.array(), buf.arrayOffset() + pos);
+            buf.position(pos + len);
+        } else {
+            byte[] scratch = scratch(len);
+            str.getBytes(0, len, scratch, 0);
+            buf.put(scratch, 0, len);
+        }
+    }
+
+    private byte[] scratch(int len) {
+        byte[] scratch = _scratch;
+        if (scratch == null || scratch.length < len) {
+            _scratch = scratch = new byte[Math.max(len, 64)];
+        }
+        return scratch;
+    }
+
+    @Override
+    public void putBytes(ByteBuffer src) {
+        buf.put(src.duplicate());
+    }
+
+    @Override
+    public void putBytes(byte[] array, int offset, int length) {
+        buf.put(array, offset, length);
+    }
+
+    @Override
+    public void putBools(boolean[] array, int offset, int length) {
+        if (buf.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        for (int i = offset, n = offset + length ; i < n ; ++i) {
+            buf.put(array[i] ? (byte)1 : (byte)0);
+        }
+    }
+
+    /**
+     * @return true if an array of the given length should be written
+     * through a view.
+     */
+    private boolean bulk(int length) {
+        return length >= BULK_ELEMENTS && buf.isDirect();
+    }
+
+    @Override
+    public void putShorts(short[] array, int offset, int length) {
+        if (bulk(length)) {
+            int pos = buf.position();
+            // the view takes the buffer's current byte order
+            buf.asShortBuffer().put(array, offset, length);
+            buf.position(pos + length * 2);
+        } else {
+            for (int i = offset, n = offset + length ; i < n ; ++i) {
+                buf.putShort(array[i]);
+            }
+        }
+    }
+
+    @Override
+    public void putInts(int[] array, int offset, int length) {
+        if (bulk(length)) {
+            int pos = buf.position();
+            buf.asIntBuffer().put(array, offset, length);
+            buf.position(pos + length * 4);
+        } else {
+            for (int i = offset, n = offset + length ; i < n ; ++i) {
+                buf.putInt(array[i]);
+            }
         }
     }
 
+    @Override
+    public void putLongs(long[] array, int offset, int length) {
+        if (bulk(length)) {
+            int pos = buf.position();
+            buf.asLongBuffer().put(array, offset, length);
+            buf.position(pos + length * 8);
+        } else {
+            for (int i = offset, n = offset + length ; i < n ; ++i) {
+                buf.putLong(array[i]);
+            }
+        }
+    }
+
+    @Override
+    public void putFloats(float[] array, int offset, int length) {
+        if (bulk(length)) {
+            int pos = buf.position();
+            buf.asFloatBuffer().put(array, offset, length);
+            buf.position(pos + length * 4);
+        } else {
+            for (int i = offset, n = offset + length ; i < n ; ++i) {
+                buf.putFloat(array[i]);
+            }
+        }
+    }
+
+    @Override
+    public void putDoubles(double[] array, int offset, int length) {
+        if (bulk(length)) {
+            int pos = buf.position();
+            buf.asDoubleBuffer().put(array, offset, length);
+            buf.position(pos + length * 8);
+        } else {
+            for (int i = offset, n = offset + length ; i < n ; ++i) {
+                buf.putDouble(array[i]);
+            }
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package edu.unc.cs.robotics.ros.msg;
 
+import java.nio.ByteBuffer;
+
 public class ByteCountSerializer implements MessageSerializer {
     private int _byteCount = 0;
 
@@ -28,6 +30,88 @@ public class ByteCountSerializer implements MessageSerializer {
         _byteCount += 4 + str.length();
     }
 
+    @Override
+    public void putBytes(ByteBuffer src) {
+        _byteCount += src.remaining();
+    }
+
+    @Override
+    public void putStringArray(String[] array) {
+        int n = 4 + 4 * array.length;
+        for (String str : array) {
+            n += str.length();
+        }
+        _byteCount += n;
+    }
+
+    @Override
+    public void putBool(boolean v) {
+        _byteCount++;
+    }
+
+    @Override
+    public void putShort(short v) {
+        _byteCount += 2;
+    }
+
+    @Override
+    public void putLong(long v) {
+        _byteCount += 8;
+    }
+
+    @Override
+    public void putFloat(float v) {
+        _byteCount += 4;
+    }
+
+    @Override
+    public void putBools(boolean[] array, int offset, int length) {
+        _byteCount += length;
+    }
+
+    @Override
+    public void putBytes(byte[] array, int offset, int length) {
+        _byteCount += length;
+    }
+
+    @Override
+    public void putShorts(short[] array, int offset, int length) {
+        _byteCount += 2 * length;
+    }
+
+    @Override
+    public void putInts(int[] array, int offset, int length) {
+        _byteCount += 4 * length;
+    }
+
+    @Override
+    public void putLongs(long[] array, int offset, int length) {
+        _byteCount += 8 * length;
+    }
+
+    @Override
+    public void putFloats(float[] array, int offset, int length) {
+        _byteCount += 4 * length;
+    }
+
+    @Override
+    public void putDoubles(double[] array, int offset, int length) {
+        _byteCount += 8 * length;
+    }
+
+    @Override
+    public <M extends Message> void putMessageArray(M[] array) {
+        _byteCount += 4;
+        for (M m : array) {
+            int size = m.getFixedSize();
+            if (size >= 0) {
+                _byteCount += size;
+            } else {
+                m.serialize(this);
+            }
+        }
+    }
+
     public int getByteCount() {
         return _byteCount;
     }
@@ -0,0 +1,129 @@
+package edu.unc.cs.robotics.ros.msg;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.function.Function;
+
+/**
+ * The meta of a message class, from its {@link MessageSpec} annotation
+ * and its deserialization constructor.  See
+ * {@link MetaMessage#forClass(Class)}.
+ *
+ * <p>The constructor is called through a function made by
+ * {@link LambdaMetafactory}, the same as a {@code Foo::new} reference
+ * would be, so deserializing a message does not go through
+ * reflection.  A class that jROS's class loader cannot see falls back to
+ * a {@link MethodHandle}.  Both are made once per class, the meta is
+ * cached.</p>
+ */
+final class ClassMetaMessage<M extends Message> extends MetaMessageImpl<M> {
+    private static final ClassValue<ClassMetaMessage<?>> CACHE = new ClassValue<ClassMetaMessage<?>>() {
+        @Override
+        protected ClassMetaMessage<?> computeValue(Class<?> type) {
+            return create(type.asSubclass(Message.class));
+        }
+    };
+
+    private final Class<M> _messageClass;
+
+    private ClassMetaMessage(
+        Class<M> messageClass,
+        MessageSpec spec,
+        Function<MessageDeserializer, M> deserializer)
+    {
+        super(spec.type(), spec.md5sum(), spec.definition(), deserializer);
+        _messageClass = messageClass;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <M extends Message> MetaMessage<M> forClass(Class<M> cls) {
+        return (MetaMessage<M>)CACHE.get(cls);
+    }
+
+    @Override
+    public Class<M> getMessageClass() {
+        return _messageClass;
+    }
+
+    private static <M extends Message> ClassMetaMessage<M> create(Class<M> cls) {
+        MessageSpec spec = cls.getAnnotation(MessageSpec.class);
+        if (spec == null) {
+            throw new IllegalArgumentException("missing MessageSpec annotation");
+        }
+
+        if (Modifier.isAbstract(cls.getModifiers())) {
+            throw new IllegalArgumentException(cls.getName() + " cannot be abstract");
+        }
+
+        if (!Modifier.isPublic(cls.getModifiers())) {
+            throw new IllegalArgumentException(cls.getName() + " must be public");
+        }
+
+        MethodHandle ctor;
+        try {
+            ctor = MethodHandles.publicLookup().findConstructor(
+                cls, MethodType.methodType(void.class, MessageDeserializer.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException("missing deserialization constructor");
+        }
+
+        return new ClassMetaMessage<>(cls, spec, deserializer(cls, ctor));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <M extends Message> Function<MessageDeserializer, M> deserializer(
+        Class<M> cls, MethodHandle ctor)
+    {
+        if (visible(cls)) {
+            CallSite site = null;
+            try {
+                site = LambdaMetafactory.metafactory(
+                    MethodHandles.lookup(),
+                    "apply",
+                    MethodType.methodType(Function.class),
+                    MethodType.methodType(Object.class, Object.class),
+                    ctor,
+                    ctor.type());
+            } catch (LambdaConversionException e) {
+                // fall back to the handle below
+            }
+            if (site != null) {
+                try {
+                    return (Function<MessageDeserializer, M>)site.getTarget().invokeExact();
+                } catch (Throwable e) {
+                    throw new AssertionError("should not happen, the factory takes no arguments", e);
+                }
+            }
+        }
+
+        MethodHandle generic = ctor.asType(MethodType.methodType(Message.class, MessageDeserializer.class));
+        return buf -> {
+            try {
+                return cls.cast((Message)generic.invokeExact(buf));
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new AssertionError("constructor should not throw a checked exception", e);
+            }
+        };
+    }
+
+    /**
+     * The class that {@link LambdaMetafactory} spins resolves the message
+     * class by name from the loader of this class.
+     *
+     * @return true if the message class resolves to itself from there
+     */
+    private static boolean visible(Class<?> cls) {
+        try {
+            return Class.forName(cls.getName(), false, ClassMetaMessage.class.getClassLoader()) == cls;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -15,12 +15,19 @@ public class Clock extends Message {
 
     public static final MetaMessage<Clock> META = new MetaMessageImpl<>(DATATYPE, MD5SUM, DEFINITION, Clock::new);
 
+    public static final int SIZE = 8;
+
     public long clock;
 
     public Clock(MessageDeserializer buf) {
         this.clock = buf.getTime();
     }
 
+    @Override
+    public int getFixedSize() {
+        return SIZE;
+    }
+
     @Override
     public void serialize(MessageSerializer ser) {
         ser.putTime(clock);
@@ -6,6 +6,18 @@ import java.util.function.IntFunction;
 public abstract class Message {
     public abstract void serialize(MessageSerializer ser);
 
+    /**
+     * Returns the serialized size of messages whose type has no
+     * variable-length fields, so that serializing them needs neither a
+     * counting pass nor a guess.  Such types declare the size as a
+     * SIZE constant and return it here.
+     *
+     * @return the serialized size in bytes, or -1 if it varies.
+     */
+    public int getFixedSize() {
+        return -1;
+    }
+
     protected static String[] deserializeStringArray(MessageDeserializer buf) {
         return buf.getStringArray();
     }
@@ -1,8 +1,17 @@
 package edu.unc.cs.robotics.ros.msg;
 
+import java.nio.ByteBuffer;
 import java.util.function.Function;
 import java.util.function.IntFunction;
 
+/**
+ * Reads the fields of a message.  There is an operation for each ROS
+ * primitive type, with the same conventions as
+ * {@link MessageSerializer}: unsigned types are read into the signed
+ * Java type of the same width, the bulk operations read into a range
+ * of an array without a length prefix, and the array operations read
+ * the length prefix and allocate the array.
+ */
 public interface MessageDeserializer {
     int getInt();
 
@@ -12,6 +21,14 @@ public interface MessageDeserializer {
 
     String getString();
 
+    /**
+     * Reads everything left in the message as it is.
+     *
+     * @return a read-only view of the remaining bytes, it is only
+     * valid until the call that handed out this deserializer returns.
+     */
+    ByteBuffer getRemaining();
+
     String[] getStringArray();
 
     double[] getDoubleArray();
@@ -20,6 +37,115 @@ public interface MessageDeserializer {
         IntFunction<T[]> arrayAlloc,
         Function<MessageDeserializer,T> itemFn);
 
+    default boolean getBool() {
+        return getByte() != 0;
+    }
+
+    default short getShort() {
+        int lo = getByte() & 0xff;
+        return (short)(lo | (getByte() << 8));
+    }
+
+    default long getLong() {
+        long lo = getInt() & 0xffff_ffffL;
+        return lo | ((long)getInt() << 32);
+    }
+
+    default float getFloat() {
+        return Float.intBitsToFloat(getInt());
+    }
+
+    default void getBools(boolean[] array, int offset, int length) {
+        for (int i = offset, n = offset + length ; i < n ; ++i) {
+            array[i] = getBool();
+        }
+    }
+
+    default void getBytes(byte[] array, int offset, int length) {
+        for (int i = offset, n = offset + length ; i < n ; ++i) {
+            array[i] = getByte();
+        }
+    }
+
+    default void getShorts(short[] array, int offset, int length) {
+        for (int i = offset, n = offset + length ; i < n ; ++i) {
+            array[i] = getShort();
+        }
+    }
+
+    default void getInts(int[] array, int offset, int length) {
+        for (int i = offset, n = offset + length ; i < n ; ++i) {
+            array[i] = getInt();
+        }
+    }
+
+    default void getLongs(long[] array, int offset, int length) {
+        for (int i = offset, n = offset + length ; i < n ; ++i) {
+            array[i] = getLong();
+        }
+    }
+
+    default void getFloats(float[] array, int offset, int length) {
+        for (int i = offset, n = offset + length ; i < n ; ++i) {
+            array[i] = getFloat();
+        }
+    }
+
+    default void getDoubles(double[] array, int offset, int length) {
+        for (int i = offset, n = offset + length ; i < n ; ++i) {
+            array[i] = getDouble();
+        }
+    }
+
+    default boolean[] getBoolArray() {
+        boolean[] array = new boolean[getInt()];
+        getBools(array, 0, array.length);
+        return array;
+    }
+
+    default byte[] getByteArray() {
+        byte[] array = new byte[getInt()];
+        getBytes(array, 0, array.length);
+        return array;
+    }
+
+    /**
+     * Reads a uint8[] without copying it, where the deserializer allows
+     * it.  Use this for large payloads, such as the data of an image.
+     *
+     * @return a buffer holding the bytes of the array, read-only if it
+     * shares the message's buffer.  Unlike
+     * {@link #getRemaining()}, it remains valid after the call that
+     * handed out this deserializer returns.
+     */
+    default ByteBuffer getByteBuffer() {
+        return ByteBuffer.wrap(getByteArray());
+    }
+
+    default short[] getShortArray() {
+        short[] array = new short[getInt()];
+        getShorts(array, 0, array.length);
+        return array;
+    }
+
+    default int[] getIntArray() {
+        int[] array = new int[getInt()];
+        getInts(array, 0, array.length);
+        return array;
+    }
+
+    default long[] getLongArray() {
+        long[] array = new long[getInt()];
+        getLongs(array, 0, array.length);
+        return array;
+    }
+
+    default float[] getFloatArray() {
+        float[] array = new float[getInt()];
+        getFloats(array, 0, array.length);
+        return array;
+    }
+
     default long getDuration() {
         int sec = getInt();
         int nsec = getInt();
@@ -37,4 +163,4 @@ public interface MessageDeserializer {
         // or in 2038 if it is treated as a signed integer anywhere.
         return getDuration();
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,22 @@
 package edu.unc.cs.robotics.ros.msg;
 
+import java.nio.ByteBuffer;
+
 /**
  * Created by jeffi on 7/5/16.
+ *
+ * <p>There is an operation for each ROS primitive type.  The unsigned
+ * types use the signed Java type of the same width: uint8 and int8 are
+ * put with {@link #putByte(byte)}, uint16 with {@link #putShort(short)},
+ * uint32 with {@link #putInt(int)} and uint64 with
+ * {@link #putLong(long)}.  Each type also has a bulk operation for a
+ * range of an array, without a length prefix (for fixed-length arrays),
+ * and one for a whole array with its length prefix (for variable-length
+ * arrays).</p>
+ *
+ * <p>Only the int32, byte, float64 and string operations have to be
+ * implemented, the rest default to them, writing little-endian as ROS
+ * does.  Implementations override them to do better.</p>
  */
 public interface MessageSerializer {
 
@@ -11,6 +26,74 @@ public interface MessageSerializer {
     void putDouble(double v);
     void putString(String str);
 
+    default void putBool(boolean v) {
+        putByte(v ? (byte)1 : (byte)0);
+    }
+
+    default void putShort(short v) {
+        putByte((byte)v);
+        putByte((byte)(v >> 8));
+    }
+
+    default void putLong(long v) {
+        putInt((int)v);
+        putInt((int)(v >>> 32));
+    }
+
+    default void putFloat(float v) {
+        putInt(Float.floatToRawIntBits(v));
+    }
+
+    /**
+     * Writes the remaining bytes of a buffer as they are, without a
+     * length prefix.  The buffer's position is not changed.
+     */
+    default void putBytes(ByteBuffer src) {
+        for (int i = src.position(), n = src.limit() ; i < n ; ++i) {
+            putByte(src.get(i));
+        }
+    }
+
+    default void putBools(boolean[] array, int offset, int length) {
+        for (int i = offset, n = offset + length ; i < n ; ++i) {
+            putBool(array[i]);
+        }
+    }
+
+    default void putBytes(byte[] array, int offset, int length) {
+        putBytes(ByteBuffer.wrap(array, offset, length));
+    }
+
+    default void putShorts(short[] array, int offset, int length) {
+        for (int i = offset, n = offset + length ; i < n ; ++i) {
+            putShort(array[i]);
+        }
+    }
+
+    default void putInts(int[] array, int offset, int length) {
+        for (int i = offset, n = offset + length ; i < n ; ++i) {
+            putInt(array[i]);
+        }
+    }
+
+    default void putLongs(long[] array, int offset, int length) {
+        for (int i = offset, n = offset + length ; i < n ; ++i) {
+            putLong(array[i]);
+        }
+    }
+
+    default void putFloats(float[] array, int offset, int length) {
+        for (int i = offset, n = offset + length ; i < n ; ++i) {
+            putFloat(array[i]);
+        }
+    }
+
+    default void putDoubles(double[] array, int offset, int length) {
+        for (int i = offset, n = offset + length ; i < n ; ++i) {
+            putDouble(array[i]);
+        }
+    }
+
     default void putStringArray(String[] array) {
         putInt(array.length);
         for (String str : array) {
@@ -25,11 +108,48 @@ public interface MessageSerializer {
         }
     }
 
+    default void putBoolArray(boolean[] array) {
+        putInt(array.length);
+        putBools(array, 0, array.length);
+    }
+
+    default void putByteArray(byte[] array) {
+        putInt(array.length);
+        putBytes(array, 0, array.length);
+    }
+
+    /**
+     * Writes the remaining bytes of a buffer as a uint8[], with a
+     * length prefix.  The buffer's position is not changed.
+     */
+    default void putByteBuffer(ByteBuffer src) {
+        putInt(src.remaining());
+        putBytes(src);
+    }
+
+    default void putShortArray(short[] array) {
+        putInt(array.length);
+        putShorts(array, 0, array.length);
+    }
+
+    default void putIntArray(int[] array) {
+        putInt(array.length);
+        putInts(array, 0, array.length);
+    }
+
+    default void putLongArray(long[] array) {
+        putInt(array.length);
+        putLongs(array, 0, array.length);
+    }
+
+    default void putFloatArray(float[] array) {
+        putInt(array.length);
+        putFloats(array, 0, array.length);
+    }
+
     default void putDoubleArray(double[] array) {
         putInt(array.length);
-        for (double v : array) {
-            putDouble(v);
-        }
+        putDoubles(array, 0, array.length);
     }
 
     default void putDuration(long duration) {
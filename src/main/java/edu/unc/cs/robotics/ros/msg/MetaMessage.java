@@ -1,8 +1,6 @@
 package edu.unc.cs.robotics.ros.msg;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Modifier;
+import java.util.Map;
 
 public interface MetaMessage<M extends Message> {
     String getDataType();
@@ -11,59 +9,40 @@ public interface MetaMessage<M extends Message> {
 
     M deserialize(MessageDeserializer buf);
 
-    static <M extends Message> MetaMessage<M> forClass(Class<M> cls) {
-        MessageSpec spec = cls.getAnnotation(MessageSpec.class);
-        if (spec == null) {
-            throw new IllegalArgumentException("missing MessageSpec annotation");
-        }
-
-        if (Modifier.isAbstract(cls.getModifiers())) {
-            throw new IllegalArgumentException(cls.getName() + " cannot be abstract");
-        }
-
-        if (!Modifier.isPublic(cls.getModifiers())) {
-            throw new IllegalArgumentException(cls.getName() + " must be public");
-        }
-
-        Constructor<M> ctor;
-        try {
-            ctor = cls.getConstructor(MessageDeserializer.class);
-        } catch (NoSuchMethodException e) {
-            throw new IllegalArgumentException("missing deserialization constructor");
-        }
-
-        return new MetaMessage<M>() {
-            @Override
-            public String getDataType() {
-                return spec.type();
-            }
-
-            @Override
-            public String getMd5sum() {
-                return spec.md5sum();
-            }
+    /**
+     * @return the class of the messages this deserializes, or null if
+     * not known.
+     */
+    default Class<M> getMessageClass() {
+        return null;
+    }
 
-            @Override
-            public String getMessageDefinition() {
-                return spec.definition();
-            }
+    /**
+     * Returns the meta to deserialize the messages of one publisher
+     * with.  Subscriber links call this once they have the publisher's
+     * connection header.  Most message types do not care where a
+     * message came from and return this.
+     *
+     * @param connectionHeader the publisher's connection header fields
+     *    (callerid, type, md5sum, etc.)
+     * @return the meta for the connection
+     */
+    default MetaMessage<M> forConnection(Map<String,String> connectionHeader) {
+        return this;
+    }
 
-            @Override
-            public M deserialize(MessageDeserializer buf) {
-                try {
-                    return ctor.newInstance(buf);
-                } catch (InstantiationException | IllegalAccessException e) {
-                    throw new AssertionError("should not happen, this is checked before MetaMessage is created", e);
-                } catch (InvocationTargetException e) {
-                    if (e.getCause() instanceof RuntimeException) {
-                        throw (RuntimeException)e.getCause();
-                    } else if (e.getCause() instanceof Error) {
-                        throw (Error)e.getCause();
-                    } else {
-                        throw new AssertionError("constructor should not throw an unchecked exception", e);
-                    }
-                }
-            }
-        };
+    /**
+     * Returns the meta of a message class, from its {@link MessageSpec}
+     * annotation.  The class must be public and have a public
+     * deserialization constructor, which is called directly rather than
+     * through reflection.  The meta is made once per class.
+     *
+     * @param cls the message class
+     * @return the meta for the class
+     * @throws IllegalArgumentException if the class is not a valid
+     *    message class
+     */
+    static <M extends Message> MetaMessage<M> forClass(Class<M> cls) {
+        return ClassMetaMessage.forClass(cls);
     }
 }
@@ -0,0 +1,25 @@
+package edu.unc.cs.robotics.ros.msg;
+
+/**
+ * Describes a service type: its name, md5sum, and the request and
+ * response messages.
+ *
+ * @param <Q> the request type
+ * @param <R> the response type
+ */
+public interface MetaService<Q extends Message, R extends Message> {
+    /**
+     * @return the service type, e.g., "std_srvs/Trigger"
+     */
+    String getDataType();
+
+    /**
+     * @return the md5sum of the service, computed over both the
+     * request and response definitions.
+     */
+    String getMd5sum();
+
+    MetaMessage<Q> getRequest();
+
+    MetaMessage<R> getResponse();
+}
@@ -0,0 +1,41 @@
+package edu.unc.cs.robotics.ros.msg;
+
+public class MetaServiceImpl<Q extends Message, R extends Message> implements MetaService<Q, R> {
+
+    private final String _dataType;
+    private final String _md5sum;
+    private final MetaMessage<Q> _request;
+    private final MetaMessage<R> _response;
+
+    public MetaServiceImpl(
+        String dataType,
+        String md5sum,
+        MetaMessage<Q> request,
+        MetaMessage<R> response)
+    {
+        _dataType = dataType;
+        _md5sum = md5sum;
+        _request = request;
+        _response = response;
+    }
+
+    @Override
+    public String getDataType() {
+        return _dataType;
+    }
+
+    @Override
+    public String getMd5sum() {
+        return _md5sum;
+    }
+
+    @Override
+    public MetaMessage<Q> getRequest() {
+        return _request;
+    }
+
+    @Override
+    public MetaMessage<R> getResponse() {
+        return _response;
+    }
+}
@@ -4,6 +4,8 @@ package edu.unc.cs.robotics.ros.msg;
  * Created by jeffi on 3/15/16.
  */
 public class Pose extends Message {
+    public static final int SIZE = Point.SIZE + Quaternion.SIZE;
+
     public Point position;
     public Quaternion orientation;
 
@@ -12,6 +14,11 @@ public class Pose extends Message {
         this.orientation = new Quaternion(buf);
     }
 
+    @Override
+    public int getFixedSize() {
+        return SIZE;
+    }
+
     @Override
     public void serialize(MessageSerializer buf) {
         position.serialize(buf);
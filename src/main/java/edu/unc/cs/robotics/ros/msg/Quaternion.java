@@ -4,6 +4,8 @@ package edu.unc.cs.robotics.ros.msg;
  * Created by jeffi on 3/15/16.
  */
 public class Quaternion extends Message {
+    public static final int SIZE = 4 * 8;
+
     public double x;
     public double y;
     public double z;
@@ -16,6 +18,11 @@ public class Quaternion extends Message {
         this.w = buf.getDouble();
     }
 
+    @Override
+    public int getFixedSize() {
+        return SIZE;
+    }
+
     @Override
     public void serialize(MessageSerializer buf) {
         buf.putDouble(x);
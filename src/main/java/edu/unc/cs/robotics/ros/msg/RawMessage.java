@@ -0,0 +1,164 @@
+package edu.unc.cs.robotics.ros.msg;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A message kept in its serialized form, for nodes that only forward,
+ * record or measure traffic.  Subscribing with {@link #meta()} accepts
+ * any type, and each message is one copy of the bytes the publisher
+ * sent, along with the publisher's connection header.  Publishing a
+ * raw message writes its bytes as they are, so relaying a topic costs
+ * a copy in and a copy out, with no decode or encode.
+ *
+ * <p>The bytes are the message body, without the 4-byte length
+ * prefix.  They are not copied when publishing, so a buffer must not
+ * be modified once it is wrapped in a message.  A raw subscription to
+ * a raw publication in the same node receives the published instance,
+ * which has no connection header.</p>
+ */
+public final class RawMessage extends Message {
+    private static final MetaMessage<RawMessage> ANY = new Meta("*", "*", "", Collections.emptyMap());
+
+    private final ByteBuffer _buffer;
+    private final Map<String,String> _connectionHeader;
+
+    /**
+     * Creates a message to publish.
+     *
+     * @param buffer the serialized message, from its position to its
+     *    limit
+     */
+    public RawMessage(ByteBuffer buffer) {
+        this(buffer, Collections.emptyMap());
+    }
+
+    private RawMessage(ByteBuffer buffer, Map<String,String> connectionHeader) {
+        _buffer = buffer.slice().asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        _connectionHeader = connectionHeader;
+    }
+
+    /**
+     * @return a new read-only view of the serialized message.
+     */
+    public ByteBuffer buffer() {
+        return _buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return the number of bytes in the serialized message.
+     */
+    public int size() {
+        return _buffer.remaining();
+    }
+
+    /**
+     * @return the connection header of the publisher the message was
+     * received from (callerid, type, md5sum, message_definition, and
+     * latching when the transport provides them), or an empty map for
+     * a message created to publish.
+     */
+    public Map<String,String> getConnectionHeader() {
+        return _connectionHeader;
+    }
+
+    public String getDataType() {
+        return _connectionHeader.get("type");
+    }
+
+    public String getMd5sum() {
+        return _connectionHeader.get("md5sum");
+    }
+
+    public String getMessageDefinition() {
+        return _connectionHeader.get("message_definition");
+    }
+
+    public String getCallerId() {
+        return _connectionHeader.get("callerid");
+    }
+
+    @Override
+    public void serialize(MessageSerializer ser) {
+        ser.putBytes(_buffer);
+    }
+
+    /**
+     * @return the meta to subscribe to a topic of any type with.
+     */
+    public static MetaMessage<RawMessage> meta() {
+        return ANY;
+    }
+
+    /**
+     * Returns the meta to advertise (or subscribe with) a specific
+     * type.  To relay a topic, pass the values from a received
+     * message's connection header.
+     *
+     * @param dataType the message type, e.g., "sensor_msgs/JointState"
+     * @param md5sum the md5sum of the message type, or "*"
+     * @param messageDefinition the full message definition
+     * @return the meta
+     */
+    public static MetaMessage<RawMessage> meta(
+        String dataType, String md5sum, String messageDefinition)
+    {
+        return new Meta(dataType, md5sum, messageDefinition, Collections.emptyMap());
+    }
+
+    private static final class Meta implements MetaMessage<RawMessage> {
+        private final String _dataType;
+        private final String _md5sum;
+        private final String _messageDefinition;
+        private final Map<String,String> _connectionHeader;
+
+        Meta(String dataType, String md5sum, String messageDefinition,
+             Map<String,String> connectionHeader)
+        {
+            _dataType = dataType;
+            _md5sum = md5sum;
+            _messageDefinition = messageDefinition;
+            _connectionHeader = connectionHeader;
+        }
+
+        @Override
+        public String getDataType() {
+            return _dataType;
+        }
+
+        @Override
+        public String getMd5sum() {
+            return _md5sum;
+        }
+
+        @Override
+        public String getMessageDefinition() {
+            return _messageDefinition;
+        }
+
+        @Override
+        public Class<RawMessage> getMessageClass() {
+            return RawMessage.class;
+        }
+
+        /**
+         * Copies the message out of the transport's buffer, which is
+         * reused once the deserializer returns.
+         */
+        @Override
+        public RawMessage deserialize(MessageDeserializer buf) {
+            ByteBuffer src = buf.getRemaining();
+            ByteBuffer copy = ByteBuffer.allocate(src.remaining());
+            copy.put(src).flip();
+            return new RawMessage(copy, _connectionHeader);
+        }
+
+        @Override
+        public MetaMessage<RawMessage> forConnection(Map<String,String> connectionHeader) {
+            return new Meta(_dataType, _md5sum, _messageDefinition,
+                Collections.unmodifiableMap(connectionHeader));
+        }
+    }
+}
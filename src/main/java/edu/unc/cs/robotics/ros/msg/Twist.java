@@ -4,6 +4,8 @@ package edu.unc.cs.robotics.ros.msg;
  * Created by jeffi on 3/15/16.
  */
 public class Twist extends Message {
+    public static final int SIZE = 2 * Vector3.SIZE;
+
     public Vector3 linear;
     public Vector3 angular;
 
@@ -12,6 +14,11 @@ public class Twist extends Message {
         this.angular = new Vector3(buf);
     }
 
+    @Override
+    public int getFixedSize() {
+        return SIZE;
+    }
+
     @Override
     public void serialize(MessageSerializer buf) {
         linear.serialize(buf);
@@ -4,6 +4,8 @@ package edu.unc.cs.robotics.ros.msg;
  * Created by jeffi on 3/15/16.
  */
 public class Vector3 extends Message {
+    public static final int SIZE = 3 * 8;
+
     public double x;
     public double y;
     public double z;
@@ -14,6 +16,11 @@ public class Vector3 extends Message {
         this.z = buf.getDouble();
     }
 
+    @Override
+    public int getFixedSize() {
+        return SIZE;
+    }
+
     @Override
     public void serialize(MessageSerializer buf) {
         buf.putDouble(x);
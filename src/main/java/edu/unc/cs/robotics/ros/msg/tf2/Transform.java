@@ -41,6 +41,8 @@ public class Transform extends Message {
                                             "float64 z\n" +
                                             "float64 w\n";
 
+    public static final int SIZE = Vector3.SIZE + Quaternion.SIZE;
+
     public Vector3 translation;
     public Quaternion rotation;
 
@@ -49,6 +51,11 @@ public class Transform extends Message {
         this.rotation = new Quaternion(buf);
     }
 
+    @Override
+    public int getFixedSize() {
+        return SIZE;
+    }
+
     @Override
     public void serialize(MessageSerializer ser) {
         translation.serialize(ser);
@@ -0,0 +1,18 @@
+package edu.unc.cs.robotics.ros.msg.tools;
+
+import edu.unc.cs.robotics.ros.msg.MetaService;
+import edu.unc.cs.robotics.ros.msg.MetaServiceImpl;
+
+/**
+ * The topic_tools/MuxSelect service, which selects the input of a mux.
+ */
+public final class MuxSelect {
+    public static final String DATATYPE = "topic_tools/MuxSelect";
+    public static final String MD5SUM = "053052240ca985e1f2eedbb0dae9b1f7";
+
+    public static final MetaService<MuxSelectRequest, MuxSelectResponse> META = new MetaServiceImpl<>(
+        DATATYPE, MD5SUM, MuxSelectRequest.META, MuxSelectResponse.META);
+
+    private MuxSelect() {
+    }
+}
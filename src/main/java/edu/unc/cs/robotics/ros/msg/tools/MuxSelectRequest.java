@@ -0,0 +1,45 @@
+package edu.unc.cs.robotics.ros.msg.tools;
+
+import edu.unc.cs.robotics.ros.msg.Message;
+import edu.unc.cs.robotics.ros.msg.MessageDeserializer;
+import edu.unc.cs.robotics.ros.msg.MessageSerializer;
+import edu.unc.cs.robotics.ros.msg.MessageSpec;
+import edu.unc.cs.robotics.ros.msg.MetaMessage;
+import edu.unc.cs.robotics.ros.msg.MetaMessageImpl;
+
+@MessageSpec(
+    type = MuxSelectRequest.DATATYPE,
+    md5sum = MuxSelectRequest.MD5SUM,
+    definition = MuxSelectRequest.DEFINITION
+)
+public class MuxSelectRequest extends Message {
+    public static final String DATATYPE = "topic_tools/MuxSelectRequest";
+    public static final String MD5SUM = "d8f94bae31b356b24d0427f80426d0c3";
+    public static final String DEFINITION = "" +
+                                            "string topic\n";
+
+    public static final MetaMessage<MuxSelectRequest> META = new MetaMessageImpl<>(
+        DATATYPE, MD5SUM, DEFINITION, MuxSelectRequest::new);
+
+    public String topic;
+
+    public MuxSelectRequest(String topic) {
+        this.topic = topic;
+    }
+
+    public MuxSelectRequest(MessageDeserializer buf) {
+        this.topic = buf.getString();
+    }
+
+    @Override
+    public void serialize(MessageSerializer buf) {
+        buf.putString(topic);
+    }
+
+    @Override
+    public String toString() {
+        return "MuxSelectRequest{" +
+            "topic='" + topic + '\'' +
+            '}';
+    }
+}
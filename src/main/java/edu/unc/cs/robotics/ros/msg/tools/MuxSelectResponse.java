@@ -0,0 +1,45 @@
+package edu.unc.cs.robotics.ros.msg.tools;
+
+import edu.unc.cs.robotics.ros.msg.Message;
+import edu.unc.cs.robotics.ros.msg.MessageDeserializer;
+import edu.unc.cs.robotics.ros.msg.MessageSerializer;
+import edu.unc.cs.robotics.ros.msg.MessageSpec;
+import edu.unc.cs.robotics.ros.msg.MetaMessage;
+import edu.unc.cs.robotics.ros.msg.MetaMessageImpl;
+
+@MessageSpec(
+    type = MuxSelectResponse.DATATYPE,
+    md5sum = MuxSelectResponse.MD5SUM,
+    definition = MuxSelectResponse.DEFINITION
+)
+public class MuxSelectResponse extends Message {
+    public static final String DATATYPE = "topic_tools/MuxSelectResponse";
+    public static final String MD5SUM = "3db0a473debdbafea387c9e49358c320";
+    public static final String DEFINITION = "" +
+                                            "string prev_topic\n";
+
+    public static final MetaMessage<MuxSelectResponse> META = new MetaMessageImpl<>(
+        DATATYPE, MD5SUM, DEFINITION, MuxSelectResponse::new);
+
+    public String prevTopic;
+
+    public MuxSelectResponse(String prevTopic) {
+        this.prevTopic = prevTopic;
+    }
+
+    public MuxSelectResponse(MessageDeserializer buf) {
+        this.prevTopic = buf.getString();
+    }
+
+    @Override
+    public void serialize(MessageSerializer buf) {
+        buf.putString(prevTopic);
+    }
+
+    @Override
+    public String toString() {
+        return "MuxSelectResponse{" +
+            "prevTopic='" + prevTopic + '\'' +
+            '}';
+    }
+}
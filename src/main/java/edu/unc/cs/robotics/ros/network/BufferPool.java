@@ -0,0 +1,194 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of direct byte buffers organized in power-of-two size classes.
+ * Buffers are borrowed with {@link #acquire(int)} and must be given back
+ * with {@link #release(ByteBuffer)} once the borrower no longer
+ * references them (including any duplicates or slices).
+ *
+ * <p>The pool only retains up to a configured number of idle bytes.
+ * Buffers released beyond that cap are dropped and left to the garbage
+ * collector, as are requests larger than the largest size class.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class BufferPool {
+    private static final Logger LOG = LoggerFactory.getLogger(BufferPool.class);
+
+    /**
+     * The smallest size class is 2^MIN_SHIFT bytes.
+     */
+    static final int MIN_SHIFT = 9;
+    /**
+     * The largest size class is 2^MAX_SHIFT bytes.  This is large enough
+     * for the largest message TCPROSProtocol accepts.
+     */
+    static final int MAX_SHIFT = 24;
+
+    private final long _maxPooledBytes;
+
+    /**
+     * Free lists, one per size class.  Each list is guarded by its
+     * own monitor.
+     */
+    private final ArrayDeque<ByteBuffer>[] _free;
+
+    private final AtomicLong _pooledBytes = new AtomicLong();
+    private final AtomicLong _borrowedBytes = new AtomicLong();
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+
+    /**
+     * Creates a buffer pool.
+     *
+     * @param maxPooledBytes the maximum number of bytes held in idle
+     *   buffers.  0 disables pooling, buffers are then allocated on
+     *   each acquire.
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(long maxPooledBytes) {
+        if (maxPooledBytes < 0) {
+            throw new IllegalArgumentException("maxPooledBytes must be non-negative");
+        }
+        _maxPooledBytes = maxPooledBytes;
+        _free = new ArrayDeque[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i=0 ; i<_free.length ; ++i) {
+            _free[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Returns the size class index of a buffer capable of holding
+     * the specified number of bytes, or -1 if the capacity is
+     * larger than the largest size class.
+     */
+    private static int sizeClass(int capacity) {
+        if (capacity <= (1 << MIN_SHIFT)) {
+            return 0;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        return shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+    }
+
+    /**
+     * Borrows a buffer with at least the specified capacity.  The
+     * returned buffer is cleared, in ROS byte order, and its limit
+     * is set to {@code minCapacity}.
+     *
+     * @param minCapacity the minimum number of bytes needed.
+     * @return a direct buffer
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        final int sc = sizeClass(minCapacity);
+        ByteBuffer buf = null;
+
+        if (sc >= 0) {
+            final ArrayDeque<ByteBuffer> free = _free[sc];
+            synchronized (free) {
+                buf = free.poll();
+            }
+        }
+
+        if (buf != null) {
+            _hits.incrementAndGet();
+            _pooledBytes.addAndGet(-buf.capacity());
+            buf.clear();
+        } else {
+            _misses.incrementAndGet();
+            int capacity = sc < 0 ? minCapacity : 1 << (sc + MIN_SHIFT);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("allocating " + capacity + " byte buffer for request of " + minCapacity);
+            }
+            buf = ByteBuffer.allocateDirect(capacity);
+        }
+
+        _borrowedBytes.addAndGet(buf.capacity());
+        buf.limit(minCapacity);
+        return buf.order(NetworkServer.ROS_BYTE_ORDER);
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #acquire(int)}.  The caller
+     * must not use the buffer (or any view of it) after this call.
+     *
+     * @param buf the buffer to return.
+     */
+    public void release(ByteBuffer buf) {
+        final int capacity = buf.capacity();
+        _borrowedBytes.addAndGet(-capacity);
+
+        final int sc = sizeClass(capacity);
+        if (sc < 0 || !buf.isDirect() || capacity != 1 << (sc + MIN_SHIFT)) {
+            // not one of ours, or too big to keep.
+            return;
+        }
+
+        // reserve room under the cap before adding to the free list.
+        long pooled;
+        do {
+            pooled = _pooledBytes.get();
+            if (pooled + capacity > _maxPooledBytes) {
+                return;
+            }
+        } while (!_pooledBytes.compareAndSet(pooled, pooled + capacity));
+
+        final ArrayDeque<ByteBuffer> free = _free[sc];
+        synchronized (free) {
+            free.push(buf);
+        }
+    }
+
+    /**
+     * Gives up a buffer obtained from {@link #acquire(int)} without
+     * returning it, e.g., because a message keeps slices of it.  It is
+     * no longer counted as borrowed and is left to the garbage
+     * collector.
+     *
+     * @param buf the buffer to give up.
+     */
+    public void forget(ByteBuffer buf) {
+        _borrowedBytes.addAndGet(-buf.capacity());
+    }
+
+    /**
+     * @return the number of acquires satisfied from an idle buffer.
+     */
+    public long getHits() {
+        return _hits.get();
+    }
+
+    /**
+     * @return the number of acquires that required an allocation.
+     */
+    public long getMisses() {
+        return _misses.get();
+    }
+
+    /**
+     * @return the number of bytes held in idle buffers.
+     */
+    public long getPooledBytes() {
+        return _pooledBytes.get();
+    }
+
+    /**
+     * @return the number of bytes in buffers currently borrowed.
+     */
+    public long getBorrowedBytes() {
+        return _borrowedBytes.get();
+    }
+
+    /**
+     * @return the maximum number of bytes this pool will hold.
+     */
+    public long getMaxPooledBytes() {
+        return _maxPooledBytes;
+    }
+}
@@ -0,0 +1,103 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.unc.cs.robotics.ros.protocol.ProtocolException;
+
+/**
+ * Encodes and decodes ROS connection header fields outside of a TCPROS
+ * stream, e.g., the header blobs exchanged in a UDPROS requestTopic.
+ * Each field is a 4-byte little-endian length followed by
+ * "name=value".  Unlike on a TCPROS stream, there is no leading total
+ * length.
+ *
+ * <p>Fields that are the same on every connection, such as a
+ * publication's type and message definition, are encoded once with
+ * {@link #encodeFields(String...)} and shared by all connections.</p>
+ */
+public final class ConnectionHeader {
+    private ConnectionHeader() {
+    }
+
+    /**
+     * @param kvPairs alternating field names and values
+     * @return the encoded fields
+     */
+    static byte[] encode(String... kvPairs) {
+        if ((kvPairs.length & 1) != 0) {
+            throw new AssertionError("headers must come in pairs");
+        }
+
+        byte[][] fields = new byte[kvPairs.length / 2][];
+        int len = 0;
+        for (int i=0 ; i<kvPairs.length ; i += 2) {
+            assert kvPairs[i].indexOf('=') == -1;
+            fields[i/2] = (kvPairs[i] + "=" + kvPairs[i+1]).getBytes(StandardCharsets.UTF_8);
+            len += 4 + fields[i/2].length;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(len).order(NetworkServer.ROS_BYTE_ORDER);
+        for (byte[] field : fields) {
+            buf.putInt(field.length);
+            buf.put(field);
+        }
+        return buf.array();
+    }
+
+    /**
+     * Encodes fields once, for use on many connections.  The result is a
+     * read-only direct buffer, so that it can be written without a copy.
+     * Each connection must write a {@link ByteBuffer#duplicate()}.
+     *
+     * @param kvPairs alternating field names and values
+     * @return the encoded fields
+     */
+    public static ByteBuffer encodeFields(String... kvPairs) {
+        byte[] fields = encode(kvPairs);
+        ByteBuffer buf = ByteBuffer.allocateDirect(fields.length);
+        buf.put(fields).flip();
+        return buf.asReadOnlyBuffer();
+    }
+
+    /**
+     * @param fields fields from {@link #encodeFields(String...)}
+     * @return a copy of the fields, e.g., for an XML-RPC base64 value
+     */
+    static byte[] toBytes(ByteBuffer fields) {
+        byte[] data = new byte[fields.remaining()];
+        fields.duplicate().get(data);
+        return data;
+    }
+
+    /**
+     * @param data the encoded fields
+     * @return the fields, in the order received
+     * @throws ProtocolException if the fields are malformed
+     */
+    static Map<String,String> decode(byte[] data) throws ProtocolException {
+        Map<String,String> fields = new LinkedHashMap<>();
+        ByteBuffer buf = ByteBuffer.wrap(data).order(NetworkServer.ROS_BYTE_ORDER);
+        try {
+            while (buf.hasRemaining()) {
+                int len = buf.getInt();
+                if (len < 0 || len > buf.remaining()) {
+                    throw new ProtocolException("invalid header field length: " + len);
+                }
+                String field = new String(data, buf.position(), len, StandardCharsets.UTF_8);
+                buf.position(buf.position() + len);
+                int eq = field.indexOf('=');
+                if (eq < 0) {
+                    throw new ProtocolException("header field without '=': " + field);
+                }
+                fields.put(field.substring(0, eq), field.substring(eq + 1));
+            }
+        } catch (BufferUnderflowException ex) {
+            throw new ProtocolException("truncated header");
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,210 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.nio.ByteBuffer;
+
+import edu.unc.cs.robotics.ros.msg.ByteBufferSerializer;
+import edu.unc.cs.robotics.ros.msg.MessageSerializer;
+
+/**
+ * Serializes a message in one pass into a buffer borrowed from a
+ * {@link BufferPool}.  The buffer starts at a predicted size, see
+ * {@link SizePredictor}, and when the message does not fit it is
+ * replaced by one twice as large, so a poor prediction costs a copy
+ * instead of a second walk of the message.
+ *
+ * <p>Space for a length prefix is reserved with {@link #putInt(int)}
+ * and filled in once the size is known.</p>
+ */
+public class GrowableBufferSerializer implements MessageSerializer {
+    private final BufferPool _pool;
+    private final int _seqNo;
+    private ByteBuffer _buf;
+    private int _grown;
+    /**
+     * Writes strings and arrays to _buf, once there is room.
+     */
+    private ByteBufferSerializer _writer;
+
+    /**
+     * @param pool the pool to borrow buffers from
+     * @param seqNo the value written by {@link #putSeq()}
+     * @param initialCapacity the predicted number of bytes
+     */
+    public GrowableBufferSerializer(BufferPool pool, int seqNo, int initialCapacity) {
+        _pool = pool;
+        _seqNo = seqNo;
+        _buf = acquire(Math.max(initialCapacity, 4));
+        _writer = new ByteBufferSerializer(seqNo, _buf);
+    }
+
+    private ByteBuffer acquire(int capacity) {
+        ByteBuffer buf = _pool.acquire(capacity);
+        // use the whole of the size class, not just what was asked for
+        buf.limit(buf.capacity());
+        return buf;
+    }
+
+    private void ensure(long n) {
+        if (_buf.remaining() < n) {
+            grow(n);
+        }
+    }
+
+    private void grow(long n) {
+        long needed = _buf.position() + n;
+        long capacity = Math.max(needed, _buf.capacity() * 2L);
+        if (capacity > Integer.MAX_VALUE) {
+            if (needed > Integer.MAX_VALUE) {
+                throw new IllegalStateException("message too large");
+            }
+            capacity = needed;
+        }
+        ByteBuffer buf = acquire((int)capacity);
+        _buf.flip();
+        buf.put(_buf);
+        _pool.release(_buf);
+        _buf = buf;
+        _writer = new ByteBufferSerializer(_seqNo, buf);
+        ++_grown;
+    }
+
+    /**
+     * @return the number of bytes written so far.
+     */
+    public int position() {
+        return _buf.position();
+    }
+
+    /**
+     * @return the number of times the buffer was replaced by a larger
+     * one.
+     */
+    public int getGrowCount() {
+        return _grown;
+    }
+
+    /**
+     * Completes serialization.  The serializer must not be used after
+     * this.
+     *
+     * @return the pooled buffer, flipped so that it holds the bytes
+     *    written.  The caller must release it to the pool.
+     */
+    public ByteBuffer finish() {
+        ByteBuffer buf = _buf;
+        _buf = null;
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Returns the buffer to the pool, when serialization fails.
+     */
+    public void discard() {
+        if (_buf != null) {
+            _pool.release(_buf);
+            _buf = null;
+        }
+    }
+
+    @Override
+    public void putSeq() {
+        putInt(_seqNo);
+    }
+
+    @Override
+    public void putInt(int v) {
+        ensure(4);
+        _buf.putInt(v);
+    }
+
+    @Override
+    public void putByte(byte v) {
+        ensure(1);
+        _buf.put(v);
+    }
+
+    @Override
+    public void putDouble(double v) {
+        ensure(8);
+        _buf.putDouble(v);
+    }
+
+    @Override
+    public void putBool(boolean v) {
+        ensure(1);
+        _buf.put(v ? (byte)1 : (byte)0);
+    }
+
+    @Override
+    public void putShort(short v) {
+        ensure(2);
+        _buf.putShort(v);
+    }
+
+    @Override
+    public void putLong(long v) {
+        ensure(8);
+        _buf.putLong(v);
+    }
+
+    @Override
+    public void putFloat(float v) {
+        ensure(4);
+        _buf.putFloat(v);
+    }
+
+    @Override
+    public void putString(String str) {
+        ensure(4 + str.length());
+        _writer.putString(str);
+    }
+
+    @Override
+    public void putBytes(ByteBuffer src) {
+        ensure(src.remaining());
+        _buf.put(src.duplicate());
+    }
+
+    @Override
+    public void putBools(boolean[] array, int offset, int length) {
+        ensure(length);
+        _writer.putBools(array, offset, length);
+    }
+
+    @Override
+    public void putBytes(byte[] array, int offset, int length) {
+        ensure(length);
+        _buf.put(array, offset, length);
+    }
+
+    @Override
+    public void putShorts(short[] array, int offset, int length) {
+        ensure(2L * length);
+        _writer.putShorts(array, offset, length);
+    }
+
+    @Override
+    public void putInts(int[] array, int offset, int length) {
+        ensure(4L * length);
+        _writer.putInts(array, offset, length);
+    }
+
+    @Override
+    public void putLongs(long[] array, int offset, int length) {
+        ensure(8L * length);
+        _writer.putLongs(array, offset, length);
+    }
+
+    @Override
+    public void putFloats(float[] array, int offset, int length) {
+        ensure(4L * length);
+        _writer.putFloats(array, offset, length);
+    }
+
+    @Override
+    public void putDoubles(double[] array, int offset, int length) {
+        ensure(8L * length);
+        _writer.putDoubles(array, offset, length);
+    }
+}
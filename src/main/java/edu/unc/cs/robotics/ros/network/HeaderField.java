@@ -0,0 +1,69 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The connection header fields this node understands.  Field names
+ * are matched against their encoded bytes, so that parsing a header
+ * does not create a String for the name, or for the value of a field
+ * that no one wants.
+ */
+enum HeaderField {
+    CALLERID("callerid"),
+    MD5SUM("md5sum"),
+    TYPE("type"),
+    TOPIC("topic"),
+    SERVICE("service"),
+    TCP_NODELAY("tcp_nodelay"),
+    LATCHING("latching"),
+    MESSAGE_DEFINITION("message_definition"),
+    PERSISTENT("persistent"),
+    PROBE("probe"),
+    REQUEST_TYPE("request_type"),
+    RESPONSE_TYPE("response_type"),
+    ERROR("error");
+
+    private static final HeaderField[] VALUES = values();
+
+    private final String _name;
+    private final byte[] _bytes;
+
+    HeaderField(String name) {
+        _name = name;
+        _bytes = name.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return the field's name, as it appears in the header.
+     */
+    String getName() {
+        return _name;
+    }
+
+    /**
+     * Finds the field whose name, followed by '=', starts at the
+     * buffer's position.
+     *
+     * @param buf the field, the position is not modified
+     * @param length the length of the field
+     * @return the field, or null if the name is not known
+     */
+    static HeaderField match(ByteBuffer buf, int length) {
+        final int pos = buf.position();
+        next:
+        for (HeaderField field : VALUES) {
+            final byte[] bytes = field._bytes;
+            if (bytes.length >= length || buf.get(pos + bytes.length) != '=') {
+                continue;
+            }
+            for (int i=0 ; i<bytes.length ; ++i) {
+                if (buf.get(pos + i) != bytes[i]) {
+                    continue next;
+                }
+            }
+            return field;
+        }
+        return null;
+    }
+}
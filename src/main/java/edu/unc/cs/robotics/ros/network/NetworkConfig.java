@@ -0,0 +1,163 @@
+package edu.unc.cs.robotics.ros.network;
+
+/**
+ * Tuning parameters for the {@link NetworkServer}.  Instances are
+ * immutable and are created through {@link #builder()}.
+ */
+public final class NetworkConfig {
+    public static final NetworkConfig DEFAULT = builder().build();
+
+    private final int _selectorThreads;
+    private final long _bufferPoolBytes;
+    private final int _sharedMemoryRingBytes;
+    private final String _sharedMemoryDirectory;
+    private final int _decodeThreads;
+
+    private NetworkConfig(Builder builder) {
+        _selectorThreads = builder._selectorThreads;
+        _bufferPoolBytes = builder._bufferPoolBytes;
+        _sharedMemoryRingBytes = builder._sharedMemoryRingBytes;
+        _sharedMemoryDirectory = builder._sharedMemoryDirectory;
+        _decodeThreads = builder._decodeThreads;
+    }
+
+    /**
+     * @return the number of selector threads (and thus selector loops)
+     * that connections are spread across.
+     */
+    public int getSelectorThreads() {
+        return _selectorThreads;
+    }
+
+    /**
+     * @return the maximum number of idle bytes retained by the
+     * server's {@link BufferPool}.
+     */
+    public long getBufferPoolBytes() {
+        return _bufferPoolBytes;
+    }
+
+    /**
+     * @return the size of the ring buffer created for each publication
+     * that serves a shared memory (SHMROS) subscriber, or 0 if the
+     * shared memory transport is disabled.
+     */
+    public int getSharedMemoryRingBytes() {
+        return _sharedMemoryRingBytes;
+    }
+
+    /**
+     * @return the directory in which shared memory ring files are
+     * created, or null to use /dev/shm when present and the temporary
+     * directory otherwise.
+     */
+    public String getSharedMemoryDirectory() {
+        return _sharedMemoryDirectory;
+    }
+
+    /**
+     * @return the number of threads that deserialize messages for
+     * subscriptions that offload decoding from the selector threads.
+     */
+    public int getDecodeThreads() {
+        return _decodeThreads;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        int _selectorThreads = 1;
+        long _bufferPoolBytes = 32L*1024*1024;
+        int _sharedMemoryRingBytes = 16*1024*1024;
+        String _sharedMemoryDirectory;
+        int _decodeThreads = Runtime.getRuntime().availableProcessors();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the number of selector threads.  Each thread runs its own
+         * selector loop, and each connection is owned by exactly one
+         * loop for its lifetime.
+         *
+         * @param n the number of threads, must be at least 1.
+         * @return this
+         */
+        public Builder selectorThreads(int n) {
+            if (n < 1) {
+                throw new IllegalArgumentException("selectorThreads must be at least 1");
+            }
+            _selectorThreads = n;
+            return this;
+        }
+
+        /**
+         * Sets the memory cap of the buffer pool.  This limits the
+         * number of bytes kept in idle pooled buffers, it does not
+         * limit the number of bytes in use.
+         *
+         * @param bytes the cap in bytes, 0 disables pooling.
+         * @return this
+         */
+        public Builder bufferPoolBytes(long bytes) {
+            if (bytes < 0) {
+                throw new IllegalArgumentException("bufferPoolBytes must be non-negative");
+            }
+            _bufferPoolBytes = bytes;
+            return this;
+        }
+
+        /**
+         * Sets the size of the shared memory ring buffer created per
+         * publication.  Messages larger than the ring cannot be sent
+         * through it.
+         *
+         * @param bytes the ring size, 0 disables the shared memory
+         *   transport.
+         * @return this
+         */
+        public Builder sharedMemoryRingBytes(int bytes) {
+            if (bytes < 0) {
+                throw new IllegalArgumentException("sharedMemoryRingBytes must be non-negative");
+            }
+            _sharedMemoryRingBytes = bytes;
+            return this;
+        }
+
+        /**
+         * Sets the directory in which shared memory ring files are
+         * created.  Subscribers open rings at the path their publisher
+         * reports, so it must be visible to processes on this host, and
+         * it should be a memory backed file system.
+         *
+         * @param dir the directory, or null for the default.
+         * @return this
+         */
+        public Builder sharedMemoryDirectory(String dir) {
+            _sharedMemoryDirectory = dir;
+            return this;
+        }
+
+        /**
+         * Sets the number of decode threads.  They are shared by all
+         * subscriptions that offload decoding, see
+         * {@link edu.unc.cs.robotics.ros.topic.TransportHints.Builder#offloadDecoding()}.
+         *
+         * @param n the number of threads, must be at least 1.
+         * @return this
+         */
+        public Builder decodeThreads(int n) {
+            if (n < 1) {
+                throw new IllegalArgumentException("decodeThreads must be at least 1");
+            }
+            _decodeThreads = n;
+            return this;
+        }
+
+        public NetworkConfig build() {
+            return new NetworkConfig(this);
+        }
+    }
+}
@@ -1,20 +1,27 @@
 package edu.unc.cs.robotics.ros.network;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedChannelException;
-import java.nio.channels.SelectableChannel;
+import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.ArrayDeque;
-import java.util.Queue;
-import java.util.Set;
-import java.util.concurrent.locks.Condition;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
@@ -27,6 +34,11 @@ import edu.unc.cs.robotics.ros.HostNameMap;
 import edu.unc.cs.robotics.ros.Names;
 import edu.unc.cs.robotics.ros.Service;
 import edu.unc.cs.robotics.ros.msg.Message;
+import edu.unc.cs.robotics.ros.msg.MetaService;
+import edu.unc.cs.robotics.ros.protocol.ProtocolException;
+import edu.unc.cs.robotics.ros.service.ServiceConnection;
+import edu.unc.cs.robotics.ros.service.ServiceManager;
+import edu.unc.cs.robotics.ros.topic.Publication;
 import edu.unc.cs.robotics.ros.topic.PublisherLink;
 import edu.unc.cs.robotics.ros.topic.Subscription;
 import edu.unc.cs.robotics.ros.topic.TopicManager;
@@ -34,7 +46,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @Singleton
-public class NetworkServer implements Runnable, Service {
+public class NetworkServer implements Service {
     /**
      * ROS does NOT use standard network byte order.
      */
@@ -42,32 +54,70 @@ public class NetworkServer implements Runnable, Service {
 
     static final Logger LOG = LoggerFactory.getLogger(NetworkServer.class);
 
-    private static final int SHARED_READ_BUFFER_SIZE = 65536;
     private static final int MAX_TCPROS_CONN_QUEUE = 100;
 
+    /**
+     * The largest UDP payload over IPv4.
+     */
+    private static final int MAX_UDP_DATAGRAM_SIZE = 65507;
+
     enum State {
         IDLE,
-        STARTING,
-        RUNNING,
-        STOPPING
+        RUNNING
     }
 
     private final Names _names;
     private final Provider<TopicManager> _topicManager;
+    private final Provider<ServiceManager> _serviceManager;
     private final HostBindingService _hostBindingService;
     private final HostNameMap _hostNameMap;
+    /**
+     * Runs delayed flushes of coalesced writes.  The selector's own
+     * timeout only has millisecond resolution.
+     */
+    private final ScheduledExecutorService _scheduler;
+
+    private final int _decodeThreads;
+    /**
+     * Deserializes messages for subscriptions that offload decoding.
+     * Created on start.
+     */
+    private volatile ExecutorService _decodeExecutor;
 
     private final Lock _lock = new ReentrantLock();
-    private final Condition _startedCondition = _lock.newCondition();
-    private final Condition _stoppedCondition = _lock.newCondition();
 
-    private final Queue<Runnable> _actionQueue = new ArrayDeque<>();
+    /**
+     * The selector loops.  Each connection is assigned to one of
+     * these loops when it is created and stays with it until closed.
+     * The server socket is always serviced by the first loop.
+     */
+    private final SelectorLoop[] _loops;
 
-    private final ByteBuffer _sharedReadBuffer = ByteBuffer.allocateDirect(SHARED_READ_BUFFER_SIZE)
-        .order(ROS_BYTE_ORDER);
+    /**
+     * Used to break ties when selecting the least loaded loop, so
+     * that connections are spread round-robin when loads are equal.
+     */
+    private final AtomicInteger _nextLoop = new AtomicInteger();
 
-    private Selector _selector;
-    private Thread _thread;
+    /**
+     * Pool of direct buffers used for partially received packets.
+     */
+    private final BufferPool _bufferPool;
+
+    /**
+     * Identifies this host (and boot) for the shared memory transport.
+     * Two nodes may only use shared memory when their keys match.
+     */
+    private final String _hostKey;
+    private final int _sharedMemoryRingBytes;
+    private final File _sharedMemoryDirectory;
+
+    /**
+     * Source of connection ids.  They identify connections in
+     * getBusInfo, and let a UDPROS subscriber ignore stray datagrams
+     * from an earlier connection.
+     */
+    private final AtomicInteger _nextConnectionId = new AtomicInteger();
 
     // TODO: support multiple?
     private ServerSocketChannel _serverSocketChannel;
@@ -77,11 +127,32 @@ public class NetworkServer implements Runnable, Service {
     private State _state = State.IDLE;
 
     @Inject
-    public NetworkServer(Names names, Provider<TopicManager> topicManagerProvider, HostBindingService hostBindingService, HostNameMap hostNameMap) {
+    public NetworkServer(
+        Names names, Provider<TopicManager> topicManagerProvider,
+        Provider<ServiceManager> serviceManagerProvider,
+        HostBindingService hostBindingService, HostNameMap hostNameMap,
+        ScheduledExecutorService scheduler, NetworkConfig config)
+    {
         _names = names;
         _topicManager = topicManagerProvider;
+        _serviceManager = serviceManagerProvider;
         _hostBindingService = hostBindingService;
         _hostNameMap = hostNameMap;
+        _scheduler = scheduler;
+
+        _bufferPool = new BufferPool(config.getBufferPoolBytes());
+        _hostKey = computeHostKey();
+        _sharedMemoryRingBytes = config.getSharedMemoryRingBytes();
+        _sharedMemoryDirectory = config.getSharedMemoryDirectory() != null
+            ? new File(config.getSharedMemoryDirectory())
+            : new File("/dev/shm").isDirectory()
+            ? new File("/dev/shm")
+            : new File(System.getProperty("java.io.tmpdir"));
+        _decodeThreads = config.getDecodeThreads();
+        _loops = new SelectorLoop[config.getSelectorThreads()];
+        for (int i=0 ; i<_loops.length ; ++i) {
+            _loops[i] = new SelectorLoop("NetworkService::selector-" + i);
+        }
     }
 
     public String getHost() {
@@ -94,12 +165,282 @@ public class NetworkServer implements Runnable, Service {
 
     Names getNames() { return _names; }
 
+    ScheduledExecutorService scheduler() {
+        return _scheduler;
+    }
+
+    Executor decodeExecutor() {
+        return _decodeExecutor;
+    }
+
     TopicManager getTopicManager() {
         return _topicManager.get();
     }
 
-    ByteBuffer sharedReadBuffer() {
-        return _sharedReadBuffer;
+    ServiceManager getServiceManager() {
+        return _serviceManager.get();
+    }
+
+    public BufferPool bufferPool() {
+        return _bufferPool;
+    }
+
+    /**
+     * Computes the key that identifies this host.  The kernel's boot id
+     * is used where available, so that a key is not reused across
+     * reboots, and the host name otherwise.
+     */
+    private static String computeHostKey() {
+        String hostName;
+        try {
+            hostName = InetAddress.getLocalHost().getHostName();
+        } catch (IOException ex) {
+            hostName = "localhost";
+        }
+        try {
+            byte[] bootId = Files.readAllBytes(Paths.get("/proc/sys/kernel/random/boot_id"));
+            return hostName + "/" + new String(bootId, StandardCharsets.US_ASCII).trim();
+        } catch (IOException | RuntimeException ex) {
+            return hostName;
+        }
+    }
+
+    /**
+     * @return the key that identifies this host for the shared memory
+     * transport.
+     */
+    public String getHostKey() {
+        return _hostKey;
+    }
+
+    public boolean isSharedMemoryEnabled() {
+        return _sharedMemoryRingBytes > 0;
+    }
+
+    /**
+     * Creates the shared memory ring for a publication.
+     *
+     * @param topic the publication's topic
+     * @param md5sum the publication's md5sum
+     * @param latching true if the publication latches
+     * @return the ring
+     * @throws IOException if the ring cannot be created
+     */
+    public SharedMemoryRing createSharedMemoryRing(String topic, String md5sum, boolean latching)
+        throws IOException
+    {
+        if (!isSharedMemoryEnabled()) {
+            throw new IllegalStateException("shared memory transport is disabled");
+        }
+        String name = "jros-" + sanitize(_names.getName()) + sanitize(topic) + "-" +
+            Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".ring";
+        File file = new File(_sharedMemoryDirectory, name);
+        LOG.info("creating {} byte SHMROS ring {}", _sharedMemoryRingBytes, file);
+        return SharedMemoryRing.create(file, _sharedMemoryRingBytes, md5sum, latching);
+    }
+
+    private static String sanitize(String name) {
+        return name.replaceAll("[^A-Za-z0-9_.]", "_");
+    }
+
+    /**
+     * Connects a subscription to a publisher's shared memory ring.
+     *
+     * @param subscription the subscription
+     * @param path the path of the ring file, as reported by the publisher
+     * @param messageConsumer receives the messages
+     * @param closeListener called once when the link closes
+     * @return the link
+     * @throws IOException if the ring cannot be opened or does not
+     * match the subscription.
+     */
+    public <M extends Message> PublisherLink<M> connectSharedMemory(
+        Subscription<M> subscription, String path,
+        Consumer<M> messageConsumer, Runnable closeListener)
+        throws IOException
+    {
+        SharedMemoryRing ring = SharedMemoryRing.open(new File(path));
+        String md5sum = subscription.getMeta().getMd5sum();
+        if (!md5sum.equals(ring.getMd5sum()) && !"*".equals(md5sum) && !"*".equals(ring.getMd5sum())) {
+            throw new IOException("ring " + path + " has md5sum " + ring.getMd5sum() +
+                ", expected " + md5sum);
+        }
+        SHMROSSubscriberLink<M> link = new SHMROSSubscriberLink<>(
+            nextConnectionId(), subscription.getTopic().toString(), ring,
+            subscription.getMeta(), messageConsumer, subscription::isReadPaused, closeListener);
+        link.start();
+        return link;
+    }
+
+    /**
+     * Opens the subscriber end of a UDPROS connection.  This happens
+     * before the publisher is contacted, the caller includes
+     * {@link UDPROSSubscriberLink#getProtocolRequest()} in its
+     * requestTopic call, and must close the link if the publisher
+     * picks another protocol.
+     *
+     * @param subscription the subscription
+     * @param maxDatagramSize the largest datagram to request
+     * @param messageConsumer receives the messages
+     * @param closeListener called once when the link closes
+     * @return the link, receiving but not yet connected
+     * @throws IOException if the channel cannot be opened
+     */
+    public <M extends Message> UDPROSSubscriberLink<M> openUDP(
+        Subscription<M> subscription, int maxDatagramSize,
+        Consumer<M> messageConsumer, Runnable closeListener)
+        throws IOException
+    {
+        DatagramChannel ch = DatagramChannel.open();
+        try {
+            ch.configureBlocking(false);
+            ch.bind(new InetSocketAddress(_hostBindingService.host(), 0));
+        } catch (IOException ex) {
+            ch.close();
+            throw ex;
+        }
+        SelectorLoop loop = assignLoop();
+        UDPROSSubscriberLink<M> link = new UDPROSSubscriberLink<>(
+            this, loop, ch, _bufferPool, nextConnectionId(),
+            subscription.getTopic().toString(), subscription.getMeta(),
+            subscription.getConnectionHeader(),
+            messageConsumer, closeListener, maxDatagramSize);
+        link.register();
+        return link;
+    }
+
+    /**
+     * Handles a UDPROS requestTopic from a subscriber.  A channel
+     * connected to the subscriber is created for the link, and its
+     * address is returned so that the subscriber knows where the
+     * datagrams come from.
+     *
+     * @param topic the topic requested
+     * @param params "UDPROS", the subscriber's connection header, host,
+     *    port and maximum datagram size.
+     * @return the protocol response, or null if the request is invalid
+     *    or the topic is not published.
+     */
+    public Object[] requestUDPROS(String topic, Object[] params) {
+        if (params.length != 5 ||
+            !(params[1] instanceof byte[]) ||
+            !(params[2] instanceof String) ||
+            !(params[3] instanceof Integer) ||
+            !(params[4] instanceof Integer))
+        {
+            LOG.warn("invalid parameters for UDPROS");
+            return null;
+        }
+
+        Map<String,String> header;
+        try {
+            header = ConnectionHeader.decode((byte[])params[1]);
+        } catch (ProtocolException ex) {
+            LOG.warn("invalid UDPROS connection header", ex);
+            return null;
+        }
+        String md5sum = header.get("md5sum");
+        if (md5sum == null) {
+            LOG.warn("UDPROS connection header is missing md5sum");
+            return null;
+        }
+
+        String host = _hostNameMap.remap((String)params[2]);
+        int port = (Integer)params[3];
+        int maxDatagramSize = Math.min((Integer)params[4], MAX_UDP_DATAGRAM_SIZE);
+        if (maxDatagramSize <= UDPROSPublisherLink.HEADER_SIZE) {
+            LOG.warn("invalid UDPROS datagram size: {}", maxDatagramSize);
+            return null;
+        }
+
+        DatagramChannel ch = null;
+        try {
+            ch = DatagramChannel.open();
+            ch.configureBlocking(false);
+            ch.bind(new InetSocketAddress(_hostBindingService.host(), 0));
+            ch.connect(new InetSocketAddress(host, port));
+            return addUDPLink(topic, md5sum, header.get("callerid"), ch, maxDatagramSize);
+        } catch (IOException | IllegalStateException ex) {
+            LOG.warn("UDPROS connection for " + topic + " failed", ex);
+            if (ch != null) {
+                try {
+                    ch.close();
+                } catch (IOException ex2) {
+                    LOG.warn("error closing UDPROS channel", ex2);
+                }
+            }
+            return null;
+        }
+    }
+
+    private <M extends Message> Object[] addUDPLink(
+        String topic, String md5sum, String callerId, DatagramChannel ch, int maxDatagramSize)
+        throws IOException
+    {
+        int connectionId = nextConnectionId();
+        UDPROSPublisherLink<M> link = new UDPROSPublisherLink<>(
+            ch, connectionId, maxDatagramSize, callerId, _loops[0]::runOnSelectorThread);
+        Publication<M> pub = getTopicManager().addSubscriberLink(topic, md5sum, link);
+        link.setPublication(pub);
+
+        LOG.debug("UDPROS connection {} for {} to {}", connectionId, topic, ch.getRemoteAddress());
+
+        return new Object[] {
+            "UDPROS",
+            _host,
+            link.getLocalAddress().getPort(),
+            connectionId,
+            maxDatagramSize,
+            ConnectionHeader.toBytes(pub.getConnectionHeader())
+        };
+    }
+
+    /**
+     * @return a snapshot of each selector loop's metrics.
+     */
+    public List<SelectorLoopStats> getSelectorLoopStats() {
+        List<SelectorLoopStats> stats = new ArrayList<>(_loops.length);
+        for (SelectorLoop loop : _loops) {
+            stats.add(loop.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * @return the selector loops
+     */
+    SelectorLoop[] loops() {
+        return _loops.clone();
+    }
+
+    /**
+     * @return a new connection id, for getBusInfo and UDPROS datagram
+     * headers.
+     */
+    public int nextConnectionId() {
+        return _nextConnectionId.incrementAndGet() & Integer.MAX_VALUE;
+    }
+
+    /**
+     * Selects the loop to service a new connection.  This picks the
+     * loop with the fewest channels, starting the scan at a rotating
+     * index so that ties are broken round-robin.  The returned loop
+     * has already counted the new channel.
+     *
+     * @return the loop that will own the new channel.
+     */
+    SelectorLoop assignLoop() {
+        final int n = _loops.length;
+        final int start = (_nextLoop.getAndIncrement() & Integer.MAX_VALUE) % n;
+        SelectorLoop best = _loops[start];
+        for (int i=1 ; i<n ; ++i) {
+            SelectorLoop loop = _loops[(start + i) % n];
+            if (loop.channelCount() < best.channelCount()) {
+                best = loop;
+            }
+        }
+        best.channelAdded();
+        return best;
     }
 
     @Override
@@ -111,22 +452,23 @@ public class NetworkServer implements Runnable, Service {
                     "attempt to start server that is "+_state);
             }
 
-            _state = State.STARTING;
+            AtomicInteger decodeThreadNo = new AtomicInteger();
+            _decodeExecutor = Executors.newFixedThreadPool(_decodeThreads, (r) -> {
+                Thread thread = new Thread(r, "NetworkService::decode-" + decodeThreadNo.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            for (SelectorLoop loop : _loops) {
+                loop.start();
+            }
 
             listen(_hostBindingService.host(), 0);
 
-            _selector = Selector.open();
-            Thread thread = new Thread(this, "NetworkService::selector");
-            thread.start();
-            while (_state == State.STARTING) {
-                _startedCondition.await();
-            }
-            LOG.info("started");
+            _state = State.RUNNING;
+            LOG.info("started with {} selector thread(s)", _loops.length);
         } catch (IOException ex) {
             LOG.error("Failed to start", ex);
-        } catch (InterruptedException ex) {
-            // NOTE: interruptions may leave this in an invalid _state
-            LOG.warn("Interrupted while waiting for start", ex);
         } finally {
             _lock.unlock();
         }
@@ -140,49 +482,20 @@ public class NetworkServer implements Runnable, Service {
                 return;
             }
 
-            if (_state != State.RUNNING) {
-                LOG.error("stop called while "+_state);
-                return;
-            }
-
             try {
                 _serverSocketChannel.close();
             } catch (IOException e) {
                 LOG.warn("Error closing server socket");
             }
 
-            runOnSelectorThread(() -> {
-                _lock.lock();
-                try {
-                    if (_state != State.RUNNING) {
-                        LOG.error("bad state while stopping: "+_state);
-                    }
-
-                    _state = State.STOPPING;
-                } finally {
-                    _lock.unlock();
-                }
-
-                // need to another wakeup since actions
-                // are processed before the select call.
-                _selector.wakeup();
-            });
-
-            while (_state != State.IDLE) {
-                _stoppedCondition.await();
+            for (SelectorLoop loop : _loops) {
+                loop.stop();
             }
 
-            try {
-                _selector.close();
-            } catch (IOException ex) {
-                LOG.warn("Error closing selector", ex);
-            } finally {
-                _selector = null;
-            }
+            _decodeExecutor.shutdown();
 
+            _state = State.IDLE;
             LOG.info("stopped");
-        } catch (InterruptedException ex) {
-            LOG.warn("Interrupted while waiting to stop", ex);
         } finally {
             _serverSocketChannel = null;
             _host = null;
@@ -202,10 +515,11 @@ public class NetworkServer implements Runnable, Service {
         _serverSocketChannel.configureBlocking(false);
         _serverSocketChannel.bind(bindAddress, MAX_TCPROS_CONN_QUEUE);
 
-        runOnSelectorThread(() -> {
+        SelectorLoop acceptLoop = _loops[0];
+        acceptLoop.runOnSelectorThread(() -> {
             try {
                 TCPROSServerSocketAttachment att = new TCPROSServerSocketAttachment(NetworkServer.this);
-                _serverSocketChannel.register(_selector, SelectionKey.OP_ACCEPT, att);
+                acceptLoop.register(_serverSocketChannel, SelectionKey.OP_ACCEPT, att);
             } catch (ClosedChannelException ex) {
                 LOG.error("Failed to create server socket attachment", ex);
             }
@@ -218,153 +532,103 @@ public class NetworkServer implements Runnable, Service {
         LOG.info("listening for TCPROS on "+_host+":"+_port);
     }
 
-    SelectionKey register(SelectableChannel channel, int ops, Object att)
-        throws ClosedChannelException
-    {
-        return channel.register(_selector, ops, att);
-    }
-
-    SelectionKey keyFor(SelectableChannel channel) {
-        return channel.keyFor(_selector);
-    }
-
-    private boolean isSelectorThread() {
-        return Thread.currentThread() == _thread;
-    }
-
-    void runOnSelectorThread(Runnable r) {
-        LOG.debug("runOnSelectorThread");
-        _lock.lock();
-        try {
-            _actionQueue.add(r);
-            LOG.debug("action queue size = "+_actionQueue.size());
-            if (_selector != null && !isSelectorThread()) {
-                LOG.debug("wakeup!");
-                _selector.wakeup();
-            }
-        } finally {
-            _lock.unlock();
-        }
-    }
-
-    @Override
-    public void run() {
-        _lock.lock();
-        try {
-            _thread = Thread.currentThread();
-            _state = State.RUNNING;
-            _startedCondition.signal();
-        } finally {
-            _lock.unlock();
-        }
-
-        try {
-            selectLoop();
-        } catch (Throwable ex) {
-            LOG.error("select loop terminated with exception", ex);
-        } finally {
-            LOG.debug("select loop terminated");
-            _lock.lock();
+    /**
+     * Hands a newly accepted channel to a selector loop.  Called from
+     * the accepting loop's thread.
+     *
+     * @param ch the accepted channel, already in non-blocking mode
+     */
+    void accepted(SocketChannel ch) throws ClosedChannelException {
+        SelectorLoop loop = assignLoop();
+        TCPROSPublisherSelectorAttachment att = new TCPROSPublisherSelectorAttachment(this, loop, ch);
+        loop.runOnSelectorThread(() -> {
             try {
-                _thread = null;
-                _state = State.IDLE;
-                _stoppedCondition.signal();
-            } finally {
-                _lock.unlock();;
+                loop.register(ch, SelectionKey.OP_READ, att);
+            } catch (ClosedChannelException ex) {
+                LOG.warn("accepted channel closed before registration", ex);
+                att.close();
             }
-        }
+        });
     }
 
-    private void selectLoop() throws IOException {
-        while (_state == State.RUNNING) {
-            processActions();
-
-            int count = _selector.select();
-            LOG.debug("Selector returned with {}", count);
+    /**
+     * Opens a TCPROS connection to a publisher.
+     *
+     * @param subscription the subscription
+     * @param host the publisher's host
+     * @param port the publisher's port
+     * @param messageConsumer receives the messages
+     * @param closeListener called once when the connection closes,
+     *    including when it fails to connect.
+     * @return the link
+     * @throws IOException if the channel cannot be opened
+     */
+    public <M extends Message> PublisherLink<M> connect(
+        Subscription<M> subscription, String host, int port,
+        Consumer<M> messageConsumer, Runnable closeListener)
+        throws IOException
+    {
+        SocketChannel ch = SocketChannel.open();
+        ch.configureBlocking(false);
+        SelectorLoop loop = assignLoop();
+        TCPROSSubscriberSelectorAttachment<M> att = new TCPROSSubscriberSelectorAttachment<>(
+            subscription, this, loop, ch, messageConsumer, closeListener);
+        String hostRemap = _hostNameMap.remap(host);
 
-            processKeys();
-        }
-    }
+        loop.runOnSelectorThread(() -> {
+            try {
+                final int initialInterests = SelectionKey.OP_CONNECT | SelectionKey.OP_READ;
+                SelectionKey key = loop.register(ch, initialInterests, att);
 
-    private void processKeys() {
-        final Set<SelectionKey> keys = _selector.selectedKeys();
-        for (SelectionKey key : keys) {
-            SelectorAttachment attachment = (SelectorAttachment)key.attachment();
-            if (key.isValid()) {
-                LOG.debug("ready ops: "+
-                    (key.isAcceptable()?"A":"_")+
-                    (key.isConnectable()?"C":"_")+
-                    (key.isWritable()?"W":"_")+
-                    (key.isReadable()?"R":"_"));
-                try {
-                    if (key.isReadable()) {
-                        attachment.readable(key);
-                    }
-                    if (key.isWritable()) {
-                        attachment.writable(key);
-                    }
-                    if (key.isConnectable()) {
-                        attachment.connectable(key);
-                    }
-                    if (key.isAcceptable()) {
-                        attachment.acceptable(key);
-                    }
-                } catch (IOException | CancelledKeyException ex) {
-                    LOG.warn("non-fatal exception processing key", ex);
+                if (ch.connect(new InetSocketAddress(hostRemap, port))) {
+                    att.connectable(key);
                 }
+            } catch (IOException e) {
+                LOG.error("connect failed");
+                att.close();
             }
-        }
-        keys.clear();
-    }
-
-    private void processActions() {
-        _lock.lock();
-        try {
-            LOG.debug("processing "+_actionQueue.size()+" actions");
+        });
 
-            Runnable action;
-            while ((action = _actionQueue.poll()) != null) {
-                _lock.unlock();
-                try {
-                    // do not run actions under lock
-                    action.run();
-                } catch (Throwable ex) {
-                    LOG.error("Caught exception running action", ex);
-                } finally {
-                    _lock.lock();
-                }
-            }
-        } finally {
-            _lock.unlock();
-        }
+        return att;
     }
 
-    public <M extends Message> PublisherLink<M> connect(
-        Subscription<M> subscription, String host, int port,
-        Consumer<M> messageConsumer)
+    /**
+     * Opens a persistent TCPROS connection to a service server.  Calls
+     * may be made on the connection immediately, they are sent once it
+     * connects.
+     *
+     * @param host the server's host
+     * @param port the server's port
+     * @param service the resolved service name
+     * @param meta the service type
+     * @param executor completes the calls' futures
+     * @return the connection
+     * @throws IOException if the channel cannot be opened
+     */
+    public <Q extends Message, R extends Message> ServiceConnection<Q, R> connectService(
+        String host, int port, String service, MetaService<Q, R> meta, Executor executor)
         throws IOException
     {
         SocketChannel ch = SocketChannel.open();
         ch.configureBlocking(false);
-        TCPROSSubscriberSelectorAttachment<M> att = new TCPROSSubscriberSelectorAttachment<>(
-            subscription, this, ch, messageConsumer);
+        SelectorLoop loop = assignLoop();
+        TCPROSServiceClientSelectorAttachment<Q, R> att = new TCPROSServiceClientSelectorAttachment<>(
+            this, loop, ch, service, meta, executor);
         String hostRemap = _hostNameMap.remap(host);
 
-        runOnSelectorThread(() -> {
+        loop.runOnSelectorThread(() -> {
             try {
-                final int initialInterests = SelectionKey.OP_CONNECT | SelectionKey.OP_READ;
-                SelectionKey key = ch.register(_selector, initialInterests, att);
+                SelectionKey key = loop.register(ch, SelectionKey.OP_CONNECT, att);
 
                 if (ch.connect(new InetSocketAddress(hostRemap, port))) {
                     att.connectable(key);
                 }
             } catch (IOException e) {
-                LOG.error("connect failed");
+                LOG.error("service connect failed");
                 att.close();
             }
         });
 
         return att;
     }
-
 }
@@ -0,0 +1,221 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import edu.unc.cs.robotics.ros.msg.ByteBufferDeserializer;
+import edu.unc.cs.robotics.ros.msg.Message;
+import edu.unc.cs.robotics.ros.msg.MetaMessage;
+import edu.unc.cs.robotics.ros.topic.PublisherLink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The subscriber end of a SHMROS connection.  A dedicated thread polls
+ * the publisher's {@link SharedMemoryRing} and deserializes each message
+ * directly from the mapping.
+ *
+ * <p>There is no notification from the writer, so an idle reader backs
+ * off from spinning to sleeping in steps up to {@link #MAX_PARK_NANOS}.
+ * That bounds the added latency for a topic that has been idle.</p>
+ *
+ * <p>The writer cannot be slowed, so while the subscription's
+ * backpressure pauses reads, the reader stops polling and the writer
+ * overwrites the records it has not read.  They are counted as lapped
+ * when it resumes.</p>
+ */
+class SHMROSSubscriberLink<M extends Message> implements PublisherLink<M>, Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(SHMROSSubscriberLink.class);
+
+    /**
+     * The number of empty polls that spin before the reader starts
+     * sleeping between polls.
+     */
+    private static final int SPIN_POLLS = 100;
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final SharedMemoryRing _ring;
+    private final SharedMemoryRing.Reader _reader;
+    private final MetaMessage<M> _meta;
+    private final Consumer<M> _messageConsumer;
+    private final BooleanSupplier _readPaused;
+    private final Runnable _closeListener;
+    private final Thread _thread;
+
+    /**
+     * Only updated by the reader thread.
+     */
+    private final AtomicLong _discardedCount = new AtomicLong();
+    private final AtomicLong _messagesReceived = new AtomicLong();
+    private final AtomicLong _bytesReceived = new AtomicLong();
+    private final int _linkId;
+    private final long _createdNanos = System.nanoTime();
+    private volatile boolean _closed;
+
+    SHMROSSubscriberLink(
+        int linkId, String topic, SharedMemoryRing ring,
+        MetaMessage<M> meta, Consumer<M> messageConsumer,
+        BooleanSupplier readPaused, Runnable closeListener)
+    {
+        _linkId = linkId;
+        _ring = ring;
+        _reader = ring.newReader();
+        // the ring only records the md5sum and latching of the
+        // publication, there is no connection header to bind to.
+        Map<String,String> header = new HashMap<>();
+        header.put("md5sum", ring.getMd5sum());
+        header.put("latching", ring.isLatching() ? "1" : "0");
+        _meta = meta.forConnection(header);
+        _messageConsumer = messageConsumer;
+        _readPaused = readPaused;
+        _closeListener = closeListener;
+        _thread = new Thread(this, "SHMROS:" + topic);
+        _thread.setDaemon(true);
+    }
+
+    void start() {
+        _thread.start();
+    }
+
+    @Override
+    public void run() {
+        LOG.debug("reading {}", _ring.getFile());
+        try {
+            read();
+        } finally {
+            // also reached when an Error escapes, so that the
+            // subscription does not keep a link that no longer reads.
+            _closed = true;
+            LOG.debug("stopped reading {}", _ring.getFile());
+            _closeListener.run();
+        }
+    }
+
+    private void read() {
+        int idlePolls = 0;
+        long parkNanos = MIN_PARK_NANOS;
+
+        while (!_closed) {
+            if (_readPaused.getAsBoolean()) {
+                // readPausedChanged() unparks us, the timeout only
+                // guards against a missed change.
+                LockSupport.parkNanos(MAX_PARK_NANOS);
+                continue;
+            }
+
+            ByteBuffer buf = _reader.peek();
+            if (buf == null) {
+                if (_ring.isClosed()) {
+                    LOG.info("publisher closed ring {}", _ring.getFile());
+                    break;
+                }
+                if (++idlePolls > SPIN_POLLS) {
+                    LockSupport.parkNanos(parkNanos);
+                    parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+                }
+                continue;
+            }
+
+            idlePolls = 0;
+            parkNanos = MIN_PARK_NANOS;
+
+            final int size = buf.remaining();
+            M msg;
+            try {
+                msg = _meta.deserialize(new ByteBufferDeserializer(buf));
+            } catch (RuntimeException | Error ex) {
+                // the record may have been overwritten while it was
+                // deserialized, commit sorts out which.  A torn record
+                // can fail in any way, including an OutOfMemoryError or
+                // StackOverflowError.  An Error from an intact one is
+                // real.
+                if (!_reader.commit()) {
+                    _discardedCount.incrementAndGet();
+                } else if (ex instanceof Error) {
+                    throw (Error)ex;
+                } else {
+                    LOG.warn("failed to deserialize message from " + _ring.getFile(), ex);
+                }
+                continue;
+            }
+
+            if (!_reader.commit()) {
+                _discardedCount.incrementAndGet();
+                continue;
+            }
+
+            _messagesReceived.incrementAndGet();
+            _bytesReceived.addAndGet(size);
+            try {
+                _messageConsumer.accept(msg);
+            } catch (RuntimeException ex) {
+                LOG.error("message consumer failed", ex);
+            }
+        }
+    }
+
+    /**
+     * @return the number of messages lost because the reader fell too
+     * far behind the writer.
+     */
+    @Override
+    public long getDroppedMessageCount() {
+        return _reader.getLappedCount() + _discardedCount.get();
+    }
+
+    @Override
+    public int getConnectionId() {
+        return _linkId;
+    }
+
+    @Override
+    public String getTransport() {
+        return "SHMROS";
+    }
+
+    /**
+     * @return the path of the ring, there is no callerid.
+     */
+    @Override
+    public String getDestination() {
+        return _ring.getFile().getPath();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !_closed;
+    }
+
+    @Override
+    public long getMessageCount() {
+        return _messagesReceived.get();
+    }
+
+    @Override
+    public long getByteCount() {
+        return _bytesReceived.get();
+    }
+
+    @Override
+    public long getCreatedNanos() {
+        return _createdNanos;
+    }
+
+    @Override
+    public void readPausedChanged() {
+        LockSupport.unpark(_thread);
+    }
+
+    @Override
+    public void close() {
+        _closed = true;
+        LockSupport.unpark(_thread);
+    }
+}
@@ -19,4 +19,13 @@ interface SelectorAttachment {
     default void acceptable(SelectionKey key) throws IOException {
 
     }
+
+    /**
+     * Called on the selector thread after
+     * {@link SelectorLoop#interestsChanged(SelectorAttachment)} to
+     * recompute the attachment's interest ops.
+     */
+    default void updateInterests() {
+
+    }
 }
@@ -0,0 +1,408 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single selector and the thread that services it.  The
+ * {@link NetworkServer} runs one or more of these, and every channel
+ * is registered with exactly one loop for its lifetime.  All I/O
+ * callbacks for a channel, and all actions submitted through
+ * {@link #runOnSelectorThread(Runnable)}, run on the loop's thread.
+ *
+ * <p>Submitting actions and interest changes is lock-free.  Any number
+ * of submissions made between two selects cost at most one
+ * {@link Selector#wakeup()}.</p>
+ */
+class SelectorLoop implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(SelectorLoop.class);
+
+    private static final int SHARED_READ_BUFFER_SIZE = 65536;
+
+    enum State {
+        IDLE,
+        STARTING,
+        RUNNING,
+        STOPPING
+    }
+
+    private final String _name;
+
+    private final Lock _lock = new ReentrantLock();
+    private final Condition _startedCondition = _lock.newCondition();
+    private final Condition _stoppedCondition = _lock.newCondition();
+
+    private final Queue<Runnable> _actionQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Attachments whose interest ops need to be recomputed.  Callers
+     * are expected to add an attachment at most once until its
+     * {@link SelectorAttachment#updateInterests()} runs.
+     */
+    private final Queue<SelectorAttachment> _dirtyInterests = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Set when a wakeup has been issued for the current (or upcoming)
+     * select, and cleared by the loop before it drains its queues.
+     * While set, further submissions do not need to wake the selector
+     * since the loop will see them before it selects again.
+     */
+    private final AtomicBoolean _wakeupPending = new AtomicBoolean();
+
+    /**
+     * The read buffer shared by all attachments on this loop.  Since
+     * reads only happen on this loop's thread, one buffer suffices.
+     */
+    private final ByteBuffer _sharedReadBuffer = ByteBuffer.allocateDirect(SHARED_READ_BUFFER_SIZE)
+        .order(NetworkServer.ROS_BYTE_ORDER);
+
+    /**
+     * The number of channels currently owned by this loop.  Used by
+     * the server to balance new connections across loops.
+     */
+    private final AtomicInteger _channelCount = new AtomicInteger();
+
+    /**
+     * Actions submitted but not yet run.  ConcurrentLinkedQueue.size()
+     * walks the queue, so the depth is counted separately.
+     */
+    private final AtomicInteger _actionQueueDepth = new AtomicInteger();
+
+    // metrics, only updated by the loop's thread, see add()
+    private final AtomicLong _selects = new AtomicLong();
+    private final AtomicLong _selectNanos = new AtomicLong();
+    private final AtomicLong _keysProcessed = new AtomicLong();
+    private final AtomicLong _actionsRun = new AtomicLong();
+    private final AtomicLong _callbackNanos = new AtomicLong();
+    private final AtomicInteger _maxActionQueueDepth = new AtomicInteger();
+
+    private volatile Selector _selector;
+    private volatile Thread _thread;
+
+    private State _state = State.IDLE;
+
+    SelectorLoop(String name) {
+        _name = name;
+    }
+
+    ByteBuffer sharedReadBuffer() {
+        return _sharedReadBuffer;
+    }
+
+    int channelCount() {
+        return _channelCount.get();
+    }
+
+    void start() throws IOException {
+        _lock.lock();
+        try {
+            if (_state != State.IDLE) {
+                throw new IllegalStateException(
+                    "attempt to start selector loop that is "+_state);
+            }
+
+            _state = State.STARTING;
+            _selector = Selector.open();
+            Thread thread = new Thread(this, _name);
+            thread.start();
+            while (_state == State.STARTING) {
+                _startedCondition.await();
+            }
+        } catch (InterruptedException ex) {
+            // NOTE: interruptions may leave this in an invalid _state
+            LOG.warn("Interrupted while waiting for start", ex);
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    void stop() {
+        _lock.lock();
+        try {
+            if (_state == State.IDLE) {
+                return;
+            }
+
+            if (_state != State.RUNNING) {
+                LOG.error("stop called while "+_state);
+                return;
+            }
+
+            runOnSelectorThread(() -> {
+                _lock.lock();
+                try {
+                    if (_state != State.RUNNING) {
+                        LOG.error("bad state while stopping: "+_state);
+                    }
+
+                    _state = State.STOPPING;
+                } finally {
+                    _lock.unlock();
+                }
+
+                // need to another wakeup since actions
+                // are processed before the select call.
+                _selector.wakeup();
+            });
+
+            while (_state != State.IDLE) {
+                _stoppedCondition.await();
+            }
+
+            try {
+                _selector.close();
+            } catch (IOException ex) {
+                LOG.warn("Error closing selector", ex);
+            } finally {
+                _selector = null;
+            }
+        } catch (InterruptedException ex) {
+            LOG.warn("Interrupted while waiting to stop", ex);
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Registers a channel with this loop's selector.  This must be
+     * called on this loop's thread, otherwise it may block until the
+     * current select returns.
+     */
+    SelectionKey register(SelectableChannel channel, int ops, Object att)
+        throws ClosedChannelException
+    {
+        assert isSelectorThread();
+        return channel.register(_selector, ops, att);
+    }
+
+    /**
+     * Called when a channel is assigned to this loop.  The count is
+     * updated at assignment rather than registration so that a burst
+     * of connections is balanced before any of them are registered.
+     */
+    void channelAdded() {
+        _channelCount.incrementAndGet();
+    }
+
+    /**
+     * Called when a channel assigned to this loop is closed.
+     */
+    void channelRemoved() {
+        _channelCount.decrementAndGet();
+    }
+
+    SelectionKey keyFor(SelectableChannel channel) {
+        return channel.keyFor(_selector);
+    }
+
+    /**
+     * @return the keys of the channels registered with this loop.  Must
+     * be called on this loop's thread.
+     */
+    Set<SelectionKey> keys() {
+        assert isSelectorThread();
+        return _selector.keys();
+    }
+
+    boolean isSelectorThread() {
+        return Thread.currentThread() == _thread;
+    }
+
+    /**
+     * Queues an action to run on this loop's thread before its next
+     * select.  Safe to call from any thread.
+     */
+    void runOnSelectorThread(Runnable r) {
+        _actionQueueDepth.incrementAndGet();
+        _actionQueue.add(r);
+        wakeup();
+    }
+
+    /**
+     * Requests that the attachment's interest ops be recomputed on this
+     * loop's thread before the next select.  Changes requested between
+     * two selects are applied together in one batch.  Safe to call from
+     * any thread.
+     */
+    void interestsChanged(SelectorAttachment attachment) {
+        _dirtyInterests.add(attachment);
+        wakeup();
+    }
+
+    private void wakeup() {
+        // the selector thread checks the queues before it selects, so
+        // it never needs to wake itself.
+        if (!isSelectorThread() && _wakeupPending.compareAndSet(false, true)) {
+            Selector selector = _selector;
+            if (selector != null) {
+                selector.wakeup();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        _lock.lock();
+        try {
+            _thread = Thread.currentThread();
+            _state = State.RUNNING;
+            _startedCondition.signal();
+        } finally {
+            _lock.unlock();
+        }
+
+        try {
+            selectLoop();
+        } catch (Throwable ex) {
+            LOG.error("select loop terminated with exception", ex);
+        } finally {
+            LOG.debug("select loop terminated");
+            _lock.lock();
+            try {
+                _thread = null;
+                _state = State.IDLE;
+                _stoppedCondition.signal();
+            } finally {
+                _lock.unlock();
+            }
+        }
+    }
+
+    private void selectLoop() throws IOException {
+        while (_state == State.RUNNING) {
+            // clear the flag before draining so that anything submitted
+            // after this point issues a new wakeup.
+            _wakeupPending.set(false);
+
+            final long start = System.nanoTime();
+            processActions();
+            processInterestChanges();
+
+            final long selectStart = System.nanoTime();
+            int count;
+            if (_actionQueue.isEmpty() && _dirtyInterests.isEmpty()) {
+                count = _selector.select();
+            } else {
+                // work was submitted from this thread while draining
+                count = _selector.selectNow();
+            }
+            final long selectEnd = System.nanoTime();
+            LOG.debug("Selector returned with {}", count);
+
+            processKeys();
+
+            add(_selects, 1);
+            add(_selectNanos, selectEnd - selectStart);
+            add(_keysProcessed, count);
+            add(_callbackNanos, (selectStart - start) + (System.nanoTime() - selectEnd));
+        }
+    }
+
+    /**
+     * Adds to a counter only the loop's thread updates.  With a single
+     * writer there is no need for an atomic add, and an ordered store
+     * is enough for readers on other threads.
+     */
+    private static void add(AtomicLong counter, long delta) {
+        counter.lazySet(counter.get() + delta);
+    }
+
+    /**
+     * @return a snapshot of this loop's metrics.
+     */
+    SelectorLoopStats stats() {
+        return new SelectorLoopStats(
+            _name,
+            _channelCount.get(),
+            _selects.get(),
+            _selectNanos.get(),
+            _keysProcessed.get(),
+            _actionsRun.get(),
+            _actionQueueDepth.get(),
+            _maxActionQueueDepth.get(),
+            _callbackNanos.get());
+    }
+
+    private void processKeys() {
+        final Set<SelectionKey> keys = _selector.selectedKeys();
+        for (SelectionKey key : keys) {
+            SelectorAttachment attachment = (SelectorAttachment)key.attachment();
+            if (key.isValid()) {
+                LOG.debug("ready ops: "+
+                    (key.isAcceptable()?"A":"_")+
+                    (key.isConnectable()?"C":"_")+
+                    (key.isWritable()?"W":"_")+
+                    (key.isReadable()?"R":"_"));
+                try {
+                    // each callback may close the channel, which
+                    // cancels the key before the next is checked.
+                    if (key.isReadable()) {
+                        attachment.readable(key);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        attachment.writable(key);
+                    }
+                    if (key.isValid() && key.isConnectable()) {
+                        attachment.connectable(key);
+                    }
+                    if (key.isValid() && key.isAcceptable()) {
+                        attachment.acceptable(key);
+                    }
+                } catch (IOException | CancelledKeyException ex) {
+                    LOG.warn("non-fatal exception processing key", ex);
+                }
+            }
+        }
+        keys.clear();
+    }
+
+    private void processActions() {
+        int depth = _actionQueueDepth.get();
+        if (depth > _maxActionQueueDepth.get()) {
+            _maxActionQueueDepth.lazySet(depth);
+        }
+
+        Runnable action;
+        long run = 0;
+        while ((action = _actionQueue.poll()) != null) {
+            _actionQueueDepth.decrementAndGet();
+            ++run;
+            try {
+                action.run();
+            } catch (Throwable ex) {
+                LOG.error("Caught exception running action", ex);
+            }
+        }
+        add(_actionsRun, run);
+    }
+
+    private void processInterestChanges() {
+        SelectorAttachment attachment;
+        while ((attachment = _dirtyInterests.poll()) != null) {
+            try {
+                attachment.updateInterests();
+            } catch (CancelledKeyException ex) {
+                LOG.debug("key cancelled before interest update", ex);
+            } catch (Throwable ex) {
+                LOG.error("Caught exception updating interests", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package edu.unc.cs.robotics.ros.network;
+
+/**
+ * A snapshot of one selector loop's metrics.  Counts and times are
+ * totals since the loop was created.
+ */
+public final class SelectorLoopStats {
+    private final String _name;
+    private final int _channelCount;
+    private final long _selectCount;
+    private final long _selectNanos;
+    private final long _keysProcessed;
+    private final long _actionsRun;
+    private final int _actionQueueDepth;
+    private final int _maxActionQueueDepth;
+    private final long _callbackNanos;
+
+    SelectorLoopStats(
+        String name, int channelCount, long selectCount, long selectNanos,
+        long keysProcessed, long actionsRun, int actionQueueDepth,
+        int maxActionQueueDepth, long callbackNanos)
+    {
+        _name = name;
+        _channelCount = channelCount;
+        _selectCount = selectCount;
+        _selectNanos = selectNanos;
+        _keysProcessed = keysProcessed;
+        _actionsRun = actionsRun;
+        _actionQueueDepth = actionQueueDepth;
+        _maxActionQueueDepth = maxActionQueueDepth;
+        _callbackNanos = callbackNanos;
+    }
+
+    /**
+     * @return the name of the loop's thread.
+     */
+    public String getName() {
+        return _name;
+    }
+
+    public int getChannelCount() {
+        return _channelCount;
+    }
+
+    public long getSelectCount() {
+        return _selectCount;
+    }
+
+    /**
+     * @return the time spent waiting in select.
+     */
+    public long getSelectNanos() {
+        return _selectNanos;
+    }
+
+    /**
+     * @return the number of ready keys returned by select.
+     */
+    public long getKeysProcessed() {
+        return _keysProcessed;
+    }
+
+    public long getActionsRun() {
+        return _actionsRun;
+    }
+
+    /**
+     * @return the number of actions waiting to run.
+     */
+    public int getActionQueueDepth() {
+        return _actionQueueDepth;
+    }
+
+    /**
+     * @return the most actions found waiting when the loop drained its
+     * queue.
+     */
+    public int getMaxActionQueueDepth() {
+        return _maxActionQueueDepth;
+    }
+
+    /**
+     * @return the time spent running actions, interest changes and I/O
+     * callbacks.
+     */
+    public long getCallbackNanos() {
+        return _callbackNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SelectorLoopStats{" +
+            "name=" + _name +
+            ", channels=" + _channelCount +
+            ", selects=" + _selectCount +
+            ", selectNanos=" + _selectNanos +
+            ", keys=" + _keysProcessed +
+            ", actions=" + _actionsRun +
+            ", actionQueueDepth=" + _actionQueueDepth +
+            ", maxActionQueueDepth=" + _maxActionQueueDepth +
+            ", callbackNanos=" + _callbackNanos +
+            '}';
+    }
+}
@@ -0,0 +1,103 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs tasks one at a time, in submission order, on a shared executor.
+ * Many serial executors can share one pool, each link getting its own,
+ * so that work for a link stays ordered while different links run in
+ * parallel.  Submission is lock-free.
+ *
+ * <p>A busy executor gives up its thread after a batch of tasks and
+ * resubmits itself, so that one link cannot starve the others.</p>
+ */
+final class SerialExecutor implements Executor {
+    private static final Logger LOG = LoggerFactory.getLogger(SerialExecutor.class);
+
+    private static final int MAX_BATCH = 64;
+
+    private final Executor _executor;
+    /**
+     * Called with each task dropped because the executor rejected the
+     * drain, e.g., to release what the task holds.
+     */
+    private final Consumer<Runnable> _discard;
+    private final Queue<Runnable> _tasks = new ConcurrentLinkedQueue<>();
+    /**
+     * The number of tasks submitted and not yet run.  Whoever raises it
+     * from 0 schedules the drain.
+     */
+    private final AtomicInteger _pending = new AtomicInteger();
+
+    SerialExecutor(Executor executor) {
+        this(executor, task -> {});
+    }
+
+    /**
+     * @param executor the shared executor
+     * @param discard called with each task that is dropped instead of
+     *   run because the executor is shutting down
+     */
+    SerialExecutor(Executor executor, Consumer<Runnable> discard) {
+        _executor = executor;
+        _discard = discard;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        _tasks.add(task);
+        if (_pending.getAndIncrement() == 0) {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        try {
+            _executor.execute(this::drain);
+        } catch (RejectedExecutionException ex) {
+            // shutting down, the remaining tasks are dropped.  Dropping
+            // them as a drain would run them leaves _pending at 0, so a
+            // later task tries to schedule again instead of queueing
+            // behind a drain that never runs.
+            LOG.debug("serial executor rejected, dropping {} tasks", _pending.get());
+            do {
+                // a task is always added before _pending is incremented,
+                // so there is one to poll.
+                _discard.accept(_tasks.poll());
+            } while (_pending.decrementAndGet() != 0);
+        }
+    }
+
+    private void drain() {
+        boolean more = true;
+        try {
+            for (int n = 0 ; more && n < MAX_BATCH ; ++n) {
+                // a task is always added before _pending is incremented,
+                // so there is one to poll.
+                Runnable task = _tasks.poll();
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    LOG.error("serial task failed", ex);
+                } finally {
+                    more = _pending.decrementAndGet() != 0;
+                }
+            }
+        } finally {
+            // after a full batch, and also when a task throws an Error,
+            // which would otherwise leave the remaining tasks without a
+            // drain.
+            if (more) {
+                schedule();
+            }
+        }
+    }
+}
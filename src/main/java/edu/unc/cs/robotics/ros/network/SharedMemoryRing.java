@@ -0,0 +1,442 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single-writer, multi-reader ring buffer of serialized messages in a
+ * memory-mapped file.  This is the storage for the SHMROS transport: a
+ * publication writes each message once, and subscribers in other
+ * processes on the same host read it directly from the mapping.
+ *
+ * <p>The file starts with a fixed header followed by the data region.
+ * Positions are byte counts since the ring was created and only ever
+ * increase, the offset into the data region is the position modulo the
+ * capacity.  Each record is a TCPROS frame (a 4-byte length followed by
+ * the message) padded to a multiple of 8 bytes.  A length of -1 marks
+ * the rest of the data region as unused, and the next record starts at
+ * offset 0.</p>
+ *
+ * <p>Readers do not lock or register with the writer.  The writer
+ * publishes the end of the record it is about to write (the reserve
+ * position) before writing it, and the end of the last complete record
+ * (the write position) after.  A reader reads a record, then checks the
+ * reserve position to verify that the writer has not lapped it and
+ * overwritten the record in the meantime.  A reader that falls more
+ * than the capacity behind skips to the newest record.</p>
+ *
+ * <p>Header layout (little endian):</p>
+ * <pre>
+ *  0  int   magic
+ *  4  int   version
+ *  8  int   capacity of the data region
+ * 12  int   flags (FLAG_CLOSED, FLAG_LATCHING)
+ * 16  long  reserve position
+ * 24  long  write position
+ * 32  long  start of the last complete record
+ * 40  32 bytes  md5sum of the message type
+ * </pre>
+ */
+public final class SharedMemoryRing {
+    private static final Logger LOG = LoggerFactory.getLogger(SharedMemoryRing.class);
+
+    private static final int MAGIC = 0x4d48534a; // "JSHM"
+    private static final int VERSION = 1;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int FLAGS_OFFSET = 12;
+    private static final int RESERVE_POS_OFFSET = 16;
+    private static final int WRITE_POS_OFFSET = 24;
+    private static final int LAST_RECORD_OFFSET = 32;
+    private static final int MD5SUM_OFFSET = 40;
+    private static final int MD5SUM_LENGTH = 32;
+    static final int HEADER_SIZE = 128;
+
+    static final int FLAG_CLOSED = 1;
+    static final int FLAG_LATCHING = 2;
+
+    private static final int WRAP_MARKER = -1;
+
+    private final File _file;
+    private final MappedByteBuffer _map;
+    private final ByteBuffer _data;
+    private final int _capacity;
+    private final boolean _writer;
+
+    /**
+     * Writer state, only used by the (single) writer.
+     */
+    private long _writePos;
+    private long _oversizeCount;
+
+    private SharedMemoryRing(File file, MappedByteBuffer map, boolean writer) {
+        _file = file;
+        _map = map;
+        _map.order(NetworkServer.ROS_BYTE_ORDER);
+        _capacity = map.getInt(CAPACITY_OFFSET);
+        _map.position(HEADER_SIZE);
+        _data = _map.slice().order(NetworkServer.ROS_BYTE_ORDER);
+        _map.position(0);
+        _writer = writer;
+    }
+
+    /**
+     * Creates a new ring file for writing.
+     *
+     * @param file the file to create, it must not exist.
+     * @param capacity the size of the data region, rounded down to a
+     *   multiple of 8.
+     * @param md5sum the md5sum of the message type
+     * @param latching true if readers should start with the last
+     *   message written before they connected.
+     * @return the ring
+     * @throws IOException if the file cannot be created or mapped.
+     */
+    public static SharedMemoryRing create(
+        File file, int capacity, String md5sum, boolean latching)
+        throws IOException
+    {
+        capacity &= ~7;
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity too small");
+        }
+        if (!file.createNewFile()) {
+            throw new IOException("ring file already exists: " + file);
+        }
+        file.deleteOnExit();
+
+        MappedByteBuffer map;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long)capacity);
+        }
+        map.order(NetworkServer.ROS_BYTE_ORDER);
+        map.putInt(VERSION_OFFSET, VERSION);
+        map.putInt(CAPACITY_OFFSET, capacity);
+        map.putInt(FLAGS_OFFSET, latching ? FLAG_LATCHING : 0);
+        map.putLong(RESERVE_POS_OFFSET, 0);
+        map.putLong(WRITE_POS_OFFSET, 0);
+        map.putLong(LAST_RECORD_OFFSET, -1);
+        byte[] md5 = md5sum.getBytes(StandardCharsets.US_ASCII);
+        for (int i=0 ; i<MD5SUM_LENGTH ; ++i) {
+            map.put(MD5SUM_OFFSET + i, i < md5.length ? md5[i] : 0);
+        }
+        Fences.storeFence();
+        // the magic goes last, a reader that sees it sees the rest.
+        map.putInt(MAGIC_OFFSET, MAGIC);
+
+        return new SharedMemoryRing(file, map, true);
+    }
+
+    /**
+     * Opens an existing ring file for reading.
+     *
+     * @param file the ring file
+     * @return the ring
+     * @throws IOException if the file cannot be opened or is not a ring.
+     */
+    public static SharedMemoryRing open(File file) throws IOException {
+        MappedByteBuffer map;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long size = raf.length();
+            if (size < HEADER_SIZE) {
+                throw new IOException("not a ring file: " + file);
+            }
+            map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        map.order(NetworkServer.ROS_BYTE_ORDER);
+        if (map.getInt(MAGIC_OFFSET) != MAGIC) {
+            throw new IOException("not a ring file: " + file);
+        }
+        Fences.loadFence();
+        if (map.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IOException("unsupported ring version "+map.getInt(VERSION_OFFSET)+": " + file);
+        }
+        int capacity = map.getInt(CAPACITY_OFFSET);
+        if (capacity <= 0 || (capacity & 7) != 0 || HEADER_SIZE + (long)capacity > map.capacity()) {
+            throw new IOException("corrupt ring header: " + file);
+        }
+        return new SharedMemoryRing(file, map, false);
+    }
+
+    public File getFile() {
+        return _file;
+    }
+
+    public int getCapacity() {
+        return _capacity;
+    }
+
+    public String getMd5sum() {
+        byte[] md5 = new byte[MD5SUM_LENGTH];
+        int n = 0;
+        while (n < MD5SUM_LENGTH && _map.get(MD5SUM_OFFSET + n) != 0) {
+            md5[n] = _map.get(MD5SUM_OFFSET + n);
+            ++n;
+        }
+        return new String(md5, 0, n, StandardCharsets.US_ASCII);
+    }
+
+    boolean isClosed() {
+        return (_map.getInt(FLAGS_OFFSET) & FLAG_CLOSED) != 0;
+    }
+
+    boolean isLatching() {
+        return (_map.getInt(FLAGS_OFFSET) & FLAG_LATCHING) != 0;
+    }
+
+    /**
+     * @return the number of frames that could not be written because
+     * they were larger than the ring.
+     */
+    public long getOversizeCount() {
+        return _oversizeCount;
+    }
+
+    private static int recordSize(int frameSize) {
+        return (frameSize + 7) & ~7;
+    }
+
+    /**
+     * Writes a frame to the ring.  Only the creator of the ring may
+     * write, and writes must not be concurrent.
+     *
+     * @param frame a TCPROS frame, a 4-byte length and the message.
+     *   Its position is not modified.
+     * @return false if the frame is too large for the ring.
+     */
+    public boolean write(ByteBuffer frame) {
+        if (!_writer) {
+            throw new IllegalStateException("ring is read-only");
+        }
+
+        final int frameSize = frame.remaining();
+        final int recordSize = recordSize(frameSize);
+        if (recordSize > _capacity) {
+            if (_oversizeCount++ == 0) {
+                LOG.warn("{} byte message does not fit in {} byte ring {}",
+                    frameSize, _capacity, _file);
+            }
+            return false;
+        }
+
+        long pos = _writePos;
+        int offset = (int)(pos % _capacity);
+        if (offset + recordSize > _capacity) {
+            // does not fit before the end, mark the remainder unused
+            // and start at the beginning.
+            long wrapped = pos + (_capacity - offset);
+            _map.putLong(RESERVE_POS_OFFSET, wrapped + recordSize);
+            Fences.storeFence();
+            _data.putInt(offset, WRAP_MARKER);
+            pos = wrapped;
+            offset = 0;
+        } else {
+            _map.putLong(RESERVE_POS_OFFSET, pos + recordSize);
+            Fences.storeFence();
+        }
+
+        ByteBuffer dst = _data.duplicate();
+        dst.position(offset);
+        dst.put(frame.duplicate());
+
+        Fences.storeFence();
+        _map.putLong(LAST_RECORD_OFFSET, pos);
+        _writePos = pos + recordSize;
+        _map.putLong(WRITE_POS_OFFSET, _writePos);
+        return true;
+    }
+
+    /**
+     * Marks the ring closed so that readers stop, and deletes its file.
+     * Readers that have it mapped may continue to read what was written.
+     */
+    public void close() {
+        if (_writer) {
+            _map.putInt(FLAGS_OFFSET, _map.getInt(FLAGS_OFFSET) | FLAG_CLOSED);
+            if (!_file.delete()) {
+                LOG.warn("failed to delete ring file {}", _file);
+            }
+        }
+    }
+
+    /**
+     * Creates a cursor for reading this ring.  A new cursor starts
+     * after the last record written, or at the last record if the ring
+     * is latching.
+     */
+    Reader newReader() {
+        return new Reader();
+    }
+
+    /**
+     * A read cursor.  Each reader is used by one thread.
+     */
+    final class Reader {
+        private long _readPos;
+        private int _peekedSize;
+        /**
+         * Only written by the reading thread, volatile so that it can
+         * be reported from others.
+         */
+        private volatile long _lappedCount;
+
+        private Reader() {
+            long writePos = _map.getLong(WRITE_POS_OFFSET);
+            Fences.loadFence();
+            long lastRecord = _map.getLong(LAST_RECORD_OFFSET);
+            _readPos = (isLatching() && lastRecord >= 0 && writePos - lastRecord <= _capacity)
+                ? lastRecord
+                : writePos;
+        }
+
+        /**
+         * @return the number of times the reader fell too far behind
+         * and skipped ahead, losing messages.
+         */
+        long getLappedCount() {
+            return _lappedCount;
+        }
+
+        /**
+         * Returns a view of the message in the next record without
+         * consuming it.  The view is only valid until the writer laps
+         * it, callers must check {@link #commit()} after using it.
+         *
+         * @return the message bytes (without the length prefix), or
+         * null if no complete record is available.
+         */
+        ByteBuffer peek() {
+            for (;;) {
+                long writePos = _map.getLong(WRITE_POS_OFFSET);
+                Fences.loadFence();
+                if (_readPos == writePos) {
+                    return null;
+                }
+                if (writePos - _readPos > _capacity || writePos < _readPos) {
+                    skipToLatest();
+                    continue;
+                }
+
+                int offset = (int)(_readPos % _capacity);
+                int length = _data.getInt(offset);
+                if (length == WRAP_MARKER) {
+                    _readPos += _capacity - offset;
+                    continue;
+                }
+                if (length < 0 || length > _capacity - offset - 4) {
+                    // torn by a concurrent overwrite
+                    skipToLatest();
+                    continue;
+                }
+
+                _peekedSize = recordSize(length + 4);
+                ByteBuffer view = _data.duplicate();
+                view.limit(offset + 4 + length);
+                view.position(offset + 4);
+                return view.slice().order(NetworkServer.ROS_BYTE_ORDER);
+            }
+        }
+
+        /**
+         * Consumes the record returned by the last {@link #peek()}.
+         *
+         * @return true if the record was intact for the whole time
+         * since it was peeked, false if the writer may have overwritten
+         * it, in which case it must be discarded.
+         */
+        boolean commit() {
+            Fences.loadFence();
+            long reservePos = _map.getLong(RESERVE_POS_OFFSET);
+            if (reservePos - _readPos > _capacity) {
+                skipToLatest();
+                return false;
+            }
+            _readPos += _peekedSize;
+            return true;
+        }
+
+        /**
+         * Moves the cursor to the newest complete record.  If that too
+         * is overwritten before it is read, commit will call this again.
+         */
+        private void skipToLatest() {
+            ++_lappedCount;
+            long lastRecord = _map.getLong(LAST_RECORD_OFFSET);
+            Fences.loadFence();
+            long pos = lastRecord >= 0 ? lastRecord : _map.getLong(WRITE_POS_OFFSET);
+            LOG.debug("reader lapped in {}, skipping to {}", _file, pos);
+            _readPos = pos;
+        }
+    }
+
+    /**
+     * Memory fences for the mapped header.  The mapped memory is shared
+     * with other processes, and the JMM says nothing about the order in
+     * which its plain accesses become visible there, so these order the
+     * CPU's and compiler's loads and stores directly with
+     * {@code sun.misc.Unsafe}, which has them from Java 8 on.
+     *
+     * <p>Without Unsafe, both fall back to a volatile write followed by
+     * a volatile read.  The JMM does not make that a fence for other
+     * memory.  It only works because HotSpot implements a volatile
+     * store with a full fence after it, which neither the compiler nor
+     * the CPU moves memory accesses across.</p>
+     */
+    static final class Fences {
+        private static final sun.misc.Unsafe UNSAFE;
+        private static volatile int _fallback;
+
+        static {
+            sun.misc.Unsafe unsafe = null;
+            try {
+                Field f = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
+                f.setAccessible(true);
+                unsafe = (sun.misc.Unsafe)f.get(null);
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                LOG.warn("memory fences unavailable, relying on volatile accesses", ex);
+            }
+            UNSAFE = unsafe;
+        }
+
+        private Fences() {
+        }
+
+        /**
+         * Stores before the fence become visible before stores after it.
+         */
+        static void storeFence() {
+            if (UNSAFE != null) {
+                UNSAFE.storeFence();
+            } else {
+                fallback();
+            }
+        }
+
+        /**
+         * Loads before the fence complete before loads after it.
+         */
+        static void loadFence() {
+            if (UNSAFE != null) {
+                UNSAFE.loadFence();
+            } else {
+                fallback();
+            }
+        }
+
+        private static void fallback() {
+            _fallback = 0;
+            int ignored = _fallback;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package edu.unc.cs.robotics.ros.network;
+
+import edu.unc.cs.robotics.ros.msg.Message;
+
+/**
+ * Predicts the serialized size of the next message of a type from the
+ * sizes of the previous ones, so that a {@link GrowableBufferSerializer}
+ * rarely has to grow.  One predictor is kept per publication (or
+ * service connection) and reused for every message.  Types that
+ * declare {@link Message#getFixedSize()} need no prediction.
+ *
+ * <p>The prediction follows the largest recent size: it rises at once,
+ * and decays slowly when messages get smaller.  Updates are racy, which
+ * only affects the quality of the guess.</p>
+ */
+public final class SizePredictor {
+    private volatile int _predicted;
+
+    /**
+     * @param msg the message about to be serialized
+     * @return the predicted number of bytes
+     */
+    public int predict(Message msg) {
+        int fixed = msg.getFixedSize();
+        return fixed >= 0 ? fixed : _predicted;
+    }
+
+    /**
+     * Records the actual size of a serialized message.
+     *
+     * @param size the number of bytes
+     */
+    public void record(int size) {
+        int predicted = _predicted;
+        if (size > predicted) {
+            _predicted = size;
+        } else if (size < predicted - (predicted >> 2)) {
+            _predicted = predicted - (predicted >> 3);
+        }
+    }
+}
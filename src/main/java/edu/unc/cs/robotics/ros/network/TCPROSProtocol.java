@@ -2,11 +2,7 @@ package edu.unc.cs.robotics.ros.network;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.CharBuffer;
-import java.nio.charset.CharacterCodingException;
-import java.nio.charset.Charset;
-import java.nio.charset.CharsetDecoder;
-import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 
 import edu.unc.cs.robotics.ros.protocol.Protocol;
 import edu.unc.cs.robotics.ros.protocol.ProtocolException;
@@ -19,21 +15,64 @@ import org.slf4j.LoggerFactory;
 class TCPROSProtocol implements Protocol {
     private static final Logger LOG = LoggerFactory.getLogger(TCPROSProtocol.class);
 
-    private static final int DEFAULT_INITIAL_PACKET_BUFFER_SIZE = 512;
-    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    /**
+     * The largest message accepted from a peer.
+     */
+    static final int MAX_MESSAGE_LENGTH = 10*1024*1024;
 
     private enum State {
         INITIAL,
         HEADER,
         FIELD,
         STREAM,
+        MESSAGE_LENGTH,
         MESSAGE,
         ERROR,
     }
     interface Delegate {
-        void headerRecv(String name, String value);
+        /**
+         * Receives a known header field.  Only called for fields that
+         * {@link #wantsField(HeaderField)}.
+         *
+         * @param field the field
+         * @param value the field's value
+         */
+        void headerRecv(HeaderField field, String value);
+
+        /**
+         * Called for each known field before its value is decoded.
+         * The default skips the message definition, since it can be
+         * many KB and is rarely needed.
+         *
+         * @param field the field
+         * @return true to receive the field's value
+         */
+        default boolean wantsField(HeaderField field) {
+            return field != HeaderField.MESSAGE_DEFINITION;
+        }
+
+        /**
+         * Receives a header field that is not a {@link HeaderField}.
+         */
+        default void unknownHeaderRecv(String name, String value) {
+            LOG.warn("unknown header received: [{}] = [{}]", name, value);
+        }
+
         void headersDone();
         void messageRecv(ByteBuffer buf);
+
+        /**
+         * Receives a service response.  Only called after
+         * {@link TCPROSProtocol#expectServiceResponses()}, instead of
+         * {@link #messageRecv(ByteBuffer)}.
+         *
+         * @param ok true if the call succeeded, false if the buffer
+         *    holds the server's error message.
+         * @param buf the response
+         */
+        default void serviceResponseRecv(boolean ok, ByteBuffer buf) {
+            throw new UnsupportedOperationException();
+        }
     }
 
 
@@ -44,22 +83,74 @@ class TCPROSProtocol implements Protocol {
     private int _fieldLength;
     private int _messageLength;
 
+    /**
+     * True when each message is preceded by a 1-byte status, as are
+     * the responses on a service client connection.
+     */
+    private boolean _serviceResponses;
+    private boolean _serviceOk;
+
+    /**
+     * True while a partial packet is being accumulated in _packetBuffer.
+     */
     private boolean _packetBuffered;
 
-    private CharsetDecoder _charsetDecoder = US_ASCII.newDecoder()
-        .onMalformedInput(CodingErrorAction.REPLACE)
-        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    /**
+     * Scratch space used to decode values from direct buffers.  Only
+     * used while reading the headers.
+     */
+    private byte[] _fieldBytes;
+
+    private final BufferPool _pool;
 
+    /**
+     * Buffer borrowed from the pool to accumulate a packet that spans
+     * more than one read.  It is only held from the time the first
+     * partial read arrives until the packet has been processed, and
+     * is null otherwise.
+     */
     private ByteBuffer _packetBuffer;
 
-    TCPROSProtocol(Delegate delegate) {
-        this(delegate, DEFAULT_INITIAL_PACKET_BUFFER_SIZE);
+    TCPROSProtocol(Delegate delegate, BufferPool pool) {
+        _delegate = delegate;
+        _pool = pool;
     }
 
-    TCPROSProtocol(Delegate delegate, int initialPacketBufferSize) {
-        _delegate = delegate;
-        _packetBuffer = ByteBuffer.allocate(initialPacketBufferSize)
-            .order(NetworkServer.ROS_BYTE_ORDER);
+    /**
+     * Switches to reading service responses, where each message is
+     * preceded by a status byte.  Must be called before the headers
+     * are done.
+     */
+    void expectServiceResponses() {
+        _serviceResponses = true;
+    }
+
+    /**
+     * Returns the packet buffer to the pool if the argument is the
+     * packet buffer.  Called once the result of fillBuffer has been
+     * consumed.
+     *
+     * @param buf the buffer returned by fillBuffer
+     */
+    private void recycle(ByteBuffer buf) {
+        if (buf == _packetBuffer) {
+            _pool.release(_packetBuffer);
+            _packetBuffer = null;
+        }
+    }
+
+    /**
+     * Returns any borrowed buffer to the pool.  The protocol must not
+     * be used after this call.  This must not be called while
+     * {@link #process(ByteBuffer)} is running.
+     */
+    void release() {
+        _state = State.ERROR;
+        _packetBuffered = false;
+        if (_packetBuffer != null) {
+            _pool.release(_packetBuffer);
+            _packetBuffer = null;
+        }
     }
 
     private ProtocolException error(ByteBuffer buf, String msg) {
@@ -106,23 +197,12 @@ class TCPROSProtocol implements Protocol {
             }
 
             // reading directly from the readBuffer, but not enough bytes
-            // are available.  We need to store in the packet buffer.
-
-            _packetBuffer.clear();
-
-            int capacity = _packetBuffer.capacity();
-
-            if (capacity < count) {
-                do {
-                    capacity <<= 1;
-                } while (capacity < count);
+            // are available.  We need to store in a packet buffer
+            // borrowed for the duration of this packet.
 
-                if (LOG.isTraceEnabled()) {
-                    LOG.trace("growing packet buffer " + _packetBuffer.capacity() + " -> " + capacity);
-                }
-                _packetBuffer = ByteBuffer.allocate(capacity)
-                    .order(NetworkServer.ROS_BYTE_ORDER);
-            }
+            assert _packetBuffer == null;
+            _packetBuffer = _pool.acquire(count);
+            _packetBuffer.limit(_packetBuffer.capacity());
 
             _packetBuffered = true;
             _packetBuffer.put(readBuffer);
@@ -150,6 +230,7 @@ class TCPROSProtocol implements Protocol {
                     return;
 
                 _headerLength = buf.getInt();
+                recycle(buf);
 
 //                LOG.debug("header length: "+_headerLength);
                 if (_headerLength < 0 || _headerLength > 1024*1024*1024) {
@@ -176,6 +257,7 @@ class TCPROSProtocol implements Protocol {
                     return;
 
                 _fieldLength = buf.getInt();
+                recycle(buf);
 //                LOG.debug("header field length: "+_fieldLength+" header bytes remaining: "+(_headerLength-4)+", bytes remaining = "+readBuffer.remaining());
 
                 if (_fieldLength < 0 || _fieldLength > 1024*1024) {
@@ -192,16 +274,31 @@ class TCPROSProtocol implements Protocol {
                 if ((buf = fillBuffer(readBuffer, _fieldLength)) == null)
                     return;
 
-                processField(readBuffer, buf);
+                try {
+                    processField(readBuffer, buf);
+                } finally {
+                    recycle(buf);
+                }
                 continue;
             case STREAM:
+                if (_serviceResponses) {
+                    if ((buf = fillBuffer(readBuffer, 1)) == null) {
+                        return;
+                    }
+                    _serviceOk = buf.get() != 0;
+                    recycle(buf);
+                }
+                _state = State.MESSAGE_LENGTH;
+                // fall through
+            case MESSAGE_LENGTH:
                 if ((buf = fillBuffer(readBuffer, 4)) == null) {
                     return;
                 }
 
                 _messageLength = buf.getInt();
+                recycle(buf);
 //                LOG.debug("message length="+_messageLength+", remaining="+readBuffer.remaining());
-                if (_messageLength < 0 || _messageLength > 10*1024*1024) {
+                if (_messageLength < 0 || _messageLength > MAX_MESSAGE_LENGTH) {
                     throw error(readBuffer, "invalid message length");
                 }
                 _state = State.MESSAGE;
@@ -214,11 +311,19 @@ class TCPROSProtocol implements Protocol {
 //                LOG.debug("message ready, length="+_messageLength+", "+buf);
                 int oldLimit = buf.limit();
                 buf.limit(buf.position() + _messageLength);
-                _delegate.messageRecv(buf);
-                if (buf.hasRemaining()) {
-                    throw error(readBuffer, "delegate did not consume entire message buffer");
+                try {
+                    if (_serviceResponses) {
+                        _delegate.serviceResponseRecv(_serviceOk, buf);
+                    } else {
+                        _delegate.messageRecv(buf);
+                    }
+                    if (buf.hasRemaining()) {
+                        throw error(readBuffer, "delegate did not consume entire message buffer");
+                    }
+                    buf.limit(oldLimit);
+                } finally {
+                    recycle(buf);
                 }
-                buf.limit(oldLimit);
                 _state = State.STREAM;
                 break;
             case ERROR:
@@ -229,40 +334,34 @@ class TCPROSProtocol implements Protocol {
 
     private void headersDone() {
         _state = State.STREAM;
-        // the charsetDecoder is only used for the headers
-        // we set it to null to let it get GC'd
-        _charsetDecoder = null;
+        // the scratch space is only used for the headers
+        _fieldBytes = null;
         _delegate.headersDone();
     }
 
     private void processField(ByteBuffer readBuffer, ByteBuffer buf) throws ProtocolException {
-        try {
-            final int limit = buf.limit();
-            buf.limit(buf.position() + _fieldLength);
-            CharBuffer cbuf = _charsetDecoder.decode(buf);
-            buf.limit(limit);
-            final char[] array = cbuf.array();
-            assert cbuf.position() == 0;
-            for (int i = 0, n = cbuf.limit(); i < n; ++i) {
-                if (array[i] == '=') {
-                    String name = new String(array, 0, i++);
-                    String value = new String(array, i, n - i);
-                    headerRecv(name, value);
-                    return;
+        final int start = buf.position();
+        final int end = start + _fieldLength;
+        final HeaderField field = HeaderField.match(buf, _fieldLength);
+        if (field != null) {
+            if (_delegate.wantsField(field)) {
+                String value = decode(buf, start + field.getName().length() + 1, end);
+                if (LOG.isTraceEnabled()) {
+                    LOG.trace("header: [{}] = [{}]", field.getName(), value);
                 }
+                _delegate.headerRecv(field, value);
             }
-        } catch (CharacterCodingException e) {
-            throw error(readBuffer, e.toString());
-        }
-        throw error(readBuffer, "field is missing value");
-    }
-
-    private void headerRecv(String name, String value) {
-        if (LOG.isTraceEnabled()) {
-            LOG.trace("header: [{}] = [{}]", name, value);
+        } else {
+            int eq = start;
+            while (eq < end && buf.get(eq) != '=') {
+                ++eq;
+            }
+            if (eq == end) {
+                throw error(readBuffer, "field is missing value");
+            }
+            _delegate.unknownHeaderRecv(decode(buf, start, eq), decode(buf, eq + 1, end));
         }
-
-        _delegate.headerRecv(name, value);
+        buf.position(end);
 
         if (_headerLength == 0) {
             headersDone();
@@ -271,4 +370,33 @@ class TCPROSProtocol implements Protocol {
         }
     }
 
+    /**
+     * Decodes part of a header field, without changing the buffer's
+     * position.
+     */
+    private String decode(ByteBuffer buf, int from, int to) {
+        final int length = to - from;
+        if (length == 1) {
+            // flags, avoid allocating a string for each
+            switch (buf.get(from)) {
+            case '0':
+                return "0";
+            case '1':
+                return "1";
+            default:
+                break;
+            }
+        }
+        if (buf.hasArray()) {
+            return new String(buf.array(), buf.arrayOffset() + from, length, StandardCharsets.UTF_8);
+        }
+        if (_fieldBytes == null || _fieldBytes.length < length) {
+            _fieldBytes = new byte[Math.max(length, 256)];
+        }
+        final int pos = buf.position();
+        buf.position(from);
+        buf.get(_fieldBytes, 0, length);
+        buf.position(pos);
+        return new String(_fieldBytes, 0, length, StandardCharsets.UTF_8);
+    }
 }
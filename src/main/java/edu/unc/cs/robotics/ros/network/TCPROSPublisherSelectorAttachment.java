@@ -7,6 +7,8 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SocketChannel;
 
 import edu.unc.cs.robotics.ros.msg.Message;
+import edu.unc.cs.robotics.ros.msg.MetaService;
+import edu.unc.cs.robotics.ros.service.ServicePublication;
 import edu.unc.cs.robotics.ros.topic.Publication;
 import edu.unc.cs.robotics.ros.topic.SerializedMessage;
 import edu.unc.cs.robotics.ros.topic.SubscriberLink;
@@ -20,33 +22,66 @@ class TCPROSPublisherSelectorAttachment<M extends Message>
     private String _service;
     private String _callerId;
     private String _md5sum;
+    private boolean _persistent;
+    private boolean _probe;
 
-    TCPROSPublisherSelectorAttachment(NetworkServer server, SocketChannel ch) throws ClosedChannelException {
-        super(server, ch);
+    /**
+     * Set once a service connection has been accepted.
+     */
+    private TCPROSServiceServerLink<?, ?> _serviceLink;
+    /**
+     * The publication this link was added to, until it is removed
+     * again.  Guarded by this.
+     */
+    private Publication<M> _publication;
+
+    TCPROSPublisherSelectorAttachment(NetworkServer server, SelectorLoop loop, SocketChannel ch)
+        throws ClosedChannelException
+    {
+        super(server, loop, ch);
     }
 
     @Override
-    public void headerRecv(String name, String value) {
-        switch (name) {
-        case "tcp_nodelay":
+    public boolean wantsField(HeaderField field) {
+        switch (field) {
+        case TCP_NODELAY:
+        case TOPIC:
+        case SERVICE:
+        case CALLERID:
+        case MD5SUM:
+        case PERSISTENT:
+        case PROBE:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    @Override
+    public void headerRecv(HeaderField field, String value) {
+        switch (field) {
+        case TCP_NODELAY:
             _tcpNodelay = "1".equals(value);
             break;
-        case "topic":
+        case TOPIC:
             _topic = value;
             break;
-        case "service":
+        case SERVICE:
             _service = value;
             break;
-        case "callerid":
+        case CALLERID:
             _callerId = value;
             break;
-        case "md5sum":
+        case MD5SUM:
             _md5sum = value;
             break;
-        case "type":
+        case PERSISTENT:
+            _persistent = "1".equals(value);
+            break;
+        case PROBE:
+            _probe = "1".equals(value);
             break;
         default:
-            LOG.warn("unknown header received: [{}] = [{}]", name, value);
             break;
         }
     }
@@ -65,7 +100,7 @@ class TCPROSPublisherSelectorAttachment<M extends Message>
         if (_topic != null) {
             addSubscriberLink();
         } else if (_service != null) {
-            LOG.debug("creating service client link for service [{}]", _service);
+            addServiceLink();
         } else {
             LOG.warn("got connection without topic or service header");
             close();
@@ -74,7 +109,46 @@ class TCPROSPublisherSelectorAttachment<M extends Message>
 
     @Override
     public void messageRecv(ByteBuffer buf) {
-        LOG.error("received message on publisher channel!");
+        if (_serviceLink != null) {
+            _serviceLink.requestRecv(buf);
+        } else if (_service != null) {
+            // a pipelined request sent before our error header arrived
+            buf.position(buf.limit());
+        } else {
+            LOG.error("received message on publisher channel!");
+        }
+    }
+
+    private void addServiceLink() {
+        LOG.debug("creating service client link for service [{}]", _service);
+
+        if (_md5sum == null || _callerId == null) {
+            sendErrorHeader("missing required elements: md5sum, service, callerId");
+            return;
+        }
+
+        ServicePublication<?, ?> pub;
+
+        try {
+            pub = _server.getServiceManager().lookupServicePublication(_service, _md5sum);
+        } catch (IllegalStateException ex) {
+            LOG.warn("connection error", ex);
+            sendErrorHeader(ex.getMessage());
+            return;
+        }
+
+        MetaService<?, ?> meta = pub.getMeta();
+        // a probe only wants the headers (e.g., rosservice type)
+        sendHeaders(_probe ? this::close : null,
+            "callerid", _server.getNames().getName(),
+            "md5sum", meta.getMd5sum(),
+            "type", meta.getDataType(),
+            "request_type", meta.getRequest().getDataType(),
+            "response_type", meta.getResponse().getDataType());
+
+        if (!_probe) {
+            _serviceLink = new TCPROSServiceServerLink<>(this, pub, _persistent);
+        }
     }
 
     private void addSubscriberLink() {
@@ -88,30 +162,91 @@ class TCPROSPublisherSelectorAttachment<M extends Message>
         Publication<M> pub;
 
         try {
-            pub = _server.getTopicManager().addSubscriberLink(
-                _topic,
-                _md5sum,
-                this
-            );
+            pub = _server.getTopicManager().lookupPublication(_topic, _md5sum);
         } catch (IllegalStateException ex) {
             LOG.warn("connection error", ex);
             sendErrorHeader(ex.getMessage());
             return;
         }
 
-        sendHeaders(
-            () -> setMaxQueueSize(pub.getMaxQueue()),
-            "type", pub.getMeta().getDataType(),
-            "md5sum", pub.getMeta().getMd5sum(),
-            "message_definition", pub.getMeta().getMessageDefinition(),
-            "callerid", _server.getNames().getName(),
-            "latching", pub.isLatch() ? "1" : "0",
-            "topic", _topic);
+        // The header is queued before the link is added, adding it may
+        // queue the latched message.
+        sendHeaders(null, pub.getConnectionHeader());
+        setQueueLimits(pub.getMaxQueue(), pub.getMaxQueueBytes(), pub.getDropPolicy());
+        setWriteCoalescing(pub.getWriteCoalescing());
+
+        try {
+            if (_server.getTopicManager().addSubscriberLink(_topic, _md5sum, this) != pub) {
+                throw new IllegalStateException("topic re-advertised: " + _topic);
+            }
+        } catch (IllegalStateException ex) {
+            // unadvertised since the lookup
+            LOG.warn("connection error", ex);
+            close();
+            return;
+        }
+
+        synchronized (this) {
+            _publication = pub;
+        }
+        if (isClosed()) {
+            // closed while being added, closed() did not see it
+            removeSubscriberLink();
+        }
+    }
+
+    private void removeSubscriberLink() {
+        Publication<M> pub;
+        synchronized (this) {
+            pub = _publication;
+            _publication = null;
+        }
+        if (pub != null) {
+            pub.removeSubscriberLink(this);
+        }
+    }
+
+    @Override
+    protected void readClosed() {
+        // a subscriber sends nothing after its header, so the end of
+        // the stream means it has gone.
+        if (_serviceLink == null) {
+            close();
+        }
+    }
+
+    @Override
+    protected void closed() {
+        // not inline, close() may be called by a write while publish()
+        // is iterating over the publication's links.
+        _loop.runOnSelectorThread(this::removeSubscriberLink);
     }
 
 
     @Override
     public void enqueue(SerializedMessage<M> msg) {
-        enqueueWrite(msg.buffer(), null);
+        // hold a reference until the write completes (or is dropped)
+        msg.retain();
+        enqueueWrite(msg.buffer(), msg::release);
+    }
+
+    @Override
+    public String getDestination() {
+        return _callerId;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !isClosed();
+    }
+
+    @Override
+    public long getMessageCount() {
+        return getMessagesSent();
+    }
+
+    @Override
+    public long getByteCount() {
+        return getBytesSent();
     }
 }
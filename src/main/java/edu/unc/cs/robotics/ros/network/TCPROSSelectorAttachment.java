@@ -5,16 +5,19 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.Deque;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import edu.unc.cs.robotics.ros.protocol.Protocol;
+import edu.unc.cs.robotics.ros.msg.Message;
 import edu.unc.cs.robotics.ros.protocol.ProtocolException;
+import edu.unc.cs.robotics.ros.topic.DropPolicy;
+import edu.unc.cs.robotics.ros.topic.WriteCoalescing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,55 +32,149 @@ abstract class TCPROSSelectorAttachment
      */
     private static final int MAX_WRITE = 65535;
 
-    private final Lock _lock = new ReentrantLock();
-
     protected final NetworkServer _server;
+    /**
+     * The selector loop that owns this attachment's channel.  All
+     * selector operations for the channel must happen on its thread.
+     */
+    protected final SelectorLoop _loop;
     protected final SocketChannel _channel;
 //    protected final SelectionKey _key;
     protected final ByteBuffer _readBuffer;
 
-    private final Protocol _protocol = new TCPROSProtocol(this);
+    private static final ByteBuffer NO_FIELDS = ByteBuffer.allocate(0);
+
+    private final TCPROSProtocol _protocol;
 
     /**
-     * This is our write queue.  This is filled with ByteBuffers
-     * in the order in which they need to be written to the socket.
-     * Each buffer is marked upon insertion to allow us to determine
-     * if a buffer has been partially written.
+     * This is our write queue.  Any thread may add to it, but only
+     * the thread that holds {@link #_writing} may remove from it.
      */
-    private final Deque<ByteBuffer> _writeQueue = new ArrayDeque<>();
+    private final WriteQueue _writeQueue = new WriteQueue();
     /**
-     * Actions to perform when a write is complete.  This is dubiously
-     * useful, since we only know when a buffer is copied to the network
-     * stack, and not when it has reached its destination.
+     * Entries taken from the write queue that have not been fully
+     * written.  Only accessed by the thread that holds _writing.
+     * The head entry may be partially written.
      */
-    private final Map<ByteBuffer, Runnable> _writeCompleteMap = new HashMap<>();
+    private final ArrayDeque<WriteQueue.Entry> _pending = new ArrayDeque<>();
+    /**
+     * Ownership of the consumer side of the write queue.  Whichever
+     * thread sets this from false to true may drain the queue and
+     * write to the channel.  This may be the selector thread or a
+     * publishing thread.
+     */
+    private final AtomicBoolean _writing = new AtomicBoolean();
+    /**
+     * The number of entries in the write queue and pending combined.
+     */
+    private final AtomicInteger _writeQueueSize = new AtomicInteger();
     /**
      * This is the total number of bytes in all buffers in the write queue.
      */
-    private long _writeQueueBytes;
+    private final AtomicLong _writeQueueBytes = new AtomicLong();
     /**
-     * This is true when the head of the writeQueue is a partially
-     * written buffer.  (In which case it's mark != position)
+     * True when the last write could not complete because the socket's
+     * send buffer was full.  While set, writing waits for the selector
+     * to report the channel writable.
      */
-    private boolean _partialWrite;
+    private volatile boolean _writeBlocked;
+    /**
+     * Set while this attachment is queued on the loop for an interest
+     * update, so that it is queued at most once per select.
+     */
+    private final AtomicBoolean _interestsDirty = new AtomicBoolean();
+    /**
+     * Set once the peer closes its end, so that reading is not resumed.
+     * Only accessed by the selector thread.
+     */
+    private boolean _readClosed;
+    /**
+     * Set while OP_READ is cleared because {@link #isReadPaused()}.
+     * Only accessed by the selector thread.
+     */
+    private boolean _readPaused;
     /**
      * Buffers (re-)used to do gathering writes.
      */
     private ByteBuffer[] _writeBuffers = new ByteBuffer[16];
     /**
-     * The maximum queue size.  Buffers will be removed from the queue
-     * when the number of buffers exceeds this size.
+     * The maximum queue size.  When the number of buffers exceeds this
+     * size, buffers are dropped according to the drop policy.
+     */
+    private volatile int _maxQueueSize = Integer.MAX_VALUE;
+    /**
+     * The maximum number of bytes queued.  As with _maxQueueSize, the
+     * drop policy decides what happens when this is exceeded.
+     */
+    private volatile long _maxQueueBytes = Long.MAX_VALUE;
+    private volatile DropPolicy _dropPolicy = DropPolicy.DROP_OLDEST;
+
+    private final AtomicLong _droppedMessages = new AtomicLong();
+    private final AtomicLong _droppedBytes = new AtomicLong();
+
+    private volatile WriteCoalescing _writeCoalescing = WriteCoalescing.NONE;
+    /**
+     * Set while a delayed flush is scheduled, so that at most one is.
+     */
+    private final AtomicBoolean _flushScheduled = new AtomicBoolean();
+    /**
+     * When the oldest message of the current coalesced batch was
+     * queued, 0 when there is no batch.
+     */
+    private final AtomicLong _batchStartNanos = new AtomicLong();
+    private final AtomicLong _coalescingDelayNanos = new AtomicLong();
+
+    /**
+     * Entries written, and write calls made.  Only updated by the
+     * thread that holds _writing.
+     */
+    private final AtomicLong _entriesWritten = new AtomicLong();
+    private final AtomicLong _writeCalls = new AtomicLong();
+
+    /**
+     * Traffic counters.  Sent counts are updated by the thread that
+     * holds _writing, received counts by the selector thread.
+     */
+    private final AtomicLong _bytesSent = new AtomicLong();
+    private final AtomicLong _messagesSent = new AtomicLong();
+    private final AtomicLong _bytesReceived = new AtomicLong();
+
+    private final int _connectionId;
+    private final long _createdNanos = System.nanoTime();
+
+    /**
+     * Predicts the size of the service messages serialized for this
+     * connection, which are all of one type.
+     */
+    private final SizePredictor _serializedSizes = new SizePredictor();
+
+    /**
+     * Publishers using {@link DropPolicy#BLOCK_PUBLISHER} wait on this
+     * for queue space.  _queueSpaceWaiters is only modified while
+     * holding the monitor, but is read without it so that completing a
+     * write only synchronizes when someone is waiting.
+     */
+    private final Object _queueSpaceMonitor = new Object();
+    private volatile int _queueSpaceWaiters;
+
+    /**
+     * Set once the attachment is closed, guarantees that the loop's
+     * channel count is only decremented once.
      */
-    private int _maxQueueSize = Integer.MAX_VALUE;
+    private final AtomicBoolean _closed = new AtomicBoolean();
 
     public TCPROSSelectorAttachment(
         NetworkServer server,
+        SelectorLoop loop,
         SocketChannel ch)
         throws ClosedChannelException
     {
         _server = server;
+        _loop = loop;
         _channel = ch;
-        _readBuffer = server.sharedReadBuffer();
+        _readBuffer = loop.sharedReadBuffer();
+        _protocol = new TCPROSProtocol(this, server.bufferPool());
+        _connectionId = server.nextConnectionId();
     }
 
     protected void sendErrorHeader(String msg) {
@@ -85,149 +182,625 @@ abstract class TCPROSSelectorAttachment
     }
 
     protected void sendHeaders(Runnable headerSentAction, String... kvPairs) {
-        if ((kvPairs.length & 1) != 0) {
-            throw new AssertionError("headers must come in pairs");
+        sendHeaders(headerSentAction, NO_FIELDS, kvPairs);
+    }
+
+    /**
+     * Sends the connection header.  The header is the per-connection
+     * fields followed by fields shared by all connections, which were
+     * encoded once with {@link ConnectionHeader#encodeFields(String...)}.
+     * Only the length and the per-connection fields are encoded here,
+     * and both parts are queued together so that they go out in one
+     * gathering write.
+     *
+     * @param headerSentAction run once the header is written, may be
+     *    null.
+     * @param sharedFields the shared fields, not modified.
+     * @param kvPairs the per-connection fields
+     */
+    protected void sendHeaders(Runnable headerSentAction, ByteBuffer sharedFields, String... kvPairs) {
+        byte[] fields = ConnectionHeader.encode(kvPairs);
+        ByteBuffer prefix = ByteBuffer.allocate(4 + fields.length)
+            .order(NetworkServer.ROS_BYTE_ORDER);
+        prefix.putInt(fields.length + sharedFields.remaining());
+        prefix.put(fields);
+        prefix.flip();
+
+        if (!sharedFields.hasRemaining()) {
+            enqueueWrite(prefix, headerSentAction, false);
+            return;
         }
 
-        int len = 0;
-        for (int i = 0; i < kvPairs.length; i += 2) {
-            String name = kvPairs[i];
-            String value = kvPairs[i + 1];
-            assert name.indexOf('=') == -1;
-            // + 5 for '=' and 4-byte field length
-            len += name.length() + value.length() + 5;
+        if (_closed.get()) {
+            if (headerSentAction != null) {
+                headerSentAction.run();
+            }
+            return;
+        }
+        offer(prefix, null, false);
+        offer(sharedFields.duplicate(), headerSentAction, false);
+        if (!_writeBlocked) {
+            flush();
         }
+    }
 
-        ByteBuffer buf = ByteBuffer.allocate(len + 4);
-        buf.order(NetworkServer.ROS_BYTE_ORDER);
-        buf.putInt(len);
-        for (int i = 0; i < kvPairs.length; i += 2) {
-            String name = kvPairs[i];
-            String value = kvPairs[i + 1];
-            buf.putInt(name.length() + value.length() + 1);
-            appendASCII(buf, name);
-            buf.put((byte)'=');
-            appendASCII(buf, value);
+    /**
+     * Serializes a message into a pooled buffer and queues it.  Used for
+     * service requests and responses, which are never dropped.
+     *
+     * @param status the status byte that precedes a service response,
+     *    or -1 for none.
+     * @param msg the message
+     * @param writeCompleteAction run once the message is written, may
+     *    be null.
+     */
+    void enqueueMessage(int status, Message msg, Runnable writeCompleteAction) {
+        enqueueSerialized(serialize(status, msg), writeCompleteAction);
+    }
+
+    /**
+     * Serializes a message into a pooled buffer, preceded by an
+     * optional status byte and the length.
+     *
+     * @param status the service response status byte, or -1 for none.
+     * @param msg the message
+     * @return the buffer, ready to pass to
+     *    {@link #enqueueSerialized(ByteBuffer, Runnable)}
+     */
+    ByteBuffer serialize(int status, Message msg) {
+        final int prefix = status < 0 ? 4 : 5;
+        GrowableBufferSerializer ser = new GrowableBufferSerializer(
+            _server.bufferPool(), 0, prefix + _serializedSizes.predict(msg));
+        try {
+            if (status >= 0) {
+                ser.putByte((byte)status);
+            }
+            ser.putInt(0); // the length, filled in below
+            msg.serialize(ser);
+        } catch (RuntimeException ex) {
+            ser.discard();
+            throw ex;
         }
-        assert !buf.hasRemaining();
+        ByteBuffer buf = ser.finish();
+        int size = buf.remaining() - prefix;
+        buf.putInt(prefix - 4, size);
+        _serializedSizes.record(size);
+        return buf;
+    }
+
+    /**
+     * Queues a buffer from {@link #serialize(int, Message)}, it is
+     * released once written.
+     */
+    void enqueueSerialized(ByteBuffer buf, Runnable writeCompleteAction) {
+        final BufferPool pool = _server.bufferPool();
+        enqueueWrite(buf, () -> {
+            pool.release(buf);
+            if (writeCompleteAction != null) {
+                writeCompleteAction.run();
+            }
+        }, false);
+    }
+
+    /**
+     * Queues a failed service response.
+     *
+     * @param error the error message for the caller
+     * @param writeCompleteAction run once the response is written, may
+     *    be null.
+     */
+    void enqueueServiceError(String error, Runnable writeCompleteAction) {
+        byte[] bytes = error.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(5 + bytes.length).order(NetworkServer.ROS_BYTE_ORDER);
+        buf.put((byte)0);
+        buf.putInt(bytes.length);
+        buf.put(bytes);
         buf.flip();
-        enqueueWrite(buf, headerSentAction);
+        enqueueWrite(buf, writeCompleteAction, false);
     }
 
-    private void appendASCII(ByteBuffer buf, String str) {
-        for (int i=0, n=str.length() ; i<n ; ++i) {
-            buf.put((byte)str.charAt(i));
-        }
+    /**
+     * Switches the protocol to reading service responses.
+     */
+    void expectServiceResponses() {
+        _protocol.expectServiceResponses();
+    }
+
+    public boolean isClosed() {
+        return _closed.get();
     }
 
-    public void setMaxQueueSize(int maxSize) {
+    /**
+     * Sets the limits of the outgoing queue and what to do when they
+     * are exceeded.
+     *
+     * @param maxSize the maximum number of queued buffers, 0 for no limit
+     * @param maxBytes the maximum number of queued bytes, 0 for no limit
+     * @param dropPolicy the policy applied when a limit is exceeded
+     */
+    public void setQueueLimits(int maxSize, long maxBytes, DropPolicy dropPolicy) {
         _maxQueueSize = maxSize <= 0 ? Integer.MAX_VALUE : maxSize;
+        _maxQueueBytes = maxBytes <= 0 ? Long.MAX_VALUE : maxBytes;
+        _dropPolicy = dropPolicy;
+        // the limits may have been raised, or the policy changed from
+        // blocking to dropping.
+        signalQueueSpace();
+    }
+
+    /**
+     * Sets how long messages may be held so that several are written at
+     * once.  Connection headers and service messages are never held.
+     */
+    public void setWriteCoalescing(WriteCoalescing coalescing) {
+        _writeCoalescing = coalescing;
+    }
+
+    public long getWritesSaved() {
+        return _entriesWritten.get() - _writeCalls.get();
+    }
+
+    public long getCoalescingDelayNanos() {
+        return _coalescingDelayNanos.get();
+    }
+
+    public long getDroppedMessageCount() {
+        return _droppedMessages.get();
     }
 
+    public long getDroppedByteCount() {
+        return _droppedBytes.get();
+    }
+
+    public int getConnectionId() {
+        return _connectionId;
+    }
+
+    public String getTransport() {
+        return "TCPROS";
+    }
+
+    public long getCreatedNanos() {
+        return _createdNanos;
+    }
+
+    /**
+     * @return the number of messages in the write queue, including
+     * those being written.
+     */
+    public int getQueueDepth() {
+        return _writeQueueSize.get();
+    }
+
+    public long getBytesSent() {
+        return _bytesSent.get();
+    }
+
+    /**
+     * @return the number of messages written, not counting connection
+     * headers and service messages.
+     */
+    public long getMessagesSent() {
+        return _messagesSent.get();
+    }
+
+    public long getBytesReceived() {
+        return _bytesReceived.get();
+    }
+
+    /**
+     * Queues a message for writing.  Messages are subject to the drop
+     * policy.
+     */
     void enqueueWrite(ByteBuffer buf, Runnable writeCompleteAction) {
-        if (!buf.hasRemaining()) {
+        enqueueWrite(buf, writeCompleteAction, true);
+    }
+
+    private void enqueueWrite(ByteBuffer buf, Runnable writeCompleteAction, boolean droppable) {
+        if (!buf.hasRemaining() || _closed.get()) {
+            // nothing to write, or the queue has been (or is being)
+            // discarded.
             if (writeCompleteAction != null) {
                 writeCompleteAction.run();
             }
             return;
         }
 
-        _lock.lock();
-        try {
+        final DropPolicy policy = _dropPolicy;
+        if (droppable &&
+            (policy == DropPolicy.DROP_NEWEST ||
+                // a blocked publisher waited for room for this buffer,
+                // another publisher may have taken it since, but the
+                // buffer is only dropped if the wait was interrupted.
+                (policy == DropPolicy.BLOCK_PUBLISHER && Thread.currentThread().isInterrupted())) &&
+            !hasQueueSpace(buf.remaining()))
+        {
+            LOG.debug("outgoing queue is full, discarding newest message");
+            _droppedMessages.incrementAndGet();
+            _droppedBytes.addAndGet(buf.remaining());
+            if (writeCompleteAction != null) {
+                writeCompleteAction.run();
+            }
+            return;
+        }
 
-            // we mark the buffer when it is enqueued so we can
-            // know how much we've written.
-            buf.mark();
-
-            if (_writeQueue.isEmpty()) {
-                // if the queue is empty we may be able to write
-                // immediately.  If we can, we save a few OS calls.
-                try {
-                    int n = _channel.write(buf);
-                    LOG.debug("write immediate "+n);
-                } catch (IOException ex) {
-                    LOG.warn("Error writing", ex);
-                    close();
-                    return;
+        offer(buf, writeCompleteAction, droppable);
+
+        // If the socket is not blocked, try to write immediately, this
+        // saves a few OS calls.  While blocked we only need to step in
+        // to trim the queue, the selector will do the writing.
+        if (_writeBlocked) {
+            if (needsTrim()) {
+                flush();
+            }
+            return;
+        }
+
+        final WriteCoalescing coalescing = _writeCoalescing;
+        if (droppable && coalescing.isEnabled() && !needsTrim() &&
+            _writeQueueBytes.get() < coalescing.getMaxBytes())
+        {
+            // hold the message, a flush is (or will be) scheduled for
+            // when the oldest message in the batch has waited long
+            // enough.
+            scheduleFlush(coalescing);
+            return;
+        }
+
+        batchWritten();
+        flush();
+    }
+
+    private void scheduleFlush(WriteCoalescing coalescing) {
+        _batchStartNanos.compareAndSet(0, System.nanoTime());
+        if (_flushScheduled.compareAndSet(false, true)) {
+            _server.scheduler().schedule(
+                this::scheduledFlush, coalescing.getMaxDelayNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void scheduledFlush() {
+        // cleared first so that a message queued during the flush
+        // schedules another.
+        _flushScheduled.set(false);
+        batchWritten();
+        flush();
+    }
+
+    /**
+     * Records the wait of the current coalesced batch, if any, which is
+     * about to be written.
+     */
+    private void batchWritten() {
+        final long start = _batchStartNanos.getAndSet(0);
+        if (start != 0) {
+            _coalescingDelayNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Checks for room for a buffer.  An empty queue always has room,
+     * otherwise a buffer larger than the byte limit could never be
+     * sent.
+     *
+     * @param bytes the size of the buffer
+     * @return true if the queue has room for the buffer (or the link is
+     * closed and will discard it anyway)
+     */
+    private boolean hasQueueSpace(int bytes) {
+        return _closed.get() || _writeQueueSize.get() == 0 || (
+            _writeQueueSize.get() < _maxQueueSize &&
+            _writeQueueBytes.get() + bytes <= _maxQueueBytes);
+    }
+
+    /**
+     * Waits until the queue has room for a buffer of the specified
+     * size.  This only waits when the drop policy is
+     * {@link DropPolicy#BLOCK_PUBLISHER}, and never on the selector
+     * thread, since that is the thread that makes room.  If
+     * interrupted, this returns early with the interrupt flag set.
+     *
+     * @param bytes the size of the buffer
+     */
+    public void awaitQueueSpace(int bytes) {
+        if (_dropPolicy != DropPolicy.BLOCK_PUBLISHER || hasQueueSpace(bytes) || _loop.isSelectorThread()) {
+            return;
+        }
+
+        synchronized (_queueSpaceMonitor) {
+            _queueSpaceWaiters++;
+            try {
+                while (_dropPolicy == DropPolicy.BLOCK_PUBLISHER && !hasQueueSpace(bytes)) {
+                    _queueSpaceMonitor.wait();
                 }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                _queueSpaceWaiters--;
+            }
+        }
+    }
 
-                if (!buf.hasRemaining()) {
-                    if (writeCompleteAction != null) {
-                        writeCompleteAction.run();
-                    }
+    private void signalQueueSpace() {
+        // the waiter increments _queueSpaceWaiters before checking for
+        // space, and we check it after making space, so at least one of
+        // us sees the other.
+        if (_queueSpaceWaiters > 0) {
+            synchronized (_queueSpaceMonitor) {
+                _queueSpaceMonitor.notifyAll();
+            }
+        }
+    }
+
+    private void offer(ByteBuffer buf, Runnable writeCompleteAction, boolean droppable) {
+        _writeQueue.offer(new WriteQueue.Entry(buf, writeCompleteAction, droppable));
+        _writeQueueBytes.addAndGet(buf.remaining());
+        _writeQueueSize.incrementAndGet();
+    }
+
+    /**
+     * @return true if the drop policy requires the draining thread to
+     * drop queued buffers.
+     */
+    private boolean needsTrim() {
+        switch (_dropPolicy) {
+        case DROP_OLDEST:
+            return _writeQueueSize.get() > _maxQueueSize ||
+                _writeQueueBytes.get() > _maxQueueBytes;
+        case KEEP_LATEST:
+            return _writeQueueSize.get() > 1;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Drains as much of the write queue as possible to the channel.
+     * If another thread is already draining, this returns immediately,
+     * the other thread will pick up anything added before it finishes.
+     */
+    private void flush() {
+        for (;;) {
+            if (!_writing.compareAndSet(false, true)) {
+                return;
+            }
+
+            boolean blocked;
+            try {
+                blocked = drain();
+            } finally {
+                _writing.set(false);
+            }
+
+            // Anything that was added while we held _writing, and anything
+            // discarded by a concurrent close, is our responsibility
+            // since the other thread's attempt to acquire _writing failed.
+            if (_closed.get()) {
+                if (_writeQueueSize.get() == 0) {
                     return;
                 }
+            } else if (blocked) {
+                requestInterestUpdate();
+                return;
+            } else if (_writeQueueSize.get() == 0) {
+                return;
+            }
+        }
+    }
 
-                // the queue was empty, so we need to update the
-                // interests of the selector.  Updating interests
-                // must happen on the selector thread otherwise an
-                // active select will not get the updated interests
-                // until another operation wakes it.
-                _server.runOnSelectorThread(this::updateInterests);
-            } else if (_maxQueueSize != Integer.MAX_VALUE) {
-                // if the write queue was not empty, we may need to discard
-                // the oldest entry
-
-                int size = _writeQueue.size();
-                if (_partialWrite) {
-                    --size;
-                }
+    /**
+     * Writes from the queue until it is empty or the channel cannot
+     * accept more.  Must only be called while holding _writing.
+     *
+     * @return true if the channel's send buffer is full.
+     */
+    private boolean drain() {
+        for (;;) {
+            WriteQueue.Entry entry;
+            while ((entry = _writeQueue.poll()) != null) {
+                _pending.offer(entry);
+            }
 
-                if (size >= _maxQueueSize) {
-                    LOG.info("outgoing queue is full, discarding oldest message");
-                    ByteBuffer oldest = _writeQueue.remove();
-
-                    if (!_partialWrite) {
-                        _writeQueueBytes -= oldest.remaining();
-                        runWriteCompleteAction(oldest);
-                    } else {
-                        // if we have partially written the head of the
-                        // write queue, we need to complete the write
-                        // we thus discard the next-to-oldest instead.
-                        ByteBuffer nextToOldest;
-                        nextToOldest = _writeQueue.remove();
-                        _writeQueueBytes -= nextToOldest.remaining();
-                        _writeQueue.offerFirst(oldest);
-                        runWriteCompleteAction(nextToOldest);
-                    }
-                }
+            if (_closed.get()) {
+                discardPending();
+                return false;
             }
 
-            LOG.debug("appending buffer with "+buf.remaining()+" bytes to write queue");
-            _writeQueue.offer(buf);
-            _writeQueueBytes += buf.remaining();
-            if (writeCompleteAction != null) {
-                _writeCompleteMap.put(buf, writeCompleteAction);
+            if (needsTrim()) {
+                trimPending();
+            }
+
+            if (_pending.isEmpty()) {
+                return false;
+            }
+
+            if (_writeBlocked) {
+                return true;
+            }
+
+            try {
+                if (!writePending()) {
+                    _writeBlocked = true;
+                    return true;
+                }
+            } catch (IOException ex) {
+                LOG.warn("Error writing", ex);
+                close();
             }
+        }
+    }
 
-        } finally {
-            _lock.unlock();
+    /**
+     * Drops the oldest entries until the queue is within its limits (or
+     * for {@link DropPolicy#KEEP_LATEST}, until only the newest entry is
+     * left).  A partially written entry is never dropped, the write must
+     * be completed, nor are entries that are not droppable.  The newest
+     * entry is always kept.
+     */
+    private void trimPending() {
+        Iterator<WriteQueue.Entry> iter = _pending.iterator();
+        while (iter.hasNext() && needsTrim()) {
+            WriteQueue.Entry entry = iter.next();
+            if (!iter.hasNext()) {
+                break;
+            }
+            if (entry.droppable && !entry.isPartiallyWritten()) {
+                LOG.debug("outgoing queue is full, discarding oldest message");
+                iter.remove();
+                _droppedMessages.incrementAndGet();
+                _droppedBytes.addAndGet(entry.size);
+                completed(entry, entry.buffer.remaining());
+            }
         }
     }
 
-    private void runWriteCompleteAction(ByteBuffer oldest) {
-        Runnable action = _writeCompleteMap.remove(oldest);
-        if (action != null) {
-            action.run();
+    /**
+     * Performs one gathering write of the pending entries.
+     *
+     * @return true if every buffer in the gathering write was written
+     * @throws IOException if the write fails
+     */
+    private boolean writePending() throws IOException {
+        int nBufs = 0;
+        long requested = 0;
+
+        for (WriteQueue.Entry entry : _pending) {
+            int remaining = entry.buffer.remaining();
+            // always include the first buffer, even if it has more
+            // bytes than MAX_WRITE.
+            if (nBufs > 0 && requested + remaining > MAX_WRITE) {
+                break;
+            }
+            if (nBufs == _writeBuffers.length) {
+                _writeBuffers = Arrays.copyOf(_writeBuffers, nBufs*2);
+            }
+            _writeBuffers[nBufs++] = entry.buffer;
+            requested += remaining;
+        }
+
+        // do the gathering write.
+        long n = _channel.write(_writeBuffers, 0, nBufs);
+        _writeCalls.incrementAndGet();
+        _bytesSent.addAndGet(n);
+        _writeQueueBytes.addAndGet(-n);
+        Arrays.fill(_writeBuffers, 0, nBufs, null);
+        LOG.debug("wrote {} of {} bytes", n, requested);
+
+        // for all the buffers that did complete,
+        // run their completion action.
+        WriteQueue.Entry entry;
+        while ((entry = _pending.peek()) != null && !entry.buffer.hasRemaining()) {
+            _pending.poll();
+            _entriesWritten.incrementAndGet();
+            if (entry.droppable) {
+                _messagesSent.incrementAndGet();
+            }
+            completed(entry, 0);
         }
+
+        // a non-blocking write only stops short when the
+        // socket's send buffer is full.
+        return n == requested;
     }
 
-    void updateInterests() {
-        _lock.lock();
+    /**
+     * Removes a completed (or dropped) entry from the queue's
+     * accounting and runs its completion action.
+     *
+     * @param entry the entry
+     * @param unwritten the number of bytes of it that were not written
+     */
+    private void completed(WriteQueue.Entry entry, int unwritten) {
+        _writeQueueSize.decrementAndGet();
+        if (unwritten != 0) {
+            _writeQueueBytes.addAndGet(-unwritten);
+        }
+        signalQueueSpace();
         try {
-            SelectionKey _key = _server.keyFor(_channel);
-            int interests = _key.interestOps();
-            if (_writeQueue.isEmpty()) {
-                interests &= ~SelectionKey.OP_WRITE;
-            } else {
-                interests |= SelectionKey.OP_WRITE;
+            entry.complete();
+        } catch (RuntimeException ex) {
+            LOG.error("write complete action failed", ex);
+        }
+    }
+
+    /**
+     * Discards all pending entries, running their completion actions
+     * so that shared buffers are released.  Must only be called while
+     * holding _writing.
+     */
+    private void discardPending() {
+        WriteQueue.Entry entry;
+        while ((entry = _pending.poll()) != null) {
+            completed(entry, entry.buffer.remaining());
+        }
+    }
+
+    /**
+     * Arranges for {@link #updateInterests()} to run on the selector
+     * thread, e.g., so that the selector reports when the channel is
+     * writable.
+     */
+    protected void requestInterestUpdate() {
+        // the loop applies the change before its next select, and
+        // coalesces the wakeup with any other pending submissions.
+        if (_interestsDirty.compareAndSet(false, true)) {
+            _loop.interestsChanged(this);
+        }
+    }
+
+    @Override
+    public void updateInterests() {
+        // clear before reading _writeBlocked (and isReadPaused()) so
+        // that a concurrent request is either seen here or re-queues
+        // this attachment.
+        _interestsDirty.set(false);
+        SelectionKey key = _loop.keyFor(_channel);
+        if (key == null || !key.isValid()) {
+            // closed before the update ran
+            return;
+        }
+        int interests = key.interestOps();
+        if (_writeBlocked) {
+            interests |= SelectionKey.OP_WRITE;
+        } else {
+            interests &= ~SelectionKey.OP_WRITE;
+        }
+        key.interestOps(interests);
+        applyReadPause(key);
+    }
+
+    /**
+     * Clears or restores OP_READ to match {@link #isReadPaused()}.
+     * Must be called on the selector thread.
+     */
+    protected void applyReadPause(SelectionKey key) {
+        if (isReadPaused()) {
+            if (!_readPaused) {
+                LOG.debug("pausing reads from {}", _channel);
+                _readPaused = true;
+            }
+            // cleared even if already paused, OP_READ may have been set
+            // since, e.g., when the connection completed.
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        } else if (_readPaused) {
+            LOG.debug("resuming reads from {}", _channel);
+            _readPaused = false;
+            if (!_readClosed) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
             }
-            _key.interestOps(interests);
-        } finally {
-            _lock.unlock();
         }
     }
 
+    /**
+     * Stops reading from the channel while this returns true, so that
+     * TCP flow control slows the sender.  Call
+     * {@link #requestInterestUpdate()} when it changes.
+     *
+     * @return true to stop reading
+     */
+    protected boolean isReadPaused() {
+        return false;
+    }
+
     @Override
     public void readable(SelectionKey key) throws IOException {
         SocketChannel ch = (SocketChannel)key.channel();
@@ -238,9 +811,12 @@ abstract class TCPROSSelectorAttachment
             LOG.debug("read "+n);
             if (n < 0) {
                 LOG.debug("Read closed");
+                _readClosed = true;
                 key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
-                break;
+                readClosed();
+                return;
             }
+            _bytesReceived.addAndGet(n);
             bufferFilled = !_readBuffer.hasRemaining();
 
             _readBuffer.flip();
@@ -259,79 +835,55 @@ abstract class TCPROSSelectorAttachment
             // there's no bytes remaining to read.
             // if the read filled the buffer, then its
             // possible there are more bytes to read.
-        } while (bufferFilled);
+        } while (bufferFilled && !isReadPaused());
+
+        applyReadPause(key);
     }
 
     @Override
     public void writable(SelectionKey key) throws IOException {
-        SocketChannel ch = (SocketChannel)key.channel();
-        _lock.lock();
-        try {
-            assert !_writeQueue.isEmpty();
-
-            ByteBuffer buf;
-            int nBufs = 0;
-            int nBytes = 0;
-
-            while ((buf = _writeQueue.poll()) != null && (nBytes += buf.remaining()) <= MAX_WRITE) {
-                if (nBufs == _writeBuffers.length) {
-                    _writeBuffers = Arrays.copyOf(_writeBuffers, nBufs*2);
-                }
-                _writeBuffers[nBufs++] = buf;
-            }
-
-            if (nBufs == 0) {
-                // can happen if the first buffer has more bytes than MAX_WRITE
-                _writeBuffers[0] = buf;
-                nBufs = 1;
-            } else if (buf != null) {
-                // put back the last buf removed, it is not in the _writeBuffers
-                _writeQueue.offerFirst(buf);
-            }
-
-            // do the gathering write.
-            long n = ch.write(_writeBuffers, 0, nBufs);
-            _writeQueueBytes -= n;
-
-            // put buffers with any bytes remaining back to the head of the queue
-            while (--nBufs >= 0 && (buf = _writeBuffers[nBufs]).hasRemaining()) {
-                _writeQueue.offerFirst(buf);
-                _writeBuffers[nBufs] = null;
-            }
-
-            // for all the buffers that did complete,
-            // run their completion action.
-            for (int i=0 ; i<=nBufs ; ++i) {
-                assert !_writeBuffers[i].hasRemaining();
-                runWriteCompleteAction(_writeBuffers[i]);
-                _writeBuffers[i] = null;
-            }
-
-            if (_writeQueue.isEmpty()) {
-                // if the queue is now empty, remove write interest.
-                _partialWrite = false;
-                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
-            } else {
-                // if there is still something left in the queue,
-                // determine if we've partially written the head buffer
-                // in the queue.  This is done by examining the buffer's mark().
-                // which unfortunately can only be done via a reset().
-                int pos = (buf = _writeQueue.peek()).position();
-                _partialWrite = (buf.reset().position() != pos);
-                buf.position(pos);
-            }
-        } finally {
-            _lock.unlock();
-        }
-
+        // the socket can accept more, stop watching for writability
+        // until the next time a write stops short.
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        _writeBlocked = false;
+        flush();
     }
 
     public void close() {
+        if (!_closed.compareAndSet(false, true)) {
+            return;
+        }
+        _loop.channelRemoved();
+        // the protocol may be mid-packet on the selector thread (we
+        // may even be called from within it), so its buffers are
+        // returned to the pool from the selector thread after the
+        // current callback completes.
+        _loop.runOnSelectorThread(_protocol::release);
         LOG.info("closing channel {}", _channel);
         try {
             _channel.close();
         } catch (IOException ex) {
             LOG.warn("error closing channel", ex);
         }
+        // run the completion actions of everything queued so that
+        // shared buffers are released.
+        flush();
+        // and release any blocked publishers.
+        signalQueueSpace();
+        closed();
+    }
+
+    /**
+     * Called on the selector thread when the peer closes its end of
+     * the connection.  Reading has stopped, writing is still possible.
+     */
+    protected void readClosed() {
+    }
+
+    /**
+     * Called once, at the end of the first call to {@link #close()},
+     * whether the close was requested or caused by an error.
+     */
+    protected void closed() {
     }
 }
@@ -23,7 +23,6 @@ class TCPROSServerSocketAttachment implements SelectorAttachment {
         SocketChannel acceptedChannel = serverChannel.accept();
         NetworkServer.LOG.info("accepted connection from {}", acceptedChannel.getRemoteAddress());
         acceptedChannel.configureBlocking(false);
-        TCPROSPublisherSelectorAttachment att = new TCPROSPublisherSelectorAttachment(_server, acceptedChannel);
-        _server.register(acceptedChannel, SelectionKey.OP_READ, att);
+        _server.accepted(acceptedChannel);
     }
 }
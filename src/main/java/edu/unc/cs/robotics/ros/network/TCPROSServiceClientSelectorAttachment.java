@@ -0,0 +1,223 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import edu.unc.cs.robotics.ros.msg.ByteBufferDeserializer;
+import edu.unc.cs.robotics.ros.msg.Message;
+import edu.unc.cs.robotics.ros.msg.MetaService;
+import edu.unc.cs.robotics.ros.service.ServiceConnection;
+import edu.unc.cs.robotics.ros.service.ServiceException;
+
+/**
+ * The client end of a persistent service connection.  Requests are
+ * written as soon as they are made, without waiting for the responses
+ * to earlier requests, and the server answers them in order.  Each
+ * pending call's future is kept in a FIFO that is matched with the
+ * responses as they arrive.
+ */
+class TCPROSServiceClientSelectorAttachment<Q extends Message, R extends Message>
+    extends TCPROSSelectorAttachment
+    implements ServiceConnection<Q, R>
+{
+    private final String _service;
+    private final MetaService<Q, R> _meta;
+    private final Executor _executor;
+
+    // guarded by _pending
+    private final ArrayDeque<CompletableFuture<R>> _pending = new ArrayDeque<>();
+    /**
+     * Requests made before the connection completes.  They are written
+     * after the header.
+     */
+    private final ArrayDeque<ByteBuffer> _unsent = new ArrayDeque<>();
+    private boolean _connected;
+
+    private String _md5sum;
+    private String _error;
+
+    TCPROSServiceClientSelectorAttachment(
+        NetworkServer server, SelectorLoop loop, SocketChannel ch,
+        String service, MetaService<Q, R> meta, Executor executor)
+        throws ClosedChannelException
+    {
+        super(server, loop, ch);
+        _service = service;
+        _meta = meta;
+        _executor = executor;
+        expectServiceResponses();
+    }
+
+    @Override
+    public CompletableFuture<R> call(Q request) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        // serialize on the caller's thread, so that a bad request fails
+        // its own call and not the selector thread.
+        final ByteBuffer buf;
+        try {
+            buf = serialize(-1, request);
+        } catch (RuntimeException ex) {
+            future.completeExceptionally(ex);
+            return future;
+        }
+        synchronized (_pending) {
+            if (isClosed()) {
+                _server.bufferPool().release(buf);
+                future.completeExceptionally(new IOException("connection to " + _service + " closed"));
+                return future;
+            }
+            // the future is queued in the same order as the request, so
+            // that responses are matched correctly.
+            _pending.add(future);
+            if (_connected) {
+                enqueueSerialized(buf, null);
+            } else {
+                _unsent.add(buf);
+            }
+        }
+        return future;
+    }
+
+    @Override
+    public int pendingCount() {
+        synchronized (_pending) {
+            return _pending.size();
+        }
+    }
+
+    @Override
+    public void connectable(SelectionKey key) throws IOException {
+        _channel.finishConnect();
+        key.interestOps(SelectionKey.OP_READ);
+        try {
+            _channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        } catch (IOException ex) {
+            LOG.warn("failed to set TCP_NODELAY", ex);
+        }
+
+        synchronized (_pending) {
+            sendHeaders(null,
+                "callerid", _server.getNames().getName(),
+                "service", _service,
+                "md5sum", _meta.getMd5sum(),
+                "type", _meta.getDataType(),
+                "persistent", "1",
+                "tcp_nodelay", "1");
+            // each request leaves _unsent before it is queued: a write
+            // error closes the link from within enqueueSerialized, and
+            // closed() then releases the requests still in _unsent.
+            ByteBuffer buf;
+            while ((buf = _unsent.poll()) != null) {
+                enqueueSerialized(buf, null);
+            }
+            _connected = true;
+        }
+    }
+
+    @Override
+    public boolean wantsField(HeaderField field) {
+        return field == HeaderField.MD5SUM || field == HeaderField.ERROR;
+    }
+
+    @Override
+    public void headerRecv(HeaderField field, String value) {
+        switch (field) {
+        case MD5SUM:
+            _md5sum = value;
+            break;
+        case ERROR:
+            _error = value;
+            break;
+        default:
+            break;
+        }
+    }
+
+    @Override
+    public void headersDone() {
+        if (_error != null) {
+            LOG.error("service {} refused connection: {}", _service, _error);
+            close();
+            return;
+        }
+        String md5sum = _meta.getMd5sum();
+        if (_md5sum == null || !("*".equals(md5sum) || "*".equals(_md5sum) || md5sum.equals(_md5sum))) {
+            LOG.error("service {} md5sum [{}] does not match [{}]", _service, _md5sum, md5sum);
+            close();
+        }
+    }
+
+    @Override
+    public void messageRecv(ByteBuffer buf) {
+        throw new AssertionError("service connections receive responses");
+    }
+
+    @Override
+    public void serviceResponseRecv(boolean ok, ByteBuffer buf) {
+        final CompletableFuture<R> future;
+        synchronized (_pending) {
+            future = _pending.poll();
+        }
+        if (future == null) {
+            LOG.error("service {} sent a response without a request", _service);
+            buf.position(buf.limit());
+            close();
+            return;
+        }
+
+        if (!ok) {
+            byte[] bytes = new byte[buf.remaining()];
+            buf.get(bytes);
+            String error = new String(bytes, StandardCharsets.UTF_8);
+            _executor.execute(() -> future.completeExceptionally(new ServiceException(error)));
+            return;
+        }
+
+        final R response;
+        try {
+            response = _meta.getResponse().deserialize(new ByteBufferDeserializer(buf));
+        } catch (RuntimeException ex) {
+            buf.position(buf.limit());
+            _executor.execute(() -> future.completeExceptionally(ex));
+            return;
+        }
+        _executor.execute(() -> future.complete(response));
+    }
+
+    @Override
+    protected void readClosed() {
+        // the server has gone, the pending calls will not be answered
+        close();
+    }
+
+    @Override
+    protected void closed() {
+        List<CompletableFuture<R>> failed;
+        synchronized (_pending) {
+            failed = new ArrayList<>(_pending);
+            _pending.clear();
+            for (ByteBuffer buf : _unsent) {
+                _server.bufferPool().release(buf);
+            }
+            _unsent.clear();
+        }
+        if (!failed.isEmpty()) {
+            IOException ex = new IOException("connection to " + _service + " closed");
+            _executor.execute(() -> {
+                for (CompletableFuture<R> future : failed) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import edu.unc.cs.robotics.ros.msg.ByteBufferDeserializer;
+import edu.unc.cs.robotics.ros.msg.Message;
+import edu.unc.cs.robotics.ros.service.ServicePublication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The server end of a service connection.  Requests are deserialized on
+ * the selector thread and handled on the service's executor.  Clients
+ * may pipeline requests, so each request waits for the previous one on
+ * the connection to be answered, which keeps the responses in order.
+ */
+final class TCPROSServiceServerLink<Q extends Message, R extends Message> {
+    private static final Logger LOG = LoggerFactory.getLogger(TCPROSServiceServerLink.class);
+
+    private final TCPROSSelectorAttachment _attachment;
+    private final ServicePublication<Q, R> _service;
+    private final boolean _persistent;
+
+    /**
+     * Completes when the last request received has been answered.
+     * Only accessed on the selector thread.
+     */
+    private CompletableFuture<Void> _tail = CompletableFuture.completedFuture(null);
+
+    TCPROSServiceServerLink(
+        TCPROSSelectorAttachment attachment, ServicePublication<Q, R> service,
+        boolean persistent)
+    {
+        _attachment = attachment;
+        _service = service;
+        _persistent = persistent;
+    }
+
+    void requestRecv(ByteBuffer buf) {
+        final Q request;
+        try {
+            request = _service.getMeta().getRequest().deserialize(new ByteBufferDeserializer(buf));
+        } catch (RuntimeException ex) {
+            LOG.warn("failed to deserialize request for " + _service.getService(), ex);
+            buf.position(buf.limit());
+            _tail = _tail.thenRun(() -> respond(null, ex));
+            return;
+        }
+
+        _tail = _tail
+            .thenCompose((ignored) -> _service.call(request))
+            .handle((response, ex) -> {
+                respond(response, ex);
+                return null;
+            });
+    }
+
+    private void respond(R response, Throwable ex) {
+        // a non-persistent connection serves a single call
+        Runnable writeCompleteAction = _persistent ? null : _attachment::close;
+        if (ex == null) {
+            try {
+                _attachment.enqueueMessage(1, response, writeCompleteAction);
+                return;
+            } catch (RuntimeException serializeEx) {
+                LOG.warn("failed to serialize response for " + _service.getService(), serializeEx);
+                ex = serializeEx;
+            }
+        }
+        if (ex instanceof CompletionException && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        String error = ex.getMessage() != null ? ex.getMessage() : ex.toString();
+        _attachment.enqueueServiceError(error, writeCompleteAction);
+    }
+}
@@ -5,10 +5,17 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import edu.unc.cs.robotics.ros.msg.ByteBufferDeserializer;
 import edu.unc.cs.robotics.ros.msg.Message;
+import edu.unc.cs.robotics.ros.msg.MetaMessage;
+import edu.unc.cs.robotics.ros.msg.RawMessage;
 import edu.unc.cs.robotics.ros.topic.PublisherLink;
 import edu.unc.cs.robotics.ros.topic.Subscription;
 
@@ -18,46 +25,110 @@ class TCPROSSubscriberSelectorAttachment<M extends Message>
 {
 //    private static final Logger LOG = LoggerFactory.getLogger(TCPROSSubscriberSelectorAttachment.class);
 
+    /**
+     * When decoding is offloaded, reads pause while more than this many
+     * bytes of a link's messages wait to be decoded, so that decoding
+     * that falls behind slows the publisher by flow control instead of
+     * filling memory with copies.
+     */
+    static final int MAX_DECODE_BACKLOG_BYTES = 4*1024*1024;
+    /**
+     * Reads also pause while more than this many messages wait, however
+     * small they are.
+     */
+    static final int MAX_DECODE_BACKLOG = 1024;
+
     private final Subscription<M> _subscription;
     private final Consumer<M> _messageConsumer;
+    private final Runnable _closeListener;
+    /**
+     * Deserializes this link's messages, in order, when the
+     * subscription offloads decoding.  Null to decode on the selector
+     * thread.
+     */
+    private final Executor _decoder;
+    /**
+     * The messages copied for the decoder and not yet decoded, and
+     * their bytes.
+     */
+    private final AtomicInteger _decodeBacklog = new AtomicInteger();
+    private final AtomicLong _decodeBacklogBytes = new AtomicLong();
 
     // these are set upon headers recieved
-    private String _publisherCallerId;
+    private volatile String _publisherCallerId;
     private String _md5sum;
     private String _dataType;
     private boolean _latching;
+    private final Map<String,String> _header = new HashMap<>();
+    /**
+     * Raw subscriptions keep the publisher's message_definition, e.g.,
+     * for recording.  Everything else skips decoding it.
+     */
+    private final boolean _wantsDefinition;
+    /**
+     * The meta bound to this publisher's header, set once the headers
+     * are received.
+     */
+    private volatile MetaMessage<M> _meta;
+    /**
+     * Messages received, only updated by the selector thread.
+     */
+    private final AtomicLong _messagesReceived = new AtomicLong();
 
     TCPROSSubscriberSelectorAttachment(
-        Subscription<M> subscription, NetworkServer server, SocketChannel ch,
-        Consumer<M> messageConsumer)
+        Subscription<M> subscription, NetworkServer server, SelectorLoop loop,
+        SocketChannel ch, Consumer<M> messageConsumer, Runnable closeListener)
         throws ClosedChannelException
     {
-        super(server, ch);
+        super(server, loop, ch);
         _subscription = subscription;
         _messageConsumer = messageConsumer;
+        _closeListener = closeListener;
+        _decoder = subscription.getTransportHints().isDecodingOffloaded()
+            ? new SerialExecutor(server.decodeExecutor(), task -> ((Decode)task).discard())
+            : null;
+        _meta = subscription.getMeta();
+        _wantsDefinition = _meta.getMessageClass() == RawMessage.class;
     }
 
     @Override
-    public void headerRecv(String name, String value) {
-        switch (name) {
-        case "callerid":
+    public boolean wantsField(HeaderField field) {
+        switch (field) {
+        case CALLERID:
+        case TYPE:
+        case LATCHING:
+        case MD5SUM:
+        case ERROR:
+            return true;
+        case MESSAGE_DEFINITION:
+            return _wantsDefinition;
+        default:
+            return false;
+        }
+    }
+
+    @Override
+    public void headerRecv(HeaderField field, String value) {
+        if (field != HeaderField.ERROR) {
+            _header.put(field.getName(), value);
+        }
+        switch (field) {
+        case CALLERID:
             _publisherCallerId = value;
             break;
-        case "type":
+        case TYPE:
             _dataType = value;
             break;
-        case "latching":
+        case LATCHING:
             _latching = "1".equals(value);
             break;
-        case "md5sum":
+        case MD5SUM:
             _md5sum = value;
             break;
-        case "message_definition":
-            break;
-        case "topic":
+        case ERROR:
+            LOG.error("publisher refused connection: {}", value);
             break;
         default:
-            LOG.warn("received unknown header: [{}] = [{}]", name, value);
             break;
         }
     }
@@ -82,6 +153,8 @@ class TCPROSSubscriberSelectorAttachment<M extends Message>
             close();
             return;
         }
+
+        _meta = _subscription.getMeta().forConnection(_header);
     }
 
     @Override
@@ -89,25 +162,152 @@ class TCPROSSubscriberSelectorAttachment<M extends Message>
         if (LOG.isTraceEnabled()) {
             LOG.trace("messageRecv " + buf.remaining() + "\n" + HexDump.hexDump(buf));
         }
-        ByteBufferDeserializer deserializer = new ByteBufferDeserializer(buf);
-        M msg = _subscription.getMeta().deserialize(deserializer);
+        _messagesReceived.incrementAndGet();
+        if (_decoder == null) {
+            decode(new ByteBufferDeserializer(buf));
+            return;
+        }
+
+        // only copy on the selector thread, the buffer is reused once
+        // this returns.
+        final ByteBuffer copy = _server.bufferPool().acquire(buf.remaining());
+        copy.put(buf).flip();
+        // counted before it is queued, the read loop checks
+        // isReadPaused() after each read, and applies the pause.
+        _decodeBacklog.incrementAndGet();
+        _decodeBacklogBytes.addAndGet(copy.remaining());
+        _decoder.execute(new Decode(copy));
+    }
+
+    private static boolean isDecodeBacklogFull(int count, long bytes) {
+        return count > MAX_DECODE_BACKLOG || bytes > MAX_DECODE_BACKLOG_BYTES;
+    }
+
+    /**
+     * Removes a message from the decode backlog, and resumes reading if
+     * that brings the backlog back under its limits.
+     *
+     * @param size the size of the message's copy
+     */
+    private void decoded(int size) {
+        final int count = _decodeBacklog.decrementAndGet();
+        final long bytes = _decodeBacklogBytes.addAndGet(-size);
+        if (isDecodeBacklogFull(count + 1, bytes + size) && !isDecodeBacklogFull(count, bytes)) {
+            requestInterestUpdate();
+        }
+    }
+
+    /**
+     * @return the number of bytes of messages waiting to be decoded
+     */
+    long getDecodeBacklogBytes() {
+        return _decodeBacklogBytes.get();
+    }
+
+    /**
+     * Deserializes a copy of a message on a decode thread.
+     */
+    private final class Decode implements Runnable {
+        private final ByteBuffer _copy;
+
+        Decode(ByteBuffer copy) {
+            _copy = copy;
+        }
+
+        @Override
+        public void run() {
+            final BufferPool pool = _server.bufferPool();
+            final int size = _copy.remaining();
+            // the copy is the message's own, so byte arrays may be
+            // slices of it instead of further copies.
+            ByteBufferDeserializer deserializer = new ByteBufferDeserializer(_copy, true);
+            try {
+                decode(deserializer);
+            } catch (RuntimeException ex) {
+                LOG.warn("failed to deserialize message for " + _subscription.getTopic(), ex);
+            } finally {
+                // a copy the message holds slices of is left to the
+                // garbage collector instead.
+                if (deserializer.isRetained()) {
+                    pool.forget(_copy);
+                } else {
+                    pool.release(_copy);
+                }
+                decoded(size);
+            }
+        }
+
+        /**
+         * Returns the copy to the pool without decoding it, when the
+         * decode threads are shutting down.
+         */
+        void discard() {
+            final int size = _copy.remaining();
+            _server.bufferPool().release(_copy);
+            decoded(size);
+        }
+    }
+
+    private void decode(ByteBufferDeserializer deserializer) {
+        M msg = _meta.deserialize(deserializer);
         _messageConsumer.accept(msg);
     }
 
 
+    @Override
+    protected void readClosed() {
+        // the publisher dropped the connection, closing lets the
+        // subscription reconnect.
+        close();
+    }
+
+    @Override
+    protected void closed() {
+        _closeListener.run();
+    }
+
+    @Override
+    protected boolean isReadPaused() {
+        return _subscription.isReadPaused() ||
+            isDecodeBacklogFull(_decodeBacklog.get(), _decodeBacklogBytes.get());
+    }
+
+    @Override
+    public void readPausedChanged() {
+        requestInterestUpdate();
+    }
+
+    @Override
+    public String getDestination() {
+        return _publisherCallerId;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !isClosed();
+    }
+
+    @Override
+    public long getMessageCount() {
+        return _messagesReceived.get();
+    }
+
+    @Override
+    public long getByteCount() {
+        return getBytesReceived();
+    }
+
     @Override
     public void connectable(SelectionKey key) throws IOException {
         LOG.info("finishConnect from {}", _channel.getRemoteAddress());
 
         _channel.finishConnect();
         key.interestOps(SelectionKey.OP_READ);
+        // other links may already have filled the subscriber queues
+        applyReadPause(key);
 
-        // TODO: "tcp_nodelay" = "0" or "1"
-        sendHeaders(this::headersSent,
-            "topic", _subscription.getTopic().toString(),
-            "md5sum", _subscription.getMeta().getMd5sum(),
-            "callerid", _server.getNames().getName(),
-            "type", _subscription.getMeta().getDataType());
+        // includes "tcp_nodelay" when the transport hints ask for it
+        sendHeaders(this::headersSent, _subscription.getConnectionHeader());
 
 
         // TODO: recv header
@@ -0,0 +1,225 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.unc.cs.robotics.ros.msg.Message;
+import edu.unc.cs.robotics.ros.topic.Publication;
+import edu.unc.cs.robotics.ros.topic.SerializedMessage;
+import edu.unc.cs.robotics.ros.topic.SubscriberLink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The publisher end of a UDPROS connection.  Each message is split into
+ * datagrams of at most the negotiated size and sent immediately from
+ * the publishing thread.  Nothing is queued: a datagram the socket
+ * cannot accept drops the rest of its message.
+ *
+ * <p>The channel is connected to the subscriber, so when the subscriber
+ * goes away the ICMP port unreachable surfaces as an exception on a
+ * later send, and the link removes itself from the publication.</p>
+ */
+class UDPROSPublisherLink<M extends Message> implements SubscriberLink<M> {
+    private static final Logger LOG = LoggerFactory.getLogger(UDPROSPublisherLink.class);
+
+    static final int HEADER_SIZE = 8;
+    static final byte OP_DATA0 = 0;
+    static final byte OP_DATAN = 1;
+    static final byte OP_PING = 2;
+    static final byte OP_ERR = 3;
+
+    /**
+     * The block count is an unsigned short.
+     */
+    private static final int MAX_BLOCKS = 0xffff;
+
+    private final DatagramChannel _channel;
+    private final int _connectionId;
+    private final int _maxDatagramSize;
+    private final Executor _closeExecutor;
+    /**
+     * Reused for the datagram header.  Sends to a link are serialized
+     * by its publication, so one suffices.
+     */
+    private final ByteBuffer _header = ByteBuffer.allocateDirect(HEADER_SIZE)
+        .order(NetworkServer.ROS_BYTE_ORDER);
+    private final ByteBuffer[] _datagram = new ByteBuffer[2];
+    private byte _messageId;
+
+    private final AtomicLong _droppedMessages = new AtomicLong();
+    private final AtomicLong _droppedBytes = new AtomicLong();
+    private final AtomicLong _messagesSent = new AtomicLong();
+    private final AtomicLong _bytesSent = new AtomicLong();
+    private final String _callerId;
+    private final long _createdNanos = System.nanoTime();
+
+    private volatile Publication<M> _publication;
+    private volatile boolean _closed;
+
+    /**
+     * @param channel a channel connected to the subscriber
+     * @param connectionId identifies the connection in each datagram
+     * @param maxDatagramSize the negotiated maximum datagram size
+     * @param callerId the subscriber's callerid
+     * @param closeExecutor runs the link's removal from its publication
+     *    after a failed send, since sends happen while the publication
+     *    is iterating its links.
+     */
+    UDPROSPublisherLink(
+        DatagramChannel channel, int connectionId, int maxDatagramSize,
+        String callerId, Executor closeExecutor)
+    {
+        _channel = channel;
+        _connectionId = connectionId;
+        _maxDatagramSize = maxDatagramSize;
+        _callerId = callerId;
+        _closeExecutor = closeExecutor;
+    }
+
+    /**
+     * Called once the link has been added to its publication.
+     */
+    void setPublication(Publication<M> publication) {
+        _publication = publication;
+    }
+
+    @Override
+    public int getConnectionId() {
+        return _connectionId;
+    }
+
+    @Override
+    public String getTransport() {
+        return "UDPROS";
+    }
+
+    @Override
+    public String getDestination() {
+        return _callerId;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !_closed;
+    }
+
+    @Override
+    public long getMessageCount() {
+        return _messagesSent.get();
+    }
+
+    @Override
+    public long getByteCount() {
+        return _bytesSent.get();
+    }
+
+    @Override
+    public long getCreatedNanos() {
+        return _createdNanos;
+    }
+
+    InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress)_channel.getLocalAddress();
+    }
+
+    @Override
+    public void enqueue(SerializedMessage<M> msg) {
+        if (!_closed) {
+            send(msg.buffer());
+        }
+    }
+
+    /**
+     * Sends a frame (the 4-byte length and the message) as one or more
+     * datagrams.
+     *
+     * @param frame the frame, its position is advanced
+     * @return true if all datagrams were sent
+     */
+    boolean send(ByteBuffer frame) {
+        final int frameSize = frame.remaining();
+        final int blockSize = _maxDatagramSize - HEADER_SIZE;
+        final int blocks = (frameSize + blockSize - 1) / blockSize;
+        if (blocks > MAX_BLOCKS) {
+            LOG.warn("{} byte message is too large for UDPROS", frameSize);
+            dropped(frameSize);
+            return false;
+        }
+
+        final byte messageId = _messageId++;
+        final int limit = frame.limit();
+        try {
+            for (int block = 0 ; block < blocks ; ++block) {
+                _header.clear();
+                _header.putInt(_connectionId);
+                _header.put(block == 0 ? OP_DATA0 : OP_DATAN);
+                _header.put(messageId);
+                // the first block carries the block count, the rest
+                // carry their index.
+                _header.putShort((short)(block == 0 ? blocks : block));
+                _header.flip();
+
+                frame.limit(Math.min(limit, frame.position() + blockSize));
+                _datagram[0] = _header;
+                _datagram[1] = frame;
+                if (_channel.write(_datagram) == 0) {
+                    // the socket's send buffer is full, the subscriber
+                    // could not assemble this message anyway.
+                    frame.limit(limit);
+                    dropped(frameSize);
+                    return false;
+                }
+                frame.limit(limit);
+            }
+            _messagesSent.incrementAndGet();
+            _bytesSent.addAndGet(frameSize + blocks * HEADER_SIZE);
+            return true;
+        } catch (IOException ex) {
+            frame.limit(limit);
+            LOG.info("UDPROS send to subscriber failed, closing link: {}", ex.toString());
+            dropped(frameSize);
+            close();
+            return false;
+        } finally {
+            _datagram[1] = null;
+        }
+    }
+
+    private void dropped(int bytes) {
+        _droppedMessages.incrementAndGet();
+        _droppedBytes.addAndGet(bytes);
+    }
+
+    @Override
+    public long getDroppedMessageCount() {
+        return _droppedMessages.get();
+    }
+
+    @Override
+    public long getDroppedByteCount() {
+        return _droppedBytes.get();
+    }
+
+    public void close() {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        try {
+            _channel.close();
+        } catch (IOException ex) {
+            LOG.warn("error closing UDPROS channel", ex);
+        }
+        _closeExecutor.execute(() -> {
+            Publication<M> pub = _publication;
+            if (pub != null) {
+                pub.removeSubscriberLink(this);
+            }
+        });
+    }
+}
@@ -0,0 +1,389 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import edu.unc.cs.robotics.ros.msg.ByteBufferDeserializer;
+import edu.unc.cs.robotics.ros.msg.Message;
+import edu.unc.cs.robotics.ros.msg.MetaMessage;
+import edu.unc.cs.robotics.ros.protocol.ProtocolException;
+import edu.unc.cs.robotics.ros.topic.PublisherLink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static edu.unc.cs.robotics.ros.network.UDPROSPublisherLink.HEADER_SIZE;
+import static edu.unc.cs.robotics.ros.network.UDPROSPublisherLink.OP_DATA0;
+import static edu.unc.cs.robotics.ros.network.UDPROSPublisherLink.OP_DATAN;
+import static edu.unc.cs.robotics.ros.network.UDPROSPublisherLink.OP_ERR;
+
+/**
+ * The subscriber end of a UDPROS connection.  The link owns a datagram
+ * channel that is opened before the publisher is asked for the topic,
+ * since its port is part of the request.
+ *
+ * <p>Messages that fit in one datagram are deserialized directly from
+ * the loop's read buffer.  Larger messages are reassembled into a
+ * pooled buffer.  Blocks must arrive in order, a missing or reordered
+ * block drops the message it belongs to, and the next DATA0 starts
+ * over.</p>
+ */
+public final class UDPROSSubscriberLink<M extends Message> implements PublisherLink<M>, SelectorAttachment {
+    private static final Logger LOG = LoggerFactory.getLogger(UDPROSSubscriberLink.class);
+
+    private final NetworkServer _server;
+    private final SelectorLoop _loop;
+    private final DatagramChannel _channel;
+    private final BufferPool _bufferPool;
+    private final String _topic;
+    private final MetaMessage<M> _meta;
+    private final ByteBuffer _connectionHeader;
+    private final Consumer<M> _messageConsumer;
+    private final Runnable _closeListener;
+    private final int _maxDatagramSize;
+
+    /**
+     * The publisher assigned connection id, or -1 until the publisher
+     * responds.  Until then datagrams are accepted from any
+     * connection, since a latched message may arrive before the
+     * response does.
+     */
+    private volatile int _connectionId = -1;
+    /**
+     * The meta bound to the publisher's connection header, which is
+     * only known once the publisher responds.
+     */
+    private volatile MetaMessage<M> _connectionMeta;
+
+    // reassembly state, only accessed on the selector thread
+    private ByteBuffer _assembly;
+    private byte _assemblyMessageId;
+    private int _assemblyBlocks;
+    private int _assemblyNextBlock;
+
+    private final AtomicLong _droppedMessages = new AtomicLong();
+    private final AtomicLong _messagesReceived = new AtomicLong();
+    private final AtomicLong _bytesReceived = new AtomicLong();
+    private final AtomicBoolean _closed = new AtomicBoolean();
+
+    /**
+     * This node's id for the connection, unlike _connectionId which is
+     * assigned by the publisher.
+     */
+    private final int _linkId;
+    private final long _createdNanos = System.nanoTime();
+    private volatile String _publisherCallerId;
+
+    UDPROSSubscriberLink(
+        NetworkServer server, SelectorLoop loop, DatagramChannel channel,
+        BufferPool bufferPool, int linkId, String topic, MetaMessage<M> meta,
+        ByteBuffer connectionHeader, Consumer<M> messageConsumer, Runnable closeListener, int maxDatagramSize)
+    {
+        _linkId = linkId;
+        _server = server;
+        _loop = loop;
+        _channel = channel;
+        _bufferPool = bufferPool;
+        _topic = topic;
+        _meta = meta;
+        _connectionMeta = meta;
+        _connectionHeader = connectionHeader;
+        _messageConsumer = messageConsumer;
+        _closeListener = closeListener;
+        _maxDatagramSize = maxDatagramSize;
+    }
+
+    void register() {
+        _loop.runOnSelectorThread(() -> {
+            try {
+                _loop.register(_channel, SelectionKey.OP_READ, this);
+            } catch (IOException ex) {
+                LOG.warn("UDPROS channel closed before registration", ex);
+                close();
+            }
+        });
+    }
+
+    /**
+     * @return the UDPROS entry for a requestTopic protocol list: the
+     * connection header, and the host, port and maximum datagram size
+     * to send to.
+     * @throws IOException if the channel's address is unavailable
+     */
+    public Object[] getProtocolRequest() throws IOException {
+        InetSocketAddress local = (InetSocketAddress)_channel.getLocalAddress();
+        return new Object[] {
+            "UDPROS",
+            ConnectionHeader.toBytes(_connectionHeader),
+            _server.getHost(),
+            local.getPort(),
+            _maxDatagramSize
+        };
+    }
+
+    /**
+     * Completes the connection with the publisher's requestTopic
+     * response.
+     *
+     * @param proto "UDPROS", host, port, connection id, maximum
+     *    datagram size, connection header
+     * @throws ProtocolException if the response is malformed or the
+     *    publisher's message type does not match.
+     */
+    public void connected(Object[] proto) throws ProtocolException {
+        if (proto.length != 6 ||
+            !(proto[3] instanceof Integer) ||
+            !(proto[5] instanceof byte[]))
+        {
+            throw new ProtocolException("invalid parameters for UDPROS");
+        }
+
+        Map<String,String> header = ConnectionHeader.decode((byte[])proto[5]);
+        String md5sum = header.get("md5sum");
+        if (header.containsKey("error")) {
+            throw new ProtocolException("publisher error: " + header.get("error"));
+        }
+        if (md5sum == null ||
+            !("*".equals(md5sum) || "*".equals(_meta.getMd5sum()) || md5sum.equals(_meta.getMd5sum())))
+        {
+            throw new ProtocolException("publisher md5sum [" + md5sum +
+                "] does not match [" + _meta.getMd5sum() + "]");
+        }
+
+        _connectionMeta = _meta.forConnection(header);
+        _publisherCallerId = header.get("callerid");
+        _connectionId = (Integer)proto[3];
+        LOG.debug("UDPROS connection {} to {}:{} for {}",
+            _connectionId, proto[1], proto[2], _topic);
+    }
+
+    /**
+     * @return the number of messages lost to missing, reordered or
+     * malformed datagrams.
+     */
+    @Override
+    public long getDroppedMessageCount() {
+        return _droppedMessages.get();
+    }
+
+    @Override
+    public int getConnectionId() {
+        return _linkId;
+    }
+
+    @Override
+    public String getTransport() {
+        return "UDPROS";
+    }
+
+    @Override
+    public String getDestination() {
+        return _publisherCallerId;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !_closed.get();
+    }
+
+    @Override
+    public long getMessageCount() {
+        return _messagesReceived.get();
+    }
+
+    @Override
+    public long getByteCount() {
+        return _bytesReceived.get();
+    }
+
+    @Override
+    public long getCreatedNanos() {
+        return _createdNanos;
+    }
+
+    @Override
+    public void readable(SelectionKey key) throws IOException {
+        final ByteBuffer buf = _loop.sharedReadBuffer();
+        for (;;) {
+            buf.clear();
+            if (_channel.receive(buf) == null) {
+                break;
+            }
+            buf.flip();
+            datagramRecv(buf);
+        }
+    }
+
+    /**
+     * Handles one datagram.
+     *
+     * @param buf the datagram, in ROS byte order
+     */
+    void datagramRecv(ByteBuffer buf) {
+        if (buf.remaining() < HEADER_SIZE) {
+            LOG.debug("ignoring runt datagram");
+            return;
+        }
+
+        final int connectionId = buf.getInt();
+        final byte op = buf.get();
+        final byte messageId = buf.get();
+        final int block = buf.getShort() & 0xffff;
+
+        final int expectedId = _connectionId;
+        if (expectedId != -1 && connectionId != expectedId) {
+            return;
+        }
+
+        switch (op) {
+        case OP_DATA0:
+            if (_assembly != null) {
+                // the previous message lost its tail
+                dropAssembly();
+            }
+            data0(messageId, block, buf);
+            break;
+        case OP_DATAN:
+            dataN(messageId, block, buf);
+            break;
+        case OP_ERR:
+            LOG.info("UDPROS publisher closed connection for {}", _topic);
+            close();
+            break;
+        default:
+            // PING and anything newer
+            break;
+        }
+    }
+
+    private void data0(byte messageId, int blocks, ByteBuffer buf) {
+        if (blocks == 0 || buf.remaining() < 4) {
+            _droppedMessages.incrementAndGet();
+            return;
+        }
+        final int length = buf.getInt();
+        // The length comes from the datagram, and until connected()
+        // any sender is accepted, so it is checked against what the
+        // blocks can carry before anything is allocated for it.
+        if (length < 0 || length > TCPROSProtocol.MAX_MESSAGE_LENGTH ||
+            length + 4L > blocks * (long)(_maxDatagramSize - HEADER_SIZE))
+        {
+            _droppedMessages.incrementAndGet();
+            return;
+        }
+
+        if (blocks == 1) {
+            if (buf.remaining() != length) {
+                _droppedMessages.incrementAndGet();
+                return;
+            }
+            messageRecv(buf);
+            return;
+        }
+
+        if (buf.remaining() > length) {
+            _droppedMessages.incrementAndGet();
+            return;
+        }
+        _assembly = _bufferPool.acquire(length);
+        _assembly.put(buf);
+        _assemblyMessageId = messageId;
+        _assemblyBlocks = blocks;
+        _assemblyNextBlock = 1;
+    }
+
+    private void dataN(byte messageId, int block, ByteBuffer buf) {
+        if (_assembly == null) {
+            // we missed the DATA0, already counted if it was ours.
+            return;
+        }
+        if (messageId != _assemblyMessageId ||
+            block != _assemblyNextBlock ||
+            buf.remaining() > _assembly.remaining())
+        {
+            dropAssembly();
+            return;
+        }
+
+        _assembly.put(buf);
+        if (++_assemblyNextBlock < _assemblyBlocks) {
+            return;
+        }
+
+        ByteBuffer assembly = _assembly;
+        _assembly = null;
+        try {
+            if (assembly.hasRemaining()) {
+                // the blocks were short of the frame's length
+                _droppedMessages.incrementAndGet();
+            } else {
+                assembly.flip();
+                messageRecv(assembly);
+            }
+        } finally {
+            _bufferPool.release(assembly);
+        }
+    }
+
+    private void dropAssembly() {
+        _droppedMessages.incrementAndGet();
+        _bufferPool.release(_assembly);
+        _assembly = null;
+    }
+
+    private void messageRecv(ByteBuffer buf) {
+        final int size = buf.remaining();
+        M msg;
+        try {
+            msg = _connectionMeta.deserialize(new ByteBufferDeserializer(buf));
+        } catch (RuntimeException ex) {
+            LOG.warn("failed to deserialize UDPROS message for " + _topic, ex);
+            _droppedMessages.incrementAndGet();
+            return;
+        }
+        _messagesReceived.incrementAndGet();
+        _bytesReceived.addAndGet(size);
+        _messageConsumer.accept(msg);
+    }
+
+    @Override
+    public void close() {
+        close(true);
+    }
+
+    /**
+     * Closes a link the publisher did not select, without notifying the
+     * close listener.
+     */
+    public void discard() {
+        close(false);
+    }
+
+    private void close(boolean notify) {
+        if (!_closed.compareAndSet(false, true)) {
+            return;
+        }
+        _loop.channelRemoved();
+        try {
+            _channel.close();
+        } catch (IOException ex) {
+            LOG.warn("error closing UDPROS channel", ex);
+        }
+        // an incomplete message may still hold a pooled buffer
+        _loop.runOnSelectorThread(() -> {
+            if (_assembly != null) {
+                _bufferPool.release(_assembly);
+                _assembly = null;
+            }
+        });
+        if (notify) {
+            _closeListener.run();
+        }
+    }
+}
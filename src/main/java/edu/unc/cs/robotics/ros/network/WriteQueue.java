@@ -0,0 +1,106 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A lock-free, unbounded, multi-producer single-consumer queue of
+ * buffers to write.  Each entry carries its buffer together with the
+ * action to run once the buffer has been written (or discarded).
+ *
+ * <p>Any thread may {@link #offer(Entry)}.  Only one thread at a time may
+ * {@link #poll()}, callers are responsible for ensuring that.</p>
+ *
+ * <p>This is an intrusive variant of Dmitry Vyukov's MPSC linked queue:
+ * the entries are the list nodes, and the head always points at the
+ * most recently consumed entry (initially a stub).</p>
+ */
+final class WriteQueue {
+    static final class Entry {
+        final ByteBuffer buffer;
+        final Runnable writeCompleteAction;
+        /**
+         * The number of bytes in the buffer when it was queued.
+         */
+        final int size;
+        /**
+         * False for entries that must be sent regardless of the queue's
+         * drop policy, such as connection headers.
+         */
+        final boolean droppable;
+        volatile Entry next;
+
+        Entry(ByteBuffer buffer, Runnable writeCompleteAction) {
+            this(buffer, writeCompleteAction, true);
+        }
+
+        Entry(ByteBuffer buffer, Runnable writeCompleteAction, boolean droppable) {
+            this.buffer = buffer;
+            this.writeCompleteAction = writeCompleteAction;
+            this.size = buffer == null ? 0 : buffer.remaining();
+            this.droppable = droppable;
+        }
+
+        /**
+         * @return true if some but not all of the buffer was written.
+         */
+        boolean isPartiallyWritten() {
+            return buffer.remaining() != size;
+        }
+
+        void complete() {
+            if (writeCompleteAction != null) {
+                writeCompleteAction.run();
+            }
+        }
+    }
+
+    private static final AtomicReferenceFieldUpdater<Entry, Entry> NEXT =
+        AtomicReferenceFieldUpdater.newUpdater(Entry.class, Entry.class, "next");
+
+    private final AtomicReference<Entry> _tail;
+    private Entry _head;
+
+    WriteQueue() {
+        Entry stub = new Entry(null, null);
+        _head = stub;
+        _tail = new AtomicReference<>(stub);
+    }
+
+    /**
+     * Adds an entry to the tail of the queue.  Safe to call from any
+     * thread.
+     */
+    void offer(Entry entry) {
+        Entry prev = _tail.getAndSet(entry);
+        // between the swap above and the store below, the entry is not
+        // reachable from the head.  The consumer treats the queue as
+        // empty during that window.
+        NEXT.lazySet(prev, entry);
+    }
+
+    /**
+     * Removes the entry at the head of the queue.  Must only be called
+     * by the consumer.
+     *
+     * @return the entry, or null if the queue is empty.
+     */
+    Entry poll() {
+        Entry next = _head.next;
+        if (next == null) {
+            return null;
+        }
+        // the polled entry becomes the new stub.  Its fields remain
+        // valid for the caller, the queue only uses its next pointer.
+        _head = next;
+        return next;
+    }
+
+    /**
+     * @return true if the consumer would currently see an empty queue.
+     */
+    boolean isEmpty() {
+        return _head.next == null;
+    }
+}
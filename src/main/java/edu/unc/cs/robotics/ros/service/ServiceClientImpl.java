@@ -0,0 +1,130 @@
+package edu.unc.cs.robotics.ros.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import edu.unc.cs.robotics.ros.Name;
+import edu.unc.cs.robotics.ros.ServiceClient;
+import edu.unc.cs.robotics.ros.msg.Message;
+import edu.unc.cs.robotics.ros.msg.MetaService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A service client with a pool of persistent connections.  A call goes
+ * to the connection with the fewest outstanding calls, and a new
+ * connection is only opened when every connection is busy and the pool
+ * is not full.  The server's URI is looked up once and cached until a
+ * connection to it fails.
+ */
+class ServiceClientImpl<Q extends Message, R extends Message> implements ServiceClient<Q, R> {
+    private static final Logger LOG = LoggerFactory.getLogger(ServiceClientImpl.class);
+
+    private final ServiceManager _serviceManager;
+    private final MetaService<Q, R> _meta;
+    private final Name _service;
+    private final int _maxConnections;
+    private final Executor _executor;
+
+    // guarded by this
+    private final List<ServiceConnection<Q, R>> _connections = new ArrayList<>();
+    private CompletableFuture<URI> _lookup;
+    private boolean _closed;
+
+    ServiceClientImpl(
+        ServiceManager serviceManager, MetaService<Q, R> meta, Name service,
+        int maxConnections, Executor executor)
+    {
+        _serviceManager = serviceManager;
+        _meta = meta;
+        _service = service;
+        _maxConnections = maxConnections;
+        _executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<R> call(Q request) {
+        CompletableFuture<URI> lookup = lookup();
+        return lookup
+            .thenCompose((uri) -> connection(uri).call(request))
+            .whenComplete((response, ex) -> {
+                if (ex != null && unwrap(ex) instanceof IOException) {
+                    // the server may have moved, look it up again
+                    invalidate(lookup);
+                }
+            });
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+    private synchronized CompletableFuture<URI> lookup() {
+        if (_closed) {
+            CompletableFuture<URI> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IOException("service client closed"));
+            return failed;
+        }
+        if (_lookup == null) {
+            _lookup = _serviceManager.lookupService(_service);
+        }
+        return _lookup;
+    }
+
+    private synchronized void invalidate(CompletableFuture<URI> lookup) {
+        if (_lookup == lookup) {
+            _lookup = null;
+        }
+    }
+
+    private synchronized ServiceConnection<Q, R> connection(URI uri) {
+        if (_closed) {
+            throw new CompletionException(new IOException("service client closed"));
+        }
+
+        ServiceConnection<Q, R> best = null;
+        for (Iterator<ServiceConnection<Q, R>> it = _connections.iterator() ; it.hasNext() ; ) {
+            ServiceConnection<Q, R> conn = it.next();
+            if (conn.isClosed()) {
+                it.remove();
+            } else if (best == null || conn.pendingCount() < best.pendingCount()) {
+                best = conn;
+            }
+        }
+
+        if (best == null || (best.pendingCount() > 0 && _connections.size() < _maxConnections)) {
+            try {
+                best = _serviceManager.connect(uri, _service, _meta, _executor);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+            LOG.debug("opened connection {} of {} to {} at {}",
+                _connections.size() + 1, _maxConnections, _service, uri);
+            _connections.add(best);
+        }
+        return best;
+    }
+
+    @Override
+    public void close() {
+        List<ServiceConnection<Q, R>> connections;
+        synchronized (this) {
+            if (_closed) {
+                return;
+            }
+            _closed = true;
+            connections = new ArrayList<>(_connections);
+            _connections.clear();
+        }
+        for (ServiceConnection<Q, R> conn : connections) {
+            conn.close();
+        }
+        _serviceManager.removeClient(this);
+    }
+}
@@ -0,0 +1,29 @@
+package edu.unc.cs.robotics.ros.service;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+
+import edu.unc.cs.robotics.ros.msg.Message;
+
+/**
+ * A persistent client connection to a service server.
+ */
+public interface ServiceConnection<Q extends Message, R extends Message> extends Closeable {
+    /**
+     * Sends a request.  Requests are pipelined, this does not wait for
+     * the responses of earlier calls.
+     *
+     * @param request the request
+     * @return the response
+     */
+    CompletableFuture<R> call(Q request);
+
+    /**
+     * @return the number of calls awaiting a response.
+     */
+    int pendingCount();
+
+    boolean isClosed();
+
+    void close();
+}
@@ -0,0 +1,11 @@
+package edu.unc.cs.robotics.ros.service;
+
+/**
+ * A service call that reached the server but failed there.  The message
+ * is the error the server sent.
+ */
+public class ServiceException extends Exception {
+    public ServiceException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,20 @@
+package edu.unc.cs.robotics.ros.service;
+
+import edu.unc.cs.robotics.ros.msg.Message;
+
+/**
+ * Handles the requests of an advertised service.
+ *
+ * @param <Q> the request type
+ * @param <R> the response type
+ */
+@FunctionalInterface
+public interface ServiceHandler<Q extends Message, R extends Message> {
+    /**
+     * @param request the request
+     * @return the response
+     * @throws Exception to fail the call, the exception's message is
+     *    sent to the caller.
+     */
+    R call(Q request) throws Exception;
+}
@@ -0,0 +1,247 @@
+package edu.unc.cs.robotics.ros.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import javax.inject.Inject;
+
+import com.google.inject.Singleton;
+import edu.unc.cs.robotics.ros.Name;
+import edu.unc.cs.robotics.ros.Names;
+import edu.unc.cs.robotics.ros.ROSMaster;
+import edu.unc.cs.robotics.ros.Service;
+import edu.unc.cs.robotics.ros.ServiceClient;
+import edu.unc.cs.robotics.ros.ServiceServer;
+import edu.unc.cs.robotics.ros.msg.Message;
+import edu.unc.cs.robotics.ros.msg.MetaService;
+import edu.unc.cs.robotics.ros.network.NetworkServer;
+import edu.unc.cs.robotics.ros.xmlrpc.XmlrpcClient;
+import edu.unc.cs.robotics.ros.xmlrpc.XmlrpcServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Advertises this node's services and creates service clients.  Service
+ * calls use TCPROS connections on the {@link NetworkServer}, the master
+ * is only involved in registration and lookup.
+ */
+@Singleton
+public class ServiceManager implements Service {
+    private static final Logger LOG = LoggerFactory.getLogger(ServiceManager.class);
+    static final int MAX_RETRIES = 3;
+
+    private final Map<String, ServicePublication<?, ?>> _serviceMap = new HashMap<>();
+    private final Set<ServiceClientImpl<?, ?>> _clients = new HashSet<>();
+
+    private final XmlrpcServer _xmlrpcServer;
+    private final XmlrpcClient _xmlrpcClient;
+    private final NetworkServer _networkServer;
+    private final Names _names;
+    private final URI _masterUri;
+
+    private volatile boolean _stopped;
+
+    @Inject
+    ServiceManager(
+        XmlrpcServer xmlrpcServer,
+        XmlrpcClient xmlrpcClient,
+        NetworkServer networkServer,
+        Names names,
+        @ROSMaster URI masterUri)
+    {
+        _xmlrpcServer = xmlrpcServer;
+        _xmlrpcClient = xmlrpcClient;
+        _networkServer = networkServer;
+        _names = names;
+        _masterUri = masterUri;
+    }
+
+    String getCallerId() {
+        return _names.getName();
+    }
+
+    String getVassalUri() {
+        return _xmlrpcServer.getUri();
+    }
+
+    /**
+     * @return the URI at which this node's services are reached.
+     */
+    String getServiceApi() {
+        return "rosrpc://" + _networkServer.getHost() + ":" + _networkServer.getPort();
+    }
+
+    XmlrpcClient.Dispatch masterCall(String methodName, Object... params) {
+        return _xmlrpcClient.prepare(_masterUri, methodName, params);
+    }
+
+    boolean isStopped() {
+        return _stopped;
+    }
+
+    @Override
+    public void start() {
+        LOG.info("started");
+    }
+
+    @Override
+    public void stop() {
+        _stopped = true;
+
+        List<ServicePublication<?, ?>> services;
+        synchronized (_serviceMap) {
+            services = new ArrayList<>(_serviceMap.values());
+            _serviceMap.clear();
+        }
+        for (ServicePublication<?, ?> service : services) {
+            service.unregister(0);
+        }
+
+        List<ServiceClientImpl<?, ?>> clients;
+        synchronized (_clients) {
+            clients = new ArrayList<>(_clients);
+        }
+        for (ServiceClientImpl<?, ?> client : clients) {
+            client.close();
+        }
+
+        LOG.info("stopped");
+    }
+
+    /**
+     * Advertises a service.  A node may only advertise a service name
+     * once at a time.
+     *
+     * @param meta the service type
+     * @param service the service name
+     * @param executor runs the handler
+     * @param handler handles the requests
+     * @return the handle that unadvertises the service when closed
+     * @throws IllegalStateException if the service is already advertised
+     */
+    public <Q extends Message, R extends Message> ServiceServer advertiseService(
+        MetaService<Q, R> meta, Name service,
+        Executor executor, ServiceHandler<Q, R> handler)
+    {
+        ServicePublication<Q, R> pub = new ServicePublication<>(
+            this, meta, service, executor, handler);
+
+        synchronized (_serviceMap) {
+            if (_serviceMap.containsKey(service.toString())) {
+                throw new IllegalStateException("service already advertised: " + service);
+            }
+            _serviceMap.put(service.toString(), pub);
+        }
+
+        pub.register(0);
+        return pub;
+    }
+
+    void unadvertiseService(ServicePublication<?, ?> pub) {
+        synchronized (_serviceMap) {
+            if (_serviceMap.get(pub.getService().toString()) != pub) {
+                return;
+            }
+            _serviceMap.remove(pub.getService().toString());
+        }
+        pub.unregister(0);
+    }
+
+    /**
+     * Finds the service for an incoming connection.
+     *
+     * @param service the service requested
+     * @param md5sum the md5sum the caller expects, or "*"
+     * @return the service
+     * @throws IllegalStateException if the service is not advertised
+     *   here or its md5sum does not match.
+     */
+    public ServicePublication<?, ?> lookupServicePublication(String service, String md5sum) {
+        ServicePublication<?, ?> pub;
+        synchronized (_serviceMap) {
+            pub = _serviceMap.get(service);
+        }
+        if (pub == null) {
+            throw new IllegalStateException("non-existant service: " + service);
+        }
+        String ourMd5sum = pub.getMeta().getMd5sum();
+        if (!md5sum.equals(ourMd5sum) && !"*".equals(md5sum) && !"*".equals(ourMd5sum)) {
+            throw new IllegalStateException("client wants service [" + service +
+                "] with md5sum [" + md5sum + "], but it has md5sum [" + ourMd5sum + "]");
+        }
+        return pub;
+    }
+
+    /**
+     * Creates a client for a service.  The client is not connected
+     * until the first call.
+     *
+     * @param meta the service type
+     * @param service the service name
+     * @param maxConnections the maximum number of persistent connections
+     * @param executor completes the calls' futures
+     * @return the client
+     */
+    public <Q extends Message, R extends Message> ServiceClient<Q, R> serviceClient(
+        MetaService<Q, R> meta, Name service, int maxConnections, Executor executor)
+    {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections must be positive");
+        }
+        ServiceClientImpl<Q, R> client = new ServiceClientImpl<>(
+            this, meta, service, maxConnections, executor);
+        synchronized (_clients) {
+            _clients.add(client);
+        }
+        return client;
+    }
+
+    void removeClient(ServiceClientImpl<?, ?> client) {
+        synchronized (_clients) {
+            _clients.remove(client);
+        }
+    }
+
+    /**
+     * Asks the master where a service is.
+     *
+     * @param service the service
+     * @return the service's rosrpc URI
+     */
+    CompletableFuture<URI> lookupService(Name service) {
+        CompletableFuture<URI> future = new CompletableFuture<>();
+        masterCall("lookupService", getCallerId(), service.toString())
+            .onSuccess((result) -> {
+                Object[] tuple = (Object[])result;
+                if (tuple.length == 3 && Integer.valueOf(1).equals(tuple[0]) && tuple[2] instanceof String) {
+                    future.complete(URI.create((String)tuple[2]));
+                } else {
+                    future.completeExceptionally(new IOException(
+                        "lookup of service " + service + " failed: " + tuple[1]));
+                }
+            })
+            .onFault((code, status) -> future.completeExceptionally(new IOException(
+                "lookup of service " + service + " failed (" + code + "): " + status)))
+            .onError(future::completeExceptionally)
+            .invoke();
+        return future;
+    }
+
+    <Q extends Message, R extends Message> ServiceConnection<Q, R> connect(
+        URI uri, Name service, MetaService<Q, R> meta, Executor executor)
+        throws IOException
+    {
+        if (uri.getHost() == null || uri.getPort() < 0) {
+            throw new IOException("invalid service URI: " + uri);
+        }
+        return _networkServer.connectService(
+            uri.getHost(), uri.getPort(), service.toString(), meta, executor);
+    }
+}
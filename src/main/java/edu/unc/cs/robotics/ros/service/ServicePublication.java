@@ -0,0 +1,130 @@
+package edu.unc.cs.robotics.ros.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import edu.unc.cs.robotics.ros.Name;
+import edu.unc.cs.robotics.ros.ServiceServer;
+import edu.unc.cs.robotics.ros.msg.Message;
+import edu.unc.cs.robotics.ros.msg.MetaService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A service advertised by this node.  Incoming connections look the
+ * publication up by name, and hand it each request.
+ *
+ * @param <Q> the request type
+ * @param <R> the response type
+ */
+public class ServicePublication<Q extends Message, R extends Message> implements ServiceServer {
+    private static final Logger LOG = LoggerFactory.getLogger(ServicePublication.class);
+
+    private final ServiceManager _serviceManager;
+    private final MetaService<Q, R> _meta;
+    private final Name _service;
+    private final Executor _executor;
+    private final ServiceHandler<Q, R> _handler;
+
+    private boolean _closed;
+
+    ServicePublication(
+        ServiceManager serviceManager, MetaService<Q, R> meta, Name service,
+        Executor executor, ServiceHandler<Q, R> handler)
+    {
+        _serviceManager = serviceManager;
+        _meta = meta;
+        _service = service;
+        _executor = executor;
+        _handler = handler;
+    }
+
+    public MetaService<Q, R> getMeta() {
+        return _meta;
+    }
+
+    public Name getService() {
+        return _service;
+    }
+
+    /**
+     * Runs the handler on the service's executor.
+     *
+     * @param request the request
+     * @return the handler's response, or its failure.
+     */
+    public CompletableFuture<R> call(Q request) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        _executor.execute(() -> {
+            try {
+                R response = _handler.call(request);
+                if (response == null) {
+                    throw new ServiceException("service handler returned null");
+                }
+                future.complete(response);
+            } catch (Exception ex) {
+                LOG.debug("service " + _service + " failed", ex);
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+
+    void register(int retry) {
+        if (retry > 0 && _serviceManager.isStopped()) {
+            return;
+        }
+
+        _serviceManager.masterCall("registerService",
+            _serviceManager.getCallerId(),
+            _service.toString(),
+            _serviceManager.getServiceApi(),
+            _serviceManager.getVassalUri())
+            .onSuccess((result) -> LOG.debug("registered service {} with master", _service))
+            .onFault((code, status) -> LOG.warn("register service {} failed with code ({}): {}",
+                _service, code, status))
+            .onError((ex) -> {
+                LOG.warn(
+                    String.format("register service %s failed with exception (retry %d)",
+                        _service, retry),
+                    ex);
+                if (retry < ServiceManager.MAX_RETRIES) {
+                    register(retry + 1);
+                }
+            })
+            .invokeLater(retry * retry * 5, TimeUnit.SECONDS);
+    }
+
+    void unregister(int retry) {
+        if (retry > 0 && _serviceManager.isStopped()) {
+            return;
+        }
+
+        _serviceManager.masterCall("unregisterService",
+            _serviceManager.getCallerId(),
+            _service.toString(),
+            _serviceManager.getServiceApi())
+            .onSuccess((result) -> LOG.debug("unregistered service {}", _service))
+            .onFault((code, status) -> LOG.warn("unregister service {} failed ({}): {}",
+                _service, code, status))
+            .onError((ex) -> {
+                LOG.warn(
+                    String.format("unregister service %s failed with exception (retry %d)",
+                        _service, retry),
+                    ex);
+                if (retry < ServiceManager.MAX_RETRIES) {
+                    unregister(retry + 1);
+                }
+            })
+            .invokeLater(retry * retry * 5, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!_closed) {
+            _closed = true;
+            _serviceManager.unadvertiseService(this);
+        }
+    }
+}
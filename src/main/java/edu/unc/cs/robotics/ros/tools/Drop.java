@@ -0,0 +1,50 @@
+package edu.unc.cs.robotics.ros.tools;
+
+import edu.unc.cs.robotics.ros.NodeHandle;
+import edu.unc.cs.robotics.ros.msg.RawMessage;
+
+/**
+ * Republishes a topic, dropping X out of every Y messages, like
+ * topic_tools drop.
+ */
+public final class Drop extends TopicTool {
+    private final int _dropCount;
+    private final int _period;
+    /**
+     * Position in the current period of Y messages, guarded by this.
+     */
+    private int _count;
+
+    /**
+     * @param dropCount the number of messages to drop (X)
+     * @param period out of every this many messages (Y)
+     */
+    public Drop(
+        NodeHandle node, String input, String output, int queueSize,
+        int dropCount, int period)
+    {
+        super(node, output, queueSize);
+        if (period <= 0 || dropCount < 0 || dropCount > period) {
+            throw new IllegalArgumentException(
+                "invalid drop " + dropCount + " out of " + period);
+        }
+        _dropCount = dropCount;
+        _period = period;
+        subscribe(input);
+    }
+
+    @Override
+    protected void messageRecv(String input, RawMessage msg) {
+        if (admit()) {
+            forward(msg);
+        }
+    }
+
+    synchronized boolean admit() {
+        boolean drop = _count < _dropCount;
+        if (++_count == _period) {
+            _count = 0;
+        }
+        return !drop;
+    }
+}
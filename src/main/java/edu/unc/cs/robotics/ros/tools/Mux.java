@@ -0,0 +1,129 @@
+package edu.unc.cs.robotics.ros.tools;
+
+import java.util.List;
+
+import edu.unc.cs.robotics.ros.NodeHandle;
+import edu.unc.cs.robotics.ros.ServiceServer;
+import edu.unc.cs.robotics.ros.msg.RawMessage;
+import edu.unc.cs.robotics.ros.msg.tools.MuxSelect;
+import edu.unc.cs.robotics.ros.msg.tools.MuxSelectResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Republishes one of several topics, like topic_tools mux.  All the
+ * inputs stay subscribed, messages from the unselected ones are
+ * discarded as they arrive.
+ */
+public final class Mux extends TopicTool {
+    private static final Logger LOG = LoggerFactory.getLogger(Mux.class);
+
+    /**
+     * The topic that selects no input through the select service, as
+     * in topic_tools.
+     */
+    public static final String NONE = "__none";
+
+    private final NodeHandle _node;
+    private volatile String _selected;
+    /**
+     * Guarded by this.
+     */
+    private ServiceServer _selectService;
+
+    /**
+     * @param inputs the input topics, the first is selected initially.
+     */
+    public Mux(NodeHandle node, String output, List<String> inputs, int queueSize) {
+        super(node, output, queueSize);
+        _node = node;
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("no inputs");
+        }
+        _selected = inputs.get(0);
+        for (String input : inputs) {
+            subscribe(input);
+        }
+    }
+
+    /**
+     * Selects the input to republish.
+     *
+     * @param input one of the inputs, or null for none
+     * @return the previously selected input
+     * @throws IllegalArgumentException if the input is not subscribed
+     */
+    public String select(String input) {
+        if (input != null && !getInputs().contains(input)) {
+            throw new IllegalArgumentException("not an input: " + input);
+        }
+        String prev = _selected;
+        _selected = input;
+        LOG.info("{} selected {}", getOutput(), input);
+        return prev;
+    }
+
+    /**
+     * Advertises {@link #select} as a topic_tools/MuxSelect service, so
+     * that the input of a mux running as its own node can be switched.
+     * The service is closed with the mux.
+     *
+     * @param service the service name, topic_tools uses "mux/select"
+     */
+    public synchronized void advertiseSelect(String service) {
+        if (_selectService != null) {
+            throw new IllegalStateException("select is already advertised");
+        }
+        // select does not block, so it runs on the connection's thread
+        _selectService = _node.advertiseService(MuxSelect.META, service, Runnable::run, request -> {
+            String prev = select(NONE.equals(request.topic) ? null : request.topic);
+            return new MuxSelectResponse(prev == null ? NONE : prev);
+        });
+    }
+
+    /**
+     * @return the selected input, or null for none.
+     */
+    public String getSelected() {
+        return _selected;
+    }
+
+    /**
+     * Adds an input.  It is not selected.
+     */
+    public void add(String input) {
+        subscribe(input);
+    }
+
+    /**
+     * Removes an input.  If it was selected, no input is selected.
+     *
+     * @return true if the input was removed.
+     */
+    public boolean delete(String input) {
+        if (input.equals(_selected)) {
+            _selected = null;
+        }
+        return unsubscribe(input);
+    }
+
+    @Override
+    public void close() {
+        ServiceServer server;
+        synchronized (this) {
+            server = _selectService;
+            _selectService = null;
+        }
+        if (server != null) {
+            server.close();
+        }
+        super.close();
+    }
+
+    @Override
+    protected void messageRecv(String input, RawMessage msg) {
+        if (input.equals(_selected)) {
+            forward(msg);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package edu.unc.cs.robotics.ros.tools;
+
+import edu.unc.cs.robotics.ros.NodeHandle;
+import edu.unc.cs.robotics.ros.msg.RawMessage;
+
+/**
+ * Republishes every message of one topic on another, like
+ * topic_tools relay.
+ */
+public final class Relay extends TopicTool {
+    public Relay(NodeHandle node, String input, String output, int queueSize) {
+        super(node, output, queueSize);
+        subscribe(input);
+    }
+
+    @Override
+    protected void messageRecv(String input, RawMessage msg) {
+        forward(msg);
+    }
+}
@@ -0,0 +1,118 @@
+package edu.unc.cs.robotics.ros.tools;
+
+import java.util.concurrent.TimeUnit;
+
+import edu.unc.cs.robotics.ros.NodeHandle;
+import edu.unc.cs.robotics.ros.msg.RawMessage;
+
+/**
+ * Republishes a topic at a lower rate, like topic_tools throttle.
+ * Messages are admitted based on their arrival time and serialized
+ * size, they are never decoded.
+ *
+ * <p>In messages mode, a message is forwarded if at least 1/rate
+ * seconds have passed since the last forwarded message.  In bytes
+ * mode, the output is limited to an average number of bytes per
+ * second, with bursts of up to a window's worth of bytes.  A message
+ * larger than the burst is never forwarded.</p>
+ */
+public final class Throttle extends TopicTool {
+    /**
+     * The minimum time between messages, or 0 in bytes mode.
+     */
+    private final long _periodNanos;
+    private final double _bytesPerNano;
+    private final double _burstBytes;
+
+    // guarded by this
+    private boolean _started;
+    private long _lastNanos;
+    private double _tokens;
+
+    private Throttle(
+        NodeHandle node, String input, String output, int queueSize,
+        long periodNanos, double bytesPerSecond, double burstBytes)
+    {
+        super(node, output, queueSize);
+        _periodNanos = periodNanos;
+        _bytesPerNano = bytesPerSecond / TimeUnit.SECONDS.toNanos(1);
+        _burstBytes = burstBytes;
+        _tokens = burstBytes;
+        subscribe(input);
+    }
+
+    /**
+     * Throttles a topic to a maximum message rate.
+     *
+     * @param rate the maximum messages per second
+     */
+    public static Throttle messages(
+        NodeHandle node, String input, String output, int queueSize, double rate)
+    {
+        return new Throttle(node, input, output, queueSize, periodNanos(rate), 0, 0);
+    }
+
+    /**
+     * Throttles a topic to a maximum bandwidth.
+     *
+     * @param bytesPerSecond the maximum average bytes per second
+     * @param windowSeconds the period over which bandwidth is
+     *    averaged, limits the burst size to bytesPerSecond*windowSeconds
+     */
+    public static Throttle bytes(
+        NodeHandle node, String input, String output, int queueSize,
+        double bytesPerSecond, double windowSeconds)
+    {
+        return new Throttle(
+            node, input, output, queueSize, 0,
+            bytesPerSecond, burstBytes(bytesPerSecond, windowSeconds));
+    }
+
+    private static long periodNanos(double rate) {
+        if (!(rate > 0)) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        return Math.max(1, (long)(TimeUnit.SECONDS.toNanos(1) / rate));
+    }
+
+    private static double burstBytes(double bytesPerSecond, double windowSeconds) {
+        if (!(bytesPerSecond > 0) || !(windowSeconds > 0)) {
+            throw new IllegalArgumentException("bandwidth and window must be positive");
+        }
+        return bytesPerSecond * windowSeconds;
+    }
+
+    @Override
+    protected void messageRecv(String input, RawMessage msg) {
+        if (admit(System.nanoTime(), msg.size())) {
+            forward(msg);
+        }
+    }
+
+    /**
+     * @param now the message's arrival time, from System.nanoTime()
+     * @param size the message's serialized size
+     * @return true if the message should be forwarded
+     */
+    synchronized boolean admit(long now, int size) {
+        if (_periodNanos > 0) {
+            if (_started && now - _lastNanos < _periodNanos) {
+                return false;
+            }
+            _started = true;
+            _lastNanos = now;
+            return true;
+        }
+
+        if (_started) {
+            _tokens = Math.min(_burstBytes, _tokens + (now - _lastNanos) * _bytesPerNano);
+        }
+        _started = true;
+        _lastNanos = now;
+        if (_tokens < size) {
+            return false;
+        }
+        _tokens -= size;
+        return true;
+    }
+}
@@ -0,0 +1,256 @@
+package edu.unc.cs.robotics.ros.tools;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.unc.cs.robotics.ros.NodeHandle;
+import edu.unc.cs.robotics.ros.Publisher;
+import edu.unc.cs.robotics.ros.Subscriber;
+import edu.unc.cs.robotics.ros.msg.RawMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class of the topic_tools style nodes.  Inputs are subscribed
+ * with {@link NodeHandle#subscribeRaw}, so payloads are never
+ * deserialized, and messages are handled on the thread of the link
+ * they arrived on.  Forwarded messages go straight to the output's
+ * publication, which copies them into its subscribers' write queues.
+ *
+ * <p>The output is advertised when the first message is forwarded,
+ * with the type, md5sum, definition and latching of the publisher it
+ * came from.  If a later message has a different md5sum (e.g., a mux
+ * switched to another type), the output is advertised again.</p>
+ */
+public abstract class TopicTool implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(TopicTool.class);
+
+    /**
+     * Runs listeners on the link's thread.  The tools only decide
+     * whether to forward a message, which does not block.
+     */
+    private static final Executor DIRECT = Runnable::run;
+
+    private final NodeHandle _node;
+    private final String _output;
+    private final int _queueSize;
+
+    /**
+     * Guarded by this.
+     */
+    private final Map<String, Subscriber<RawMessage>> _subscribers = new HashMap<>();
+    /**
+     * Guarded by this.
+     */
+    private boolean _closed;
+    private volatile Output _current;
+
+    private final AtomicLong _received = new AtomicLong();
+    private final AtomicLong _forwarded = new AtomicLong();
+
+    protected TopicTool(NodeHandle node, String output, int queueSize) {
+        if (queueSize < 0) {
+            throw new IllegalArgumentException("queueSize must be non-negative");
+        }
+        _node = node;
+        _output = output;
+        _queueSize = queueSize;
+    }
+
+    /**
+     * The output's publisher and the md5sum it was advertised with.
+     */
+    private static final class Output {
+        final Publisher<RawMessage> _publisher;
+        final String _md5sum;
+
+        Output(Publisher<RawMessage> publisher, String md5sum) {
+            _publisher = publisher;
+            _md5sum = md5sum;
+        }
+    }
+
+    public String getOutput() {
+        return _output;
+    }
+
+    /**
+     * Subscribes to an input.  Subclasses call this once they are fully
+     * constructed, since messages may arrive before it returns.
+     *
+     * @param input the input topic
+     */
+    protected final void subscribe(String input) {
+        synchronized (this) {
+            if (_closed) {
+                throw new IllegalStateException("closed");
+            }
+            if (_subscribers.containsKey(input)) {
+                return;
+            }
+            // reserve the entry, subscribeRaw may call back into us
+            _subscribers.put(input, null);
+        }
+
+        Subscriber<RawMessage> sub = null;
+        try {
+            sub = _node.subscribeRaw(input, _queueSize, DIRECT, (msg) -> {
+                _received.incrementAndGet();
+                messageRecv(input, msg);
+            });
+        } finally {
+            boolean keep;
+            synchronized (this) {
+                keep = sub != null && !_closed && _subscribers.containsKey(input);
+                if (keep) {
+                    _subscribers.put(input, sub);
+                } else {
+                    _subscribers.remove(input);
+                }
+            }
+            if (sub != null && !keep) {
+                sub.close();
+            }
+        }
+    }
+
+    /**
+     * Unsubscribes from an input.
+     *
+     * @param input the input topic
+     * @return true if the input was subscribed
+     */
+    protected final boolean unsubscribe(String input) {
+        Subscriber<RawMessage> sub;
+        synchronized (this) {
+            if (!_subscribers.containsKey(input)) {
+                return false;
+            }
+            sub = _subscribers.remove(input);
+        }
+        if (sub != null) {
+            sub.close();
+        }
+        return true;
+    }
+
+    /**
+     * @return the subscribed input topics.
+     */
+    public synchronized List<String> getInputs() {
+        return new ArrayList<>(_subscribers.keySet());
+    }
+
+    /**
+     * Called for each message received on an input, on the thread of
+     * the link it arrived on.  Messages from different publishers may
+     * arrive concurrently.
+     *
+     * @param input the input topic the message was received on
+     * @param msg the message
+     */
+    protected abstract void messageRecv(String input, RawMessage msg);
+
+    /**
+     * Publishes a message on the output.
+     *
+     * @param msg a message received on an input
+     */
+    protected final void forward(RawMessage msg) {
+        Output out = _current;
+        if (out == null || !out._md5sum.equals(md5sum(msg))) {
+            out = advertise(msg);
+            if (out == null) {
+                return;
+            }
+        }
+        try {
+            out._publisher.publish(msg);
+        } catch (IllegalStateException ex) {
+            // closed, or replaced by another advertise, since we
+            // read _current.  The message is dropped.
+            return;
+        }
+        _forwarded.incrementAndGet();
+    }
+
+    private static String md5sum(RawMessage msg) {
+        String md5sum = msg.getMd5sum();
+        return md5sum == null ? "*" : md5sum;
+    }
+
+    private synchronized Output advertise(RawMessage msg) {
+        if (_closed) {
+            return null;
+        }
+
+        String md5sum = md5sum(msg);
+        Output out = _current;
+        if (out != null) {
+            if (out._md5sum.equals(md5sum)) {
+                // another thread advertised first
+                return out;
+            }
+            LOG.info("{} changed md5sum from {} to {}, advertising again",
+                _output, out._md5sum, md5sum);
+            out._publisher.close();
+        }
+
+        String dataType = msg.getDataType();
+        String definition = msg.getMessageDefinition();
+        Publisher<RawMessage> pub = _node.advertiseRaw(
+            dataType == null ? "*" : dataType,
+            md5sum,
+            definition == null ? "" : definition,
+            _output, _queueSize,
+            "1".equals(msg.getConnectionHeader().get("latching")));
+
+        out = new Output(pub, md5sum);
+        _current = out;
+        return out;
+    }
+
+    /**
+     * @return the number of messages received on all inputs.
+     */
+    public long getReceivedCount() {
+        return _received.get();
+    }
+
+    /**
+     * @return the number of messages published on the output.
+     */
+    public long getForwardedCount() {
+        return _forwarded.get();
+    }
+
+    @Override
+    public void close() {
+        List<Subscriber<RawMessage>> subs;
+        Output out;
+        synchronized (this) {
+            if (_closed) {
+                return;
+            }
+            _closed = true;
+            subs = new ArrayList<>(_subscribers.values());
+            _subscribers.clear();
+            out = _current;
+            _current = null;
+        }
+
+        for (Subscriber<RawMessage> sub : subs) {
+            if (sub != null) {
+                sub.close();
+            }
+        }
+        if (out != null) {
+            out._publisher.close();
+        }
+    }
+}
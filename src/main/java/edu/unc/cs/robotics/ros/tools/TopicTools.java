@@ -0,0 +1,130 @@
+package edu.unc.cs.robotics.ros.tools;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import edu.unc.cs.robotics.ros.Name;
+import edu.unc.cs.robotics.ros.NodeHandle;
+import edu.unc.cs.robotics.ros.NodeManager;
+import edu.unc.cs.robotics.ros.ROSModule;
+
+/**
+ * Runs one of the topic tools as a standalone node.  The arguments
+ * follow topic_tools:
+ *
+ * <pre>
+ * relay &lt;in&gt; [out]
+ * throttle messages &lt;in&gt; &lt;msgs/sec&gt; [out]
+ * throttle bytes &lt;in&gt; &lt;bytes/sec&gt; &lt;window secs&gt; [out]
+ * drop &lt;in&gt; &lt;X&gt; &lt;Y&gt; [out]
+ * mux &lt;out&gt; &lt;in1&gt; [in2 ...]
+ * </pre>
+ *
+ * <p>The output defaults to the input with the tool's name appended,
+ * e.g., "in_relay".  The master is taken from ROS_MASTER_URI.  A mux
+ * starts on its first input, and advertises the mux/select service
+ * (topic_tools/MuxSelect) to switch it.</p>
+ */
+public final class TopicTools {
+    private static final int QUEUE_SIZE = 100;
+
+    private TopicTools() {
+    }
+
+    private static String output(String[] args, int index, String input, String suffix) {
+        return args.length > index ? args[index] : input + "_" + suffix;
+    }
+
+    static TopicTool create(NodeHandle node, String[] args) {
+        switch (args.length == 0 ? "" : args[0]) {
+        case "relay":
+            if (args.length < 2) {
+                break;
+            }
+            return new Relay(node, args[1], output(args, 2, args[1], "relay"), QUEUE_SIZE);
+        case "throttle":
+            if (args.length >= 4 && "messages".equals(args[1])) {
+                return Throttle.messages(
+                    node, args[2], output(args, 4, args[2], "throttle"), QUEUE_SIZE,
+                    Double.parseDouble(args[3]));
+            }
+            if (args.length >= 5 && "bytes".equals(args[1])) {
+                return Throttle.bytes(
+                    node, args[2], output(args, 5, args[2], "throttle"), QUEUE_SIZE,
+                    Double.parseDouble(args[3]), Double.parseDouble(args[4]));
+            }
+            break;
+        case "drop":
+            if (args.length < 4) {
+                break;
+            }
+            return new Drop(
+                node, args[1], output(args, 4, args[1], "drop"), QUEUE_SIZE,
+                Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+        case "mux":
+            if (args.length < 3) {
+                break;
+            }
+            Mux mux = new Mux(node, args[1], Arrays.asList(args).subList(2, args.length), QUEUE_SIZE);
+            mux.advertiseSelect("mux/select");
+            return mux;
+        default:
+            break;
+        }
+        return null;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length == 0 || !Arrays.asList("relay", "throttle", "drop", "mux").contains(args[0])) {
+            usage();
+            return;
+        }
+
+        ROSModule.Builder builder = ROSModule.builder(args[0] + "_" + System.currentTimeMillis());
+        String master = System.getenv("ROS_MASTER_URI");
+        if (master != null) {
+            builder.master(master);
+        }
+
+        Injector injector = Guice.createInjector(builder.build());
+        ROSModule.Services services = injector.getInstance(ROSModule.Services.class);
+        services.start();
+
+        NodeHandle root = injector.getInstance(NodeManager.class).node(Name.create("/"));
+        TopicTool tool;
+        try {
+            tool = create(root, args);
+        } catch (IllegalArgumentException ex) {
+            // includes NumberFormatException
+            System.err.println(ex.getMessage());
+            tool = null;
+        }
+
+        if (tool == null) {
+            usage();
+            services.stop();
+            return;
+        }
+
+        final TopicTool finalTool = tool;
+        CountDownLatch done = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            finalTool.close();
+            services.stop();
+            done.countDown();
+        }, TopicTools.class.getName() + "::stop"));
+        done.await();
+    }
+
+    private static void usage() {
+        System.err.println(
+            "usage: " + TopicTools.class.getName() + " <tool> ...\n" +
+            "  relay <in> [out]\n" +
+            "  throttle messages <in> <msgs/sec> [out]\n" +
+            "  throttle bytes <in> <bytes/sec> <window secs> [out]\n" +
+            "  drop <in> <X> <Y> [out]\n" +
+            "  mux <out> <in1> [in2 ...]");
+    }
+}
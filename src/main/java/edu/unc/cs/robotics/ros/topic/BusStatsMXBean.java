@@ -0,0 +1,16 @@
+package edu.unc.cs.robotics.ros.topic;
+
+import java.util.List;
+
+import edu.unc.cs.robotics.ros.network.SelectorLoopStats;
+
+/**
+ * JMX view of a node's connections and selector loops.  The
+ * TopicManager registers one as
+ * {@code edu.unc.cs.robotics.ros:type=BusStats,node=<callerid>}.
+ */
+public interface BusStatsMXBean {
+    List<ConnectionInfo> getConnections();
+
+    List<SelectorLoopStats> getSelectorLoops();
+}
@@ -0,0 +1,113 @@
+package edu.unc.cs.robotics.ros.topic;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of one connection's {@link LinkStats}, with the topic and
+ * direction of the connection.
+ */
+public final class ConnectionInfo {
+    /**
+     * Direction of a connection to a subscriber of a publication.
+     */
+    public static final String OUTBOUND = "o";
+
+    /**
+     * Direction of a connection to a publisher of a subscription.
+     */
+    public static final String INBOUND = "i";
+
+    private final int _connectionId;
+    private final String _topic;
+    private final String _direction;
+    private final String _transport;
+    private final String _destination;
+    private final boolean _connected;
+    private final long _messageCount;
+    private final long _byteCount;
+    private final long _droppedMessageCount;
+    private final int _queueDepth;
+    private final long _ageMillis;
+
+    ConnectionInfo(String topic, String direction, LinkStats link, long nowNanos) {
+        _connectionId = link.getConnectionId();
+        _topic = topic;
+        _direction = direction;
+        _transport = link.getTransport();
+        _destination = link.getDestination();
+        _connected = link.isConnected();
+        _messageCount = link.getMessageCount();
+        _byteCount = link.getByteCount();
+        _droppedMessageCount = link.getDroppedMessageCount();
+        _queueDepth = link.getQueueDepth();
+        _ageMillis = TimeUnit.NANOSECONDS.toMillis(nowNanos - link.getCreatedNanos());
+    }
+
+    public int getConnectionId() {
+        return _connectionId;
+    }
+
+    public String getTopic() {
+        return _topic;
+    }
+
+    /**
+     * @return {@link #OUTBOUND} or {@link #INBOUND}
+     */
+    public String getDirection() {
+        return _direction;
+    }
+
+    public String getTransport() {
+        return _transport;
+    }
+
+    /**
+     * @return the callerid (or ring path) at the other end, or null if
+     * not known yet.
+     */
+    public String getDestination() {
+        return _destination;
+    }
+
+    public boolean isConnected() {
+        return _connected;
+    }
+
+    public long getMessageCount() {
+        return _messageCount;
+    }
+
+    public long getByteCount() {
+        return _byteCount;
+    }
+
+    public long getDroppedMessageCount() {
+        return _droppedMessageCount;
+    }
+
+    public int getQueueDepth() {
+        return _queueDepth;
+    }
+
+    public long getAgeMillis() {
+        return _ageMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionInfo{" +
+            "id=" + _connectionId +
+            ", topic=" + _topic +
+            ", direction=" + _direction +
+            ", transport=" + _transport +
+            ", destination=" + _destination +
+            ", connected=" + _connected +
+            ", messages=" + _messageCount +
+            ", bytes=" + _byteCount +
+            ", dropped=" + _droppedMessageCount +
+            ", queueDepth=" + _queueDepth +
+            ", ageMillis=" + _ageMillis +
+            '}';
+    }
+}
@@ -0,0 +1,294 @@
+package edu.unc.cs.robotics.ros.topic;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The messages received for one subscriber and not yet passed to its
+ * listener.  Messages are kept in a ring of at most queueSize entries,
+ * when it is full the oldest message is dropped to make room.  The
+ * queue itself is the task submitted to the subscriber's executor, at
+ * most one is scheduled at a time, so the listener is called for one
+ * message at a time, in order, and offering a message does not
+ * allocate.
+ *
+ * <p>A busy queue gives up its thread after a batch of messages and
+ * resubmits itself, so that one subscriber cannot starve others
+ * sharing the executor.</p>
+ *
+ * <p>With {@link Backpressure}, nothing is dropped.  The queue grows
+ * past queueSize and instead reports when it fills, and when it is
+ * half empty again, so that the sender can be paused.</p>
+ *
+ * @param <M> the message type
+ */
+final class DispatchQueue<M> implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(DispatchQueue.class);
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAX_BATCH = 64;
+
+    /**
+     * Notified when a queue that does not drop messages fills, and
+     * when it has room again.
+     */
+    interface Backpressure {
+        /**
+         * Called with true when the queue reaches queueSize messages,
+         * and then with false once it is down to half of that (or is
+         * closed).  The calls are made without holding the queue's
+         * lock, so a true and the following false may arrive on
+         * different threads in either order, only their number is
+         * guaranteed to balance.
+         *
+         * @param full true if the queue filled
+         */
+        void queueFull(boolean full);
+    }
+
+    private final Executor _executor;
+    private final SubscriptionListener<? super M> _listener;
+    private final int _maxSize;
+    /**
+     * Null to drop the oldest message when full.
+     */
+    private final Backpressure _backpressure;
+
+    /**
+     * The ring, grown as needed up to _maxSize.  Guarded by this.
+     */
+    private Object[] _ring;
+    private int _head;
+    private int _size;
+    /**
+     * True while this is submitted to the executor or running.
+     * Guarded by this.
+     */
+    private boolean _scheduled;
+    private boolean _closed;
+    /**
+     * Set while backpressure is applied.  Guarded by this.
+     */
+    private boolean _full;
+
+    private final AtomicLong _dropped = new AtomicLong();
+
+    /**
+     * @param executor the executor on which the listener is called
+     * @param listener the listener
+     * @param queueSize the maximum number of waiting messages, 0 for no
+     *    limit
+     */
+    DispatchQueue(Executor executor, SubscriptionListener<? super M> listener, int queueSize) {
+        this(executor, listener, queueSize, null);
+    }
+
+    /**
+     * @param executor the executor on which the listener is called
+     * @param listener the listener
+     * @param queueSize the maximum number of waiting messages, 0 for no
+     *    limit
+     * @param backpressure notified instead of dropping messages, or
+     *    null to drop the oldest message.
+     */
+    DispatchQueue(
+        Executor executor, SubscriptionListener<? super M> listener, int queueSize,
+        Backpressure backpressure)
+    {
+        _executor = executor;
+        _listener = listener;
+        _maxSize = queueSize <= 0 ? Integer.MAX_VALUE : queueSize;
+        _backpressure = backpressure;
+        _ring = new Object[Math.min(_maxSize, INITIAL_CAPACITY)];
+    }
+
+    /**
+     * Queues a message for the listener, dropping the oldest waiting
+     * message if the queue is full, unless it has backpressure.
+     *
+     * @param msg the message
+     */
+    void offer(M msg) {
+        boolean filled = false;
+        synchronized (this) {
+            if (_closed) {
+                return;
+            }
+            if (_size == _ring.length) {
+                if (_size < _maxSize || _backpressure != null) {
+                    grow();
+                } else {
+                    _ring[_head] = null;
+                    _head = next(_head);
+                    --_size;
+                    _dropped.incrementAndGet();
+                }
+            }
+            int tail = _head + _size;
+            _ring[tail < _ring.length ? tail : tail - _ring.length] = msg;
+            ++_size;
+            if (_backpressure != null && !_full && _size >= _maxSize) {
+                _full = filled = true;
+            }
+            if (_scheduled) {
+                msg = null;
+            } else {
+                _scheduled = true;
+            }
+        }
+        if (filled) {
+            _backpressure.queueFull(true);
+        }
+        if (msg != null) {
+            schedule();
+        }
+    }
+
+    private void grow() {
+        long limit = _backpressure == null ? _maxSize : Integer.MAX_VALUE - 8;
+        Object[] ring = new Object[(int)Math.min(limit, _ring.length * 2L)];
+        int n = _ring.length - _head;
+        System.arraycopy(_ring, _head, ring, 0, n);
+        System.arraycopy(_ring, 0, ring, n, _head);
+        _ring = ring;
+        _head = 0;
+    }
+
+    private int next(int i) {
+        return ++i == _ring.length ? 0 : i;
+    }
+
+    private void schedule() {
+        try {
+            _executor.execute(this);
+        } catch (RejectedExecutionException ex) {
+            // shutting down, the waiting messages are dropped.
+            boolean drained;
+            synchronized (this) {
+                LOG.debug("dispatch rejected, dropping {} messages", _size);
+                _dropped.addAndGet(_size);
+                clear();
+                _scheduled = false;
+                drained = unfull();
+            }
+            if (drained) {
+                _backpressure.queueFull(false);
+            }
+        }
+    }
+
+    /**
+     * Clears _full.  Must be called holding the lock.
+     *
+     * @return true if the backpressure must be notified.
+     */
+    private boolean unfull() {
+        boolean wasFull = _full;
+        _full = false;
+        return wasFull;
+    }
+
+    @Override
+    public void run() {
+        boolean more = true;
+        try {
+            more = drain();
+        } finally {
+            // also reached when the listener throws an Error, which
+            // would otherwise leave _scheduled set and the subscriber
+            // without messages from then on.
+            if (more) {
+                resume();
+            }
+        }
+    }
+
+    /**
+     * Passes up to a batch of messages to the listener.
+     *
+     * @return false if the queue emptied and is no longer scheduled
+     */
+    @SuppressWarnings("unchecked")
+    private boolean drain() {
+        for (int n = 0 ; n < MAX_BATCH ; ++n) {
+            M msg;
+            boolean drained = false;
+            synchronized (this) {
+                if (_size == 0) {
+                    _scheduled = false;
+                    return false;
+                }
+                msg = (M)_ring[_head];
+                _ring[_head] = null;
+                _head = next(_head);
+                --_size;
+                if (_full && _size <= _maxSize / 2) {
+                    drained = unfull();
+                }
+            }
+            if (drained) {
+                _backpressure.queueFull(false);
+            }
+            try {
+                _listener.message(msg);
+            } catch (RuntimeException ex) {
+                LOG.error("subscription listener failed", ex);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Submits this again if messages are waiting, or marks it as no
+     * longer scheduled.
+     */
+    private void resume() {
+        synchronized (this) {
+            if (_size == 0) {
+                _scheduled = false;
+                return;
+            }
+        }
+        schedule();
+    }
+
+    private void clear() {
+        for ( ; _size > 0 ; --_size) {
+            _ring[_head] = null;
+            _head = next(_head);
+        }
+    }
+
+    /**
+     * Discards the waiting messages and ignores any offered later.
+     */
+    void close() {
+        boolean drained;
+        synchronized (this) {
+            _closed = true;
+            clear();
+            drained = unfull();
+        }
+        if (drained) {
+            _backpressure.queueFull(false);
+        }
+    }
+
+    /**
+     * @return the number of messages dropped because the queue was full.
+     */
+    long getDroppedMessageCount() {
+        return _dropped.get();
+    }
+
+    /**
+     * @return the number of messages waiting for the listener.
+     */
+    synchronized int size() {
+        return _size;
+    }
+}
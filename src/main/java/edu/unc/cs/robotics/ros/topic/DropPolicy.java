@@ -0,0 +1,31 @@
+package edu.unc.cs.robotics.ros.topic;
+
+/**
+ * What a subscriber link does with outgoing messages once its queue
+ * reaches the publication's message or byte limit.  A message whose
+ * write has started is always sent in full, regardless of the policy.
+ */
+public enum DropPolicy {
+    /**
+     * Discard the oldest queued messages to make room for new ones.
+     * This is the ROS default.
+     */
+    DROP_OLDEST,
+    /**
+     * Keep the queued messages and discard newly published messages
+     * until there is room.
+     */
+    DROP_NEWEST,
+    /**
+     * Keep only the most recently published message, regardless of the
+     * queue limits.  Suited to state topics where only the latest value
+     * matters.
+     */
+    KEEP_LATEST,
+    /**
+     * Block the publishing thread until every link has room.  A link
+     * that is still full when the wait is interrupted drops the new
+     * message, as with {@link #DROP_NEWEST}.
+     */
+    BLOCK_PUBLISHER
+}
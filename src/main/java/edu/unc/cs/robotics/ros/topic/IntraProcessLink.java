@@ -0,0 +1,225 @@
+package edu.unc.cs.robotics.ros.topic;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import edu.unc.cs.robotics.ros.msg.ByteBufferDeserializer;
+import edu.unc.cs.robotics.ros.msg.Message;
+import edu.unc.cs.robotics.ros.msg.MetaMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connects a publication to a subscription in the same process.
+ * Published messages are handed to the subscription directly, with no
+ * socket and, when the subscription uses the publisher's message
+ * class, no serialization.  In that case every subscriber receives the
+ * same instance that was published, so neither side may modify a
+ * message after it is published.
+ *
+ * <p>When the classes differ (e.g., two message classes generated from
+ * the same definition), the subscription receives a copy deserialized
+ * from the shared serialized form.</p>
+ *
+ * <p>A subscription with backpressure cannot slow a local publisher by
+ * flow control, so while it is paused, the publisher's thread waits in
+ * {@link #awaitQueueSpace(int)} before each publish instead.</p>
+ *
+ * @param <P> the publication's message type
+ * @param <S> the subscription's message type
+ */
+final class IntraProcessLink<P extends Message, S extends Message>
+    implements SubscriberLink<P>, PublisherLink<S>
+{
+    private static final Logger LOG = LoggerFactory.getLogger(IntraProcessLink.class);
+
+    private final Publication<P> _publication;
+    private final MetaMessage<S> _meta;
+    private final Consumer<S> _consumer;
+    private final BooleanSupplier _readPaused;
+    private final boolean _sameMeta;
+
+    private final int _connectionId;
+    private final long _createdNanos = System.nanoTime();
+    private final AtomicLong _messages = new AtomicLong();
+
+    private volatile boolean _closed;
+
+    /**
+     * Guards _paused, and is waited on while it is set.  Not this,
+     * since close holds this while it takes the publication's lock.
+     */
+    private final Object _pauseMonitor = new Object();
+    private boolean _paused;
+
+    /**
+     * @param connectionId the connection id
+     * @param publication the publication
+     * @param meta the subscription's meta
+     * @param consumer receives the messages
+     * @param readPaused tells if the subscription wants the publisher
+     *    paused, checked on {@link #readPausedChanged()}
+     */
+    IntraProcessLink(
+        int connectionId, Publication<P> publication,
+        MetaMessage<S> meta, Consumer<S> consumer, BooleanSupplier readPaused)
+    {
+        _connectionId = connectionId;
+        _publication = publication;
+        _consumer = consumer;
+        _readPaused = readPaused;
+        _sameMeta = (publication.getMeta() == meta);
+        _meta = meta.forConnection(connectionHeader(publication));
+    }
+
+    private static Map<String,String> connectionHeader(Publication<?> publication) {
+        MetaMessage<?> meta = publication.getMeta();
+        Map<String,String> header = new HashMap<>();
+        header.put("callerid", publication.getCallerId());
+        header.put("topic", publication.getTopic().toString());
+        header.put("type", meta.getDataType());
+        header.put("md5sum", meta.getMd5sum());
+        header.put("message_definition", meta.getMessageDefinition());
+        header.put("latching", publication.isLatch() ? "1" : "0");
+        return header;
+    }
+
+    /**
+     * Delivers the message to the subscription.  This runs on the
+     * publishing thread, the subscription only hands the message to
+     * its subscribers' executors.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void enqueue(SerializedMessage<P> msg) {
+        if (_closed) {
+            return;
+        }
+
+        P message = msg.message();
+        S delivered;
+        if (_sameMeta) {
+            delivered = (S)message;
+        } else {
+            Class<S> cls = _meta.getMessageClass();
+            if (cls != null && cls.isInstance(message)) {
+                delivered = cls.cast(message);
+            } else {
+                // skip the length prefix, the deserializer expects
+                // just the message.
+                ByteBuffer buf = msg.buffer();
+                buf.position(buf.position() + 4);
+                delivered = _meta.deserialize(new ByteBufferDeserializer(buf));
+            }
+        }
+
+        _messages.incrementAndGet();
+        try {
+            _consumer.accept(delivered);
+        } catch (RuntimeException ex) {
+            LOG.error("intra-process delivery failed", ex);
+        }
+    }
+
+    @Override
+    public void readPausedChanged() {
+        synchronized (_pauseMonitor) {
+            setPaused(!_closed && _readPaused.getAsBoolean());
+        }
+    }
+
+    private void setPaused(boolean paused) {
+        if (_paused != paused) {
+            _paused = paused;
+            _publication.linkPaused(paused);
+            if (!paused) {
+                _pauseMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits while the subscription is paused, whatever the size of the
+     * message.  If interrupted, this returns early with the interrupt
+     * flag set.
+     */
+    @Override
+    public void awaitQueueSpace(int bytes) {
+        synchronized (_pauseMonitor) {
+            try {
+                while (_paused) {
+                    _pauseMonitor.wait();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return 0, messages are never dropped by this link, they are
+     * queued by the subscribers' executors.
+     */
+    @Override
+    public long getDroppedMessageCount() {
+        return 0;
+    }
+
+    @Override
+    public long getDroppedByteCount() {
+        return 0;
+    }
+
+    @Override
+    public int getConnectionId() {
+        return _connectionId;
+    }
+
+    @Override
+    public String getTransport() {
+        return "INTRAPROCESS";
+    }
+
+    /**
+     * @return this node's callerid, both ends are in this node.
+     */
+    @Override
+    public String getDestination() {
+        return _publication.getCallerId();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !_closed;
+    }
+
+    @Override
+    public long getMessageCount() {
+        return _messages.get();
+    }
+
+    @Override
+    public long getCreatedNanos() {
+        return _createdNanos;
+    }
+
+    Publication<P> getPublication() {
+        return _publication;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        synchronized (_pauseMonitor) {
+            setPaused(false);
+        }
+        _publication.removeSubscriberLink(this);
+    }
+}
@@ -0,0 +1,77 @@
+package edu.unc.cs.robotics.ros.topic;
+
+/**
+ * The counters of one connection of a publication or subscription, as
+ * reported by getBusStats, getBusInfo and {@link BusStatsMXBean}.
+ * Links update them in place, without allocating or locking, so the
+ * values read from another thread may be slightly out of date.
+ */
+public interface LinkStats {
+    /**
+     * @return the id of the connection, unique within this node, or 0
+     * if the link has none.
+     */
+    default int getConnectionId() {
+        return 0;
+    }
+
+    /**
+     * @return the transport, e.g., "TCPROS".
+     */
+    default String getTransport() {
+        return "unknown";
+    }
+
+    /**
+     * @return the other end of the connection, e.g., a subscriber's
+     * callerid, or null if not known (yet).
+     */
+    default String getDestination() {
+        return null;
+    }
+
+    /**
+     * @return false once the link has closed.  A closed link may still
+     * be listed until it is removed.
+     */
+    default boolean isConnected() {
+        return true;
+    }
+
+    /**
+     * @return the number of messages sent on a subscriber link, or
+     * received on a publisher link.
+     */
+    default long getMessageCount() {
+        return 0;
+    }
+
+    /**
+     * @return the number of bytes sent on a subscriber link, or
+     * received on a publisher link, including framing.
+     */
+    default long getByteCount() {
+        return 0;
+    }
+
+    /**
+     * @return the number of messages dropped by the link.
+     */
+    default long getDroppedMessageCount() {
+        return 0;
+    }
+
+    /**
+     * @return the number of messages waiting in the link's write queue.
+     */
+    default int getQueueDepth() {
+        return 0;
+    }
+
+    /**
+     * @return the System.nanoTime() at which the link was created.
+     */
+    default long getCreatedNanos() {
+        return 0;
+    }
+}
@@ -1,16 +1,22 @@
 package edu.unc.cs.robotics.ros.topic;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.inject.Singleton;
 
 import edu.unc.cs.robotics.ros.Name;
 import edu.unc.cs.robotics.ros.Publisher;
 import edu.unc.cs.robotics.ros.msg.Message;
 import edu.unc.cs.robotics.ros.msg.MetaMessage;
+import edu.unc.cs.robotics.ros.network.ConnectionHeader;
+import edu.unc.cs.robotics.ros.network.SharedMemoryRing;
+import edu.unc.cs.robotics.ros.network.SizePredictor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,45 +27,98 @@ public class Publication<M extends Message> {
     private final MetaMessage<M> _meta;
     private final Name _topic;
     private final int _queueSize;
+    private final long _maxQueueBytes;
+    private final DropPolicy _dropPolicy;
+    private final WriteCoalescing _writeCoalescing;
     private final boolean _latching;
+    /**
+     * The header sent to every subscriber, encoded once since it
+     * includes the (possibly large) message definition.
+     */
+    private final ByteBuffer _connectionHeader;
 
     private int _seqNo;
+    /**
+     * The last message published when latching.  The publication holds
+     * a reference to it until it is replaced or the publication closes.
+     */
     private SerializedMessage<M> _latchedMessage;
+    /**
+     * Predicts the serialized size of this topic's messages.
+     */
+    private final SizePredictor _sizes = new SizePredictor();
+    /**
+     * The ring shared memory subscribers read from.  Created when the
+     * first one connects, and written for the life of the publication
+     * since its readers are not tracked.  Guarded by _subscriberLinks.
+     */
+    private SharedMemoryRing _ring;
 
     private final List<PublisherImpl> _publishers = new CopyOnWriteArrayList<>();
     private final List<SubscriberLink<M>> _subscriberLinks = new ArrayList<>();
+    /**
+     * The number of in-process links whose subscription has asked for
+     * backpressure and has a full queue.  While positive, publish waits
+     * for the links' queue space whatever the drop policy.
+     */
+    private final AtomicInteger _pausedLinks = new AtomicInteger();
+    /**
+     * Held by {@link DropPolicy#BLOCK_PUBLISHER} publishers while they
+     * wait for queue space, see {@link #publishWhenRoom(Message)}.
+     */
+    private final Object _publishOrder = new Object();
 
     @Singleton
     static class Factory {
 
         <M extends Message> Publication<M> create(
             TopicManager topicManager,
-            MetaMessage<M> meta, Name topic, int queueSize, boolean latching)
+            MetaMessage<M> meta, Name topic, int queueSize,
+            long maxQueueBytes, DropPolicy dropPolicy,
+            WriteCoalescing writeCoalescing, boolean latching)
         {
             return new Publication<>(
                 topicManager,
                 meta,
                 topic,
                 queueSize,
+                maxQueueBytes,
+                dropPolicy,
+                writeCoalescing,
                 latching
             );
         }
     }
 
     private Publication(TopicManager topicManager, MetaMessage<M> meta, Name topic,
-                        int queueSize, boolean latching)
+                        int queueSize, long maxQueueBytes, DropPolicy dropPolicy,
+                        WriteCoalescing writeCoalescing, boolean latching)
     {
         _topicManager = topicManager;
         _meta = meta;
         _topic = topic;
         _queueSize = queueSize;
+        _maxQueueBytes = maxQueueBytes;
+        _dropPolicy = dropPolicy;
+        _writeCoalescing = writeCoalescing;
         _latching = latching;
+        _connectionHeader = ConnectionHeader.encodeFields(
+            "type", meta.getDataType(),
+            "md5sum", meta.getMd5sum(),
+            "message_definition", meta.getMessageDefinition(),
+            "callerid", topicManager.getCallerId(),
+            "latching", latching ? "1" : "0",
+            "topic", topic.toString());
     }
 
     public boolean isLatch() {
         return _latching;
     }
 
+    String getCallerId() {
+        return _topicManager.getCallerId();
+    }
+
     public Name getTopic() {
         return _topic;
     }
@@ -68,10 +127,72 @@ public class Publication<M extends Message> {
         return _queueSize;
     }
 
+    /**
+     * @return the maximum number of serialized bytes queued per
+     * subscriber link, 0 for no limit.
+     */
+    public long getMaxQueueBytes() {
+        return _maxQueueBytes;
+    }
+
+    public DropPolicy getDropPolicy() {
+        return _dropPolicy;
+    }
+
+    public WriteCoalescing getWriteCoalescing() {
+        return _writeCoalescing;
+    }
+
+    /**
+     * @return the write system calls saved by the current subscriber
+     * links, see {@link SubscriberLink#getWritesSaved()}.
+     */
+    public long getWritesSaved() {
+        long saved = 0;
+        synchronized (_subscriberLinks) {
+            for (SubscriberLink<M> link : _subscriberLinks) {
+                saved += link.getWritesSaved();
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * @return the latency added by write coalescing on the current
+     * subscriber links, in nanoseconds, see
+     * {@link SubscriberLink#getCoalescingDelayNanos()}.
+     */
+    public long getCoalescingDelayNanos() {
+        long delay = 0;
+        synchronized (_subscriberLinks) {
+            for (SubscriberLink<M> link : _subscriberLinks) {
+                delay += link.getCoalescingDelayNanos();
+            }
+        }
+        return delay;
+    }
+
+    /**
+     * @return a snapshot of the current subscriber links.
+     */
+    List<SubscriberLink<M>> getSubscriberLinks() {
+        synchronized (_subscriberLinks) {
+            return new ArrayList<>(_subscriberLinks);
+        }
+    }
+
     public MetaMessage<M> getMeta() {
         return _meta;
     }
 
+    /**
+     * @return the connection header fields sent to subscribers, see
+     * {@link ConnectionHeader#encodeFields(String...)}.
+     */
+    public ByteBuffer getConnectionHeader() {
+        return _connectionHeader;
+    }
+
     public boolean isDropped() {
         // TODO
         return false;
@@ -120,6 +241,36 @@ public class Publication<M extends Message> {
         // if so, handle appropriately (e.g., allow the registration to complete,
         // then call the unregister)
         unregister(0);
+
+        synchronized (_subscriberLinks) {
+            if (_latchedMessage != null) {
+                _latchedMessage.release();
+                _latchedMessage = null;
+            }
+            if (_ring != null) {
+                _ring.close();
+                _ring = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the shared memory ring for this publication, creating it
+     * if needed.
+     *
+     * @return the ring
+     * @throws IOException if the ring could not be created
+     */
+    SharedMemoryRing sharedMemoryRing() throws IOException {
+        synchronized (_subscriberLinks) {
+            if (_ring == null) {
+                _ring = _topicManager.createSharedMemoryRing(this);
+                if (_latchedMessage != null) {
+                    _ring.write(_latchedMessage.buffer());
+                }
+            }
+            return _ring;
+        }
     }
 
     /**
@@ -206,14 +357,120 @@ public class Publication<M extends Message> {
     }
 
     private void publish(M message) {
+        if (_dropPolicy == DropPolicy.BLOCK_PUBLISHER) {
+            publishWhenRoom(message);
+            return;
+        }
+        if (_pausedLinks.get() > 0) {
+            awaitQueueSpace(0);
+        }
+
         synchronized (_subscriberLinks) {
-            SerializedMessage<M> sm = new SerializedMessage<>(++_seqNo, message);
-            for (SubscriberLink<M> link : _subscriberLinks) {
-                link.enqueue(sm);
+            ++_seqNo;
+            if (_subscriberLinks.isEmpty() && !_latching && _ring == null) {
+                // nobody to send to, and nothing to keep.
+                return;
             }
-            if (_latching) {
-                _latchedMessage = sm;
+
+            // The message is serialized once into a pooled buffer
+            // that all links share.  Each link retains the message
+            // until its write completes, we hold the initial
+            // reference until all links have it.
+            send(new SerializedMessage<>(
+                _seqNo, message, _topicManager.bufferPool(), _sizes));
+        }
+    }
+
+    /**
+     * Publishes for {@link DropPolicy#BLOCK_PUBLISHER}.  The message is
+     * serialized before the wait, so that the links wait for room for
+     * its frame rather than for any room at all.  Publishers hold
+     * _publishOrder from taking the sequence number until the message
+     * is queued, so messages are still queued in sequence order.
+     */
+    private void publishWhenRoom(M message) {
+        synchronized (_publishOrder) {
+            SerializedMessage<M> sm;
+            synchronized (_subscriberLinks) {
+                ++_seqNo;
+                if (_subscriberLinks.isEmpty() && !_latching && _ring == null) {
+                    return;
+                }
+                sm = new SerializedMessage<>(
+                    _seqNo, message, _topicManager.bufferPool(), _sizes);
             }
+
+            final int frameSize;
+            try {
+                frameSize = sm.buffer().remaining();
+            } catch (RuntimeException ex) {
+                sm.release();
+                throw ex;
+            }
+            awaitQueueSpace(frameSize);
+
+            synchronized (_subscriberLinks) {
+                send(sm);
+            }
+        }
+    }
+
+    /**
+     * Sends a message to every link and the ring, and keeps it if
+     * latching.  Takes over the caller's reference.  Must be called
+     * while holding _subscriberLinks.
+     */
+    private void send(SerializedMessage<M> sm) {
+        for (SubscriberLink<M> link : _subscriberLinks) {
+            link.enqueue(sm);
+        }
+        if (_ring != null) {
+            // one copy into the ring serves all local readers
+            _ring.write(sm.buffer());
+        }
+        if (_latching) {
+            // keep our reference as the latched message
+            if (_latchedMessage != null) {
+                _latchedMessage.release();
+            }
+            _latchedMessage = sm;
+        } else {
+            sm.release();
+        }
+    }
+
+    /**
+     * Waits until every subscriber link has room in its queue for a
+     * message of the specified size.  This must not wait while holding
+     * _subscriberLinks, since the selector threads that drain the
+     * queues also add and remove links under that lock.
+     *
+     * @param bytes the size of the message's frame, or 0 if not known
+     */
+    private void awaitQueueSpace(int bytes) {
+        List<SubscriberLink<M>> links;
+        synchronized (_subscriberLinks) {
+            if (_subscriberLinks.isEmpty()) {
+                return;
+            }
+            links = new ArrayList<>(_subscriberLinks);
+        }
+        for (SubscriberLink<M> link : links) {
+            link.awaitQueueSpace(bytes);
+        }
+    }
+
+    /**
+     * Called by an {@link IntraProcessLink} when its subscription's
+     * backpressure pauses or resumes it.
+     *
+     * @param paused true if the link paused
+     */
+    void linkPaused(boolean paused) {
+        if (paused) {
+            _pausedLinks.incrementAndGet();
+        } else {
+            _pausedLinks.decrementAndGet();
         }
     }
 
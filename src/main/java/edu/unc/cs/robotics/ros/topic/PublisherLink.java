@@ -5,6 +5,14 @@ import java.io.Closeable;
 
 import edu.unc.cs.robotics.ros.msg.Message;
 
-public interface PublisherLink<M extends Message> extends Closeable {
+public interface PublisherLink<M extends Message> extends Closeable, LinkStats {
+    /**
+     * Called when {@link Subscription#isReadPaused()} may have changed.
+     * Links that can stop reading, so that the publisher is slowed by
+     * flow control, check it and pause or resume.
+     */
+    default void readPausedChanged() {
+    }
+
     void close();
 }
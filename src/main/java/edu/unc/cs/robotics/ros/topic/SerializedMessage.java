@@ -1,43 +1,121 @@
 package edu.unc.cs.robotics.ros.topic;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import edu.unc.cs.robotics.ros.msg.ByteBufferSerializer;
-import edu.unc.cs.robotics.ros.msg.ByteCountSerializer;
 import edu.unc.cs.robotics.ros.msg.Message;
+import edu.unc.cs.robotics.ros.network.BufferPool;
+import edu.unc.cs.robotics.ros.network.GrowableBufferSerializer;
+import edu.unc.cs.robotics.ros.network.SizePredictor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * A published message and its lazily serialized form.  The serialized
+ * bytes live in a direct buffer borrowed from a {@link BufferPool} and
+ * are shared by every subscriber link the message is sent to.
+ *
+ * <p>Instances are reference counted.  The creator holds the initial
+ * reference.  Anything that keeps the message (or a buffer returned by
+ * {@link #buffer()}) past the call in which it was handed the message
+ * must {@link #retain()} it, and {@link #release()} it when done.  When
+ * the last reference is released, the buffer is returned to the pool.</p>
+ */
 public class SerializedMessage<M extends Message> {
     private static final Logger LOG = LoggerFactory.getLogger(SerializedMessage.class);
 
     private final int _seqNo;
     private final M _message;
+    private final BufferPool _pool;
+    private final SizePredictor _sizes;
+    private final AtomicInteger _refCount = new AtomicInteger(1);
     private ByteBuffer _buffer;
 
-    SerializedMessage(int seqNo, M message) {
+    SerializedMessage(int seqNo, M message, BufferPool pool, SizePredictor sizes) {
         _seqNo = seqNo;
         _message = message;
+        _pool = pool;
+        _sizes = sizes;
     }
 
+    /**
+     * @return the message object that was published.
+     */
+    public M message() {
+        return _message;
+    }
+
+    /**
+     * Returns a view of the serialized message, including its 4-byte
+     * length prefix.  The message is serialized on the first call, in
+     * one pass, into a buffer of the size predicted for its type.
+     * The caller must hold a reference for as long as the returned
+     * buffer is in use.
+     *
+     * @return a new view of the serialized bytes, in ROS byte order.
+     */
     public synchronized ByteBuffer buffer() {
+        if (_refCount.get() <= 0) {
+            throw new IllegalStateException("message already released");
+        }
+
         if (_buffer == null) {
-            ByteCountSerializer byteCountSerializer = new ByteCountSerializer();
-            _message.serialize(byteCountSerializer);
-            int size = byteCountSerializer.getByteCount();
-            _buffer = ByteBuffer.allocate(size + 4).order(ByteOrder.LITTLE_ENDIAN);
-            _buffer.putInt(size);
-            _message.serialize(new ByteBufferSerializer(_seqNo, _buffer));
-            assert !_buffer.hasRemaining() : "serialization byte count mismatch";
-            _buffer.flip();
-            assert _buffer.remaining() == size + 4;
+            GrowableBufferSerializer ser = new GrowableBufferSerializer(
+                _pool, _seqNo, 4 + _sizes.predict(_message));
+            try {
+                ser.putInt(0); // the length, filled in below
+                _message.serialize(ser);
+            } catch (RuntimeException ex) {
+                ser.discard();
+                throw ex;
+            }
+            _buffer = ser.finish();
+            int size = _buffer.remaining() - 4;
+            _buffer.putInt(0, size);
+            _sizes.record(size);
 
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Serialized "+_message.getClass().getName()+" to "+(size+4)+" bytes");
             }
         }
 
-        return _buffer.duplicate();
+        // a duplicate is big-endian, whatever the original's order
+        return _buffer.duplicate().order(_buffer.order());
+    }
+
+    /**
+     * Adds a reference.
+     *
+     * @return this
+     */
+    public SerializedMessage<M> retain() {
+        int count;
+        do {
+            count = _refCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("retain after release");
+            }
+        } while (!_refCount.compareAndSet(count, count + 1));
+        return this;
+    }
+
+    /**
+     * Removes a reference.  When the last reference is removed, the
+     * serialized buffer is returned to the pool.
+     */
+    public void release() {
+        int count = _refCount.decrementAndGet();
+        if (count == 0) {
+            ByteBuffer buf;
+            synchronized (this) {
+                buf = _buffer;
+                _buffer = null;
+            }
+            if (buf != null) {
+                _pool.release(buf);
+            }
+        } else if (count < 0) {
+            throw new IllegalStateException("release without matching retain");
+        }
     }
 }
@@ -6,6 +6,58 @@ import edu.unc.cs.robotics.ros.msg.Message;
 /**
  * Created by jeffi on 7/2/16.
  */
-public interface SubscriberLink<M extends Message> {
+public interface SubscriberLink<M extends Message> extends LinkStats {
+    /**
+     * Queues a message for sending.  The caller only guarantees the
+     * message remains valid for the duration of this call, a link that
+     * keeps it longer must {@link SerializedMessage#retain() retain} it
+     * and later release it.
+     *
+     * @param msg the message to send
+     */
     void enqueue(SerializedMessage<M> msg);
+
+    /**
+     * Waits until the link's outgoing queue has room for a message of
+     * the specified size.  Only called for publications using
+     * {@link DropPolicy#BLOCK_PUBLISHER}, or while an in-process
+     * subscription applies backpressure, and never while holding the
+     * publication's subscriber links.
+     *
+     * @param bytes the size of the message's frame, including its
+     *   length prefix, or 0 if it is not known
+     */
+    default void awaitQueueSpace(int bytes) {
+    }
+
+    /**
+     * @return the number of messages dropped by this link's queue
+     * policy.
+     */
+    @Override
+    long getDroppedMessageCount();
+
+    /**
+     * @return the number of serialized bytes dropped by this link's
+     * queue policy.
+     */
+    long getDroppedByteCount();
+
+    /**
+     * @return the number of messages written minus the number of
+     * write system calls used to write them, i.e., the calls saved by
+     * gathering writes and {@link WriteCoalescing}.
+     */
+    default long getWritesSaved() {
+        return 0;
+    }
+
+    /**
+     * @return the total time, in nanoseconds, that coalesced batches
+     * waited before being written.  Each batch counts the wait of its
+     * oldest message.
+     */
+    default long getCoalescingDelayNanos() {
+        return 0;
+    }
 }
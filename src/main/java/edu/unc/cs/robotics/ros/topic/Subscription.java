@@ -2,11 +2,19 @@ package edu.unc.cs.robotics.ros.topic;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
@@ -15,7 +23,10 @@ import edu.unc.cs.robotics.ros.Name;
 import edu.unc.cs.robotics.ros.Subscriber;
 import edu.unc.cs.robotics.ros.msg.Message;
 import edu.unc.cs.robotics.ros.msg.MetaMessage;
+import edu.unc.cs.robotics.ros.network.ConnectionHeader;
 import edu.unc.cs.robotics.ros.network.NetworkServer;
+import edu.unc.cs.robotics.ros.network.UDPROSSubscriberLink;
+import edu.unc.cs.robotics.ros.protocol.ProtocolException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,13 +37,53 @@ public class Subscription<M extends Message> {
 
     private final MetaMessage<M> _meta;
     private final Name _topic;
+    /**
+     * The header sent to every publisher, encoded once.
+     */
+    private final ByteBuffer _connectionHeader;
 
     private final NetworkServer _networkServer;
     private final TopicManager _topicManager;
 
-    private final List<PublisherLink<M>> _links = new ArrayList<>();
+    /**
+     * The first reconnect to a publisher is after about this long, and
+     * each consecutive failure doubles it up to MAX_RECONNECT_MILLIS.
+     */
+    private static final long MIN_RECONNECT_MILLIS = 100;
+    private static final long MAX_RECONNECT_MILLIS = 20000;
+
+    /**
+     * The connections to remote publishers, keyed by publisher URI.
+     */
+    private final Map<URI, PublisherConnection> _connections = new HashMap<>();
+    /**
+     * The link to this node's own publication of the topic, if any.
+     * Guarded by _connections.
+     */
+    private IntraProcessLink<?, M> _localLink;
+    /**
+     * The open publisher links, including _localLink.  Changed holding
+     * _connections, and read without it, since queueFull reads it on
+     * a publishing thread that holds the publication's lock.
+     */
+    private final List<PublisherLink<M>> _links = new CopyOnWriteArrayList<>();
+    /**
+     * Guarded by _connections.
+     */
+    private boolean _closed;
     private final List<SubscriberImpl> _subscribers = new CopyOnWriteArrayList<>();
-    private int _queueSize;
+    /**
+     * The number of subscriber queues that are full, with backpressure.
+     */
+    private final AtomicInteger _fullQueues = new AtomicInteger();
+    /**
+     * The number of publisher lists received through publisherUpdate.
+     * The master only sends those to registered subscribers, so one
+     * received while registerSubscriber is in flight is newer than
+     * the list it returns.
+     */
+    private final AtomicInteger _masterUpdates = new AtomicInteger();
+    private final TransportHints _transportHints;
 
     @Singleton
     static class Factory {
@@ -44,14 +95,15 @@ public class Subscription<M extends Message> {
         }
 
         <M extends Message> Subscription<M> create(
-            TopicManager topicManager, MetaMessage<M> meta, Name topic, int queueSize)
+            TopicManager topicManager, MetaMessage<M> meta, Name topic,
+            TransportHints transportHints)
         {
             return new Subscription<>(
                 _networkServer.get(),
                 topicManager,
                 meta,
                 topic,
-                queueSize);
+                transportHints);
         }
     }
 
@@ -60,21 +112,54 @@ public class Subscription<M extends Message> {
         TopicManager topicManager,
         MetaMessage<M> meta,
         Name topic,
-        int queueSize)
+        TransportHints transportHints)
     {
         _networkServer = networkServer;
         _topicManager = topicManager;
         _meta = meta;
         _topic = topic;
-        _queueSize = queueSize;
+        _transportHints = transportHints;
+        _connectionHeader = transportHints.isTcpNoDelay()
+            ? ConnectionHeader.encodeFields(
+                "topic", topic.toString(),
+                "md5sum", meta.getMd5sum(),
+                "callerid", topicManager.getCallerId(),
+                "type", meta.getDataType(),
+                "tcp_nodelay", "1")
+            : ConnectionHeader.encodeFields(
+                "topic", topic.toString(),
+                "md5sum", meta.getMd5sum(),
+                "callerid", topicManager.getCallerId(),
+                "type", meta.getDataType());
     }
 
     public MetaMessage<M> getMeta() {
         return _meta;
     }
 
-    Subscriber<M> newSubscriber(Executor executor, SubscriptionListener<? super M> listener) {
-        SubscriberImpl subscriber = new SubscriberImpl(executor, listener);
+    /**
+     * @return the connection header fields sent to publishers, see
+     * {@link ConnectionHeader#encodeFields(String...)}.
+     */
+    public ByteBuffer getConnectionHeader() {
+        return _connectionHeader;
+    }
+
+    /**
+     * Adds a subscriber.  Each subscriber has its own queue of
+     * queueSize messages, see {@link DispatchQueue}.
+     *
+     * @param queueSize the maximum number of messages waiting for the
+     *    listener, older messages are dropped unless the transport
+     *    hints ask for backpressure, 0 for no limit
+     * @param executor the executor on which the listener is called
+     * @param listener the listener
+     * @return the subscriber
+     */
+    Subscriber<M> newSubscriber(
+        int queueSize, Executor executor, SubscriptionListener<? super M> listener)
+    {
+        SubscriberImpl subscriber = new SubscriberImpl(queueSize, executor, listener);
         synchronized (_subscribers) {
             _subscribers.add(subscriber);
         }
@@ -102,18 +187,77 @@ public class Subscription<M extends Message> {
         return _topic;
     }
 
+    public TransportHints getTransportHints() {
+        return _transportHints;
+    }
+
+    /**
+     * @return true if links should stop reading because a subscriber's
+     * queue is full, see {@link TransportHints#isBackpressure()}.
+     */
+    public boolean isReadPaused() {
+        return _fullQueues.get() > 0;
+    }
+
+    private void queueFull(boolean full) {
+        int n = full ? _fullQueues.incrementAndGet() : _fullQueues.decrementAndGet();
+        LOG.debug("{} subscriber queues full for {}", n, _topic);
+        // links re-check isReadPaused(), so concurrent changes settle on
+        // the final count whatever order they are applied in.
+        for (PublisherLink<M> link : getPublisherLinks()) {
+            link.readPausedChanged();
+        }
+    }
+
+    /**
+     * @return a snapshot of the current publisher links, including the
+     * link to this node's own publication.
+     */
+    List<PublisherLink<M>> getPublisherLinks() {
+        return new ArrayList<>(_links);
+    }
+
+    /**
+     * Replaces a connection's link.  Must be called holding
+     * _connections.
+     */
+    private void setLink(PublisherConnection conn, PublisherLink<M> link) {
+        if (conn._link != null) {
+            _links.remove(conn._link);
+        }
+        conn._link = link;
+        if (link != null) {
+            _links.add(link);
+        }
+    }
+
+    /**
+     * Replaces the link to the local publication.  Must be called
+     * holding _connections.
+     */
+    private void setLocalLink(IntraProcessLink<?, M> link) {
+        if (_localLink != null) {
+            _links.remove(_localLink);
+        }
+        _localLink = link;
+        if (link != null) {
+            _links.add(link);
+        }
+    }
+
     void register(int retry) {
         if (retry > 0 && _topicManager.isStopped()) {
             return;
         }
 
+        final int updates = _masterUpdates.get();
         _topicManager.masterCall(
             "registerSubscriber",
             _topicManager.getCallerId(),
             this.getTopic().toString(),
             this.getMeta().getDataType(),
             _topicManager.getVassalUri())
-            .onSuccess(this::registerSuccess)
+            .onSuccess(result -> registerSuccess(result, updates))
             .onFault(this::registerFault)
             .onError((ex) -> {
                 LOG.warn(
@@ -127,24 +271,23 @@ public class Subscription<M extends Message> {
             .invokeLater(retry*retry*5, TimeUnit.SECONDS);
     }
 
-    private void registerSuccess(Object result) {
-        String vassalUri =_topicManager.getVassalUri();
-
+    private void registerSuccess(Object result, int updates) {
+        if (_masterUpdates.get() != updates) {
+            LOG.debug("ignoring registration result for {}, a newer update arrived", _topic);
+            return;
+        }
 
         Object[] resultArray = (Object[])result;
         Object[] payloadUris = (Object[])resultArray[2];
 
+        // this includes our own URI when this node also publishes the
+        // topic, pubUpdate connects to it locally.
         List<URI> pubUris = new ArrayList<>();
         for (Object pubUri : payloadUris) {
-            if (!vassalUri.equals(pubUri)) {
-                pubUris.add(URI.create((String)pubUri));
-            }
+            pubUris.add(URI.create((String)pubUri));
         }
 
-        // TODO: check for and handle local publisher
-        // TODO: this includes adding a IPC local connection
-
-        this.pubUpdate(pubUris);
+        this.updatePublishers(pubUris);
     }
 
     private void registerFault(int code, String message) {
@@ -181,61 +324,255 @@ public class Subscription<M extends Message> {
         LOG.warn("unregister failed ("+code+"): "+status);
     }
 
+    /**
+     * Called with the list of publishers from the master's
+     * publisherUpdate.
+     *
+     * @param pubUris the complete list of publishers of the topic
+     */
     void pubUpdate(List<URI> pubUris) {
+        _masterUpdates.incrementAndGet();
+        updatePublishers(pubUris);
+    }
+
+    /**
+     * Updates the connections to match the master's list of publishers.
+     * Publishers that are already connected (or connecting) are left
+     * alone, so repeated updates do not open duplicate connections.
+     * Publishers no longer listed are disconnected.
+     *
+     * @param pubUris the complete list of publishers of the topic
+     */
+    private void updatePublishers(List<URI> pubUris) {
         LOG.debug("pubUpdate: {}", pubUris);
 
+        String vassalUri = _topicManager.getVassalUri();
+        boolean localPublisher = false;
+        Set<URI> remoteUris = new HashSet<>();
         for (URI pubUri : pubUris) {
-            // TODO: additions/subtractions
+            if (vassalUri.equals(pubUri.toString())) {
+                localPublisher = true;
+            } else {
+                remoteUris.add(pubUri);
+            }
         }
 
-        List<URI> additions = pubUris;
+        List<PublisherConnection> additions = new ArrayList<>();
+        List<PublisherLink<M>> removals = new ArrayList<>();
+
+        synchronized (_connections) {
+            if (_closed) {
+                return;
+            }
+
+            for (Iterator<PublisherConnection> it = _connections.values().iterator() ; it.hasNext() ; ) {
+                PublisherConnection conn = it.next();
+                if (!remoteUris.contains(conn._uri)) {
+                    LOG.debug("publisher {} of {} is gone", conn._uri, _topic);
+                    it.remove();
+                    conn._removed = true;
+                    if (conn._link != null) {
+                        removals.add(conn._link);
+                        setLink(conn, null);
+                    }
+                }
+            }
 
-        for (URI addition : additions) {
-            // TODO: avoid connections to self
-            requestTopic(addition, 0);
+            for (URI uri : remoteUris) {
+                if (!_connections.containsKey(uri)) {
+                    PublisherConnection conn = new PublisherConnection(uri);
+                    _connections.put(uri, conn);
+                    additions.add(conn);
+                }
+            }
+        }
+
+        // links are closed outside the lock since their close listeners
+        // call back into linkClosed.
+        for (PublisherLink<M> link : removals) {
+            link.close();
+        }
+
+        updateLocalLink(localPublisher);
+
+        for (PublisherConnection conn : additions) {
+            requestTopic(conn, 0, _transportHints.getTransports());
         }
     }
 
-    private void requestTopic(URI remoteUri, int retry) {
-        Object[][] protos = {
-            { "TCPROS" }
-        };
+    /**
+     * Connects to (or disconnects from) this node's own publication of
+     * the topic.  Local publications are connected directly, bypassing
+     * the network and, when possible, serialization.
+     *
+     * @param localPublisher true if the master lists this node as
+     * a publisher of the topic.
+     */
+    private void updateLocalLink(boolean localPublisher) {
+        IntraProcessLink<?, M> stale = null;
+        boolean connect;
+        synchronized (_connections) {
+            if (_localLink != null && (!localPublisher ||
+                !_topicManager.isAdvertised(_localLink.getPublication())))
+            {
+                // the publication we are linked to has gone, possibly
+                // replaced by a new one.
+                stale = _localLink;
+                setLocalLink(null);
+            }
+            connect = localPublisher && _localLink == null && !_closed;
+        }
+
+        // the link is closed and created outside the lock, both take the
+        // publication's lock, which it holds while delivering messages
+        // that may call back into queueFull.
+        if (stale != null) {
+            stale.close();
+        }
+        if (!connect) {
+            return;
+        }
 
-        _topicManager.prepareCall(remoteUri, "requestTopic",
+        IntraProcessLink<?, M> link = _topicManager.connectLocal(this, this::messageRecv);
+        if (link == null) {
+            return;
+        }
+        synchronized (_connections) {
+            if (_localLink == null && !_closed) {
+                setLocalLink(link);
+                LOG.debug("connected to local publication of {}", _topic);
+                connect = false;
+            }
+        }
+        if (!connect) {
+            // a queue may have filled before the link was listed
+            link.readPausedChanged();
+            return;
+        }
+        // closed, or connected by a concurrent update in the meantime
+        link.close();
+    }
+
+    /**
+     * Asks a publisher for a connection.  The transports are offered in
+     * order of preference.  For UDPROS the receiving channel is opened
+     * first, since the request includes its port, and it is closed
+     * again if the publisher picks something else.
+     *
+     * @param conn the publisher's connection entry
+     * @param delayMillis how long to wait before asking
+     * @param transports the transports to offer.  A publisher on
+     *    another host will not accept SHMROS and picks the next one.
+     */
+    private void requestTopic(
+        PublisherConnection conn, long delayMillis,
+        List<TransportHints.Transport> transports)
+    {
+        final int generation;
+        synchronized (_connections) {
+            if (conn._removed || _closed) {
+                return;
+            }
+            generation = conn._generation;
+        }
+
+        List<Object[]> protos = new ArrayList<>(transports.size());
+        UDPROSSubscriberLink<M> udpLink = null;
+
+        for (TransportHints.Transport transport : transports) {
+            switch (transport) {
+            case SHMROS:
+                if (_networkServer.isSharedMemoryEnabled()) {
+                    protos.add(new Object[] { "SHMROS", _networkServer.getHostKey() });
+                }
+                break;
+            case UDPROS:
+                try {
+                    udpLink = _networkServer.openUDP(
+                        this, _transportHints.getMaxDatagramSize(), this::messageRecv,
+                        () -> linkClosed(conn, generation));
+                    protos.add(udpLink.getProtocolRequest());
+                } catch (IOException ex) {
+                    LOG.warn("unable to open UDPROS channel for " + _topic, ex);
+                    if (udpLink != null) {
+                        udpLink.discard();
+                        udpLink = null;
+                    }
+                }
+                break;
+            case TCPROS:
+                protos.add(new Object[] { "TCPROS" });
+                break;
+            }
+        }
+
+        if (protos.isEmpty()) {
+            LOG.error("no usable transport for {} in {}", _topic, _transportHints);
+            return;
+        }
+
+        final UDPROSSubscriberLink<M> finalUdpLink = udpLink;
+        _topicManager.prepareCall(conn._uri, "requestTopic",
             _topicManager.getCallerId(),
             _topic.toString(),
-            protos)
-            .onSuccess(this::requestTopicSuccess)
-            .onFault(this::requestTopicFault)
+            protos.toArray())
+            .onSuccess((result) -> requestTopicSuccess(conn, generation, transports, finalUdpLink, result))
+            .onFault((code, status) -> {
+                discard(finalUdpLink);
+                requestTopicFault(code, status);
+            })
             .onError((ex) -> {
-                LOG.error("requestTopic (retry "+retry+")", ex);
-                if (retry < MAX_RETRIES) {
-                    requestTopic(remoteUri, retry+1);
-                }
+                discard(finalUdpLink);
+                LOG.warn("requestTopic to " + conn._uri + " for " + _topic + " failed", ex);
+                reconnect(conn, generation);
             })
-            .invokeLater(retry*retry*5, TimeUnit.SECONDS);
+            .invokeLater(delayMillis, TimeUnit.MILLISECONDS);
     }
 
-    private void requestTopicSuccess(Object result) {
+    private static void discard(UDPROSSubscriberLink<?> udpLink) {
+        if (udpLink != null) {
+            udpLink.discard();
+        }
+    }
+
+    private void requestTopicSuccess(
+        PublisherConnection conn, int generation,
+        List<TransportHints.Transport> transports,
+        UDPROSSubscriberLink<M> udpLink, Object result)
+    {
         if (!(result instanceof Object[])) {
             LOG.warn("invalid response, not an array");
+            discard(udpLink);
             return;
         }
         Object[] resultTuple = (Object[])result;
 
         if (resultTuple.length != 3 || !(resultTuple[2] instanceof Object[])) {
+            // also what a publisher returns when it does not publish
+            // the topic (any more), so there is nothing to retry.
             LOG.warn("invalid response, invalid response tuple");
+            discard(udpLink);
             return;
         }
         Object[] protoList = (Object[])resultTuple[2];
 
         if (protoList.length == 0) {
             LOG.debug("negotiation resulted in empty protocol list");
+            discard(udpLink);
+            return;
+        }
+
+        if ("UDPROS".equals(protoList[0]) && udpLink != null) {
+            connectUDPROS(conn, generation, udpLink, protoList);
             return;
         }
 
+        discard(udpLink);
+
         if ("TCPROS".equals(protoList[0])) {
-            connectTCPROS(protoList);
+            connectTCPROS(conn, generation, protoList);
+        } else if ("SHMROS".equals(protoList[0])) {
+            connectSHMROS(conn, generation, transports, protoList);
         } else {
             LOG.error("negotiated unsupported protocol: "+protoList[0]);
         }
@@ -245,7 +582,7 @@ public class Subscription<M extends Message> {
         LOG.error("requestTopic failed with fault ("+code+"): "+status);
     }
 
-    private void connectTCPROS(Object[] proto) {
+    private void connectTCPROS(PublisherConnection conn, int generation, Object[] proto) {
         if (proto.length != 3 ||
             !(proto[1] instanceof String) ||
             !(proto[2] instanceof Integer))
@@ -261,13 +598,132 @@ public class Subscription<M extends Message> {
 
         try {
             PublisherLink<M> link = _networkServer.connect(
-                this, host, port, this::messageRecv);
-            synchronized (_links) {
-                _links.add(link);
-            }
+                this, host, port, this::messageRecv,
+                () -> linkClosed(conn, generation));
+            linkOpened(conn, generation, link);
         } catch (IOException e) {
             LOG.error("unable to initiate TCPROS connection to "+host+":"+port, e);
+            reconnect(conn, generation);
+        }
+    }
+
+    private void connectUDPROS(
+        PublisherConnection conn, int generation,
+        UDPROSSubscriberLink<M> link, Object[] proto)
+    {
+        try {
+            link.connected(proto);
+        } catch (ProtocolException ex) {
+            LOG.warn("UDPROS connection for " + _topic + " failed", ex);
+            link.discard();
+            return;
+        }
+
+        LOG.debug("Connected via UDPROS to {}:{}", proto[1], proto[2]);
+        linkOpened(conn, generation, link);
+    }
+
+    private void connectSHMROS(
+        PublisherConnection conn, int generation,
+        List<TransportHints.Transport> transports, Object[] proto)
+    {
+        if (proto.length != 3 ||
+            !_networkServer.getHostKey().equals(proto[1]) ||
+            !(proto[2] instanceof String))
+        {
+            LOG.warn("invalid parameters for SHMROS, falling back");
+            requestTopic(conn, 0, withoutSharedMemory(transports));
+            return;
         }
+
+        String path = (String)proto[2];
+        LOG.debug("Connecting via SHMROS to {}", path);
+
+        try {
+            PublisherLink<M> link = _networkServer.connectSharedMemory(
+                this, path, this::messageRecv,
+                () -> linkClosed(conn, generation));
+            linkOpened(conn, generation, link);
+        } catch (IOException ex) {
+            // e.g., the publisher is in a container with its own /dev/shm
+            LOG.warn("unable to open SHMROS ring "+path+", falling back", ex);
+            requestTopic(conn, 0, withoutSharedMemory(transports));
+        }
+    }
+
+    private static List<TransportHints.Transport> withoutSharedMemory(
+        List<TransportHints.Transport> transports)
+    {
+        List<TransportHints.Transport> list = new ArrayList<>(transports);
+        list.remove(TransportHints.Transport.SHMROS);
+        if (list.isEmpty()) {
+            // the publisher offered shared memory, so it supports TCPROS
+            list.add(TransportHints.Transport.TCPROS);
+        }
+        return list;
+    }
+
+    /**
+     * Records a newly opened link.  If the publisher was removed (or the
+     * link already closed) in the meantime, the link is not kept.
+     */
+    private void linkOpened(PublisherConnection conn, int generation, PublisherLink<M> link) {
+        synchronized (_connections) {
+            if (!conn._removed && !_closed && conn._generation == generation) {
+                setLink(conn, link);
+                conn._openedAt = System.nanoTime();
+                return;
+            }
+        }
+        link.close();
+    }
+
+    /**
+     * Close listener for publisher links.  Links closed by this
+     * subscription, or that belong to an earlier attempt, are ignored.
+     * Anything else lost its publisher unexpectedly and is reconnected.
+     */
+    private void linkClosed(PublisherConnection conn, int generation) {
+        synchronized (_connections) {
+            if (conn._link != null && conn._generation == generation &&
+                System.nanoTime() - conn._openedAt > TimeUnit.MILLISECONDS.toNanos(MAX_RECONNECT_MILLIS))
+            {
+                // the link was healthy for a while, start the backoff over
+                conn._attempts = 0;
+            }
+        }
+        reconnect(conn, generation);
+    }
+
+    /**
+     * Schedules another requestTopic for a publisher after the current
+     * attempt failed.  The delay grows exponentially with the number of
+     * consecutive failures, and is jittered so that the connections a
+     * master re-announces together do not all retry at once.
+     */
+    private void reconnect(PublisherConnection conn, int generation) {
+        long delayMillis;
+        synchronized (_connections) {
+            if (conn._removed || _closed || conn._generation != generation) {
+                return;
+            }
+            // invalidate anything still pending from this attempt
+            ++conn._generation;
+            setLink(conn, null);
+
+            long backoff = Math.min(
+                MAX_RECONNECT_MILLIS,
+                MIN_RECONNECT_MILLIS << Math.min(conn._attempts, 16));
+            ++conn._attempts;
+            delayMillis = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff);
+        }
+
+        if (_topicManager.isStopped()) {
+            return;
+        }
+
+        LOG.info("reconnecting to {} for {} in {} ms", conn._uri, _topic, delayMillis);
+        requestTopic(conn, delayMillis, _transportHints.getTransports());
     }
 
     /**
@@ -293,31 +749,85 @@ public class Subscription<M extends Message> {
     void close() {
         unregister(0);
 
-        synchronized (_links) {
-            for (PublisherLink<M> link : _links) {
-                link.close();
+        List<PublisherLink<M>> links = new ArrayList<>();
+        synchronized (_connections) {
+            _closed = true;
+            for (PublisherConnection conn : _connections.values()) {
+                conn._removed = true;
+                if (conn._link != null) {
+                    links.add(conn._link);
+                    setLink(conn, null);
+                }
+            }
+            _connections.clear();
+            if (_localLink != null) {
+                links.add(_localLink);
+                setLocalLink(null);
             }
         }
+
+        for (PublisherLink<M> link : links) {
+            link.close();
+        }
+    }
+
+    /**
+     * The state of the connection to one remote publisher.  All fields
+     * are guarded by _connections.
+     */
+    private final class PublisherConnection {
+        final URI _uri;
+        PublisherLink<M> _link;
+        /**
+         * Incremented whenever an attempt is abandoned, so that the
+         * callbacks of earlier attempts can be recognized and ignored.
+         */
+        int _generation;
+        /**
+         * Consecutive failed attempts, determines the reconnect delay.
+         */
+        int _attempts;
+        long _openedAt;
+        /**
+         * Set when the publisher is no longer listed by the master, or
+         * the subscription closes.
+         */
+        boolean _removed;
+
+        PublisherConnection(URI uri) {
+            _uri = uri;
+        }
     }
 
     private class SubscriberImpl implements Subscriber<M> {
-        private final Executor _executor;
-        private final SubscriptionListener<? super M> _listener;
+        private final DispatchQueue<M> _queue;
         boolean _closed;
 
-        SubscriberImpl(Executor executor, SubscriptionListener<? super M> listener) {
-            _executor = executor;
-            _listener = listener;
+        SubscriberImpl(int queueSize, Executor executor, SubscriptionListener<? super M> listener) {
+            _queue = new DispatchQueue<>(
+                executor, listener, queueSize,
+                _transportHints.isBackpressure() ? Subscription.this::queueFull : null);
         }
 
         private void message(M msg) {
-            _executor.execute(() -> _listener.message(msg));
+            _queue.offer(msg);
+        }
+
+        @Override
+        public long getDroppedMessageCount() {
+            return _queue.getDroppedMessageCount();
+        }
+
+        @Override
+        public int getQueueDepth() {
+            return _queue.size();
         }
 
         @Override
         public synchronized void close() {
             if (!_closed) {
                 _closed = true;
+                _queue.close();
                 removeSubscriber(this);
             }
         }
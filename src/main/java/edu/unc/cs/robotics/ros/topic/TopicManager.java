@@ -1,11 +1,18 @@
 package edu.unc.cs.robotics.ros.topic;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import javax.inject.Inject;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import com.google.inject.Singleton;
 import edu.unc.cs.robotics.ros.Name;
@@ -16,7 +23,10 @@ import edu.unc.cs.robotics.ros.Service;
 import edu.unc.cs.robotics.ros.Subscriber;
 import edu.unc.cs.robotics.ros.msg.Message;
 import edu.unc.cs.robotics.ros.msg.MetaMessage;
+import edu.unc.cs.robotics.ros.network.BufferPool;
 import edu.unc.cs.robotics.ros.network.NetworkServer;
+import edu.unc.cs.robotics.ros.network.SelectorLoopStats;
+import edu.unc.cs.robotics.ros.network.SharedMemoryRing;
 import edu.unc.cs.robotics.ros.xmlrpc.XmlrpcClient;
 import edu.unc.cs.robotics.ros.xmlrpc.XmlrpcServer;
 import org.slf4j.Logger;
@@ -39,6 +49,12 @@ public class TopicManager implements Service {
 
     private volatile boolean _stopped;
 
+    /**
+     * The name under which the bus stats are registered with the
+     * platform MBean server, or null if they are not.
+     */
+    private ObjectName _busStatsName;
+
     private final Subscription.Factory _subscriptionFactory;
     private final Publication.Factory _publicationFactory;
 
@@ -69,9 +85,14 @@ public class TopicManager implements Service {
         return _xmlrpcServer.getUri();
     }
 
+    BufferPool bufferPool() {
+        return _networkServer.bufferPool();
+    }
+
     @Override
     public void start() {
         _xmlrpcServer.bind(_vassalService);
+        registerBusStats();
         LOG.info("started");
     }
 
@@ -92,9 +113,46 @@ public class TopicManager implements Service {
         }
 
         _xmlrpcServer.unbind(_vassalService);
+        unregisterBusStats();
         LOG.info("stopped");
     }
 
+    private void registerBusStats() {
+        try {
+            ObjectName name = new ObjectName(
+                "edu.unc.cs.robotics.ros:type=BusStats,node=" +
+                ObjectName.quote(getCallerId()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new BusStats(), name);
+            _busStatsName = name;
+        } catch (JMException ex) {
+            LOG.warn("failed to register bus stats MBean", ex);
+        }
+    }
+
+    private void unregisterBusStats() {
+        if (_busStatsName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(_busStatsName);
+        } catch (JMException ex) {
+            LOG.warn("failed to unregister bus stats MBean", ex);
+        }
+        _busStatsName = null;
+    }
+
+    private class BusStats implements BusStatsMXBean {
+        @Override
+        public List<ConnectionInfo> getConnections() {
+            return TopicManager.this.getConnections();
+        }
+
+        @Override
+        public List<SelectorLoopStats> getSelectorLoops() {
+            return _networkServer.getSelectorLoopStats();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private <M extends Message> Publication<M> uncheckedPublicationLookup(String topic) {
         return (Publication<M>)_publicationMap.get(topic);
@@ -123,6 +181,67 @@ public class TopicManager implements Service {
         MetaMessage<M> meta, Name topic, int queueSize, boolean latch,
         Executor executor, PublicationListener<? super M> listener)
     {
+        return advertise(
+            meta, topic, queueSize, 0, DropPolicy.DROP_OLDEST, latch,
+            executor, listener);
+    }
+
+    /**
+     * Advertises a topic with limits on the bytes queued for each
+     * subscriber and a policy for what to do when a subscriber's
+     * queue is full.  Like the queue size, the byte limit and policy
+     * only have an effect on the first advertise.
+     *
+     * @param meta the information about the message to publish
+     * @param topic the topic name
+     * @param queueSize the maximum number of queued outgoing messages
+     *    per subscriber, 0 for no limit.
+     * @param maxQueueBytes the maximum number of serialized bytes
+     *    queued per subscriber, 0 for no limit.
+     * @param dropPolicy what to do when a subscriber's queue is full.
+     * @param latch true of the last published message should be
+     *    latched, false otherwise.
+     * @param executor The executor with which the listener callbacks
+     *    will take effect.  May only be null if the listener is null.
+     * @param listener Events for connect/disconnect of subscribers
+     *    will be sent to this listener.  May be null.
+     * @param <M> the message type
+     * @return a publisher for the message
+     */
+    public <M extends Message> Publisher<M> advertise(
+        MetaMessage<M> meta, Name topic, int queueSize,
+        long maxQueueBytes, DropPolicy dropPolicy, boolean latch,
+        Executor executor, PublicationListener<? super M> listener)
+    {
+        return advertise(
+            meta, topic, queueSize, maxQueueBytes, dropPolicy,
+            WriteCoalescing.NONE, latch, executor, listener);
+    }
+
+    /**
+     * Advertises a topic whose TCPROS subscribers coalesce writes.  As
+     * with the queue limits, the coalescing only has an effect on the
+     * first advertise.
+     *
+     * @param coalescing how long small messages may be held so that
+     *    several are written at once.
+     * @see #advertise(MetaMessage, Name, int, long, DropPolicy, boolean, Executor, PublicationListener)
+     */
+    public <M extends Message> Publisher<M> advertise(
+        MetaMessage<M> meta, Name topic, int queueSize,
+        long maxQueueBytes, DropPolicy dropPolicy, WriteCoalescing coalescing,
+        boolean latch, Executor executor, PublicationListener<? super M> listener)
+    {
+        if (coalescing == null) {
+            throw new NullPointerException("coalescing");
+        }
+        if (maxQueueBytes < 0) {
+            throw new IllegalArgumentException("maxQueueBytes must be non-negative");
+        }
+        if (dropPolicy == null) {
+            throw new NullPointerException("dropPolicy");
+        }
+
         Publisher<M> pub;
         Publication<M> publication;
 
@@ -133,7 +252,9 @@ public class TopicManager implements Service {
             register = (publication == null);
 
             if (register) {
-                publication = _publicationFactory.create(this, meta, topic, queueSize, latch);
+                publication = _publicationFactory.create(
+                    this, meta, topic, queueSize, maxQueueBytes, dropPolicy,
+                    coalescing, latch);
                 _publicationMap.put(topic.toString(), publication);
             } else if (!publication.getMeta().getMd5sum().equals(meta.getMd5sum())) {
                 throw new IllegalStateException(
@@ -207,29 +328,104 @@ public class TopicManager implements Service {
         subscription.close();
     }
 
-    public <M extends Message> Publication<M> addSubscriberLink(
-        String topic, String md5sum, SubscriberLink<M> link)
-    {
+    /**
+     * Finds the publication for an incoming connection, without adding
+     * a link to it.  Connections use this to send their header before
+     * the link is added, since adding the link may immediately queue a
+     * latched message.
+     *
+     * @param topic the topic requested
+     * @param md5sum the md5sum the subscriber expects, or "*"
+     * @return the publication
+     * @throws IllegalStateException if the topic is not published here
+     *   or its md5sum does not match.
+     */
+    public <M extends Message> Publication<M> lookupPublication(String topic, String md5sum) {
         synchronized (_publicationMap) {
             Publication<M> pub = uncheckedPublicationLookup(topic);
             if (pub == null || pub.isDropped()) {
                 throw new IllegalStateException("non-existant topic: " + topic);
             }
 
-            if (!md5sum.equals(pub.getMeta().getMd5sum()) &&
-                !"*".equals(md5sum) &&
-                !"*".equals(pub.getMeta().getMd5sum()))
-            {
-                throw new IllegalStateException("client requested topic [" + topic +
-                                                "] with md5sum [" + md5sum + "], but publication has md5sum of [" +
-                                                pub.getMeta().getMd5sum() + "]");
-            }
+            checkMd5sum(topic, md5sum, pub);
+            return pub;
+        }
+    }
 
+    public <M extends Message> Publication<M> addSubscriberLink(
+        String topic, String md5sum, SubscriberLink<M> link)
+    {
+        synchronized (_publicationMap) {
+            Publication<M> pub = lookupPublication(topic, md5sum);
             pub.addSubscriberLink(link);
             return pub;
         }
     }
 
+    private static void checkMd5sum(String topic, String md5sum, Publication<?> pub) {
+        if (!md5sum.equals(pub.getMeta().getMd5sum()) &&
+            !"*".equals(md5sum) &&
+            !"*".equals(pub.getMeta().getMd5sum()))
+        {
+            throw new IllegalStateException("client requested topic [" + topic +
+                                            "] with md5sum [" + md5sum + "], but publication has md5sum of [" +
+                                            pub.getMeta().getMd5sum() + "]");
+        }
+    }
+
+    /**
+     * Connects a subscription to this node's publication of the same
+     * topic, if there is one.
+     *
+     * @param subscription the subscription
+     * @param consumer receives the published messages
+     * @param <M> the subscription's message type
+     * @return the new link, or null if the topic is not published here
+     * or its type does not match.
+     */
+    <M extends Message> IntraProcessLink<?, M> connectLocal(
+        Subscription<M> subscription, Consumer<M> consumer)
+    {
+        String topic = subscription.getTopic().toString();
+        synchronized (_publicationMap) {
+            Publication<?> pub = _publicationMap.get(topic);
+            if (pub == null || pub.isDropped()) {
+                return null;
+            }
+
+            try {
+                checkMd5sum(topic, subscription.getMeta().getMd5sum(), pub);
+            } catch (IllegalStateException ex) {
+                LOG.warn("cannot connect local subscription", ex);
+                return null;
+            }
+
+            return addIntraProcessLink(
+                _networkServer.nextConnectionId(), pub, subscription.getMeta(), consumer,
+                subscription::isReadPaused);
+        }
+    }
+
+    private static <P extends Message, S extends Message> IntraProcessLink<P, S> addIntraProcessLink(
+        int connectionId, Publication<P> pub, MetaMessage<S> meta, Consumer<S> consumer,
+        BooleanSupplier readPaused)
+    {
+        IntraProcessLink<P, S> link = new IntraProcessLink<>(connectionId, pub, meta, consumer, readPaused);
+        pub.addSubscriberLink(link);
+        return link;
+    }
+
+    /**
+     * @param pub a publication
+     * @return true if the publication is the current publication of its
+     * topic, false if it has been unadvertised.
+     */
+    boolean isAdvertised(Publication<?> pub) {
+        synchronized (_publicationMap) {
+            return _publicationMap.get(pub.getTopic().toString()) == pub;
+        }
+    }
+
     public boolean pubUpdate(String topic, List<URI> pubs) {
         LOG.debug("received update for topic {}, ({} publishers)",
             topic, pubs.size());
@@ -247,12 +443,132 @@ public class TopicManager implements Service {
         return true; // TODO: return something else?
     }
 
+    private List<Publication<?>> publications() {
+        synchronized (_publicationMap) {
+            return new ArrayList<>(_publicationMap.values());
+        }
+    }
+
+    private List<Subscription<?>> subscriptions() {
+        synchronized (_subscriptionMap) {
+            return new ArrayList<>(_subscriptionMap.values());
+        }
+    }
+
+    /**
+     * @return a snapshot of every connection of this node's
+     * publications and subscriptions.
+     */
+    public List<ConnectionInfo> getConnections() {
+        long now = System.nanoTime();
+        List<ConnectionInfo> list = new ArrayList<>();
+        for (Publication<?> pub : publications()) {
+            String topic = pub.getTopic().toString();
+            for (SubscriberLink<?> link : pub.getSubscriberLinks()) {
+                list.add(new ConnectionInfo(topic, ConnectionInfo.OUTBOUND, link, now));
+            }
+        }
+        for (Subscription<?> sub : subscriptions()) {
+            String topic = sub.getTopic().toString();
+            for (PublisherLink<?> link : sub.getPublisherLinks()) {
+                list.add(new ConnectionInfo(topic, ConnectionInfo.INBOUND, link, now));
+            }
+        }
+        return list;
+    }
+
     /**
      * Method exposed for XML-RPC Vassal API.
      *
-     * @param topic
-     * @param protocols
-     * @return
+     * @return [publishStats, subscribeStats, serviceStats] where
+     * publishStats is [topic, bytesSent, [[connectionId, bytesSent,
+     * messagesSent, connected]...]]... and subscribeStats is [topic,
+     * [[connectionId, bytesReceived, dropEstimate, connected]...]]...
+     */
+    public Object[] getBusStats() {
+        List<Object> publishStats = new ArrayList<>();
+        for (Publication<?> pub : publications()) {
+            List<Object> conns = new ArrayList<>();
+            long bytes = 0;
+            for (SubscriberLink<?> link : pub.getSubscriberLinks()) {
+                bytes += link.getByteCount();
+                conns.add(new Object[] {
+                    link.getConnectionId(),
+                    xmlrpcInt(link.getByteCount()),
+                    xmlrpcInt(link.getMessageCount()),
+                    link.isConnected()
+                });
+            }
+            publishStats.add(new Object[] {
+                pub.getTopic().toString(), xmlrpcInt(bytes), conns.toArray()
+            });
+        }
+
+        List<Object> subscribeStats = new ArrayList<>();
+        for (Subscription<?> sub : subscriptions()) {
+            List<Object> conns = new ArrayList<>();
+            for (PublisherLink<?> link : sub.getPublisherLinks()) {
+                conns.add(new Object[] {
+                    link.getConnectionId(),
+                    xmlrpcInt(link.getByteCount()),
+                    xmlrpcInt(link.getDroppedMessageCount()),
+                    link.isConnected()
+                });
+            }
+            subscribeStats.add(new Object[] {
+                sub.getTopic().toString(), conns.toArray()
+            });
+        }
+
+        return new Object[] {
+            publishStats.toArray(),
+            subscribeStats.toArray(),
+            new Object[0]
+        };
+    }
+
+    /**
+     * Method exposed for XML-RPC Vassal API.
+     *
+     * @return [[connectionId, destinationId, direction, transport, topic,
+     * connected]...]
+     */
+    public Object[] getBusInfo() {
+        List<ConnectionInfo> conns = getConnections();
+        Object[] info = new Object[conns.size()];
+        for (int i = 0 ; i < info.length ; ++i) {
+            ConnectionInfo conn = conns.get(i);
+            String dest = conn.getDestination();
+            info[i] = new Object[] {
+                conn.getConnectionId(),
+                dest == null ? "" : dest,
+                conn.getDirection(),
+                conn.getTransport(),
+                conn.getTopic(),
+                conn.isConnected()
+            };
+        }
+        return info;
+    }
+
+    /**
+     * XML-RPC only has 32-bit ints, so counters that have grown past
+     * that are reported as the maximum rather than wrapping negative.
+     */
+    private static int xmlrpcInt(long n) {
+        return (int)Math.min(n, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Method exposed for XML-RPC Vassal API.  The protocols are in
+     * the subscriber's order of preference, the first one supported
+     * is returned.
+     *
+     * @param topic the topic requested
+     * @param protocols the protocols the subscriber supports, each is an
+     *    array with the protocol name followed by its parameters.
+     * @return the selected protocol and its parameters, or null if none
+     *    are supported.
      */
     public Object[] requestTopic(String topic, Object[] protocols) {
         for (Object protocol : protocols) {
@@ -265,7 +581,17 @@ public class TopicManager implements Service {
                 throw new IllegalArgumentException();
             }
 
-            if ("TCPROS".equals(array[0])) {
+            if ("SHMROS".equals(array[0])) {
+                Object[] result = requestSHMROS(topic, array);
+                if (result != null) {
+                    return result;
+                }
+            } else if ("UDPROS".equals(array[0])) {
+                Object[] result = _networkServer.requestUDPROS(topic, array);
+                if (result != null) {
+                    return result;
+                }
+            } else if ("TCPROS".equals(array[0])) {
                 return new Object[] {
                     "TCPROS",
                     _networkServer.getHost(),
@@ -273,13 +599,56 @@ public class TopicManager implements Service {
                 };
             } else {
                 LOG.debug("unsupported protocol: "+array[0]);
-                return null;
             }
         }
 
         return null;
     }
 
+    /**
+     * Handles a SHMROS request.  Shared memory is only offered to a
+     * subscriber on the same host, and only when the ring can be
+     * created, otherwise the next protocol is tried.
+     *
+     * @param topic the topic requested
+     * @param params "SHMROS", the subscriber's host key
+     * @return the protocol response, or null if SHMROS is not possible.
+     */
+    private Object[] requestSHMROS(String topic, Object[] params) {
+        if (!_networkServer.isSharedMemoryEnabled() ||
+            params.length < 2 ||
+            !_networkServer.getHostKey().equals(params[1]))
+        {
+            return null;
+        }
+
+        Publication<?> pub;
+        synchronized (_publicationMap) {
+            pub = _publicationMap.get(topic);
+        }
+        if (pub == null) {
+            return null;
+        }
+
+        try {
+            return new Object[] {
+                "SHMROS",
+                _networkServer.getHostKey(),
+                pub.sharedMemoryRing().getFile().getPath()
+            };
+        } catch (IOException ex) {
+            LOG.warn("failed to create shared memory ring for " + topic, ex);
+            return null;
+        }
+    }
+
+    SharedMemoryRing createSharedMemoryRing(Publication<?> pub) throws IOException {
+        return _networkServer.createSharedMemoryRing(
+            pub.getTopic().toString(),
+            pub.getMeta().getMd5sum(),
+            pub.isLatch());
+    }
+
     @SuppressWarnings("unchecked")
     private <M extends Message> Subscription<M> uncheckedSubscriptionLookup(Name topic) {
         return (Subscription<M>)_subscriptionMap.get(topic.toString());
@@ -291,6 +660,22 @@ public class TopicManager implements Service {
         int queueSize,
         Executor executor,
         SubscriptionListener<? super M> listener)
+    {
+        return subscribe(meta, topic, queueSize, TransportHints.DEFAULT, executor, listener);
+    }
+
+    /**
+     * Subscribes to a topic.  The transport hints are fixed by the
+     * first subscriber to the topic, later subscribers share its
+     * connections.
+     */
+    public <M extends Message> Subscriber<M> subscribe(
+        MetaMessage<M> meta,
+        Name topic,
+        int queueSize,
+        TransportHints transportHints,
+        Executor executor,
+        SubscriptionListener<? super M> listener)
     {
         Subscriber<M> subscriber;
         Subscription<M> subscription;
@@ -300,14 +685,14 @@ public class TopicManager implements Service {
             subscription = uncheckedSubscriptionLookup(topic);
             register = (subscription == null);
             if (register) {
-                subscription = _subscriptionFactory.create(this, meta, topic, queueSize);
+                subscription = _subscriptionFactory.create(this, meta, topic, transportHints);
                 _subscriptionMap.put(topic.toString(), subscription);
             } else if (!subscription.getMeta().getMd5sum().equals(meta.getMd5sum())) {
                 throw new IllegalStateException(
                     "attempt to subscribe with mismatching md5sums");
             }
 
-            subscriber = subscription.newSubscriber(executor, listener);
+            subscriber = subscription.newSubscriber(queueSize, executor, listener);
         }
 
         if (register) {
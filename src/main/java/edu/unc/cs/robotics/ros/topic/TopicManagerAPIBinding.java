@@ -28,21 +28,19 @@ public class TopicManagerAPIBinding {
 
     @XmlrpcMethodBinding
     public Object[] getBusStats(String callerId) {
-        LOG.warn("call to stub getBusStats");
         return new Object[] {
-            0,
+            1,
             "OK",
-            new Object[0] // TODO
+            _topicManager.getBusStats()
         };
     }
 
     @XmlrpcMethodBinding
     public Object[] getBusInfo(String callerId) {
-        LOG.warn("call to stub getBusInfo");
         return new Object[] {
-            0,
+            1,
             "OK",
-            new Object[0] // TODO
+            _topicManager.getBusInfo()
         };
     }
 
@@ -0,0 +1,216 @@
+package edu.unc.cs.robotics.ros.topic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A subscriber's transport preferences.  The transports are offered to
+ * each publisher in the order they were added to the builder, and the
+ * publisher picks the first one it supports.  Instances are immutable
+ * and are created through {@link #builder()}.
+ *
+ * <pre>
+ *     // prefer UDP, fall back to TCP
+ *     TransportHints.builder().udp().tcp().build()
+ * </pre>
+ */
+public final class TransportHints {
+    public enum Transport {
+        /**
+         * Memory-mapped ring, only used with publishers on the same host.
+         */
+        SHMROS,
+        TCPROS,
+        /**
+         * Unreliable datagrams.  Messages that lose a datagram are
+         * dropped, but a lost datagram does not delay later messages.
+         */
+        UDPROS
+    }
+
+    /**
+     * The default maximum datagram size, chosen to fit in a typical
+     * Ethernet MTU.
+     */
+    public static final int DEFAULT_MAX_DATAGRAM_SIZE = 1500;
+
+    /**
+     * Shared memory when possible, TCPROS otherwise.
+     */
+    public static final TransportHints DEFAULT = builder().sharedMemory().tcp().build();
+
+    private final List<Transport> _transports;
+    private final int _maxDatagramSize;
+    private final boolean _offloadDecoding;
+    private final boolean _backpressure;
+    private final boolean _tcpNoDelay;
+
+    private TransportHints(Builder builder) {
+        _transports = Collections.unmodifiableList(new ArrayList<>(builder._transports));
+        _maxDatagramSize = builder._maxDatagramSize;
+        _offloadDecoding = builder._offloadDecoding;
+        _backpressure = builder._backpressure;
+        _tcpNoDelay = builder._tcpNoDelay;
+    }
+
+    /**
+     * @return the transports in order of preference.
+     */
+    public List<Transport> getTransports() {
+        return _transports;
+    }
+
+    /**
+     * @return the largest datagram to request from UDPROS publishers,
+     * including the 8-byte UDPROS header.
+     */
+    public int getMaxDatagramSize() {
+        return _maxDatagramSize;
+    }
+
+    /**
+     * @return true if TCPROS messages are deserialized on the network
+     * server's decode threads instead of the selector thread.
+     */
+    public boolean isDecodingOffloaded() {
+        return _offloadDecoding;
+    }
+
+    /**
+     * @return true if a full subscriber queue pauses reading from
+     * TCPROS publishers instead of dropping messages.
+     */
+    public boolean isBackpressure() {
+        return _backpressure;
+    }
+
+    /**
+     * @return true if TCPROS publishers are asked to send each message
+     * as soon as it is written, without Nagle's algorithm.
+     */
+    public boolean isTcpNoDelay() {
+        return _tcpNoDelay;
+    }
+
+    @Override
+    public String toString() {
+        return "TransportHints" + _transports +
+            (_offloadDecoding ? "+offloadDecoding" : "") +
+            (_backpressure ? "+backpressure" : "") +
+            (_tcpNoDelay ? "+tcpNoDelay" : "");
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        final List<Transport> _transports = new ArrayList<>();
+        int _maxDatagramSize = DEFAULT_MAX_DATAGRAM_SIZE;
+        boolean _offloadDecoding;
+        boolean _backpressure;
+        boolean _tcpNoDelay;
+
+        private Builder() {
+        }
+
+        private Builder add(Transport transport) {
+            if (!_transports.contains(transport)) {
+                _transports.add(transport);
+            }
+            return this;
+        }
+
+        public Builder tcp() {
+            return add(Transport.TCPROS);
+        }
+
+        /**
+         * Adds TCPROS, asking publishers to set TCP_NODELAY.  Without
+         * it, a small message can wait for the acknowledgement of the
+         * previous one, adding tens of milliseconds at low rates.
+         *
+         * @return this
+         */
+        public Builder tcpNoDelay() {
+            _tcpNoDelay = true;
+            return add(Transport.TCPROS);
+        }
+
+        public Builder udp() {
+            return add(Transport.UDPROS);
+        }
+
+        /**
+         * Adds UDPROS with a maximum datagram size.
+         *
+         * @param maxDatagramSize the largest datagram, including the
+         *   8-byte UDPROS header.
+         * @return this
+         */
+        public Builder udp(int maxDatagramSize) {
+            if (maxDatagramSize <= 8 || maxDatagramSize > 65507) {
+                throw new IllegalArgumentException("invalid maxDatagramSize: " + maxDatagramSize);
+            }
+            _maxDatagramSize = maxDatagramSize;
+            return add(Transport.UDPROS);
+        }
+
+        /**
+         * Adds the shared memory transport.  It is skipped for
+         * publishers on other hosts, and when disabled by the
+         * {@code NetworkConfig}.
+         *
+         * @return this
+         */
+        public Builder sharedMemory() {
+            return add(Transport.SHMROS);
+        }
+
+        /**
+         * Deserializes TCPROS messages on the network server's decode
+         * threads.  The selector thread only copies each message's
+         * bytes, so large or complex messages do not delay I/O for
+         * other connections.  Messages from one publisher are still
+         * delivered in order.
+         *
+         * @return this
+         */
+        public Builder offloadDecoding() {
+            _offloadDecoding = true;
+            return this;
+        }
+
+        /**
+         * Never drops messages for a full subscriber queue.  Instead,
+         * while any subscriber's queue is full, the subscription stops
+         * reading from its connections until the queue is half empty.
+         * Over TCPROS, flow control then slows the publishers, whose own
+         * queue limits apply.  A publication in the same process blocks
+         * its publishing thread instead, so a subscriber must not
+         * publish to the topic it subscribes to from its own listener.
+         * A shared memory publisher cannot be slowed: it overwrites the
+         * messages the paused subscription has not read, and they are
+         * counted as dropped.  UDPROS has no way to slow a publisher or
+         * to stop reading, so it cannot be combined with this, and
+         * {@link #build()} rejects it.
+         *
+         * @return this
+         */
+        public Builder backpressure() {
+            _backpressure = true;
+            return this;
+        }
+
+        public TransportHints build() {
+            if (_transports.isEmpty()) {
+                throw new IllegalStateException("no transports");
+            }
+            if (_backpressure && _transports.contains(Transport.UDPROS)) {
+                throw new IllegalStateException("backpressure cannot be used with UDPROS");
+            }
+            return new TransportHints(this);
+        }
+    }
+}
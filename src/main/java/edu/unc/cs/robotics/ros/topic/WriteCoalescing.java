@@ -0,0 +1,65 @@
+package edu.unc.cs.robotics.ros.topic;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long a TCPROS subscriber link may hold small messages so that
+ * several go out in one write.  A link writes its queued messages once
+ * the oldest has waited the maximum delay, or once the queued bytes
+ * reach the budget, whichever comes first.  This is independent of
+ * tcp_nodelay, which only controls the kernel's own coalescing.
+ *
+ * <p>Coalescing trades up to the maximum delay of latency for fewer
+ * write system calls, and is suited to high rate topics with small
+ * messages.  Instances are immutable.</p>
+ */
+public final class WriteCoalescing {
+    /**
+     * Write each message as soon as it is published.
+     */
+    public static final WriteCoalescing NONE = new WriteCoalescing(0, 0);
+
+    private final long _maxDelayNanos;
+    private final int _maxBytes;
+
+    private WriteCoalescing(long maxDelayNanos, int maxBytes) {
+        _maxDelayNanos = maxDelayNanos;
+        _maxBytes = maxBytes;
+    }
+
+    /**
+     * @param maxDelay the longest a message may wait to be written
+     * @param unit the unit of maxDelay
+     * @param maxBytes the number of queued bytes that triggers a write
+     *    without waiting for the delay.
+     * @return the coalescing settings
+     */
+    public static WriteCoalescing of(long maxDelay, TimeUnit unit, int maxBytes) {
+        if (maxDelay <= 0) {
+            throw new IllegalArgumentException("maxDelay must be positive");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        return new WriteCoalescing(unit.toNanos(maxDelay), maxBytes);
+    }
+
+    public boolean isEnabled() {
+        return _maxDelayNanos > 0;
+    }
+
+    public long getMaxDelayNanos() {
+        return _maxDelayNanos;
+    }
+
+    public int getMaxBytes() {
+        return _maxBytes;
+    }
+
+    @Override
+    public String toString() {
+        return isEnabled()
+            ? "WriteCoalescing[" + _maxDelayNanos + "ns, " + _maxBytes + " bytes]"
+            : "WriteCoalescing[NONE]";
+    }
+}
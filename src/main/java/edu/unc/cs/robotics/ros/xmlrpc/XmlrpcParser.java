@@ -2,6 +2,7 @@ package edu.unc.cs.robotics.ros.xmlrpc;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -277,7 +278,7 @@ public class XmlrpcParser {
             case "dateTime.iso8601":
                 throw new SAXException("dateTime.iso8601 not supported, implement me!");
             case "base64":
-                throw new SAXException("base64 not supported, implement me!");
+                return new Base64State();
             default:
                 return super.transition(qName);
             }
@@ -342,6 +343,14 @@ public class XmlrpcParser {
         }
     }
 
+    private static class Base64State extends ValueSubState {
+        @Override
+        Object parseValue(String text) {
+            // the MIME decoder ignores line breaks and other whitespace
+            return Base64.getMimeDecoder().decode(text);
+        }
+    }
+
     private static class DoubleState extends ValueSubState {
         @Override
         Object parseValue(String text) {
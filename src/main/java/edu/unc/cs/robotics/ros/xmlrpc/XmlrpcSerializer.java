@@ -1,5 +1,6 @@
 package edu.unc.cs.robotics.ros.xmlrpc;
 
+import java.util.Base64;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
@@ -133,7 +134,9 @@ public class XmlrpcSerializer {
                 cal.get(Calendar.SECOND)));
             buf.append("</dateTime.iso8601>");
         } else if (value instanceof byte[]) {
-            throw new UnsupportedOperationException("base64 not supported yet, implement me!");
+            buf.append("<base64>");
+            buf.append(Base64.getEncoder().encodeToString((byte[])value));
+            buf.append("</base64>");
         } else {
             throw new IllegalArgumentException("unable to serialize: " + value);
         }
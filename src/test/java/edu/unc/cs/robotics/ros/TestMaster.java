@@ -0,0 +1,234 @@
+package edu.unc.cs.robotics.ros;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import edu.unc.cs.robotics.ros.msg.ByteBufferDeserializer;
+import edu.unc.cs.robotics.ros.msg.Clock;
+import edu.unc.cs.robotics.ros.network.NetworkConfig;
+import edu.unc.cs.robotics.ros.xmlrpc.XmlrpcClient;
+import edu.unc.cs.robotics.ros.xmlrpc.XmlrpcMethodBinding;
+import edu.unc.cs.robotics.ros.xmlrpc.XmlrpcServer;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+
+/**
+ * A ROS master for tests, with just the calls that register topics and
+ * services, and the nodes in this process that use it.  Everything
+ * listens on the loopback address.
+ */
+public class TestMaster implements AutoCloseable {
+    private final Injector _injector;
+    private final XmlrpcServer _server;
+    private final XmlrpcClient _client;
+    private final URI _uri;
+
+    /**
+     * Caller APIs by topic, guarded by this.
+     */
+    private final Map<String, Set<String>> _publishers = new HashMap<>();
+    private final Map<String, Set<String>> _subscribers = new HashMap<>();
+    /**
+     * Service URIs by service, guarded by this.
+     */
+    private final Map<String, String> _serviceUris = new HashMap<>();
+
+    private final List<ROSModule.Services> _nodes = new ArrayList<>();
+
+    public TestMaster() {
+        _injector = Guice.createInjector(ROSModule.builder("master")
+            .host("127.0.0.1")
+            .master("http://127.0.0.1:1/")
+            .build());
+        _server = _injector.getInstance(XmlrpcServer.class);
+        _client = _injector.getInstance(XmlrpcClient.class);
+        _server.bind(this);
+        _server.start();
+        _uri = URI.create(_server.getUri());
+    }
+
+    public URI getUri() {
+        return _uri;
+    }
+
+    /**
+     * Starts a node that uses this master.
+     *
+     * @param name the node's name
+     * @return the node's injector
+     */
+    public Injector start(String name) {
+        return start(name, NetworkConfig.DEFAULT);
+    }
+
+    public Injector start(String name, NetworkConfig config) {
+        Injector injector = Guice.createInjector(ROSModule.builder(name)
+            .host("127.0.0.1")
+            .master(_uri)
+            .network(config)
+            .build());
+        ROSModule.Services services = injector.getInstance(ROSModule.Services.class);
+        services.start();
+        synchronized (_nodes) {
+            _nodes.add(services);
+        }
+        return injector;
+    }
+
+    /**
+     * @return the root node handle of a node started by this master
+     */
+    public static NodeHandle handle(Injector node) {
+        return node.getInstance(NodeManager.class).node(Name.create("/"));
+    }
+
+    /**
+     * @return the number of publishers of a topic registered right now
+     */
+    public synchronized int publisherCount(String topic) {
+        Set<String> apis = _publishers.get(topic);
+        return apis == null ? 0 : apis.size();
+    }
+
+    /**
+     * @return true if a service is registered right now
+     */
+    public synchronized boolean hasService(String service) {
+        return _serviceUris.containsKey(service);
+    }
+
+    /**
+     * @return a message to publish in tests, numbered by its seconds
+     */
+    public static Clock clock(int sec) {
+        ByteBuffer buf = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(sec).putInt(0).flip();
+        return new Clock(new ByteBufferDeserializer(buf));
+    }
+
+    /**
+     * Waits for a condition that other threads make true.
+     *
+     * @return true if the condition became true in time
+     */
+    public static boolean await(BooleanSupplier condition, long timeout, TimeUnit unit)
+        throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        List<ROSModule.Services> nodes;
+        synchronized (_nodes) {
+            nodes = new ArrayList<>(_nodes);
+            _nodes.clear();
+        }
+        for (ROSModule.Services node : nodes) {
+            node.stop();
+        }
+        _server.stop();
+        try {
+            _injector.getInstance(CloseableHttpAsyncClient.class).close();
+        } catch (java.io.IOException ex) {
+            // nothing left to do
+        }
+        _injector.getInstance(ScheduledExecutorService.class).shutdownNow();
+        _injector.getInstance(ExecutorService.class).shutdownNow();
+    }
+
+    private static Object[] ok(Object value) {
+        return new Object[] { 1, "", value };
+    }
+
+    private static Set<String> apis(Map<String, Set<String>> map, String key) {
+        return map.computeIfAbsent(key, k -> new LinkedHashSet<>());
+    }
+
+    private void publisherUpdate(String topic) {
+        Object[] pubs;
+        List<String> subs;
+        synchronized (this) {
+            pubs = apis(_publishers, topic).toArray();
+            subs = new ArrayList<>(apis(_subscribers, topic));
+        }
+        for (String api : subs) {
+            _client.prepare(api, "publisherUpdate", "/master", topic, pubs)
+                .onSuccess(result -> { })
+                .invoke();
+        }
+    }
+
+    @XmlrpcMethodBinding
+    public Object[] registerPublisher(String callerId, String topic, String type, String callerApi) {
+        Object[] subs;
+        synchronized (this) {
+            apis(_publishers, topic).add(callerApi);
+            subs = apis(_subscribers, topic).toArray();
+        }
+        publisherUpdate(topic);
+        return ok(subs);
+    }
+
+    @XmlrpcMethodBinding
+    public Object[] unregisterPublisher(String callerId, String topic, String callerApi) {
+        boolean removed;
+        synchronized (this) {
+            removed = apis(_publishers, topic).remove(callerApi);
+        }
+        if (removed) {
+            publisherUpdate(topic);
+        }
+        return ok(removed ? 1 : 0);
+    }
+
+    @XmlrpcMethodBinding
+    public synchronized Object[] registerSubscriber(String callerId, String topic, String type, String callerApi) {
+        apis(_subscribers, topic).add(callerApi);
+        return ok(apis(_publishers, topic).toArray());
+    }
+
+    @XmlrpcMethodBinding
+    public synchronized Object[] unregisterSubscriber(String callerId, String topic, String callerApi) {
+        return ok(apis(_subscribers, topic).remove(callerApi) ? 1 : 0);
+    }
+
+    @XmlrpcMethodBinding
+    public synchronized Object[] registerService(String callerId, String service, String serviceApi, String callerApi) {
+        _serviceUris.put(service, serviceApi);
+        return ok(0);
+    }
+
+    @XmlrpcMethodBinding
+    public synchronized Object[] unregisterService(String callerId, String service, String serviceApi) {
+        return ok(_serviceUris.remove(service, serviceApi) ? 1 : 0);
+    }
+
+    @XmlrpcMethodBinding
+    public synchronized Object[] lookupService(String callerId, String service) {
+        String uri = _serviceUris.get(service);
+        if (uri == null) {
+            return new Object[] { -1, "no provider", "" };
+        }
+        return ok(uri);
+    }
+}
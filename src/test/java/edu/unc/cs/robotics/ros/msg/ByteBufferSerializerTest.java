@@ -0,0 +1,310 @@
+package edu.unc.cs.robotics.ros.msg;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import junit.framework.TestCase;
+
+public class ByteBufferSerializerTest extends TestCase {
+    private static final String LATIN1 = "café ÿ";
+
+    private static JointState jointState() {
+        return new JointState(
+            new Header(0, 1_500_000_000L, "base"),
+            new String[] { "a", LATIN1, "" },
+            new double[] { 1.0, -2.5, Math.PI },
+            new double[0],
+            new double[] { Double.NaN, Double.MAX_VALUE, Double.MIN_VALUE });
+    }
+
+    /**
+     * Serializes at an offset into a slice of a larger buffer, so that
+     * the position and the array offset are both non-zero.
+     */
+    private static void roundTrip(ByteBuffer backing) {
+        JointState js = jointState();
+        ByteCountSerializer counter = new ByteCountSerializer();
+        js.serialize(counter);
+
+        backing.position(3);
+        ByteBuffer buf = backing.slice().order(ByteOrder.LITTLE_ENDIAN);
+        buf.position(5);
+        js.serialize(new ByteBufferSerializer(7, buf));
+        assertEquals(5 + counter.getByteCount(), buf.position());
+
+        // the bulk paths must write what one-at-a-time puts would
+        ByteBuffer expected = ByteBuffer.allocate(counter.getByteCount()).order(ByteOrder.LITTLE_ENDIAN);
+        expected.putInt(7).putInt(1).putInt(500_000_000).putInt(4).put("base".getBytes());
+        expected.putInt(3);
+        for (String name : js.name) {
+            expected.putInt(name.length());
+            for (int i = 0 ; i < name.length() ; ++i) {
+                expected.put((byte)name.charAt(i));
+            }
+        }
+        for (double[] array : Arrays.asList(js.position, js.velocity, js.effort)) {
+            expected.putInt(array.length);
+            for (double v : array) {
+                expected.putDouble(v);
+            }
+        }
+        expected.flip();
+        buf.flip().position(5);
+        assertEquals(expected, buf);
+
+        JointState copy = new JointState(new ByteBufferDeserializer(buf));
+        assertFalse(buf.hasRemaining());
+        assertEquals(7, copy.header.seq);
+        assertEquals("base", copy.header.frame);
+        assertTrue(Arrays.equals(js.name, copy.name));
+        assertTrue(Arrays.equals(js.position, copy.position));
+        assertTrue(Arrays.equals(js.velocity, copy.velocity));
+        assertTrue(Arrays.equals(js.effort, copy.effort));
+    }
+
+    public void testHeapBuffer() {
+        roundTrip(ByteBuffer.allocate(256));
+    }
+
+    public void testDirectBuffer() {
+        roundTrip(ByteBuffer.allocateDirect(256));
+    }
+
+    private static void writeAll(MessageSerializer ser, int n) {
+        boolean[] bools = new boolean[n];
+        byte[] bytes = new byte[n];
+        short[] shorts = new short[n];
+        int[] ints = new int[n];
+        long[] longs = new long[n];
+        float[] floats = new float[n];
+        double[] doubles = new double[n];
+        for (int i = 0 ; i < n ; ++i) {
+            bools[i] = (i % 3) == 0;
+            bytes[i] = (byte)(i * 37);
+            shorts[i] = (short)(i * 1009 - 30000);
+            ints[i] = i * 0x01020304;
+            longs[i] = i * 0x0102030405060708L - 5;
+            floats[i] = i * 0.25f - 1;
+            doubles[i] = i * 0.125 - 3;
+        }
+        ser.putBool(true);
+        ser.putShort((short)-2);
+        ser.putLong(Long.MIN_VALUE + 3);
+        ser.putFloat(1.5f);
+        ser.putBoolArray(bools);
+        ser.putByteArray(bytes);
+        ser.putShortArray(shorts);
+        ser.putIntArray(ints);
+        ser.putLongArray(longs);
+        ser.putFloatArray(floats);
+        ser.putDoubleArray(doubles);
+        // a fixed-length array, from an offset
+        ser.putDoubles(doubles, n / 2, n - n / 2);
+    }
+
+    private static void readAll(MessageDeserializer des, int n) {
+        assertTrue(des.getBool());
+        assertEquals(-2, des.getShort());
+        assertEquals(Long.MIN_VALUE + 3, des.getLong());
+        assertEquals(1.5f, des.getFloat());
+        boolean[] bools = des.getBoolArray();
+        byte[] bytes = des.getByteArray();
+        short[] shorts = des.getShortArray();
+        int[] ints = des.getIntArray();
+        long[] longs = des.getLongArray();
+        float[] floats = des.getFloatArray();
+        double[] doubles = des.getDoubleArray();
+        double[] fixed = new double[n];
+        des.getDoubles(fixed, n / 2, n - n / 2);
+        assertEquals(n, bools.length);
+        for (int i = 0 ; i < n ; ++i) {
+            assertEquals((i % 3) == 0, bools[i]);
+            assertEquals((byte)(i * 37), bytes[i]);
+            assertEquals((short)(i * 1009 - 30000), shorts[i]);
+            assertEquals(i * 0x01020304, ints[i]);
+            assertEquals(i * 0x0102030405060708L - 5, longs[i]);
+            assertEquals(i * 0.25f - 1, floats[i]);
+            assertEquals(i * 0.125 - 3, doubles[i]);
+            assertEquals(i < n / 2 ? 0.0 : i * 0.125 - 3, fixed[i]);
+        }
+    }
+
+    /**
+     * Only the required operations, so every other one is the
+     * interface's default.
+     */
+    private static final class MinimalSerializer implements MessageSerializer {
+        final ByteBuffer _buf;
+
+        MinimalSerializer(ByteBuffer buf) {
+            _buf = buf;
+        }
+
+        @Override
+        public void putSeq() {
+            putInt(0);
+        }
+
+        @Override
+        public void putInt(int v) {
+            _buf.putInt(v);
+        }
+
+        @Override
+        public void putByte(byte v) {
+            _buf.put(v);
+        }
+
+        @Override
+        public void putDouble(double v) {
+            _buf.putDouble(v);
+        }
+
+        @Override
+        public void putString(String str) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    public void testPrimitives() {
+        // short arrays are written one at a time, long ones in bulk
+        for (int n : new int[] { 5, 100 }) {
+            ByteCountSerializer counter = new ByteCountSerializer();
+            writeAll(counter, n);
+            int size = counter.getByteCount();
+
+            ByteBuffer expected = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            writeAll(new MinimalSerializer(expected), n);
+            assertFalse(expected.hasRemaining());
+            expected.flip();
+
+            for (ByteBuffer buf : Arrays.asList(ByteBuffer.allocate(size), ByteBuffer.allocateDirect(size))) {
+                buf.order(ByteOrder.LITTLE_ENDIAN);
+                writeAll(new ByteBufferSerializer(0, buf), n);
+                assertFalse(buf.hasRemaining());
+                buf.flip();
+                assertEquals(expected, buf);
+
+                readAll(new ByteBufferDeserializer(buf), n);
+                assertFalse(buf.hasRemaining());
+            }
+
+            // and the interface's defaults read the same
+            readAll(new MinimalDeserializer(expected.duplicate().order(ByteOrder.LITTLE_ENDIAN)), n);
+        }
+    }
+
+    /**
+     * Only the required operations, so every other one is the
+     * interface's default.
+     */
+    private static final class MinimalDeserializer implements MessageDeserializer {
+        final ByteBufferDeserializer _des;
+
+        MinimalDeserializer(ByteBuffer buf) {
+            _des = new ByteBufferDeserializer(buf);
+        }
+
+        @Override
+        public int getInt() {
+            return _des.getInt();
+        }
+
+        @Override
+        public byte getByte() {
+            return _des.getByte();
+        }
+
+        @Override
+        public double getDouble() {
+            return _des.getDouble();
+        }
+
+        @Override
+        public String getString() {
+            return _des.getString();
+        }
+
+        @Override
+        public ByteBuffer getRemaining() {
+            return _des.getRemaining();
+        }
+
+        @Override
+        public String[] getStringArray() {
+            return _des.getStringArray();
+        }
+
+        @Override
+        public double[] getDoubleArray() {
+            double[] array = new double[getInt()];
+            getDoubles(array, 0, array.length);
+            return array;
+        }
+
+        @Override
+        public <T> T[] getMessageArray(
+            IntFunction<T[]> arrayAlloc, Function<MessageDeserializer, T> itemFn)
+        {
+            return _des.getMessageArray(arrayAlloc, itemFn);
+        }
+    }
+
+    public void testByteBuffer() {
+        ByteBuffer buf = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        new ByteBufferSerializer(0, buf).putByteBuffer(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+        buf.put((byte)9).flip();
+
+        // a buffer that is reused gets a copy
+        ByteBufferDeserializer des = new ByteBufferDeserializer(buf.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+        ByteBuffer copy = des.getByteBuffer();
+        assertFalse(des.isRetained());
+        assertEquals(9, des.getByte());
+
+        // one that is not is shared
+        des = new ByteBufferDeserializer(buf.duplicate().order(ByteOrder.LITTLE_ENDIAN), true);
+        ByteBuffer slice = des.getByteBuffer();
+        assertTrue(des.isRetained());
+        assertTrue(slice.isReadOnly());
+        assertEquals(9, des.getByte());
+
+        buf.put(5, (byte)7);
+        assertEquals(ByteBuffer.wrap(new byte[] { 1, 3, 3 }), copy.put(1, (byte)3));
+        assertEquals(ByteBuffer.wrap(new byte[] { 1, 7, 3 }), slice);
+    }
+
+    public void testBadArrayLength() {
+        ByteBuffer buf = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(Integer.MAX_VALUE).putDouble(1.0).flip();
+        try {
+            new ByteBufferDeserializer(buf).getDoubleArray();
+            fail("expected underflow");
+        } catch (BufferUnderflowException ex) {
+            // expected, without allocating the array
+        }
+    }
+
+    public void testBadMessageArrayLength() {
+        ByteBuffer buf = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(Integer.MAX_VALUE).putInt(0).putInt(1).putInt(0).flip();
+        try {
+            new ByteBufferDeserializer(buf).getMessageArray(Header[]::new, Header::new);
+            fail("expected underflow");
+        } catch (BufferUnderflowException ex) {
+            // expected, without allocating the array
+        }
+
+        buf.clear();
+        buf.putInt(-1).flip();
+        try {
+            new ByteBufferDeserializer(buf).getMessageArray(Header[]::new, Header::new);
+            fail("expected underflow");
+        } catch (BufferUnderflowException ex) {
+            // expected
+        }
+    }
+}
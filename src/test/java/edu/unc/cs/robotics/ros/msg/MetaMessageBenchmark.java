@@ -0,0 +1,108 @@
+package edu.unc.cs.robotics.ros.msg;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.Function;
+
+import edu.unc.cs.robotics.ros.msg.actionlib.GoalID;
+
+/**
+ * Measures deserializing GoalID and JointState through
+ * {@link MetaMessage#forClass(Class)} against the reflective
+ * {@link Constructor#newInstance(Object...)} it replaced, with a
+ * {@code ::new} reference as the baseline.
+ *
+ * <p>Run main() with the test classpath, it is not a unit test.</p>
+ */
+public class MetaMessageBenchmark {
+    private static final int ROUNDS = 5;
+    private static final long TARGET_NANOS = 200_000_000L;
+
+    private static volatile Object _sink;
+
+    public static void main(String[] args) throws Exception {
+        GoalID id = new GoalID();
+        id.stamp = System.nanoTime();
+        id.id = "goal-1";
+
+        String[] names = new String[7];
+        double[] values = new double[7];
+        for (int i = 0 ; i < names.length ; ++i) {
+            names[i] = "right_arm_joint_" + i;
+            values[i] = i * 0.1;
+        }
+        JointState state = new JointState(
+            new Header(0, System.nanoTime(), "base_link"),
+            names, values, values.clone(), values.clone());
+
+        for (int round = 0 ; round < ROUNDS ; ++round) {
+            System.out.printf("round %d%n", round);
+            bench(id, GoalID.class, GoalID::new);
+            bench(state, JointState.class, JointState::new);
+        }
+    }
+
+    private static <M extends Message> void bench(
+        M msg, Class<M> cls, Function<MessageDeserializer, M> direct)
+        throws NoSuchMethodException
+    {
+        ByteCountSerializer counter = new ByteCountSerializer();
+        msg.serialize(counter);
+        ByteBuffer buf = ByteBuffer.allocate(counter.getByteCount()).order(ByteOrder.LITTLE_ENDIAN);
+        msg.serialize(new ByteBufferSerializer(0, buf));
+
+        Constructor<M> ctor = cls.getConstructor(MessageDeserializer.class);
+        MetaMessage<M> meta = MetaMessage.forClass(cls);
+
+        double reflective = time(() -> {
+            buf.rewind();
+            _sink = newInstance(ctor, new ByteBufferDeserializer(buf));
+        });
+        double forClass = time(() -> {
+            buf.rewind();
+            _sink = meta.deserialize(new ByteBufferDeserializer(buf));
+        });
+        double reference = time(() -> {
+            buf.rewind();
+            _sink = direct.apply(new ByteBufferDeserializer(buf));
+        });
+        System.out.printf("  %-12s reflective %8.1f ns  forClass %8.1f ns  ::new %8.1f ns  %5.2fx%n",
+            cls.getSimpleName(), reflective, forClass, reference, reflective / forClass);
+    }
+
+    /**
+     * The reflective call, as forClass made it before.
+     */
+    private static <M> M newInstance(Constructor<M> ctor, MessageDeserializer buf) {
+        try {
+            return ctor.newInstance(buf);
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new AssertionError(e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * @return nanoseconds per run
+     */
+    private static double time(Runnable op) {
+        long iterations = 1;
+        for (;;) {
+            long start = System.nanoTime();
+            for (long i = 0 ; i < iterations ; ++i) {
+                op.run();
+            }
+            long nanos = System.nanoTime() - start;
+            if (nanos >= TARGET_NANOS) {
+                return (double)nanos / iterations;
+            }
+            iterations *= 2;
+        }
+    }
+}
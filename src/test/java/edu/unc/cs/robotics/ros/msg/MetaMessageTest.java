@@ -0,0 +1,47 @@
+package edu.unc.cs.robotics.ros.msg;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import edu.unc.cs.robotics.ros.msg.actionlib.GoalID;
+import junit.framework.TestCase;
+
+public class MetaMessageTest extends TestCase {
+    public void testForClass() {
+        MetaMessage<GoalID> meta = MetaMessage.forClass(GoalID.class);
+        assertSame(meta, MetaMessage.forClass(GoalID.class));
+        assertSame(GoalID.class, meta.getMessageClass());
+        assertEquals(GoalID.DATATYPE, meta.getDataType());
+        assertEquals(GoalID.MD5SUM, meta.getMd5sum());
+        assertEquals(GoalID.DEFINITION, meta.getMessageDefinition());
+
+        GoalID id = new GoalID();
+        id.stamp = 1_500_000_000L;
+        id.id = "goal-1";
+        ByteBuffer buf = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+        id.serialize(new ByteBufferSerializer(0, buf));
+        buf.flip();
+
+        GoalID copy = meta.deserialize(new ByteBufferDeserializer(buf));
+        assertEquals(id.stamp, copy.stamp);
+        assertEquals(id.id, copy.id);
+
+        // the constructor's exceptions come through as they are
+        try {
+            meta.deserialize(new ByteBufferDeserializer(ByteBuffer.allocate(0)));
+            fail("expected the constructor to run out of bytes");
+        } catch (BufferUnderflowException ex) {
+            // expected
+        }
+    }
+
+    public void testInvalid() {
+        try {
+            MetaMessage.forClass(Message.class);
+            fail("expected a class without a MessageSpec to be rejected");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("missing MessageSpec annotation", ex.getMessage());
+        }
+    }
+}
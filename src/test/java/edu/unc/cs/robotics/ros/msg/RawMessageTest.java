@@ -0,0 +1,41 @@
+package edu.unc.cs.robotics.ros.msg;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+public class RawMessageTest extends TestCase {
+    public void testRelay() throws Exception {
+        ByteBuffer wire = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        wire.putDouble(1.0).putDouble(2.0).putDouble(3.0).flip();
+
+        MetaMessage<RawMessage> meta = RawMessage.meta().forConnection(
+            Collections.singletonMap("type", "geometry_msgs/Point"));
+        RawMessage raw = meta.deserialize(new ByteBufferDeserializer(wire));
+        assertFalse(wire.hasRemaining());
+        assertEquals(24, raw.size());
+        assertEquals("geometry_msgs/Point", raw.getDataType());
+        assertTrue(raw.buffer().isReadOnly());
+
+        // the transport reuses its buffer, the message must not change
+        wire.clear();
+        wire.putDouble(9.0);
+
+        ByteCountSerializer counter = new ByteCountSerializer();
+        raw.serialize(counter);
+        assertEquals(24, counter.getByteCount());
+
+        ByteBuffer out = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        raw.serialize(new ByteBufferSerializer(0, out));
+        assertFalse(out.hasRemaining());
+        out.flip();
+
+        Point p = new Point(new ByteBufferDeserializer(out));
+        assertEquals(1.0, p.x);
+        assertEquals(2.0, p.y);
+        assertEquals(3.0, p.z);
+        assertEquals(24, raw.size());
+    }
+}
@@ -0,0 +1,236 @@
+package edu.unc.cs.robotics.ros.msg;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import edu.unc.cs.robotics.ros.msg.trajectory.JointTrajectoryPoint;
+
+/**
+ * Measures serializing and deserializing JointState and
+ * JointTrajectoryPoint with the bulk string and double array paths of
+ * {@link ByteBufferSerializer} and {@link ByteBufferDeserializer},
+ * against the element at a time loops they replaced.
+ *
+ * <p>Run main() with the test classpath, it is not a unit test.
+ * Optional arguments are the number of joints to try.</p>
+ */
+public class SerializationBenchmark {
+    private static final int ROUNDS = 5;
+    private static final long TARGET_NANOS = 200_000_000L;
+
+    private static volatile Object _sink;
+
+    public static void main(String[] args) {
+        int[] joints = { 7, 24, 1000 };
+        if (args.length > 0) {
+            joints = new int[args.length];
+            for (int i = 0 ; i < args.length ; ++i) {
+                joints[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        for (int round = 0 ; round < ROUNDS ; ++round) {
+            System.out.printf("round %d%n", round);
+            for (int n : joints) {
+                bench("JointState", jointState(n), JointState::new);
+                bench("JointTrajectoryPoint", trajectoryPoint(n), JointTrajectoryPoint::new);
+            }
+        }
+    }
+
+    private static JointState jointState(int joints) {
+        String[] names = new String[joints];
+        double[] values = new double[joints];
+        for (int i = 0 ; i < joints ; ++i) {
+            names[i] = "right_arm_joint_" + i;
+            values[i] = i * 0.1;
+        }
+        return new JointState(
+            new Header(0, System.nanoTime(), "base_link"),
+            names, values, values.clone(), values.clone());
+    }
+
+    private static JointTrajectoryPoint trajectoryPoint(int joints) {
+        double[] values = new double[joints];
+        for (int i = 0 ; i < joints ; ++i) {
+            values[i] = i * 0.1;
+        }
+        return new JointTrajectoryPoint(
+            values, values.clone(), values.clone(), values.clone(), 1_000_000L);
+    }
+
+    private static void bench(
+        String type, Message msg, Function<MessageDeserializer, ? extends Message> ctor)
+    {
+        ByteCountSerializer counter = new ByteCountSerializer();
+        msg.serialize(counter);
+        int size = counter.getByteCount();
+        String name = String.format("%s/%d bytes", type, size);
+
+        for (boolean direct : new boolean[] { false, true }) {
+            ByteBuffer buf = (direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size))
+                .order(ByteOrder.LITTLE_ENDIAN);
+            String kind = direct ? "direct" : "heap";
+
+            double loop = time(() -> {
+                buf.clear();
+                msg.serialize(new LoopSerializer(buf));
+            });
+            double bulk = time(() -> {
+                buf.clear();
+                msg.serialize(new ByteBufferSerializer(0, buf));
+            });
+            report(name, kind + " serialize", loop, bulk);
+
+            loop = time(() -> {
+                buf.rewind();
+                _sink = ctor.apply(new LoopDeserializer(buf));
+            });
+            bulk = time(() -> {
+                buf.rewind();
+                _sink = ctor.apply(new ByteBufferDeserializer(buf));
+            });
+            report(name, kind + " deserialize", loop, bulk);
+        }
+    }
+
+    /**
+     * @return nanoseconds per run
+     */
+    private static double time(Runnable op) {
+        long iterations = 1;
+        for (;;) {
+            long start = System.nanoTime();
+            for (long i = 0 ; i < iterations ; ++i) {
+                op.run();
+            }
+            long nanos = System.nanoTime() - start;
+            if (nanos >= TARGET_NANOS) {
+                return (double)nanos / iterations;
+            }
+            iterations *= 2;
+        }
+    }
+
+    private static void report(String name, String op, double loop, double bulk) {
+        System.out.printf("  %-32s %-18s loop %10.1f ns  bulk %10.1f ns  %5.2fx%n",
+            name, op, loop, bulk, loop / bulk);
+    }
+
+    /**
+     * The element at a time serializer, as it was before the bulk paths.
+     */
+    private static final class LoopSerializer implements MessageSerializer {
+        private final ByteBuffer _buf;
+
+        LoopSerializer(ByteBuffer buf) {
+            _buf = buf;
+        }
+
+        @Override
+        public void putSeq() {
+            putInt(0);
+        }
+
+        @Override
+        public void putInt(int v) {
+            _buf.putInt(v);
+        }
+
+        @Override
+        public void putByte(byte v) {
+            _buf.put(v);
+        }
+
+        @Override
+        public void putDouble(double v) {
+            _buf.putDouble(v);
+        }
+
+        @Override
+        public void putString(String str) {
+            final int len = str.length();
+            _buf.putInt(len);
+            for (int i=0 ; i<len ; ++i) {
+                _buf.put((byte)str.charAt(i));
+            }
+        }
+    }
+
+    /**
+     * The element at a time deserializer, as it was before the bulk
+     * paths.
+     */
+    private static final class LoopDeserializer implements MessageDeserializer {
+        private final ByteBuffer _buf;
+
+        LoopDeserializer(ByteBuffer buf) {
+            _buf = buf;
+        }
+
+        @Override
+        public int getInt() {
+            return _buf.getInt();
+        }
+
+        @Override
+        public byte getByte() {
+            return _buf.get();
+        }
+
+        @Override
+        public double getDouble() {
+            return _buf.getDouble();
+        }
+
+        @Override
+        public String getString() {
+            int len = _buf.getInt();
+            StringBuilder str = new StringBuilder(len);
+            for (int i = 0 ; i < len ; ++i) {
+                str.append((char)(_buf.get() & 0xff));
+            }
+            return str.toString();
+        }
+
+        @Override
+        public ByteBuffer getRemaining() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String[] getStringArray() {
+            final int len = _buf.getInt();
+            final String[] array = new String[len];
+            for (int i = 0 ; i < len ; ++i) {
+                array[i] = getString();
+            }
+            return array;
+        }
+
+        @Override
+        public double[] getDoubleArray() {
+            final int len = _buf.getInt();
+            final double[] array = new double[len];
+            for (int i = 0 ; i < len ; ++i) {
+                array[i] = _buf.getDouble();
+            }
+            return array;
+        }
+
+        @Override
+        public <T> T[] getMessageArray(
+            IntFunction<T[]> arrayAlloc,
+            Function<MessageDeserializer,T> itemFn)
+        {
+            final int len = _buf.getInt();
+            final T[] array = arrayAlloc.apply(len);
+            for (int i = 0 ; i < len ; ++i) {
+                array[i] = itemFn.apply(this);
+            }
+            return array;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class BufferPoolTest extends TestCase {
+    public void testSizeClasses() throws Exception {
+        BufferPool pool = new BufferPool(1024*1024);
+
+        ByteBuffer small = pool.acquire(1);
+        assertEquals(1 << BufferPool.MIN_SHIFT, small.capacity());
+        assertEquals(1, small.limit());
+        assertTrue(small.isDirect());
+        assertEquals(NetworkServer.ROS_BYTE_ORDER, small.order());
+
+        ByteBuffer mid = pool.acquire(1025);
+        assertEquals(2048, mid.capacity());
+
+        ByteBuffer exact = pool.acquire(4096);
+        assertEquals(4096, exact.capacity());
+
+        assertEquals(512 + 2048 + 4096, pool.getBorrowedBytes());
+        pool.release(small);
+        pool.release(mid);
+        pool.release(exact);
+        assertEquals(0, pool.getBorrowedBytes());
+        assertEquals(512 + 2048 + 4096, pool.getPooledBytes());
+    }
+
+    public void testReuse() throws Exception {
+        BufferPool pool = new BufferPool(1024*1024);
+
+        ByteBuffer a = pool.acquire(1000);
+        assertEquals(0, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        pool.release(a);
+
+        ByteBuffer b = pool.acquire(600);
+        assertSame(a, b);
+        assertEquals(0, b.position());
+        assertEquals(600, b.limit());
+        assertEquals(1, pool.getHits());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    public void testCap() throws Exception {
+        BufferPool pool = new BufferPool(1024);
+
+        ByteBuffer a = pool.acquire(1024);
+        ByteBuffer b = pool.acquire(1024);
+        pool.release(a);
+        pool.release(b);
+
+        // only one of them fits under the cap
+        assertEquals(1024, pool.getPooledBytes());
+        assertSame(a, pool.acquire(1024));
+        assertNotSame(b, pool.acquire(1024));
+    }
+
+    public void testOversized() throws Exception {
+        BufferPool pool = new BufferPool(Long.MAX_VALUE);
+        int size = (1 << BufferPool.MAX_SHIFT) + 1;
+        ByteBuffer big = pool.acquire(size);
+        assertEquals(size, big.capacity());
+        pool.release(big);
+        assertEquals(0, pool.getPooledBytes());
+        assertEquals(0, pool.getBorrowedBytes());
+    }
+
+    public void testForget() throws Exception {
+        BufferPool pool = new BufferPool(1024*1024);
+        ByteBuffer kept = pool.acquire(1000);
+        assertEquals(1024, pool.getBorrowedBytes());
+
+        // no longer counted, and not reused
+        pool.forget(kept);
+        assertEquals(0, pool.getBorrowedBytes());
+        assertEquals(0, pool.getPooledBytes());
+        assertNotSame(kept, pool.acquire(1000));
+    }
+}
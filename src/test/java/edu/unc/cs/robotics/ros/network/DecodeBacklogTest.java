@@ -0,0 +1,153 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.inject.Injector;
+import edu.unc.cs.robotics.ros.Publisher;
+import edu.unc.cs.robotics.ros.Subscriber;
+import edu.unc.cs.robotics.ros.TestMaster;
+import edu.unc.cs.robotics.ros.msg.Header;
+import edu.unc.cs.robotics.ros.msg.JointState;
+import edu.unc.cs.robotics.ros.topic.TransportHints;
+import junit.framework.TestCase;
+
+import static edu.unc.cs.robotics.ros.TestMaster.await;
+
+/**
+ * Stalls the decoding of an offloading subscription, and checks that
+ * the link stops reading once its decode backlog is full, instead of
+ * copying everything the publisher sends.
+ */
+public class DecodeBacklogTest extends TestCase {
+    /**
+     * Joints per message, 64 KB of positions.
+     */
+    private static final int JOINTS = 8 * 1024;
+    /**
+     * Several times the backlog's byte limit.
+     */
+    private static final int MESSAGES = 200;
+
+    private TestMaster _master;
+    private Injector _talkerNode;
+    private Injector _listenerNode;
+
+    private final CountDownLatch _stalled = new CountDownLatch(1);
+    /**
+     * The subscriber's callback, and so the decode thread that runs it,
+     * waits for this.
+     */
+    private final CountDownLatch _gate = new CountDownLatch(1);
+    private final AtomicInteger _received = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception {
+        _master = new TestMaster();
+        _talkerNode = _master.start("talker");
+        _listenerNode = _master.start("listener");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _gate.countDown();
+        _master.close();
+    }
+
+    private static JointState message() {
+        return new JointState(
+            new Header(0, 0, "base_link"),
+            new String[0], new double[JOINTS], new double[0], new double[0]);
+    }
+
+    /**
+     * @return the listener's subscriber link
+     */
+    private TCPROSSubscriberSelectorAttachment<?> link() throws Exception {
+        for (SelectorLoop loop : _listenerNode.getInstance(NetworkServer.class).loops()) {
+            CompletableFuture<TCPROSSubscriberSelectorAttachment<?>> found = new CompletableFuture<>();
+            loop.runOnSelectorThread(() -> {
+                for (SelectionKey key : loop.keys()) {
+                    if (key.isValid() && key.attachment() instanceof TCPROSSubscriberSelectorAttachment) {
+                        found.complete((TCPROSSubscriberSelectorAttachment<?>)key.attachment());
+                        return;
+                    }
+                }
+                found.complete(null);
+            });
+            TCPROSSubscriberSelectorAttachment<?> link = found.get(10, TimeUnit.SECONDS);
+            if (link != null) {
+                return link;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the link's key has OP_READ set
+     */
+    private boolean isReading(TCPROSSubscriberSelectorAttachment<?> link) throws Exception {
+        CompletableFuture<Boolean> reading = new CompletableFuture<>();
+        SelectorLoop loop = link._loop;
+        loop.runOnSelectorThread(() -> {
+            SelectionKey key = loop.keyFor(link._channel);
+            reading.complete(key != null && (key.interestOps() & SelectionKey.OP_READ) != 0);
+        });
+        return reading.get(10, TimeUnit.SECONDS);
+    }
+
+    public void testReadsPauseWhenBacklogFull() throws Exception {
+        Publisher<JointState> pub = TestMaster.handle(_talkerNode).advertise(
+            JointState.META, "/joints", 0, false, Runnable::run, null);
+        Subscriber<JointState> sub = TestMaster.handle(_listenerNode).subscribe(
+            JointState.META, "/joints", 10,
+            TransportHints.builder().tcp().offloadDecoding().build(),
+            Runnable::run, msg -> {
+                _stalled.countDown();
+                try {
+                    _gate.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                _received.incrementAndGet();
+            });
+
+        // the first message stalls the decode thread
+        assertTrue(await(() -> {
+            pub.publish(message());
+            return _stalled.getCount() == 0;
+        }, 10, TimeUnit.SECONDS));
+        TCPROSSubscriberSelectorAttachment<?> link = link();
+        assertNotNull(link);
+
+        for (int i = 0 ; i < MESSAGES ; ++i) {
+            pub.publish(message());
+        }
+
+        // the link stops reading with no more than a read's worth of
+        // messages past the limit
+        assertTrue(await(() -> {
+            try {
+                return !isReading(link);
+            } catch (Exception ex) {
+                throw new AssertionError(ex);
+            }
+        }, 10, TimeUnit.SECONDS));
+        long backlog = link.getDecodeBacklogBytes();
+        assertTrue("backlog " + backlog,
+            backlog > TCPROSSubscriberSelectorAttachment.MAX_DECODE_BACKLOG_BYTES);
+        assertTrue("backlog " + backlog,
+            backlog <= TCPROSSubscriberSelectorAttachment.MAX_DECODE_BACKLOG_BYTES + 2 * 65536 + JOINTS * 8 * 2);
+
+        // and resumes as the backlog is decoded, nothing is lost
+        _gate.countDown();
+        assertTrue(await(() -> _received.get() >= MESSAGES, 10, TimeUnit.SECONDS));
+        assertTrue(await(() -> link.getDecodeBacklogBytes() == 0, 10, TimeUnit.SECONDS));
+        assertTrue(isReading(link));
+        sub.close();
+        pub.close();
+    }
+}
@@ -0,0 +1,264 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import edu.unc.cs.robotics.ros.NodeHandle;
+import edu.unc.cs.robotics.ros.Publisher;
+import edu.unc.cs.robotics.ros.Subscriber;
+import edu.unc.cs.robotics.ros.TestMaster;
+import edu.unc.cs.robotics.ros.msg.Header;
+import edu.unc.cs.robotics.ros.msg.JointState;
+import edu.unc.cs.robotics.ros.topic.DropPolicy;
+import edu.unc.cs.robotics.ros.topic.PublicationListener;
+import edu.unc.cs.robotics.ros.topic.SubscriberLink;
+import edu.unc.cs.robotics.ros.topic.TransportHints;
+import junit.framework.TestCase;
+
+import static edu.unc.cs.robotics.ros.TestMaster.await;
+
+/**
+ * Fills a TCPROS subscriber link's outgoing queue and checks which
+ * messages each drop policy lets through.  The subscriber applies
+ * backpressure and does not take any message until the test lets it,
+ * so once the socket buffers are full the publisher's queue fills.
+ */
+public class DropPolicyTest extends TestCase {
+    /**
+     * Joints per message, enough that the socket buffers hold only a
+     * few dozen messages.
+     */
+    private static final int JOINTS = 32 * 1024;
+    private static final int MESSAGES = 64;
+    private static final int QUEUE_SIZE = 4;
+
+    private TestMaster _master;
+    private ExecutorService _executor;
+    private NodeHandle _talker;
+    private NodeHandle _listener;
+
+    private final AtomicReference<SubscriberLink<?>> _link = new AtomicReference<>();
+    private final CountDownLatch _connected = new CountDownLatch(1);
+    /**
+     * The listener cannot take a message until this opens.
+     */
+    private final CountDownLatch _gate = new CountDownLatch(1);
+    private final List<Integer> _received = new CopyOnWriteArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        _master = new TestMaster();
+        _executor = Executors.newCachedThreadPool();
+        _talker = TestMaster.handle(_master.start("talker"));
+        _listener = TestMaster.handle(_master.start("listener"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _gate.countDown();
+        _executor.shutdownNow();
+        _master.close();
+    }
+
+    /**
+     * @return the numbered message.  The number is in the stamp, since
+     * the publication sets the seq.
+     */
+    private static JointState message(int n) {
+        double[] values = new double[JOINTS];
+        return new JointState(
+            new Header(0, n, "base_link"),
+            new String[0], values, new double[0], new double[0]);
+    }
+
+    private Publisher<JointState> advertise(int queueSize, long maxQueueBytes, DropPolicy policy) {
+        return _talker.advertise(
+            JointState.META, "/joints", queueSize, maxQueueBytes, policy, false, Runnable::run,
+            new PublicationListener<JointState>() {
+                @Override
+                public void connect(SubscriberLink<? extends JointState> link) {
+                    _link.set(link);
+                    _connected.countDown();
+                }
+
+                @Override
+                public void disconnect(SubscriberLink<? extends JointState> link) {
+                }
+            });
+    }
+
+    /**
+     * Subscribes, and publishes the first message, which stops the
+     * subscriber reading.
+     */
+    private Subscriber<JointState> subscribe(Publisher<JointState> pub) throws InterruptedException {
+        TransportHints hints = TransportHints.builder().tcp().backpressure().build();
+        Subscriber<JointState> sub = _listener.subscribe(
+            JointState.META, "/joints", 1, hints, task -> _executor.execute(() -> {
+                try {
+                    _gate.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                task.run();
+            }), msg -> _received.add((int)msg.header.stamp));
+        assertTrue(_connected.await(10, TimeUnit.SECONDS));
+        assertTrue(await(() -> {
+            pub.publish(message(0));
+            return sub.getQueueDepth() > 0;
+        }, 10, TimeUnit.SECONDS));
+        return sub;
+    }
+
+    /**
+     * Publishes the rest of the messages, lets the subscriber take them,
+     * and waits for every message that was not dropped.
+     *
+     * @return the number of messages dropped
+     */
+    private long publishAndDrain(Publisher<JointState> pub) throws InterruptedException {
+        for (int i = 1 ; i < MESSAGES ; ++i) {
+            pub.publish(message(i));
+        }
+        long dropped = _link.get().getDroppedMessageCount();
+        assertTrue(dropped > 0);
+
+        _gate.countDown();
+        assertTrue(await(() -> received() == MESSAGES - 1 - dropped, 10, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        assertEquals(MESSAGES - 1 - dropped, received());
+        // message(0) may have been published more than once
+        _received.removeIf(n -> n == 0);
+        for (int i = 1 ; i < _received.size() ; ++i) {
+            assertTrue(_received.get(i - 1) < _received.get(i));
+        }
+        return dropped;
+    }
+
+    /**
+     * @return the number of messages received, not counting message(0)
+     */
+    private long received() {
+        return _received.stream().filter(n -> n != 0).count();
+    }
+
+    /**
+     * @return the number of received messages that continue the run
+     * 1, 2, 3...
+     */
+    private int prefix() {
+        int n = 0;
+        while (n < _received.size() && _received.get(n) == n + 1) {
+            ++n;
+        }
+        return n;
+    }
+
+    public void testDropNewest() throws Exception {
+        Publisher<JointState> pub = advertise(QUEUE_SIZE, 0, DropPolicy.DROP_NEWEST);
+        Subscriber<JointState> sub = subscribe(pub);
+        publishAndDrain(pub);
+
+        // the queue kept the oldest messages, so nothing after the first
+        // dropped message arrives
+        assertEquals(_received.size(), prefix());
+        assertTrue(_received.get(_received.size() - 1) < MESSAGES - 1);
+        sub.close();
+        pub.close();
+    }
+
+    public void testDropNewestByteLimit() throws Exception {
+        // the positions alone, the serialized message is a little larger
+        int size = JOINTS * 8;
+        Publisher<JointState> pub = advertise(0, size * 5 / 2, DropPolicy.DROP_NEWEST);
+        Subscriber<JointState> sub = subscribe(pub);
+        long dropped = publishAndDrain(pub);
+
+        assertEquals(_received.size(), prefix());
+        assertTrue(_link.get().getDroppedByteCount() > dropped * size);
+        sub.close();
+        pub.close();
+    }
+
+    public void testDropOldest() throws Exception {
+        Publisher<JointState> pub = advertise(QUEUE_SIZE, 0, DropPolicy.DROP_OLDEST);
+        Subscriber<JointState> sub = subscribe(pub);
+        publishAndDrain(pub);
+
+        // the newest messages are kept.  A message whose write had
+        // started is not dropped, so at least QUEUE_SIZE - 1 are.
+        int n = _received.size();
+        assertTrue(prefix() < n);
+        for (int i = 1 ; i < QUEUE_SIZE ; ++i) {
+            assertEquals(MESSAGES - i, (int)_received.get(n - i));
+        }
+        sub.close();
+        pub.close();
+    }
+
+    public void testKeepLatest() throws Exception {
+        Publisher<JointState> pub = advertise(QUEUE_SIZE, 0, DropPolicy.KEEP_LATEST);
+        Subscriber<JointState> sub = subscribe(pub);
+        publishAndDrain(pub);
+
+        // only the newest message follows those already written
+        assertEquals(_received.size() - 1, prefix());
+        assertEquals(MESSAGES - 1, (int)_received.get(_received.size() - 1));
+        sub.close();
+        pub.close();
+    }
+
+    /**
+     * Publishes the rest of the messages from another thread, which must
+     * wait for the queue, and checks that none are dropped.
+     */
+    private void publishBlocked(Publisher<JointState> pub) throws InterruptedException {
+
+        AtomicInteger published = new AtomicInteger(1);
+        Thread publisher = new Thread(() -> {
+            for (int i = 1 ; i < MESSAGES ; ++i) {
+                pub.publish(message(i));
+                published.incrementAndGet();
+            }
+        });
+        publisher.start();
+
+        // the publisher waits for the full queue
+        assertTrue(await(() -> publisher.getState() == Thread.State.WAITING, 10, TimeUnit.SECONDS));
+        assertTrue(published.get() < MESSAGES);
+
+        _gate.countDown();
+        publisher.join(10000);
+        assertFalse(publisher.isAlive());
+        assertTrue(await(() -> received() == MESSAGES - 1, 10, TimeUnit.SECONDS));
+        assertEquals(0, _link.get().getDroppedMessageCount());
+        _received.removeIf(n -> n == 0);
+        assertEquals(MESSAGES - 1, prefix());
+    }
+
+    public void testBlockPublisher() throws Exception {
+        Publisher<JointState> pub = advertise(QUEUE_SIZE, 0, DropPolicy.BLOCK_PUBLISHER);
+        Subscriber<JointState> sub = subscribe(pub);
+        publishBlocked(pub);
+        sub.close();
+        pub.close();
+    }
+
+    public void testBlockPublisherByteLimit() throws Exception {
+        // Two messages leave room under the limit, but not enough for a
+        // third, which the publisher must wait for rather than drop.
+        int size = JOINTS * 8;
+        Publisher<JointState> pub = advertise(0, size * 5 / 2, DropPolicy.BLOCK_PUBLISHER);
+        Subscriber<JointState> sub = subscribe(pub);
+        publishBlocked(pub);
+        assertEquals(0, _link.get().getDroppedByteCount());
+        sub.close();
+        pub.close();
+    }
+}
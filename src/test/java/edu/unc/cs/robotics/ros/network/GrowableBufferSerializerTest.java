@@ -0,0 +1,73 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.nio.ByteBuffer;
+
+import edu.unc.cs.robotics.ros.msg.ByteBufferDeserializer;
+import edu.unc.cs.robotics.ros.msg.ByteBufferSerializer;
+import edu.unc.cs.robotics.ros.msg.ByteCountSerializer;
+import edu.unc.cs.robotics.ros.msg.Header;
+import edu.unc.cs.robotics.ros.msg.Message;
+import edu.unc.cs.robotics.ros.msg.Point;
+import edu.unc.cs.robotics.ros.msg.trajectory.JointTrajectory;
+import edu.unc.cs.robotics.ros.msg.trajectory.JointTrajectoryPoint;
+import junit.framework.TestCase;
+
+public class GrowableBufferSerializerTest extends TestCase {
+    private static JointTrajectory trajectory(int points) {
+        JointTrajectoryPoint[] array = new JointTrajectoryPoint[points];
+        for (int i = 0 ; i < points ; ++i) {
+            double[] values = { i, i + 0.5, i + 0.25 };
+            array[i] = new JointTrajectoryPoint(
+                values, values, new double[0], new double[0], i * 1_000_000L);
+        }
+        return new JointTrajectory(
+            new Header(0, 1_000_000_007L, "base_link"),
+            new String[] { "a", "b", "c" }, array);
+    }
+
+    private static ByteBuffer twoPass(Message msg) {
+        ByteCountSerializer counter = new ByteCountSerializer();
+        msg.serialize(counter);
+        ByteBuffer buf = ByteBuffer.allocate(counter.getByteCount())
+            .order(NetworkServer.ROS_BYTE_ORDER);
+        msg.serialize(new ByteBufferSerializer(7, buf));
+        buf.flip();
+        return buf;
+    }
+
+    public void testGrow() throws Exception {
+        BufferPool pool = new BufferPool(1 << 20);
+        JointTrajectory msg = trajectory(1000);
+
+        GrowableBufferSerializer ser = new GrowableBufferSerializer(pool, 7, 0);
+        msg.serialize(ser);
+        assertTrue(ser.getGrowCount() > 0);
+        ByteBuffer buf = ser.finish();
+        assertEquals(twoPass(msg), buf);
+
+        // every buffer given up while growing went back to the pool
+        assertEquals(buf.capacity(), pool.getBorrowedBytes());
+        pool.release(buf);
+        assertEquals(0, pool.getBorrowedBytes());
+    }
+
+    public void testPrediction() throws Exception {
+        BufferPool pool = new BufferPool(1 << 20);
+        SizePredictor sizes = new SizePredictor();
+        JointTrajectory msg = trajectory(100);
+
+        for (int i = 0 ; i < 2 ; ++i) {
+            GrowableBufferSerializer ser = new GrowableBufferSerializer(pool, 0, sizes.predict(msg));
+            msg.serialize(ser);
+            // only the first message, with nothing to go on, grows
+            assertEquals(i == 0, ser.getGrowCount() > 0);
+            ByteBuffer buf = ser.finish();
+            sizes.record(buf.remaining());
+            pool.release(buf);
+        }
+
+        Point point = new Point(new ByteBufferDeserializer(ByteBuffer.allocate(Point.SIZE)));
+        assertEquals(Point.SIZE, sizes.predict(point));
+        assertEquals(Point.SIZE, twoPass(point).remaining());
+    }
+}
@@ -0,0 +1,170 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.inject.Injector;
+import edu.unc.cs.robotics.ros.Publisher;
+import edu.unc.cs.robotics.ros.Subscriber;
+import edu.unc.cs.robotics.ros.TestMaster;
+import edu.unc.cs.robotics.ros.msg.Clock;
+import edu.unc.cs.robotics.ros.topic.TransportHints;
+import junit.framework.TestCase;
+
+import static edu.unc.cs.robotics.ros.TestMaster.await;
+import static edu.unc.cs.robotics.ros.TestMaster.clock;
+
+/**
+ * Connects two nodes that each run several selector loops, and checks
+ * that their connections are spread evenly across the loops, and that
+ * each loop carries its connections' messages.
+ */
+public class SelectorLoopBalanceTest extends TestCase {
+    private static final int LOOPS = 4;
+    private static final int TOPICS = 2 * LOOPS;
+
+    private TestMaster _master;
+    private Injector _talkerNode;
+    private Injector _listenerNode;
+    private final List<Publisher<Clock>> _pubs = new ArrayList<>();
+    private final List<Subscriber<Clock>> _subs = new ArrayList<>();
+    /**
+     * The topics that have received a message.
+     */
+    private final ConcurrentHashMap<String, Boolean> _received = new ConcurrentHashMap<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        NetworkConfig config = NetworkConfig.builder().selectorThreads(LOOPS).build();
+        _master = new TestMaster();
+        _talkerNode = _master.start("talker", config);
+        _listenerNode = _master.start("listener", config);
+        for (int i = 0 ; i < TOPICS ; ++i) {
+            _pubs.add(TestMaster.handle(_talkerNode).advertise(
+                Clock.META, topic(i), 10, false, Runnable::run, null));
+            _subs.add(subscribe(i));
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (Subscriber<Clock> sub : _subs) {
+            sub.close();
+        }
+        for (Publisher<Clock> pub : _pubs) {
+            pub.close();
+        }
+        _master.close();
+    }
+
+    private static String topic(int i) {
+        return "/clock_" + i;
+    }
+
+    private Subscriber<Clock> subscribe(int i) {
+        String topic = topic(i);
+        return TestMaster.handle(_listenerNode).subscribe(
+            Clock.META, topic, 10, TransportHints.builder().tcp().build(),
+            Runnable::run, msg -> _received.put(topic, true));
+    }
+
+    /**
+     * @return the number of each of the node's loop's connections with
+     * the attachment type.
+     */
+    private static int[] connections(Injector node, Class<?> type)
+        throws InterruptedException, ExecutionException, TimeoutException
+    {
+        SelectorLoop[] loops = node.getInstance(NetworkServer.class).loops();
+        int[] counts = new int[loops.length];
+        for (int i = 0 ; i < loops.length ; ++i) {
+            SelectorLoop loop = loops[i];
+            CompletableFuture<Integer> n = new CompletableFuture<>();
+            loop.runOnSelectorThread(() -> {
+                int found = 0;
+                for (SelectionKey key : loop.keys()) {
+                    if (key.isValid() && type.isInstance(key.attachment())) {
+                        ++found;
+                    }
+                }
+                n.complete(found);
+            });
+            counts[i] = n.get(10, TimeUnit.SECONDS);
+        }
+        return counts;
+    }
+
+    private static int total(int[] counts) {
+        int sum = 0;
+        for (int n : counts) {
+            sum += n;
+        }
+        return sum;
+    }
+
+    private void awaitConnections(int n) throws InterruptedException {
+        assertTrue(await(() -> {
+            try {
+                return total(connections(_talkerNode, TCPROSPublisherSelectorAttachment.class)) == n &&
+                    total(connections(_listenerNode, TCPROSSubscriberSelectorAttachment.class)) == n;
+            } catch (InterruptedException | ExecutionException | TimeoutException ex) {
+                throw new AssertionError(ex);
+            }
+        }, 10, TimeUnit.SECONDS));
+    }
+
+    private static void assertBalanced(int[] counts, int perLoop) {
+        for (int i = 0 ; i < counts.length ; ++i) {
+            assertEquals("loop " + i, perLoop, counts[i]);
+        }
+    }
+
+    public void testSpread() throws Exception {
+        awaitConnections(TOPICS);
+
+        // accepted and outgoing connections alike
+        assertBalanced(connections(_talkerNode, TCPROSPublisherSelectorAttachment.class), 2);
+        assertBalanced(connections(_listenerNode, TCPROSSubscriberSelectorAttachment.class), 2);
+        for (SelectorLoopStats stats : _listenerNode.getInstance(NetworkServer.class).getSelectorLoopStats()) {
+            assertEquals(stats.getName(), 2, stats.getChannelCount());
+        }
+
+        // every loop delivers
+        assertTrue(await(() -> {
+            for (Publisher<Clock> pub : _pubs) {
+                pub.publish(clock(1));
+            }
+            return _received.size() == TOPICS;
+        }, 10, TimeUnit.SECONDS));
+    }
+
+    public void testNewConnectionToLeastLoaded() throws Exception {
+        awaitConnections(TOPICS);
+
+        // closing a subscription leaves its loop with the fewest
+        // connections on both nodes
+        _subs.get(0).close();
+        awaitConnections(TOPICS - 1);
+        int[] listener = connections(_listenerNode, TCPROSSubscriberSelectorAttachment.class);
+        int[] talker = connections(_talkerNode, TCPROSPublisherSelectorAttachment.class);
+        assertEquals(TOPICS - 1, total(listener));
+
+        // and that loop gets the next connection
+        _subs.set(0, subscribe(0));
+        awaitConnections(TOPICS);
+        int[] listenerAfter = connections(_listenerNode, TCPROSSubscriberSelectorAttachment.class);
+        int[] talkerAfter = connections(_talkerNode, TCPROSPublisherSelectorAttachment.class);
+        for (int i = 0 ; i < LOOPS ; ++i) {
+            assertEquals(listener[i] == 1 ? 2 : listener[i], listenerAfter[i]);
+            assertEquals(talker[i] == 1 ? 2 : talker[i], talkerAfter[i]);
+        }
+        assertBalanced(listenerAfter, 2);
+        assertBalanced(talkerAfter, 2);
+    }
+}
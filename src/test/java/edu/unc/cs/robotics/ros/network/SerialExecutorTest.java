@@ -0,0 +1,120 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+public class SerialExecutorTest extends TestCase {
+    public void testPerExecutorOrder() throws Exception {
+        final int executors = 4;
+        final int count = 10000;
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            final int[] next = new int[executors];
+            final AtomicBoolean[] running = new AtomicBoolean[executors];
+            final CountDownLatch done = new CountDownLatch(executors * count);
+            final AtomicBoolean failed = new AtomicBoolean();
+            SerialExecutor[] serial = new SerialExecutor[executors];
+            for (int e=0 ; e<executors ; ++e) {
+                serial[e] = new SerialExecutor(pool);
+                running[e] = new AtomicBoolean();
+            }
+
+            // interleave submissions so that the executors compete for
+            // the pool's threads.
+            for (int i=0 ; i<count ; ++i) {
+                for (int e=0 ; e<executors ; ++e) {
+                    final int id = e;
+                    final int seq = i;
+                    serial[e].execute(() -> {
+                        // tasks of one executor never overlap, and run
+                        // in the order submitted.
+                        if (!running[id].compareAndSet(false, true) || next[id]++ != seq) {
+                            failed.set(true);
+                        }
+                        running[id].set(false);
+                        done.countDown();
+                    });
+                }
+            }
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertFalse(failed.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static class TaskError extends Error {
+        TaskError() {
+            super("task failed");
+        }
+    }
+
+    public void testError() throws Exception {
+        // drains run when the test polls them
+        Deque<Runnable> drains = new ArrayDeque<>();
+        SerialExecutor serial = new SerialExecutor(drains::add);
+        List<Integer> ran = new ArrayList<>();
+        serial.execute(() -> {
+            throw new TaskError();
+        });
+        serial.execute(() -> ran.add(1));
+        assertEquals(1, drains.size());
+        try {
+            drains.poll().run();
+            fail("expected the task's error");
+        } catch (TaskError ex) {
+            // expected
+        }
+
+        // the task after the error gets a drain of its own
+        assertEquals(1, drains.size());
+        drains.poll().run();
+        assertEquals(Collections.singletonList(1), ran);
+
+        // and the executor is idle again
+        assertTrue(drains.isEmpty());
+        serial.execute(() -> ran.add(2));
+        assertEquals(1, drains.size());
+        drains.poll().run();
+        assertEquals(Arrays.asList(1, 2), ran);
+    }
+
+    public void testRejected() throws Exception {
+        AtomicBoolean shutdown = new AtomicBoolean(true);
+        Deque<Runnable> drains = new ArrayDeque<>();
+        List<Runnable> discarded = new ArrayList<>();
+        SerialExecutor serial = new SerialExecutor(drain -> {
+            if (shutdown.get()) {
+                throw new RejectedExecutionException();
+            }
+            drains.add(drain);
+        }, discarded::add);
+
+        // the rejected task is handed back instead of kept
+        Runnable task = () -> fail("rejected task ran");
+        serial.execute(task);
+        assertEquals(Collections.singletonList(task), discarded);
+
+        // a later task is scheduled again
+        shutdown.set(false);
+        List<Integer> ran = new ArrayList<>();
+        serial.execute(() -> ran.add(1));
+        assertEquals(1, drains.size());
+        drains.poll().run();
+        assertEquals(Collections.singletonList(1), ran);
+        assertEquals(1, discarded.size());
+    }
+}
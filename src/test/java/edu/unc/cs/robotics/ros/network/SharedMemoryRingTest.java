@@ -0,0 +1,155 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import edu.unc.cs.robotics.ros.msg.Clock;
+import junit.framework.TestCase;
+
+import static edu.unc.cs.robotics.ros.TestMaster.await;
+
+public class SharedMemoryRingTest extends TestCase {
+    private File _file;
+
+    @Override
+    protected void setUp() throws Exception {
+        _file = File.createTempFile("ring", ".test");
+        assertTrue(_file.delete());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _file.delete();
+    }
+
+    private static ByteBuffer frame(int value, int size) {
+        ByteBuffer buf = ByteBuffer.allocate(4 + size).order(NetworkServer.ROS_BYTE_ORDER);
+        buf.putInt(size);
+        buf.putInt(value);
+        buf.position(buf.limit());
+        buf.flip();
+        return buf;
+    }
+
+    private static int read(SharedMemoryRing.Reader reader) {
+        ByteBuffer buf = reader.peek();
+        if (buf == null) {
+            return -1;
+        }
+        int value = buf.getInt(0);
+        assertTrue(reader.commit());
+        return value;
+    }
+
+    public void testWrapAround() throws Exception {
+        SharedMemoryRing writer = SharedMemoryRing.create(_file, 1024, "abc", false);
+        SharedMemoryRing ring = SharedMemoryRing.open(_file);
+        assertEquals("abc", ring.getMd5sum());
+        assertEquals(1024, ring.getCapacity());
+
+        SharedMemoryRing.Reader reader = ring.newReader();
+        assertEquals(-1, read(reader));
+
+        // 100 byte messages, 104 byte records do not divide the ring
+        // evenly, so this exercises the wrap marker.
+        for (int i=0 ; i<50 ; ++i) {
+            assertTrue(writer.write(frame(i, 100)));
+            assertEquals(i, read(reader));
+        }
+        assertEquals(-1, read(reader));
+        assertEquals(0, reader.getLappedCount());
+        writer.close();
+        assertTrue(ring.isClosed());
+        assertFalse(_file.exists());
+    }
+
+    public void testLapped() throws Exception {
+        SharedMemoryRing writer = SharedMemoryRing.create(_file, 1024, "abc", false);
+        SharedMemoryRing.Reader reader = SharedMemoryRing.open(_file).newReader();
+
+        writer.write(frame(0, 100));
+        ByteBuffer peeked = reader.peek();
+        assertNotNull(peeked);
+        for (int i=1 ; i<20 ; ++i) {
+            writer.write(frame(i, 100));
+        }
+        // the peeked record has been overwritten, the reader skips
+        // to the newest record.
+        assertFalse(reader.commit());
+        assertEquals(1, reader.getLappedCount());
+        assertEquals(19, read(reader));
+        writer.write(frame(20, 100));
+        assertEquals(20, read(reader));
+        assertEquals(-1, read(reader));
+    }
+
+    public void testOversize() throws Exception {
+        SharedMemoryRing writer = SharedMemoryRing.create(_file, 1024, "abc", false);
+        assertFalse(writer.write(frame(0, 2000)));
+        assertEquals(1, writer.getOversizeCount());
+    }
+
+    public void testLatching() throws Exception {
+        SharedMemoryRing writer = SharedMemoryRing.create(_file, 1024, "abc", true);
+        writer.write(frame(1, 10));
+        writer.write(frame(2, 10));
+
+        SharedMemoryRing.Reader reader = SharedMemoryRing.open(_file).newReader();
+        assertEquals(2, read(reader));
+        assertEquals(-1, read(reader));
+    }
+
+    public void testLinkClosedByError() throws Exception {
+        SharedMemoryRing writer = SharedMemoryRing.create(_file, 1024, Clock.META.getMd5sum(), false);
+        CountDownLatch closed = new CountDownLatch(1);
+        SHMROSSubscriberLink<Clock> link = new SHMROSSubscriberLink<>(
+            1, "/clock", SharedMemoryRing.open(_file), Clock.META,
+            msg -> {
+                throw new StackOverflowError("consumer");
+            },
+            () -> false, closed::countDown);
+        link.start();
+
+        // the Error ends the reader thread, and the subscription hears
+        // that the link closed
+        writer.write(frame(0, 8));
+        assertTrue(closed.await(10, TimeUnit.SECONDS));
+        assertFalse(link.isConnected());
+        writer.close();
+    }
+
+    public void testPausedLinkLaps() throws Exception {
+        SharedMemoryRing writer = SharedMemoryRing.create(_file, 1024, Clock.META.getMd5sum(), false);
+        AtomicBoolean paused = new AtomicBoolean(true);
+        List<Long> received = new CopyOnWriteArrayList<>();
+        SHMROSSubscriberLink<Clock> link = new SHMROSSubscriberLink<>(
+            1, "/clock", SharedMemoryRing.open(_file), Clock.META,
+            msg -> received.add(msg.clock / 1_000_000_000L),
+            paused::get, () -> {});
+        link.start();
+
+        // a paused link does not read, so the writer laps it
+        for (int i=1 ; i<=200 ; ++i) {
+            writer.write(frame(i, 8));
+        }
+        Thread.sleep(100);
+        assertTrue(received.isEmpty());
+        assertEquals(0, link.getMessageCount());
+
+        // once resumed, it skips to the newest record and counts the loss
+        paused.set(false);
+        link.readPausedChanged();
+        assertTrue(await(() -> received.contains(200L), 10, TimeUnit.SECONDS));
+        assertTrue(received.size() < 200);
+        assertTrue(link.getDroppedMessageCount() > 0);
+        writer.write(frame(201, 8));
+        assertTrue(await(() -> received.contains(201L), 10, TimeUnit.SECONDS));
+        link.close();
+        writer.close();
+    }
+}
@@ -0,0 +1,228 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.channels.SelectionKey;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.inject.Injector;
+import edu.unc.cs.robotics.ros.Publisher;
+import edu.unc.cs.robotics.ros.Subscriber;
+import edu.unc.cs.robotics.ros.TestMaster;
+import edu.unc.cs.robotics.ros.msg.Clock;
+import edu.unc.cs.robotics.ros.topic.PublicationListener;
+import edu.unc.cs.robotics.ros.topic.SubscriberLink;
+import edu.unc.cs.robotics.ros.topic.TopicManager;
+import edu.unc.cs.robotics.ros.topic.TransportHints;
+import edu.unc.cs.robotics.ros.xmlrpc.XmlrpcServer;
+import junit.framework.TestCase;
+
+import static edu.unc.cs.robotics.ros.TestMaster.await;
+import static edu.unc.cs.robotics.ros.TestMaster.clock;
+
+/**
+ * How a subscription keeps its publisher connections: it reconnects
+ * with backoff when one drops, and repeated publisherUpdates do not
+ * open more connections.
+ */
+public class SubscriptionReconnectTest extends TestCase {
+    private TestMaster _master;
+    private Injector _talkerNode;
+    private Injector _listenerNode;
+    private TopicManager _listener;
+    private URI _talkerUri;
+
+    private final AtomicInteger _connects = new AtomicInteger();
+    private final AtomicInteger _disconnects = new AtomicInteger();
+    private final List<Clock> _received = new CopyOnWriteArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        _master = new TestMaster();
+        _talkerNode = _master.start("talker");
+        _listenerNode = _master.start("listener");
+        _listener = _listenerNode.getInstance(TopicManager.class);
+        _talkerUri = URI.create(_talkerNode.getInstance(XmlrpcServer.class).getUri());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _master.close();
+    }
+
+    private Publisher<Clock> advertise() {
+        return TestMaster.handle(_talkerNode).advertise(
+            Clock.META, "/clock", 10, false, Runnable::run,
+            new PublicationListener<Clock>() {
+                @Override
+                public void connect(SubscriberLink<? extends Clock> link) {
+                    _connects.incrementAndGet();
+                }
+
+                @Override
+                public void disconnect(SubscriberLink<? extends Clock> link) {
+                    _disconnects.incrementAndGet();
+                }
+            });
+    }
+
+    private Subscriber<Clock> subscribe(String topic) {
+        return TestMaster.handle(_listenerNode).subscribe(
+            Clock.META, topic, 10, TransportHints.builder().tcp().build(),
+            Runnable::run, _received::add);
+    }
+
+    /**
+     * @return the number of the talker's subscriber connections
+     */
+    private int connections() throws InterruptedException, ExecutionException, TimeoutException {
+        int count = 0;
+        for (SelectorLoop loop : _talkerNode.getInstance(NetworkServer.class).loops()) {
+            CompletableFuture<Integer> n = new CompletableFuture<>();
+            loop.runOnSelectorThread(() -> {
+                int found = 0;
+                for (SelectionKey key : loop.keys()) {
+                    if (key.isValid() && key.attachment() instanceof TCPROSPublisherSelectorAttachment) {
+                        ++found;
+                    }
+                }
+                n.complete(found);
+            });
+            count += n.get(10, TimeUnit.SECONDS);
+        }
+        return count;
+    }
+
+    /**
+     * Drops the talker's end of every subscriber connection, as a
+     * publisher that fails or restarts does.
+     */
+    private void dropConnections() {
+        for (SelectorLoop loop : _talkerNode.getInstance(NetworkServer.class).loops()) {
+            loop.runOnSelectorThread(() -> {
+                for (SelectionKey key : loop.keys()) {
+                    if (key.attachment() instanceof TCPROSPublisherSelectorAttachment) {
+                        ((TCPROSPublisherSelectorAttachment<?>)key.attachment()).close();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Publishes until the subscriber receives a message.
+     */
+    private boolean delivered(Publisher<Clock> pub) throws InterruptedException {
+        _received.clear();
+        return await(() -> {
+            pub.publish(clock(1));
+            return !_received.isEmpty();
+        }, 10, TimeUnit.SECONDS);
+    }
+
+    public void testReconnectAfterDrop() throws Exception {
+        Publisher<Clock> pub = advertise();
+        Subscriber<Clock> sub = subscribe("/clock");
+        assertTrue(delivered(pub));
+        assertEquals(1, _connects.get());
+
+        // the subscriber sees the connection close and connects again
+        dropConnections();
+        assertTrue(await(() -> _connects.get() == 2, 10, TimeUnit.SECONDS));
+        assertEquals(1, _disconnects.get());
+        assertTrue(delivered(pub));
+        assertEquals(1, connections());
+        sub.close();
+        pub.close();
+    }
+
+    public void testRepeatedUpdates() throws Exception {
+        Publisher<Clock> pub = advertise();
+        Subscriber<Clock> sub = subscribe("/clock");
+        assertTrue(delivered(pub));
+
+        // an update listing the publisher that is already connected
+        // changes nothing
+        for (int i = 0 ; i < 5 ; ++i) {
+            _listener.pubUpdate("/clock", Collections.singletonList(_talkerUri));
+        }
+        Thread.sleep(500);
+        assertEquals(1, _connects.get());
+        assertEquals(0, _disconnects.get());
+        assertEquals(1, connections());
+        assertTrue(delivered(pub));
+        sub.close();
+        pub.close();
+    }
+
+    public void testNoReconnectOnceUnlisted() throws Exception {
+        Publisher<Clock> pub = advertise();
+        Subscriber<Clock> sub = subscribe("/clock");
+        assertTrue(delivered(pub));
+
+        // the publisher drops the connection and the master stops
+        // listing it before the reconnect, which is then abandoned.  A
+        // reconnect already under way may reach the publisher, but its
+        // link is not kept.
+        dropConnections();
+        _listener.pubUpdate("/clock", Collections.emptyList());
+        Thread.sleep(1000);
+        assertEquals(0, connections());
+        _received.clear();
+        pub.publish(clock(1));
+        Thread.sleep(200);
+        assertTrue(_received.isEmpty());
+
+        // listed again, it is connected again
+        _listener.pubUpdate("/clock", Collections.singletonList(_talkerUri));
+        assertTrue(delivered(pub));
+        assertEquals(1, connections());
+        sub.close();
+        pub.close();
+    }
+
+    public void testBackoff() throws Exception {
+        // a "publisher" whose requestTopic calls all fail
+        List<Long> attempts = new CopyOnWriteArrayList<>();
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Thread acceptor = new Thread(() -> {
+                while (!server.isClosed()) {
+                    try (Socket socket = server.accept()) {
+                        attempts.add(System.nanoTime());
+                    } catch (IOException ex) {
+                        return;
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            Subscriber<Clock> sub = subscribe("/backoff");
+            _listener.pubUpdate("/backoff", Collections.singletonList(
+                URI.create("http://127.0.0.1:" + server.getLocalPort() + "/")));
+            assertTrue(await(() -> !attempts.isEmpty(), 10, TimeUnit.SECONDS));
+            long first = attempts.get(0);
+            Thread.sleep(2000);
+
+            // The delays are 100, 200, 400, 800... ms, each jittered to
+            // between half and one and a half times that.  So 2 s after
+            // the first attempt there have been at least 3 retries, and
+            // at most 5.  Retrying at a fixed 100 ms would be about 20.
+            long retries = attempts.stream()
+                .filter(t -> t - first <= TimeUnit.SECONDS.toNanos(2))
+                .count() - 1;
+            assertTrue("retries " + retries, retries >= 3 && retries <= 5);
+            sub.close();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.nio.channels.SelectionKey;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.inject.Injector;
+import edu.unc.cs.robotics.ros.NodeHandle;
+import edu.unc.cs.robotics.ros.Publisher;
+import edu.unc.cs.robotics.ros.Subscriber;
+import edu.unc.cs.robotics.ros.TestMaster;
+import edu.unc.cs.robotics.ros.msg.Clock;
+import edu.unc.cs.robotics.ros.topic.DropPolicy;
+import edu.unc.cs.robotics.ros.topic.PublicationListener;
+import edu.unc.cs.robotics.ros.topic.SubscriberLink;
+import edu.unc.cs.robotics.ros.topic.TransportHints;
+import junit.framework.TestCase;
+
+import static edu.unc.cs.robotics.ros.TestMaster.await;
+import static edu.unc.cs.robotics.ros.TestMaster.clock;
+
+/**
+ * A subscriber with backpressure stops reading from its TCPROS
+ * connection while its queue is full, and reads again once it drains.
+ */
+public class TCPROSBackpressureTest extends TestCase {
+    private TestMaster _master;
+    private ExecutorService _executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        _master = new TestMaster();
+        _executor = Executors.newCachedThreadPool();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _executor.shutdownNow();
+        _master.close();
+    }
+
+    /**
+     * @return the interest ops of the node's TCPROS subscriber
+     * connection, or -1 if it has none yet.
+     */
+    private static int subscriberInterests(NetworkServer server)
+        throws InterruptedException, ExecutionException, TimeoutException
+    {
+        for (SelectorLoop loop : server.loops()) {
+            CompletableFuture<Integer> ops = new CompletableFuture<>();
+            loop.runOnSelectorThread(() -> {
+                for (SelectionKey key : loop.keys()) {
+                    if (key.isValid() && key.attachment() instanceof TCPROSSubscriberSelectorAttachment) {
+                        ops.complete(key.interestOps());
+                        return;
+                    }
+                }
+                ops.complete(-1);
+            });
+            int n = ops.get(10, TimeUnit.SECONDS);
+            if (n != -1) {
+                return n;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean reading(NetworkServer server) {
+        try {
+            return (subscriberInterests(server) & SelectionKey.OP_READ) != 0;
+        } catch (InterruptedException | ExecutionException | TimeoutException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    public void testReadPausedWhileQueueFull() throws Exception {
+        NodeHandle talker = TestMaster.handle(_master.start("talker"));
+        Injector listenerNode = _master.start("listener");
+        NodeHandle listener = TestMaster.handle(listenerNode);
+        NetworkServer server = listenerNode.getInstance(NetworkServer.class);
+
+        CountDownLatch connected = new CountDownLatch(1);
+        Publisher<Clock> pub = talker.advertise(
+            Clock.META, "/clock", 0, 0, DropPolicy.DROP_OLDEST, false, _executor,
+            new PublicationListener<Clock>() {
+                @Override
+                public void connect(SubscriberLink<? extends Clock> link) {
+                    connected.countDown();
+                }
+
+                @Override
+                public void disconnect(SubscriberLink<? extends Clock> link) {
+                }
+            });
+
+        CountDownLatch gate = new CountDownLatch(1);
+        List<Clock> received = new CopyOnWriteArrayList<>();
+        TransportHints hints = TransportHints.builder().tcp().backpressure().build();
+        Subscriber<Clock> sub = listener.subscribe(Clock.META, "/clock", 4, hints, task -> _executor.execute(() -> {
+            try {
+                gate.await();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            task.run();
+        }), received::add);
+        assertTrue(connected.await(10, TimeUnit.SECONDS));
+        assertTrue(await(() -> reading(server), 10, TimeUnit.SECONDS));
+
+        for (int i = 0 ; i < 8 ; ++i) {
+            pub.publish(clock(i));
+        }
+
+        // the 4th message fills the queue, which clears OP_READ
+        assertTrue(await(() -> sub.getQueueDepth() >= 4, 10, TimeUnit.SECONDS));
+        assertTrue(await(() -> !reading(server), 10, TimeUnit.SECONDS));
+
+        // once the queue drains OP_READ is restored and the rest arrive
+        gate.countDown();
+        assertTrue(await(() -> received.size() == 8, 10, TimeUnit.SECONDS));
+        assertTrue(reading(server));
+        assertEquals(0, sub.getDroppedMessageCount());
+        for (int i = 0 ; i < 8 ; ++i) {
+            assertEquals(i * 1_000_000_000L, received.get(i).clock);
+        }
+        sub.close();
+        pub.close();
+    }
+}
@@ -69,6 +69,7 @@ public class TCPROSProtocolTest extends TestCase {
         Charset.forName("US-ASCII").newEncoder().encode(CharBuffer.wrap(msg1str), input, true);
 
         // System.out.println("DATA LENGTH = "+data.length);
+        BufferPool pool = new BufferPool(1024*1024);
         for (BufferAllocator allocator : BufferAllocator.values()) {
             for (int bufSize = data.length; bufSize > 0; --bufSize) {
                 // System.out.println("BUFFER SIZE = " + bufSize);
@@ -81,7 +82,7 @@ public class TCPROSProtocolTest extends TestCase {
                     "topic", "/chatter",
                     "type", "std_msgs/String"
                 );
-                TCPROSProtocol protocol = new TCPROSProtocol(delegate, 1);
+                TCPROSProtocol protocol = new TCPROSProtocol(delegate, pool);
                 for (int i = 0; i <= data.length; i += bufSize) {
                     buf.put(data, i, Math.min(bufSize, data.length - i)).flip();
                     protocol.process(buf);
@@ -89,6 +90,9 @@ public class TCPROSProtocolTest extends TestCase {
                     buf.clear();
                 }
 
+                // every packet is complete, so nothing should be borrowed.
+                assertEquals(0, pool.getBorrowedBytes());
+
                 assertTrue(delegate.headersDone);
                 assertEquals(2, delegate.messages.size());
                 ByteBuffer msg0 = delegate.messages.get(0);
@@ -135,11 +139,76 @@ public class TCPROSProtocolTest extends TestCase {
 //        assertEquals('o', msg0.get());
     }
 
+    public void testSkippedAndUnknownFields() throws Exception {
+        ByteBuffer input = ByteBuffer.allocateDirect(128).order(NetworkServer.ROS_BYTE_ORDER);
+        String[] fields = {
+            "message_definition=string data\n\n",
+            "callerid=/talker",
+            "x_custom=42",
+        };
+        int len = 0;
+        for (String field : fields) {
+            len += 4 + field.length();
+        }
+        input.putInt(len);
+        for (String field : fields) {
+            input.putInt(field.length()).put(field.getBytes("US-ASCII"));
+        }
+        input.flip();
+
+        // the test delegate only wants the fields it expects, so the
+        // message definition is skipped.
+        TestDelegate delegate = new TestDelegate(
+            "callerid", "/talker",
+            "x_custom", "42");
+        TCPROSProtocol protocol = new TCPROSProtocol(delegate, new BufferPool(1024*1024));
+        protocol.process(input);
+        assertEquals(0, input.remaining());
+        assertTrue(delegate.headersDone);
+    }
+
+    public void testServiceResponses() throws Exception {
+        ByteBuffer input = ByteBuffer.allocate(64).order(NetworkServer.ROS_BYTE_ORDER);
+        // header: callerid=/s
+        input.putInt(15).putInt(11).put("callerid=/s".getBytes("US-ASCII"));
+        // ok response, int32 42
+        input.put((byte)1).putInt(4).putInt(42);
+        // failed response
+        input.put((byte)0).putInt(4).put("oops".getBytes("US-ASCII"));
+        input.flip();
+        byte[] data = new byte[input.remaining()];
+        input.get(data);
+
+        BufferPool pool = new BufferPool(1024*1024);
+        for (int bufSize = data.length; bufSize > 0; --bufSize) {
+            ByteBuffer buf = ByteBuffer.allocate(bufSize).order(NetworkServer.ROS_BYTE_ORDER);
+            TestDelegate delegate = new TestDelegate("callerid", "/s");
+            TCPROSProtocol protocol = new TCPROSProtocol(delegate, pool);
+            protocol.expectServiceResponses();
+            for (int i = 0; i < data.length; i += bufSize) {
+                buf.put(data, i, Math.min(bufSize, data.length - i)).flip();
+                protocol.process(buf);
+                assertEquals(0, buf.remaining());
+                buf.clear();
+            }
+            assertEquals(0, pool.getBorrowedBytes());
+
+            assertTrue(delegate.headersDone);
+            assertEquals(2, delegate.messages.size());
+            assertEquals(Boolean.TRUE, delegate.status.get(0));
+            assertEquals(42, delegate.messages.get(0).getInt());
+            assertEquals(Boolean.FALSE, delegate.status.get(1));
+            assertEquals(4, delegate.messages.get(1).remaining());
+            assertEquals('o', delegate.messages.get(1).get());
+        }
+    }
+
     private static class TestDelegate implements TCPROSProtocol.Delegate {
         String[] expectedHeaders;
         int _headerNo;
         boolean headersDone;
         List<ByteBuffer> messages = new ArrayList<>();
+        List<Boolean> status = new ArrayList<>();
 
         TestDelegate(String... expectedHeaders) {
             assertEquals(0, expectedHeaders.length & 1);
@@ -147,7 +216,22 @@ public class TCPROSProtocolTest extends TestCase {
         }
 
         @Override
-        public void headerRecv(String name, String value) {
+        public boolean wantsField(HeaderField field) {
+            for (int i=0 ; i<expectedHeaders.length ; i += 2) {
+                if (expectedHeaders[i].equals(field.getName())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void headerRecv(HeaderField field, String value) {
+            unknownHeaderRecv(field.getName(), value);
+        }
+
+        @Override
+        public void unknownHeaderRecv(String name, String value) {
             assertTrue(_headerNo < expectedHeaders.length/2);
             assertEquals(expectedHeaders[_headerNo*2], name);
             assertEquals(expectedHeaders[_headerNo*2+1], value);
@@ -166,5 +250,11 @@ public class TCPROSProtocolTest extends TestCase {
             copy.put(buf).flip();
             messages.add(copy);
         }
+
+        @Override
+        public void serviceResponseRecv(boolean ok, ByteBuffer buf) {
+            status.add(ok);
+            messageRecv(buf);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,249 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.inject.Injector;
+import edu.unc.cs.robotics.ros.ServiceClient;
+import edu.unc.cs.robotics.ros.ServiceServer;
+import edu.unc.cs.robotics.ros.TestMaster;
+import edu.unc.cs.robotics.ros.msg.Clock;
+import edu.unc.cs.robotics.ros.msg.MetaService;
+import edu.unc.cs.robotics.ros.msg.MetaServiceImpl;
+import junit.framework.TestCase;
+
+import static edu.unc.cs.robotics.ros.TestMaster.await;
+import static edu.unc.cs.robotics.ros.TestMaster.clock;
+
+/**
+ * Calls a service between two nodes over loopback, with several calls
+ * in flight on the client's persistent connections.
+ */
+public class TCPROSServiceTest extends TestCase {
+    /**
+     * Answers a Clock with the next second.
+     */
+    private static final MetaService<Clock, Clock> NEXT_SECOND = new MetaServiceImpl<>(
+        "test_msgs/NextSecond", "0123456789abcdef0123456789abcdef", Clock.META, Clock.META);
+
+    private TestMaster _master;
+    private ExecutorService _executor;
+    private Injector _serverNode;
+    private Injector _clientNode;
+    private ServiceServer _server;
+    /**
+     * Handler calls wait for this.
+     */
+    private final CountDownLatch _gate = new CountDownLatch(1);
+    private final AtomicInteger _handled = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception {
+        _master = new TestMaster();
+        _executor = Executors.newCachedThreadPool();
+        _serverNode = _master.start("server");
+        _clientNode = _master.start("client");
+        _server = TestMaster.handle(_serverNode).advertiseService(
+            NEXT_SECOND, "/next_second", _executor, request -> {
+                _gate.await();
+                _handled.incrementAndGet();
+                return clock((int)(request.clock / 1_000_000_000L) + 1);
+            });
+        // calls made before the service is registered fail their lookup
+        assertTrue(await(() -> _master.hasService("/next_second"), 10, TimeUnit.SECONDS));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _gate.countDown();
+        _server.close();
+        _executor.shutdownNow();
+        _master.close();
+    }
+
+    /**
+     * @return the number of the node's connections with the attachment
+     * type.
+     */
+    private static int connections(Injector node, Class<?> type)
+        throws InterruptedException, ExecutionException, TimeoutException
+    {
+        int count = 0;
+        for (SelectorLoop loop : node.getInstance(NetworkServer.class).loops()) {
+            CompletableFuture<Integer> n = new CompletableFuture<>();
+            loop.runOnSelectorThread(() -> {
+                int found = 0;
+                for (SelectionKey key : loop.keys()) {
+                    if (key.isValid() && type.isInstance(key.attachment())) {
+                        ++found;
+                    }
+                }
+                n.complete(found);
+            });
+            count += n.get(10, TimeUnit.SECONDS);
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of calls the client's connections are waiting
+     * to have answered.
+     */
+    private int pendingCalls() throws InterruptedException, ExecutionException, TimeoutException {
+        int count = 0;
+        for (SelectorLoop loop : _clientNode.getInstance(NetworkServer.class).loops()) {
+            CompletableFuture<Integer> n = new CompletableFuture<>();
+            loop.runOnSelectorThread(() -> {
+                int found = 0;
+                for (SelectionKey key : loop.keys()) {
+                    if (key.isValid() && key.attachment() instanceof TCPROSServiceClientSelectorAttachment) {
+                        found += ((TCPROSServiceClientSelectorAttachment<?, ?>)key.attachment()).pendingCount();
+                    }
+                }
+                n.complete(found);
+            });
+            count += n.get(10, TimeUnit.SECONDS);
+        }
+        return count;
+    }
+
+    private static void awaitConnections(Injector node, Class<?> type, int n)
+        throws InterruptedException
+    {
+        assertTrue(await(() -> {
+            try {
+                return connections(node, type) == n;
+            } catch (InterruptedException | ExecutionException | TimeoutException ex) {
+                throw new AssertionError(ex);
+            }
+        }, 10, TimeUnit.SECONDS));
+    }
+
+    private static List<CompletableFuture<Clock>> call(ServiceClient<Clock, Clock> client, int n) {
+        List<CompletableFuture<Clock>> calls = new ArrayList<>();
+        for (int i = 0 ; i < n ; ++i) {
+            calls.add(client.call(clock(i)));
+        }
+        return calls;
+    }
+
+    private static void assertAnswered(List<CompletableFuture<Clock>> calls) throws Exception {
+        for (int i = 0 ; i < calls.size() ; ++i) {
+            assertEquals((i + 1) * 1_000_000_000L, calls.get(i).get(10, TimeUnit.SECONDS).clock);
+        }
+    }
+
+    public void testPipelinedCalls() throws Exception {
+        ServiceClient<Clock, Clock> client = TestMaster.handle(_clientNode).serviceClient(
+            NEXT_SECOND, "/next_second", _executor);
+        List<CompletableFuture<Clock>> calls = call(client, 20);
+
+        // every request is written on the one connection before the
+        // first is answered
+        awaitConnections(_clientNode, TCPROSServiceClientSelectorAttachment.class, 1);
+        Thread.sleep(200);
+        assertEquals(0, _handled.get());
+        for (CompletableFuture<Clock> call : calls) {
+            assertFalse(call.isDone());
+        }
+
+        // each response is matched with its own request
+        _gate.countDown();
+        assertAnswered(calls);
+        assertEquals(20, _handled.get());
+        assertEquals(1, connections(_clientNode, TCPROSServiceClientSelectorAttachment.class));
+
+        // and the connection is reused
+        assertAnswered(call(client, 5));
+        assertEquals(1, connections(_clientNode, TCPROSServiceClientSelectorAttachment.class));
+        client.close();
+    }
+
+    public void testPoolGrowsWhileBusy() throws Exception {
+        ServiceClient<Clock, Clock> client = TestMaster.handle(_clientNode).serviceClient(
+            NEXT_SECOND, "/next_second", 3, _executor);
+        List<CompletableFuture<Clock>> calls = call(client, 10);
+
+        // every connection is busy, so the pool grows to its limit
+        awaitConnections(_serverNode, TCPROSPublisherSelectorAttachment.class, 3);
+        assertEquals(3, connections(_clientNode, TCPROSServiceClientSelectorAttachment.class));
+
+        _gate.countDown();
+        assertAnswered(calls);
+        assertEquals(3, connections(_clientNode, TCPROSServiceClientSelectorAttachment.class));
+        client.close();
+    }
+
+    public void testServerClosePendingCallsFail() throws Exception {
+        ServiceClient<Clock, Clock> client = TestMaster.handle(_clientNode).serviceClient(
+            NEXT_SECOND, "/next_second", _executor);
+        List<CompletableFuture<Clock>> calls = call(client, 5);
+        awaitConnections(_serverNode, TCPROSPublisherSelectorAttachment.class, 1);
+        // each call looks up the service first, so a call that reached
+        // no connection before the close would open a new one
+        assertTrue(await(() -> {
+            try {
+                return pendingCalls() == 5;
+            } catch (InterruptedException | ExecutionException | TimeoutException ex) {
+                throw new AssertionError(ex);
+            }
+        }, 10, TimeUnit.SECONDS));
+
+        // the server drops the connection with every call unanswered
+        for (SelectorLoop loop : _serverNode.getInstance(NetworkServer.class).loops()) {
+            loop.runOnSelectorThread(() -> {
+                for (SelectionKey key : loop.keys()) {
+                    if (key.attachment() instanceof TCPROSPublisherSelectorAttachment) {
+                        ((TCPROSPublisherSelectorAttachment)key.attachment()).close();
+                    }
+                }
+            });
+        }
+        for (CompletableFuture<Clock> call : calls) {
+            try {
+                call.get(10, TimeUnit.SECONDS);
+                fail("expected the call to fail");
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof IOException);
+            }
+        }
+
+        // the next call opens a new connection
+        _gate.countDown();
+        assertAnswered(call(client, 3));
+        client.close();
+    }
+
+    public void testClientClosePendingCallsFail() throws Exception {
+        ServiceClient<Clock, Clock> client = TestMaster.handle(_clientNode).serviceClient(
+            NEXT_SECOND, "/next_second", _executor);
+        List<CompletableFuture<Clock>> calls = call(client, 5);
+        awaitConnections(_clientNode, TCPROSServiceClientSelectorAttachment.class, 1);
+
+        client.close();
+        for (CompletableFuture<Clock> call : calls) {
+            try {
+                call.get(10, TimeUnit.SECONDS);
+                fail("expected the call to fail");
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof IOException);
+            }
+        }
+        try {
+            client.call(clock(0)).get(10, TimeUnit.SECONDS);
+            fail("expected a call on a closed client to fail");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IOException);
+        }
+    }
+}
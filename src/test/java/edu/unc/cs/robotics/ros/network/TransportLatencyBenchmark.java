@@ -0,0 +1,149 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.unc.cs.robotics.ros.NodeHandle;
+import edu.unc.cs.robotics.ros.Publisher;
+import edu.unc.cs.robotics.ros.Subscriber;
+import edu.unc.cs.robotics.ros.TestMaster;
+import edu.unc.cs.robotics.ros.msg.Header;
+import edu.unc.cs.robotics.ros.msg.JointState;
+import edu.unc.cs.robotics.ros.topic.DropPolicy;
+import edu.unc.cs.robotics.ros.topic.PublicationListener;
+import edu.unc.cs.robotics.ros.topic.SubscriberLink;
+import edu.unc.cs.robotics.ros.topic.TransportHints;
+
+/**
+ * Compares the latency of UDPROS and TCPROS between two nodes over
+ * loopback.  A JointState is published at a fixed rate with the send
+ * time in its stamp, and the subscriber records how long each took to
+ * arrive.  Reports the percentiles of the latency, which is where the
+ * two differ, and how many datagrams were lost.  TCPROS is measured
+ * with and without TCP_NODELAY, since Nagle's algorithm dominates its
+ * latency at these rates.
+ *
+ * <p>Run main() with the test classpath, it is not a unit test.</p>
+ */
+public class TransportLatencyBenchmark {
+    private static final int JOINTS = 24;
+    private static final int WARMUP = 5_000;
+    private static final int MESSAGES = 50_000;
+    private static final int RATE_HZ = 2_000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        try (TestMaster master = new TestMaster()) {
+            NodeHandle talker = TestMaster.handle(master.start("talker"));
+            NodeHandle listener = TestMaster.handle(master.start("listener"));
+
+            System.out.printf("JointState with %d joints at %d Hz, %d messages%n",
+                JOINTS, RATE_HZ, MESSAGES);
+            for (int round = 0 ; round < ROUNDS ; ++round) {
+                System.out.printf("round %d%n", round);
+                run(talker, listener, "/udp_" + round, "UDPROS",
+                    TransportHints.builder().udp().build());
+                run(talker, listener, "/tcp_" + round, "TCPROS",
+                    TransportHints.builder().tcp().build());
+                run(talker, listener, "/nodelay_" + round, "TCPROS nodelay",
+                    TransportHints.builder().tcpNoDelay().build());
+            }
+        }
+    }
+
+    private static void run(
+        NodeHandle talker, NodeHandle listener, String topic, String name,
+        TransportHints hints)
+        throws InterruptedException
+    {
+        CountDownLatch connected = new CountDownLatch(1);
+        Publisher<JointState> pub = talker.advertise(
+            JointState.META, topic, 1000, 0, DropPolicy.DROP_OLDEST, false, Runnable::run,
+            new PublicationListener<JointState>() {
+                @Override
+                public void connect(SubscriberLink<? extends JointState> link) {
+                    connected.countDown();
+                }
+
+                @Override
+                public void disconnect(SubscriberLink<? extends JointState> link) {
+                }
+            });
+
+        long[] latencies = new long[WARMUP + MESSAGES];
+        AtomicInteger received = new AtomicInteger();
+        Subscriber<JointState> sub = listener.subscribe(
+            JointState.META, topic, 0, hints, Runnable::run, msg -> {
+                long latency = System.nanoTime() - msg.header.stamp;
+                int n = received.getAndIncrement();
+                if (n < latencies.length) {
+                    latencies[n] = latency;
+                }
+            });
+        if (!connected.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("subscriber did not connect");
+        }
+        // the connection is up on the publisher's side first
+        Thread.sleep(200);
+
+        JointState js = jointState();
+        long period = TimeUnit.SECONDS.toNanos(1) / RATE_HZ;
+        long next = System.nanoTime();
+        for (int i = 0 ; i < latencies.length ; ++i) {
+            while (System.nanoTime() < next) {
+                LockSupport.parkNanos(Math.max(1, next - System.nanoTime() - 50_000));
+            }
+            js.header.seq = i;
+            js.header.stamp = System.nanoTime();
+            pub.publish(js);
+            next += period;
+        }
+        Thread.sleep(500);
+
+        int n = Math.min(received.get(), latencies.length);
+        sub.close();
+        pub.close();
+        report(name, latencies, n);
+    }
+
+    private static JointState jointState() {
+        String[] names = new String[JOINTS];
+        double[] values = new double[JOINTS];
+        for (int i = 0 ; i < JOINTS ; ++i) {
+            names[i] = "joint_" + i;
+            values[i] = i;
+        }
+        return new JointState(
+            new Header(0, 0L, "base_link"),
+            names, values, values.clone(), values.clone());
+    }
+
+    private static void report(String name, long[] latencies, int n) {
+        if (n <= WARMUP) {
+            System.out.printf("  %-14s received only %d of %d%n", name, n, latencies.length);
+            return;
+        }
+        long[] sorted = Arrays.copyOfRange(latencies, WARMUP, n);
+        Arrays.sort(sorted);
+        System.out.printf(
+            "  %-14s p50 %7.1f us  p90 %7.1f us  p99 %7.1f us  p99.9 %7.1f us  max %8.1f us  lost %d%n",
+            name,
+            percentile(sorted, 0.50),
+            percentile(sorted, 0.90),
+            percentile(sorted, 0.99),
+            percentile(sorted, 0.999),
+            sorted[sorted.length - 1] / 1e3,
+            latencies.length - n);
+    }
+
+    /**
+     * @return the percentile, in microseconds
+     */
+    private static double percentile(long[] sorted, double p) {
+        int i = (int)Math.min(sorted.length - 1, Math.round(p * (sorted.length - 1)));
+        return sorted[i] / 1e3;
+    }
+}
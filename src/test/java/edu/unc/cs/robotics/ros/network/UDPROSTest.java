@@ -0,0 +1,168 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import edu.unc.cs.robotics.ros.msg.ByteBufferSerializer;
+import edu.unc.cs.robotics.ros.msg.ByteCountSerializer;
+import edu.unc.cs.robotics.ros.msg.Header;
+import edu.unc.cs.robotics.ros.msg.JointState;
+import edu.unc.cs.robotics.ros.topic.TransportHints;
+import junit.framework.TestCase;
+
+public class UDPROSTest extends TestCase {
+    private SelectorLoop _loop;
+    private BufferPool _pool;
+    private final BlockingQueue<JointState> _received = new LinkedBlockingQueue<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        _loop = new SelectorLoop("UDPROSTest");
+        _loop.start();
+        _pool = new BufferPool(1 << 20);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _loop.stop();
+    }
+
+    private UDPROSSubscriberLink<JointState> subscriberLink(DatagramChannel ch) {
+        return subscriberLink(ch, 200);
+    }
+
+    private UDPROSSubscriberLink<JointState> subscriberLink(DatagramChannel ch, int maxDatagramSize) {
+        return new UDPROSSubscriberLink<>(
+            null, _loop, ch, _pool, 1, "/joint_states", JointState.META,
+            ConnectionHeader.encodeFields(),
+            _received::add, () -> {}, maxDatagramSize);
+    }
+
+    private static JointState jointState(int joints) {
+        String[] names = new String[joints];
+        double[] position = new double[joints];
+        for (int i=0 ; i<joints ; ++i) {
+            names[i] = "joint_" + i;
+            position[i] = i * 0.5;
+        }
+        return new JointState(new Header(0, 0L, "base"), names, position, new double[0], new double[0]);
+    }
+
+    private static ByteBuffer frame(JointState msg) {
+        ByteCountSerializer counter = new ByteCountSerializer();
+        msg.serialize(counter);
+        int size = counter.getByteCount();
+        ByteBuffer buf = ByteBuffer.allocate(4 + size).order(NetworkServer.ROS_BYTE_ORDER);
+        buf.putInt(size);
+        msg.serialize(new ByteBufferSerializer(0, buf));
+        buf.flip();
+        return buf;
+    }
+
+    private static ByteBuffer datagram(int connId, byte op, byte msgId, int block, ByteBuffer payload) {
+        ByteBuffer buf = ByteBuffer.allocate(8 + payload.remaining()).order(NetworkServer.ROS_BYTE_ORDER);
+        buf.putInt(connId).put(op).put(msgId).putShort((short)block).put(payload);
+        buf.flip();
+        return buf;
+    }
+
+    public void testFragmentation() throws Exception {
+        DatagramChannel subCh = DatagramChannel.open();
+        subCh.configureBlocking(false);
+        subCh.bind(new InetSocketAddress("127.0.0.1", 0));
+        _loop.channelAdded();
+        UDPROSSubscriberLink<JointState> sub = subscriberLink(subCh);
+        sub.register();
+
+        DatagramChannel pubCh = DatagramChannel.open();
+        pubCh.connect(subCh.getLocalAddress());
+        UDPROSPublisherLink<JointState> pub = new UDPROSPublisherLink<>(pubCh, 7, 200, "sub", Runnable::run);
+
+        // one datagram, and many
+        for (int joints : new int[] { 2, 60 }) {
+            JointState sent = jointState(joints);
+            assertTrue(pub.send(frame(sent)));
+            JointState recv = _received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(recv);
+            assertTrue(Arrays.equals(sent.name, recv.name));
+            assertTrue(Arrays.equals(sent.position, recv.position));
+        }
+        assertEquals(0, sub.getDroppedMessageCount());
+        assertEquals(2, pub.getMessageCount());
+        assertEquals(2, sub.getMessageCount());
+        assertTrue(sub.getByteCount() > 0);
+        assertEquals("sub", pub.getDestination());
+        assertTrue(_loop.stats().getKeysProcessed() > 0);
+
+        pub.close();
+        sub.close();
+    }
+
+    public void testMissingBlock() throws Exception {
+        ByteBuffer frame = frame(jointState(60));
+        ByteBuffer[] blocks = new ByteBuffer[3];
+        int blockSize = (frame.remaining() + blocks.length - 1) / blocks.length;
+        UDPROSSubscriberLink<JointState> sub = subscriberLink(null, blockSize + 8);
+        for (int i=0 ; i<blocks.length ; ++i) {
+            ByteBuffer block = frame.duplicate();
+            block.position(i * blockSize);
+            block.limit(Math.min(frame.limit(), (i+1) * blockSize));
+            blocks[i] = block;
+        }
+
+        // message 1 loses its middle block
+        sub.datagramRecv(datagram(7, (byte)0, (byte)1, 3, blocks[0].duplicate()));
+        sub.datagramRecv(datagram(7, (byte)1, (byte)1, 2, blocks[2].duplicate()));
+        // message 2 is complete
+        sub.datagramRecv(datagram(7, (byte)0, (byte)2, 3, blocks[0].duplicate()));
+        sub.datagramRecv(datagram(7, (byte)1, (byte)2, 1, blocks[1].duplicate()));
+        sub.datagramRecv(datagram(7, (byte)1, (byte)2, 2, blocks[2].duplicate()));
+
+        assertEquals(1, sub.getDroppedMessageCount());
+        assertEquals(1, _received.size());
+        assertEquals(60, _received.poll().name.length);
+        assertEquals(0, _pool.getBorrowedBytes());
+    }
+
+    public void testBogusLength() throws Exception {
+        UDPROSSubscriberLink<JointState> sub = subscriberLink(null);
+        ByteBuffer payload = ByteBuffer.allocate(192).order(NetworkServer.ROS_BYTE_ORDER);
+
+        // a forged DATA0 claiming 2 GB, more than its 3 blocks could
+        // carry, more than its blocks' 192 bytes each could, and within
+        // what 65535 blocks could but above the message size cap
+        int[][] forged = { { 3, Integer.MAX_VALUE }, { 3, 3 * 192 - 3 }, { 65535, 11 << 20 } };
+        for (int[] f : forged) {
+            payload.clear();
+            payload.putInt(f[1]).position(payload.limit()).flip();
+            sub.datagramRecv(datagram(7, (byte)0, (byte)1, f[0], payload));
+        }
+
+        assertEquals(forged.length, sub.getDroppedMessageCount());
+        assertEquals(0, _pool.getMisses() + _pool.getHits());
+        assertEquals(0, _pool.getBorrowedBytes());
+
+        // the longest message its blocks can carry is still assembled
+        payload.clear();
+        payload.putInt(3 * 192 - 4).position(payload.limit()).flip();
+        sub.datagramRecv(datagram(7, (byte)0, (byte)2, 3, payload));
+        assertEquals(1, _pool.getMisses() + _pool.getHits());
+        assertEquals(forged.length, sub.getDroppedMessageCount());
+    }
+
+    public void testBackpressureRejected() {
+        // nothing can slow a UDPROS publisher
+        try {
+            TransportHints.builder().udp().tcp().backpressure().build();
+            fail("expected backpressure with UDPROS to be rejected");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+        assertTrue(TransportHints.builder().tcp().backpressure().build().isBackpressure());
+    }
+}
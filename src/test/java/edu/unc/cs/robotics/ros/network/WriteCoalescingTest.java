@@ -0,0 +1,164 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import edu.unc.cs.robotics.ros.NodeHandle;
+import edu.unc.cs.robotics.ros.Publisher;
+import edu.unc.cs.robotics.ros.Subscriber;
+import edu.unc.cs.robotics.ros.TestMaster;
+import edu.unc.cs.robotics.ros.msg.Clock;
+import edu.unc.cs.robotics.ros.topic.DropPolicy;
+import edu.unc.cs.robotics.ros.topic.PublicationListener;
+import edu.unc.cs.robotics.ros.topic.SubscriberLink;
+import edu.unc.cs.robotics.ros.topic.TransportHints;
+import edu.unc.cs.robotics.ros.topic.WriteCoalescing;
+import junit.framework.TestCase;
+
+import static edu.unc.cs.robotics.ros.TestMaster.await;
+import static edu.unc.cs.robotics.ros.TestMaster.clock;
+
+/**
+ * Publishes small messages on a topic with write coalescing, and checks
+ * when they are written and how many writes that saved.
+ */
+public class WriteCoalescingTest extends TestCase {
+    /**
+     * A serialized Clock, with its length.
+     */
+    private static final int CLOCK_BYTES = 12;
+
+    private TestMaster _master;
+    private NodeHandle _talker;
+    private NodeHandle _listener;
+
+    private final AtomicReference<SubscriberLink<?>> _link = new AtomicReference<>();
+    private final CountDownLatch _connected = new CountDownLatch(1);
+    private final List<Clock> _received = new CopyOnWriteArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        _master = new TestMaster();
+        _talker = TestMaster.handle(_master.start("talker"));
+        _listener = TestMaster.handle(_master.start("listener"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _master.close();
+    }
+
+    private Publisher<Clock> advertise(WriteCoalescing coalescing) {
+        return _talker.advertise(
+            Clock.META, "/clock", 0, 0, DropPolicy.DROP_OLDEST, coalescing, false, Runnable::run,
+            new PublicationListener<Clock>() {
+                @Override
+                public void connect(SubscriberLink<? extends Clock> link) {
+                    _link.set(link);
+                    _connected.countDown();
+                }
+
+                @Override
+                public void disconnect(SubscriberLink<? extends Clock> link) {
+                }
+            });
+    }
+
+    private Subscriber<Clock> subscribe() throws InterruptedException {
+        Subscriber<Clock> sub = _listener.subscribe(
+            Clock.META, "/clock", 0, TransportHints.builder().tcp().build(),
+            Runnable::run, _received::add);
+        assertTrue(_connected.await(10, TimeUnit.SECONDS));
+        // the connection header is written alone, before any message
+        SubscriberLink<?> link = _link.get();
+        assertTrue(await(() -> link.getByteCount() > 0 && link.getQueueDepth() == 0,
+            10, TimeUnit.SECONDS));
+        return sub;
+    }
+
+    /**
+     * Waits for the writes to be counted, which the subscriber may see
+     * before the writing thread has.
+     */
+    private void awaitWritten() throws InterruptedException {
+        SubscriberLink<?> link = _link.get();
+        assertTrue(await(() -> link.getQueueDepth() == 0, 10, TimeUnit.SECONDS));
+    }
+
+    private void assertReceived(int n) {
+        assertEquals(n, _received.size());
+        for (int i = 0 ; i < n ; ++i) {
+            assertEquals(i * 1_000_000_000L, _received.get(i).clock);
+        }
+    }
+
+    public void testDelay() throws Exception {
+        long delay = TimeUnit.MILLISECONDS.toNanos(200);
+        Publisher<Clock> pub = advertise(WriteCoalescing.of(delay, TimeUnit.NANOSECONDS, 1 << 20));
+        Subscriber<Clock> sub = subscribe();
+        long saved = _link.get().getWritesSaved();
+
+        long start = System.nanoTime();
+        for (int i = 0 ; i < 10 ; ++i) {
+            pub.publish(clock(i));
+        }
+        // held until the first has waited the delay
+        Thread.sleep(50);
+        assertTrue(_received.isEmpty());
+
+        assertTrue(await(() -> _received.size() == 10, 10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= delay);
+        assertReceived(10);
+        awaitWritten();
+        // all ten went out in one write
+        assertEquals(saved + 9, _link.get().getWritesSaved());
+        assertTrue(_link.get().getCoalescingDelayNanos() >= delay);
+        sub.close();
+        pub.close();
+    }
+
+    public void testByteBudget() throws Exception {
+        // a long delay, so that only the budget triggers writes
+        Publisher<Clock> pub = advertise(WriteCoalescing.of(10, TimeUnit.SECONDS, 3 * CLOCK_BYTES));
+        Subscriber<Clock> sub = subscribe();
+        long saved = _link.get().getWritesSaved();
+
+        for (int i = 0 ; i < 9 ; ++i) {
+            pub.publish(clock(i));
+        }
+        // every third message fills the budget and writes the batch
+        assertTrue(await(() -> _received.size() == 9, 5, TimeUnit.SECONDS));
+        assertReceived(9);
+        awaitWritten();
+        assertEquals(saved + 6, _link.get().getWritesSaved());
+
+        // one message is below the budget, and waits for the delay
+        pub.publish(clock(9));
+        Thread.sleep(200);
+        assertReceived(9);
+        sub.close();
+        pub.close();
+    }
+
+    public void testNone() throws Exception {
+        Publisher<Clock> pub = advertise(WriteCoalescing.NONE);
+        Subscriber<Clock> sub = subscribe();
+        long saved = _link.get().getWritesSaved();
+
+        // each message is written as it is published
+        for (int i = 0 ; i < 10 ; ++i) {
+            pub.publish(clock(i));
+            final int n = i + 1;
+            assertTrue(await(() -> _received.size() == n, 5, TimeUnit.SECONDS));
+        }
+        assertReceived(10);
+        awaitWritten();
+        assertEquals(saved, _link.get().getWritesSaved());
+        assertEquals(0, _link.get().getCoalescingDelayNanos());
+        sub.close();
+        pub.close();
+    }
+}
@@ -0,0 +1,62 @@
+package edu.unc.cs.robotics.ros.network;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class WriteQueueTest extends TestCase {
+    public void testFifo() throws Exception {
+        WriteQueue queue = new WriteQueue();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+
+        WriteQueue.Entry a = new WriteQueue.Entry(ByteBuffer.allocate(3), null);
+        WriteQueue.Entry b = new WriteQueue.Entry(ByteBuffer.allocate(5), null);
+        queue.offer(a);
+        queue.offer(b);
+        assertFalse(queue.isEmpty());
+        assertSame(a, queue.poll());
+        assertEquals(3, a.size);
+        assertSame(b, queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testConcurrentProducers() throws Exception {
+        final int producers = 4;
+        final int count = 100000;
+        final WriteQueue queue = new WriteQueue();
+        Thread[] threads = new Thread[producers];
+        for (int p=0 ; p<producers ; ++p) {
+            final int id = p;
+            threads[p] = new Thread(() -> {
+                for (int i=0 ; i<count ; ++i) {
+                    ByteBuffer buf = ByteBuffer.allocate(8);
+                    buf.putInt(0, id).putInt(4, i);
+                    queue.offer(new WriteQueue.Entry(buf, null));
+                }
+            });
+            threads[p].start();
+        }
+
+        // entries from each producer must come out in the order that
+        // producer offered them, and none may be lost.
+        int[] next = new int[producers];
+        int total = 0;
+        while (total < producers * count) {
+            WriteQueue.Entry e = queue.poll();
+            if (e == null) {
+                Thread.yield();
+                continue;
+            }
+            int id = e.buffer.getInt(0);
+            assertEquals(next[id]++, e.buffer.getInt(4));
+            total++;
+        }
+
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertNull(queue.poll());
+    }
+}
@@ -0,0 +1,107 @@
+package edu.unc.cs.robotics.ros.tools;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import edu.unc.cs.robotics.ros.Name;
+import edu.unc.cs.robotics.ros.NodeHandle;
+import edu.unc.cs.robotics.ros.Publisher;
+import edu.unc.cs.robotics.ros.ServiceClient;
+import edu.unc.cs.robotics.ros.ServiceServer;
+import edu.unc.cs.robotics.ros.Subscriber;
+import edu.unc.cs.robotics.ros.msg.Message;
+import edu.unc.cs.robotics.ros.msg.MetaMessage;
+import edu.unc.cs.robotics.ros.msg.MetaService;
+import edu.unc.cs.robotics.ros.network.BufferPool;
+import edu.unc.cs.robotics.ros.network.GrowableBufferSerializer;
+import edu.unc.cs.robotics.ros.network.SizePredictor;
+import edu.unc.cs.robotics.ros.service.ServiceHandler;
+import edu.unc.cs.robotics.ros.topic.DropPolicy;
+import edu.unc.cs.robotics.ros.topic.PublicationListener;
+import edu.unc.cs.robotics.ros.topic.SubscriptionListener;
+import edu.unc.cs.robotics.ros.topic.TransportHints;
+import edu.unc.cs.robotics.ros.topic.WriteCoalescing;
+
+/**
+ * A node handle without a network.  Messages are injected into
+ * subscriptions with {@link #deliver}, and published messages are
+ * serialized into a pooled buffer, as a publication does for its
+ * subscriber links, and counted.
+ */
+class LoopbackNodeHandle implements NodeHandle {
+    final BufferPool _pool = new BufferPool(1 << 20);
+    final Map<String, SubscriptionListener<Object>> _listeners = new HashMap<>();
+    final Map<String, MetaMessage<?>> _advertised = new HashMap<>();
+    long _published;
+    long _publishedBytes;
+
+    @Override
+    public Name name() {
+        return Name.create("/");
+    }
+
+    @SuppressWarnings("unchecked")
+    void deliver(String topic, Object msg) {
+        _listeners.get(topic).message(msg);
+    }
+
+    @Override
+    public <M extends Message> Publisher<M> advertise(
+        MetaMessage<M> meta, String topic, int queueSize,
+        long maxQueueBytes, DropPolicy dropPolicy, WriteCoalescing coalescing,
+        boolean latch, Executor executor, PublicationListener<? super M> listener)
+    {
+        _advertised.put(topic, meta);
+        SizePredictor sizes = new SizePredictor();
+        return new Publisher<M>() {
+            @Override
+            public void publish(M msg) {
+                GrowableBufferSerializer ser = new GrowableBufferSerializer(
+                    _pool, 0, 4 + sizes.predict(msg));
+                ser.putInt(0);
+                msg.serialize(ser);
+                ByteBuffer buf = ser.finish();
+                int size = buf.remaining() - 4;
+                buf.putInt(0, size);
+                sizes.record(size);
+                _pool.release(buf);
+                ++_published;
+                _publishedBytes += size;
+            }
+
+            @Override
+            public void close() {
+                _advertised.remove(topic);
+            }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <M extends Message> Subscriber<M> subscribe(
+        MetaMessage<M> meta, String topic, int queueSize,
+        TransportHints transportHints,
+        Executor executor, SubscriptionListener<? super M> listener)
+    {
+        _listeners.put(topic, (msg) -> executor.execute(() -> listener.message((M)msg)));
+        return () -> _listeners.remove(topic);
+    }
+
+    @Override
+    public <Q extends Message, R extends Message> ServiceServer advertiseService(
+        MetaService<Q, R> meta, String service,
+        Executor executor, ServiceHandler<Q, R> handler)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <Q extends Message, R extends Message> ServiceClient<Q, R> serviceClient(
+        MetaService<Q, R> meta, String service, int maxConnections,
+        Executor executor)
+    {
+        throw new UnsupportedOperationException();
+    }
+}
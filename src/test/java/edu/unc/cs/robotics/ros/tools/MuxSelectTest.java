@@ -0,0 +1,74 @@
+package edu.unc.cs.robotics.ros.tools;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import edu.unc.cs.robotics.ros.NodeHandle;
+import edu.unc.cs.robotics.ros.ServiceClient;
+import edu.unc.cs.robotics.ros.TestMaster;
+import edu.unc.cs.robotics.ros.msg.tools.MuxSelect;
+import edu.unc.cs.robotics.ros.msg.tools.MuxSelectRequest;
+import edu.unc.cs.robotics.ros.msg.tools.MuxSelectResponse;
+import edu.unc.cs.robotics.ros.service.ServiceException;
+import junit.framework.TestCase;
+
+import static edu.unc.cs.robotics.ros.TestMaster.await;
+
+/**
+ * Switches the input of a mux started as the standalone tool is, with
+ * calls to its select service from another node.
+ */
+public class MuxSelectTest extends TestCase {
+    private TestMaster _master;
+    private Mux _mux;
+    private ServiceClient<MuxSelectRequest, MuxSelectResponse> _client;
+
+    @Override
+    protected void setUp() throws Exception {
+        _master = new TestMaster();
+        NodeHandle muxNode = TestMaster.handle(_master.start("mux"));
+        NodeHandle caller = TestMaster.handle(_master.start("caller"));
+        _mux = (Mux)TopicTools.create(muxNode, new String[] { "mux", "/out", "/a", "/b" });
+        assertTrue(await(() -> _master.hasService("/mux/select"), 10, TimeUnit.SECONDS));
+        _client = caller.serviceClient(MuxSelect.META, "/mux/select", Runnable::run);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _client.close();
+        _mux.close();
+        _master.close();
+    }
+
+    private String select(String topic) throws Exception {
+        return _client.call(new MuxSelectRequest(topic)).get(10, TimeUnit.SECONDS).prevTopic;
+    }
+
+    public void testSelect() throws Exception {
+        assertEquals("/a", _mux.getSelected());
+        assertEquals("/a", select("/b"));
+        assertEquals("/b", _mux.getSelected());
+
+        // __none selects no input, as in topic_tools
+        assertEquals("/b", select(Mux.NONE));
+        assertNull(_mux.getSelected());
+        assertEquals(Mux.NONE, select("/a"));
+        assertEquals("/a", _mux.getSelected());
+    }
+
+    public void testSelectUnknown() throws Exception {
+        try {
+            select("/c");
+            fail("expected the call to fail");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof ServiceException);
+            assertEquals("not an input: /c", ex.getCause().getMessage());
+        }
+        assertEquals("/a", _mux.getSelected());
+    }
+
+    public void testClosedWithMux() throws Exception {
+        _mux.close();
+        assertTrue(await(() -> !_master.hasService("/mux/select"), 10, TimeUnit.SECONDS));
+    }
+}
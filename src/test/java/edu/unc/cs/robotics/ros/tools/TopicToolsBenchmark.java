@@ -0,0 +1,108 @@
+package edu.unc.cs.robotics.ros.tools;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import edu.unc.cs.robotics.ros.Publisher;
+import edu.unc.cs.robotics.ros.msg.ByteBufferDeserializer;
+import edu.unc.cs.robotics.ros.msg.ByteBufferSerializer;
+import edu.unc.cs.robotics.ros.msg.ByteCountSerializer;
+import edu.unc.cs.robotics.ros.msg.Header;
+import edu.unc.cs.robotics.ros.msg.JointState;
+import edu.unc.cs.robotics.ros.msg.MetaMessage;
+import edu.unc.cs.robotics.ros.msg.RawMessage;
+
+/**
+ * Measures the per-message cost of relaying, from the bytes a
+ * subscriber link received to the bytes a publication queues, with no
+ * network.  Compares a relay that decodes and re-encodes a JointState
+ * to the raw tools.
+ *
+ * <p>Run main() with the test classpath, it is not a unit test.</p>
+ */
+public class TopicToolsBenchmark {
+    private static final int JOINTS = 24;
+    private static final int MESSAGES = 2_000_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        ByteBuffer wire = wire();
+        System.out.printf("JointState with %d joints, %d bytes%n", JOINTS, wire.remaining());
+
+        for (int round = 0 ; round < ROUNDS ; ++round) {
+            System.out.printf("round %d%n", round);
+            decodingRelay(wire);
+
+            run("relay", (node) -> new Relay(node, "in", "out", 100), wire);
+            run("throttle 1kHz",
+                (node) -> Throttle.messages(node, "in", "out", 100, 1000), wire);
+            run("drop 1/2", (node) -> new Drop(node, "in", "out", 100, 1, 2), wire);
+        }
+    }
+
+    private static ByteBuffer wire() {
+        String[] names = new String[JOINTS];
+        double[] values = new double[JOINTS];
+        for (int i = 0 ; i < JOINTS ; ++i) {
+            names[i] = "joint_" + i;
+            values[i] = i;
+        }
+        JointState js = new JointState(
+            new Header(0, System.nanoTime(), "base_link"),
+            names, values, values.clone(), values.clone());
+
+        ByteCountSerializer counter = new ByteCountSerializer();
+        js.serialize(counter);
+        ByteBuffer buf = ByteBuffer.allocateDirect(counter.getByteCount())
+            .order(ByteOrder.LITTLE_ENDIAN);
+        js.serialize(new ByteBufferSerializer(0, buf));
+        buf.flip();
+        return buf;
+    }
+
+    private static void decodingRelay(ByteBuffer wire) {
+        LoopbackNodeHandle node = new LoopbackNodeHandle();
+        Publisher<JointState> pub = node.advertise(JointState.META, "out", 100);
+        long start = System.nanoTime();
+        for (int i = 0 ; i < MESSAGES ; ++i) {
+            ByteBuffer buf = wire.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            pub.publish(JointState.META.deserialize(new ByteBufferDeserializer(buf)));
+        }
+        report("decoding relay", System.nanoTime() - start, node);
+    }
+
+    private static void run(
+        String name, Function<LoopbackNodeHandle, TopicTool> toolFn, ByteBuffer wire)
+    {
+        LoopbackNodeHandle node = new LoopbackNodeHandle();
+        TopicTool tool = toolFn.apply(node);
+        Map<String,String> header = new HashMap<>();
+        header.put("type", JointState.DATATYPE);
+        header.put("md5sum", JointState.MD5SUM);
+        header.put("message_definition", JointState.DEFINITION);
+        MetaMessage<RawMessage> meta = RawMessage.meta()
+            .forConnection(Collections.unmodifiableMap(header));
+
+        long start = System.nanoTime();
+        for (int i = 0 ; i < MESSAGES ; ++i) {
+            // the copy a raw subscriber link makes
+            RawMessage msg = meta.deserialize(new ByteBufferDeserializer(wire.duplicate()));
+            node.deliver("in", msg);
+        }
+        report(name, System.nanoTime() - start, node);
+        tool.close();
+    }
+
+    private static void report(String name, long nanos, LoopbackNodeHandle node) {
+        double seconds = nanos / 1e9;
+        System.out.printf("  %-16s %6.2f M msgs/s in, %6.2f M msgs/s out, %8.1f MB/s out%n",
+            name,
+            MESSAGES / seconds / 1e6,
+            node._published / seconds / 1e6,
+            node._publishedBytes / seconds / 1e6);
+    }
+}
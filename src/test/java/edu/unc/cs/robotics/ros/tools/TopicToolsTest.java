@@ -0,0 +1,83 @@
+package edu.unc.cs.robotics.ros.tools;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import edu.unc.cs.robotics.ros.msg.ByteBufferDeserializer;
+import edu.unc.cs.robotics.ros.msg.MetaMessage;
+import edu.unc.cs.robotics.ros.msg.RawMessage;
+import junit.framework.TestCase;
+
+public class TopicToolsTest extends TestCase {
+    static RawMessage received(String type, String md5sum, int size) {
+        Map<String,String> header = new HashMap<>();
+        header.put("type", type);
+        header.put("md5sum", md5sum);
+        header.put("message_definition", "");
+        return RawMessage.meta().forConnection(header)
+            .deserialize(new ByteBufferDeserializer(ByteBuffer.allocate(size)));
+    }
+
+    public void testRelayAndMux() throws Exception {
+        LoopbackNodeHandle node = new LoopbackNodeHandle();
+        try (Relay relay = new Relay(node, "in", "out", 10)) {
+            assertTrue(node._advertised.isEmpty());
+            node.deliver("in", received("a/A", "aaaa", 8));
+            node.deliver("in", received("a/A", "aaaa", 8));
+            MetaMessage<?> meta = node._advertised.get("out");
+            assertEquals("a/A", meta.getDataType());
+            assertEquals("aaaa", meta.getMd5sum());
+            assertEquals(2, relay.getForwardedCount());
+            assertEquals(2, node._published);
+            assertEquals(16, node._publishedBytes);
+        }
+        assertTrue(node._advertised.isEmpty());
+        assertTrue(node._listeners.isEmpty());
+
+        try (Mux mux = new Mux(node, "out", Arrays.asList("a", "b"), 10)) {
+            node.deliver("a", received("a/A", "aaaa", 8));
+            node.deliver("b", received("b/B", "bbbb", 8));
+            assertEquals(1, mux.getForwardedCount());
+            assertEquals("a", mux.select("b"));
+            node.deliver("a", received("a/A", "aaaa", 8));
+            node.deliver("b", received("b/B", "bbbb", 8));
+            assertEquals(2, mux.getForwardedCount());
+            // the output was advertised again with the new type
+            assertEquals("b/B", node._advertised.get("out").getDataType());
+            assertEquals(4, mux.getReceivedCount());
+        }
+    }
+
+    public void testThrottle() throws Exception {
+        LoopbackNodeHandle node = new LoopbackNodeHandle();
+        long sec = TimeUnit.SECONDS.toNanos(1);
+
+        Throttle rate = Throttle.messages(node, "in", "out", 10, 10.0);
+        assertTrue(rate.admit(0, 1));
+        assertFalse(rate.admit(sec / 20, 1));
+        assertTrue(rate.admit(sec / 10, 1));
+        assertFalse(rate.admit(sec / 10 + 1, 1));
+        rate.close();
+
+        // 1000 bytes/sec, bursts of up to 500
+        Throttle bytes = Throttle.bytes(node, "in", "out", 10, 1000, 0.5);
+        assertTrue(bytes.admit(0, 300));
+        assertTrue(bytes.admit(0, 200));
+        assertFalse(bytes.admit(0, 1));
+        assertFalse(bytes.admit(sec / 10, 200));
+        assertTrue(bytes.admit(sec / 5, 200));
+        assertFalse(bytes.admit(10 * sec, 501));
+        bytes.close();
+
+        Drop drop = new Drop(node, "in", "out", 10, 2, 3);
+        StringBuilder pattern = new StringBuilder();
+        for (int i = 0 ; i < 6 ; ++i) {
+            pattern.append(drop.admit() ? '+' : '-');
+        }
+        assertEquals("--+--+", pattern.toString());
+        drop.close();
+    }
+}
@@ -0,0 +1,95 @@
+package edu.unc.cs.robotics.ros.topic;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.google.inject.Injector;
+import edu.unc.cs.robotics.ros.NodeHandle;
+import edu.unc.cs.robotics.ros.Publisher;
+import edu.unc.cs.robotics.ros.Subscriber;
+import edu.unc.cs.robotics.ros.TestMaster;
+import edu.unc.cs.robotics.ros.msg.Clock;
+import junit.framework.TestCase;
+
+import static edu.unc.cs.robotics.ros.TestMaster.await;
+import static edu.unc.cs.robotics.ros.TestMaster.clock;
+
+public class BusStatsTest extends TestCase {
+    private TestMaster _master;
+
+    @Override
+    protected void setUp() throws Exception {
+        _master = new TestMaster();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _master.close();
+    }
+
+    /**
+     * @return the [connectionId, bytesSent, messagesSent, connected]
+     * entries of the node's first publication.
+     */
+    private static Object[] publishConnections(TopicManager topicManager) {
+        Object[] publishStats = (Object[])topicManager.getBusStats()[0];
+        return (Object[])((Object[])publishStats[0])[2];
+    }
+
+    public void testClosedConnectionRemoved() throws Exception {
+        Injector talkerNode = _master.start("talker");
+        TopicManager talker = talkerNode.getInstance(TopicManager.class);
+        NodeHandle listener = TestMaster.handle(_master.start("listener"));
+
+        CountDownLatch connected = new CountDownLatch(1);
+        CountDownLatch disconnected = new CountDownLatch(1);
+        Publisher<Clock> pub = TestMaster.handle(talkerNode).advertise(
+            Clock.META, "/clock", 10, false, Runnable::run,
+            new PublicationListener<Clock>() {
+                @Override
+                public void connect(SubscriberLink<? extends Clock> link) {
+                    connected.countDown();
+                }
+
+                @Override
+                public void disconnect(SubscriberLink<? extends Clock> link) {
+                    disconnected.countDown();
+                }
+            });
+        CountDownLatch received = new CountDownLatch(1);
+        Subscriber<Clock> sub = listener.subscribe(
+            Clock.META, "/clock", 10, TransportHints.builder().tcp().build(),
+            Runnable::run, msg -> received.countDown());
+        assertTrue(connected.await(10, TimeUnit.SECONDS));
+        // published until the subscriber has its header and the message
+        assertTrue(await(() -> {
+            pub.publish(clock(1));
+            return received.getCount() == 0;
+        }, 10, TimeUnit.SECONDS));
+
+        Object[] conns = publishConnections(talker);
+        assertEquals(1, conns.length);
+        Object[] conn = (Object[])conns[0];
+        assertTrue((Integer)conn[1] > 0);
+        assertTrue((Integer)conn[2] > 0);
+        assertEquals(Boolean.TRUE, conn[3]);
+
+        Object[] info = talker.getBusInfo();
+        assertEquals(1, info.length);
+        assertEquals("TCPROS", ((Object[])info[0])[3]);
+        assertEquals(Boolean.TRUE, ((Object[])info[0])[5]);
+        List<ConnectionInfo> connections = talker.getConnections();
+        assertEquals(1, connections.size());
+        assertTrue(connections.get(0).isConnected());
+
+        // the subscriber closing its end removes the link from the
+        // publication, and from the stats
+        sub.close();
+        assertTrue(disconnected.await(10, TimeUnit.SECONDS));
+        assertEquals(0, publishConnections(talker).length);
+        assertEquals(0, talker.getBusInfo().length);
+        assertTrue(talker.getConnections().isEmpty());
+        pub.close();
+    }
+}
@@ -0,0 +1,141 @@
+package edu.unc.cs.robotics.ros.topic;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+import junit.framework.TestCase;
+
+public class DispatchQueueTest extends TestCase {
+    private final Queue<Runnable> _tasks = new ArrayDeque<>();
+    private final List<Integer> _received = new ArrayList<>();
+
+    private DispatchQueue<Integer> queue(int queueSize) {
+        return new DispatchQueue<>(_tasks::add, _received::add, queueSize);
+    }
+
+    public void testDropOldest() throws Exception {
+        DispatchQueue<Integer> queue = queue(3);
+        for (int i = 0 ; i < 5 ; ++i) {
+            queue.offer(i);
+        }
+        // one drain is scheduled, however many messages are waiting
+        assertEquals(1, _tasks.size());
+        assertEquals(3, queue.size());
+        assertEquals(2, queue.getDroppedMessageCount());
+
+        _tasks.poll().run();
+        assertEquals(Arrays.asList(2, 3, 4), _received);
+        assertTrue(_tasks.isEmpty());
+
+        queue.offer(5);
+        assertEquals(1, _tasks.size());
+        queue.close();
+        queue.offer(6);
+        _tasks.poll().run();
+        assertEquals(Arrays.asList(2, 3, 4), _received);
+    }
+
+    public void testBackpressure() throws Exception {
+        List<Boolean> events = new ArrayList<>();
+        DispatchQueue<Integer> queue = new DispatchQueue<>(
+            _tasks::add, _received::add, 4, events::add);
+        for (int i = 0 ; i < 6 ; ++i) {
+            queue.offer(i);
+        }
+        // nothing dropped, the queue reports being full once
+        assertEquals(0, queue.getDroppedMessageCount());
+        assertEquals(6, queue.size());
+        assertEquals(Arrays.asList(true), events);
+
+        _tasks.poll().run();
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), _received);
+        assertEquals(Arrays.asList(true, false), events);
+
+        // closing a full queue releases it
+        for (int i = 0 ; i < 4 ; ++i) {
+            queue.offer(i);
+        }
+        queue.close();
+        assertEquals(Arrays.asList(true, false, true, false), events);
+    }
+
+    public void testBackpressureHalfDrained() throws Exception {
+        List<Boolean> events = new ArrayList<>();
+        // what the backpressure had reported when each message arrived
+        List<List<Boolean>> seen = new ArrayList<>();
+        DispatchQueue<Integer> queue = new DispatchQueue<>(
+            _tasks::add, msg -> seen.add(new ArrayList<>(events)), 8, events::add);
+        for (int i = 0 ; i < 7 ; ++i) {
+            queue.offer(i);
+        }
+        assertTrue(events.isEmpty());
+        queue.offer(7);
+        assertEquals(Arrays.asList(true), events);
+
+        _tasks.poll().run();
+        assertEquals(8, seen.size());
+        // released as the 4th message is taken, leaving 4 of 8
+        for (int i = 0 ; i < 3 ; ++i) {
+            assertEquals(Arrays.asList(true), seen.get(i));
+        }
+        for (int i = 3 ; i < 8 ; ++i) {
+            assertEquals(Arrays.asList(true, false), seen.get(i));
+        }
+
+        // and it fills again from empty
+        for (int i = 0 ; i < 8 ; ++i) {
+            queue.offer(i);
+        }
+        assertEquals(Arrays.asList(true, false, true), events);
+    }
+
+    public void testListenerError() throws Exception {
+        DispatchQueue<Integer> queue = new DispatchQueue<>(_tasks::add, msg -> {
+            if (msg == 1) {
+                throw new AssertionError("listener failed");
+            }
+            _received.add(msg);
+        }, 0);
+        for (int i = 0 ; i < 3 ; ++i) {
+            queue.offer(i);
+        }
+        try {
+            _tasks.poll().run();
+            fail("expected the error to propagate");
+        } catch (AssertionError ex) {
+            assertEquals("listener failed", ex.getMessage());
+        }
+        // the rest of the queue is submitted again
+        assertEquals(1, _tasks.size());
+        _tasks.poll().run();
+        assertEquals(Arrays.asList(0, 2), _received);
+
+        // and it is scheduled again for later messages
+        queue.offer(3);
+        assertEquals(1, _tasks.size());
+        _tasks.poll().run();
+        assertEquals(Arrays.asList(0, 2, 3), _received);
+    }
+
+    public void testUnboundedBatches() throws Exception {
+        DispatchQueue<Integer> queue = queue(0);
+        for (int i = 0 ; i < 100 ; ++i) {
+            queue.offer(i);
+        }
+        assertEquals(0, queue.getDroppedMessageCount());
+        int runs = 0;
+        while (!_tasks.isEmpty()) {
+            _tasks.poll().run();
+            ++runs;
+        }
+        // the drain yields after a batch and resubmits itself
+        assertTrue(runs > 1);
+        assertEquals(100, _received.size());
+        for (int i = 0 ; i < 100 ; ++i) {
+            assertEquals(i, (int)_received.get(i));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package edu.unc.cs.robotics.ros.topic;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.inject.Injector;
+import edu.unc.cs.robotics.ros.NodeHandle;
+import edu.unc.cs.robotics.ros.Publisher;
+import edu.unc.cs.robotics.ros.Subscriber;
+import edu.unc.cs.robotics.ros.TestMaster;
+import edu.unc.cs.robotics.ros.msg.Clock;
+import edu.unc.cs.robotics.ros.msg.MetaMessage;
+import edu.unc.cs.robotics.ros.msg.MetaMessageImpl;
+import edu.unc.cs.robotics.ros.msg.RawMessage;
+import junit.framework.TestCase;
+
+import static edu.unc.cs.robotics.ros.TestMaster.await;
+import static edu.unc.cs.robotics.ros.TestMaster.clock;
+
+public class IntraProcessLinkTest extends TestCase {
+    private TestMaster _master;
+    private NodeHandle _node;
+    private ExecutorService _executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        _master = new TestMaster();
+        Injector node = _master.start("intra");
+        _node = TestMaster.handle(node);
+        _executor = Executors.newCachedThreadPool();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _executor.shutdownNow();
+        _master.close();
+    }
+
+    /**
+     * Advertises a topic and waits for a subscription to connect to it.
+     */
+    private Publisher<Clock> advertise(String topic, CountDownLatch connected) {
+        return _node.advertise(
+            Clock.META, topic, 10, 0, DropPolicy.DROP_OLDEST, false, _executor,
+            new PublicationListener<Clock>() {
+                @Override
+                public void connect(SubscriberLink<? extends Clock> link) {
+                    assertEquals("INTRAPROCESS", link.getTransport());
+                    connected.countDown();
+                }
+
+                @Override
+                public void disconnect(SubscriberLink<? extends Clock> link) {
+                }
+            });
+    }
+
+    public void testBackpressureBlocksPublisher() throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        Publisher<Clock> pub = advertise("/clock", connected);
+
+        // the listener cannot run until the gate opens
+        CountDownLatch gate = new CountDownLatch(1);
+        List<Clock> received = new CopyOnWriteArrayList<>();
+        TransportHints hints = TransportHints.builder().tcp().backpressure().build();
+        Subscriber<Clock> sub = _node.subscribe(Clock.META, "/clock", 4, hints, task -> _executor.execute(() -> {
+            try {
+                gate.await();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            task.run();
+        }), received::add);
+        assertTrue(connected.await(10, TimeUnit.SECONDS));
+
+        AtomicInteger published = new AtomicInteger();
+        Thread publisher = new Thread(() -> {
+            for (int i = 0 ; i < 20 ; ++i) {
+                pub.publish(clock(i));
+                published.incrementAndGet();
+            }
+        });
+        publisher.start();
+
+        // the 4th message fills the queue, and the 5th publish waits
+        assertTrue(await(() -> published.get() == 4, 10, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        assertEquals(4, published.get());
+        assertEquals(4, sub.getQueueDepth());
+        assertEquals(Thread.State.WAITING, publisher.getState());
+
+        gate.countDown();
+        publisher.join(10000);
+        assertFalse(publisher.isAlive());
+        assertTrue(await(() -> received.size() == 20, 10, TimeUnit.SECONDS));
+        assertEquals(0, sub.getDroppedMessageCount());
+        for (int i = 0 ; i < 20 ; ++i) {
+            assertEquals(i * 1_000_000_000L, received.get(i).clock);
+        }
+        sub.close();
+        pub.close();
+    }
+
+    public void testSameInstance() throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        Publisher<Clock> pub = advertise("/clock", connected);
+        List<Clock> received = new CopyOnWriteArrayList<>();
+        Subscriber<Clock> sub = _node.subscribe(
+            Clock.META, "/clock", 10, TransportHints.DEFAULT, Runnable::run, received::add);
+        assertTrue(connected.await(10, TimeUnit.SECONDS));
+
+        // the subscription uses the publisher's meta, so it gets the
+        // published message itself
+        Clock msg = clock(1);
+        pub.publish(msg);
+        assertTrue(await(() -> received.size() == 1, 10, TimeUnit.SECONDS));
+        assertSame(msg, received.get(0));
+        sub.close();
+        pub.close();
+    }
+
+    public void testCopyForOtherMeta() throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        Publisher<Clock> pub = advertise("/clock", connected);
+        // the same type, but a meta that does not know its class
+        MetaMessage<Clock> meta = new MetaMessageImpl<>(
+            Clock.DATATYPE, Clock.MD5SUM, Clock.DEFINITION, Clock::new);
+        List<Clock> received = new CopyOnWriteArrayList<>();
+        Subscriber<Clock> sub = _node.subscribe(
+            meta, "/clock", 10, TransportHints.DEFAULT, Runnable::run, received::add);
+        assertTrue(connected.await(10, TimeUnit.SECONDS));
+
+        Clock msg = clock(2);
+        pub.publish(msg);
+        assertTrue(await(() -> received.size() == 1, 10, TimeUnit.SECONDS));
+        assertNotSame(msg, received.get(0));
+        assertEquals(msg.clock, received.get(0).clock);
+        sub.close();
+        pub.close();
+    }
+
+    public void testRawSubscriber() throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        Publisher<Clock> pub = advertise("/clock", connected);
+        List<RawMessage> received = new CopyOnWriteArrayList<>();
+        Subscriber<RawMessage> sub = _node.subscribe(
+            RawMessage.meta(), "/clock", 10, TransportHints.DEFAULT, Runnable::run, received::add);
+        assertTrue(connected.await(10, TimeUnit.SECONDS));
+
+        // a raw subscriber gets the serialized message, without its
+        // length, and the publisher's connection header
+        pub.publish(clock(3));
+        assertTrue(await(() -> received.size() == 1, 10, TimeUnit.SECONDS));
+        RawMessage raw = received.get(0);
+        assertEquals(Clock.SIZE, raw.size());
+        ByteBuffer buf = raw.buffer();
+        assertEquals(3, buf.getInt(buf.position()));
+        assertEquals(Clock.DATATYPE, raw.getDataType());
+        assertEquals("/intra", raw.getCallerId());
+        sub.close();
+        pub.close();
+    }
+}
@@ -358,4 +358,19 @@ public class XmlrpcParserTest extends TestCase {
         assertEquals("fetch19", protoList[1]);
         assertEquals(51225, protoList[2]);
     }
-}
\ No newline at end of file
+
+    public void testBase64RoundTrip() throws Exception {
+        byte[] data = new byte[300];
+        for (int i=0 ; i<data.length ; ++i) {
+            data[i] = (byte)i;
+        }
+
+        String xml = new XmlrpcSerializer().serializeResponse(new Object[] { "UDPROS", data });
+        MethodResponse response = new XmlrpcParser().parseMethodResponse(
+            new InputSource(new StringReader(xml)));
+
+        Object[] array = (Object[])response.result;
+        assertEquals("UDPROS", array[0]);
+        assertTrue(Arrays.equals(data, (byte[])array[1]));
+    }
+}